@@ -31,9 +31,12 @@ import java.io.Serializable;
 import java.math.MathContext;
 import java.math.RoundingMode;
 import java.util.*;
+import com.kreative.openxion.ast.XNExpression;
 import com.kreative.openxion.ast.XNMessageHandler;
 import com.kreative.openxion.ast.XNFunctionHandler;
+import com.kreative.openxion.ast.XNStatement;
 import com.kreative.openxion.ast.XNVariableScope;
+import com.kreative.openxion.format.FormatString;
 import com.kreative.openxion.io.XNIOManager;
 import com.kreative.openxion.io.XNIOMethod;
 import com.kreative.openxion.math.MathProcessor;
@@ -195,6 +198,10 @@ public class XNContext implements Serializable, Cloneable {
 	/**
 	 * Creates a new XNContext with the same loaded modules,
 	 * global variables, and environment as this XNContext.
+	 * The loaded modules are shared with this XNContext until
+	 * either one loads another module, so forking is cheap.
+	 * Global variables are copied, so changes to them made in
+	 * one context are not seen by the other until join is called.
 	 * @return a forked XNContext.
 	 */
 	public XNContext fork(boolean withStack) {
@@ -204,7 +211,7 @@ public class XNContext implements Serializable, Cloneable {
 		this.ui = parent.ui;
 		this.security = parent.security;
 		this.parent = parent;
-		initLanguageConstructs(parent);
+		shareLanguageConstructs(parent);
 		initRuntime(parent);
 		initEnvironment(parent);
 		if (withStack) initStack(parent);
@@ -237,6 +244,7 @@ public class XNContext implements Serializable, Cloneable {
 	private Map<String, XNModule.Version> versions;
 	private List<XNIOManager> ioManagers;
 	private List<XNIOMethod> ioMethods;
+	private boolean sharedLanguageConstructs;
 	
 	/* RUNTIME GLOBAL CONTEXT */
 	private Map<String, XOMVariant> userConstants;
@@ -270,9 +278,153 @@ public class XNContext implements Serializable, Cloneable {
 	private Stack<XNStackFrame> callStack;
 	private XOMVariant result;
 	
+	/* HANDLER DISPATCH CACHE */
+	
+	/*
+	 * Looking up a command or function by name means normalizing the name
+	 * and searching the user handlers and the built-in commands or functions.
+	 * The result of that lookup is kept here, keyed by the name exactly as it
+	 * was written, so that a call site that names the same handler every time
+	 * finds it with a single lookup. The cache is cleared whenever a global
+	 * handler is defined, a module is loaded (use), the first responder
+	 * changes (tell), or the runtime state is reset or merged. Defining a
+	 * handler also covers include, which defines handlers by executing a script.
+	 */
+	
+	private static final int DISPATCH_CACHE_LIMIT = 1024;
+	
+	private static final class DispatchCacheEntry {
+		private XNMessageHandler userCommand;
+		private XNFunctionHandler userFunction;
+		private XNModule.Command command;
+		private XNModule.Function function;
+	}
+	
+	private transient Map<String, DispatchCacheEntry> dispatchCache;
+	
+	private DispatchCacheEntry getDispatchCacheEntry(String name) {
+		if (dispatchCache == null) dispatchCache = new HashMap<String, DispatchCacheEntry>();
+		DispatchCacheEntry e = dispatchCache.get(name);
+		if (e == null) {
+			if (dispatchCache.size() >= DISPATCH_CACHE_LIMIT) dispatchCache.clear();
+			String n = XIONUtil.normalizeVarName(name);
+			e = new DispatchCacheEntry();
+			e.userCommand = globalUserCommands.get(n);
+			e.userFunction = globalUserFunctions.get(n);
+			e.command = commandInterpreters.get(n);
+			e.function = functionInterpreters.get(n);
+			dispatchCache.put(name, e);
+		}
+		return e;
+	}
+	
+	public void invalidateDispatchCache() {
+		if (dispatchCache != null) dispatchCache.clear();
+	}
+	
+	/* PARSE CACHE */
+	
+	/*
+	 * Scripts run by do and send, and expressions evaluated by value,
+	 * are often the same text over and over. The parse trees of the most
+	 * recently used ones are kept here, keyed by source text. How a script
+	 * parses depends on the commands, data types, constants, and ordinals
+	 * known to the context, so the cache is cleared whenever a module is
+	 * loaded (use), a user constant, ordinal, or data type is added, or the
+	 * language constructs or runtime state are reset or merged.
+	 */
+	
+	private static final int PARSE_CACHE_LIMIT = 256;
+	private static final int PARSE_CACHE_MAX_SOURCE_LENGTH = 65536;
+	
+	private static final class ParseCache<V> extends LinkedHashMap<String, V> {
+		private static final long serialVersionUID = 1L;
+		public ParseCache() {
+			super(16, 0.75f, true);
+		}
+		protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+			return size() > PARSE_CACHE_LIMIT;
+		}
+	}
+	
+	private transient ParseCache<List<XNStatement>> parsedScripts;
+	private transient ParseCache<XNExpression> parsedExpressions;
+	private transient long parseCacheHits;
+	private transient long parseCacheMisses;
+	
+	public List<XNStatement> getParsedScript(String source) {
+		List<XNStatement> program = (parsedScripts == null) ? null : parsedScripts.get(source);
+		if (program != null) parseCacheHits++;
+		else parseCacheMisses++;
+		return program;
+	}
+	
+	public void putParsedScript(String source, List<XNStatement> program) {
+		if (source.length() > PARSE_CACHE_MAX_SOURCE_LENGTH) return;
+		if (parsedScripts == null) parsedScripts = new ParseCache<List<XNStatement>>();
+		parsedScripts.put(source, program);
+	}
+	
+	public XNExpression getParsedExpression(String source) {
+		XNExpression expr = (parsedExpressions == null) ? null : parsedExpressions.get(source);
+		if (expr != null) parseCacheHits++;
+		else parseCacheMisses++;
+		return expr;
+	}
+	
+	public void putParsedExpression(String source, XNExpression expr) {
+		if (source.length() > PARSE_CACHE_MAX_SOURCE_LENGTH) return;
+		if (parsedExpressions == null) parsedExpressions = new ParseCache<XNExpression>();
+		parsedExpressions.put(source, expr);
+	}
+	
+	public long getParseCacheHits() {
+		return parseCacheHits;
+	}
+	
+	public long getParseCacheMisses() {
+		return parseCacheMisses;
+	}
+	
+	public void invalidateParseCache() {
+		if (parsedScripts != null) parsedScripts.clear();
+		if (parsedExpressions != null) parsedExpressions.clear();
+	}
+	
+	/* FORMAT STRING CACHE */
+	
+	/*
+	 * The format function is often called with the same few patterns, such
+	 * as once for every row of a report. The compiled FormatStrings of the
+	 * most recently used ones are kept here, keyed by pattern text. Quoted
+	 * literals in a pattern are decoded using the text encoding, so the
+	 * cache is cleared whenever the text encoding is changed or the
+	 * environment is reset or merged.
+	 */
+	
+	private transient ParseCache<FormatString> formatStrings;
+	
+	public FormatString getFormatString(String pattern) {
+		FormatString fs = (formatStrings == null) ? null : formatStrings.get(pattern);
+		if (fs == null) {
+			fs = FormatString.compile(this, pattern);
+			if (pattern.length() <= PARSE_CACHE_MAX_SOURCE_LENGTH) {
+				if (formatStrings == null) formatStrings = new ParseCache<FormatString>();
+				formatStrings.put(pattern, fs);
+			}
+		}
+		return fs;
+	}
+	
+	public void invalidateFormatCache() {
+		if (formatStrings != null) formatStrings.clear();
+	}
+	
 	/* LANGUAGE CONSTRUCTS */
 	
 	private void initLanguageConstructs() {
+		invalidateDispatchCache();
+		invalidateParseCache();
 		builtInConstants = new HashMap<String, XOMVariant>();
 		builtInOrdinals = new HashMap<String, Integer>();
 		builtInDataTypes = new HashMap<String, XOMDataType<? extends XOMVariant>>();
@@ -284,6 +436,7 @@ public class XNContext implements Serializable, Cloneable {
 		versions = new HashMap<String, XNModule.Version>();
 		ioManagers = new Vector<XNIOManager>();
 		ioMethods = new Vector<XNIOMethod>();
+		sharedLanguageConstructs = false;
 	}
 	
 	private void initLanguageConstructs(XNContext parent) {
@@ -301,9 +454,44 @@ public class XNContext implements Serializable, Cloneable {
 		ioMethods.addAll(parent.ioMethods);
 	}
 	
+	private void shareLanguageConstructs(XNContext parent) {
+		builtInConstants = parent.builtInConstants;
+		builtInOrdinals = parent.builtInOrdinals;
+		builtInDataTypes = parent.builtInDataTypes;
+		commandParsers = parent.commandParsers;
+		commandInterpreters = parent.commandInterpreters;
+		functionInterpreters = parent.functionInterpreters;
+		globalProperties = parent.globalProperties;
+		externalLanguages = parent.externalLanguages;
+		versions = parent.versions;
+		ioManagers = parent.ioManagers;
+		ioMethods = parent.ioMethods;
+		sharedLanguageConstructs = true;
+		parent.sharedLanguageConstructs = true;
+	}
+	
+	private void unshareLanguageConstructs() {
+		if (sharedLanguageConstructs) {
+			builtInConstants = new HashMap<String, XOMVariant>(builtInConstants);
+			builtInOrdinals = new HashMap<String, Integer>(builtInOrdinals);
+			builtInDataTypes = new HashMap<String, XOMDataType<? extends XOMVariant>>(builtInDataTypes);
+			commandParsers = new HashMap<String, XNModule.CommandParser>(commandParsers);
+			commandInterpreters = new HashMap<String, XNModule.Command>(commandInterpreters);
+			functionInterpreters = new HashMap<String, XNModule.Function>(functionInterpreters);
+			globalProperties = new HashMap<String, XNModule.Property>(globalProperties);
+			externalLanguages = new HashMap<String, XNModule.ExternalLanguage>(externalLanguages);
+			versions = new HashMap<String, XNModule.Version>(versions);
+			ioManagers = new Vector<XNIOManager>(ioManagers);
+			ioMethods = new Vector<XNIOMethod>(ioMethods);
+			sharedLanguageConstructs = false;
+		}
+	}
+	
 	/* RUNTIME GLOBAL CONTEXT */
 	
 	private void initRuntime() {
+		invalidateDispatchCache();
+		invalidateParseCache();
 		userConstants = new HashMap<String, XOMVariant>();
 		userOrdinals = new HashMap<String, Integer>();
 		userDataTypes = new HashMap<String, XOMDataType<? extends XOMVariant>>();
@@ -329,6 +517,7 @@ public class XNContext implements Serializable, Cloneable {
 	/* ENVIRONMENT */
 	
 	private void initEnvironment() {
+		invalidateFormatCache();
 		applicationPaths = null;
 		documentPaths = null;
 		includePaths = null;
@@ -346,6 +535,7 @@ public class XNContext implements Serializable, Cloneable {
 	}
 	
 	private void initEnvironment(XNContext parent) {
+		invalidateFormatCache();
 		applicationPaths = parent.applicationPaths;
 		documentPaths = parent.documentPaths;
 		includePaths = parent.includePaths;
@@ -359,12 +549,13 @@ public class XNContext implements Serializable, Cloneable {
 		lineEnding = parent.lineEnding;
 		mc = parent.mc;
 		mp = parent.mp;
-		messages = parent.messages;
+		messages = new HashMap<String,String>(parent.messages);
 	}
 	
 	/* CALL STACK */
 	
 	private void initStack() {
+		invalidateDispatchCache();
 		firstResponder = null;
 		responderStack = new Stack<XNResponder>();
 		callStack = new Stack<XNStackFrame>();
@@ -382,6 +573,9 @@ public class XNContext implements Serializable, Cloneable {
 	/* LANGUAGE CONSTRUCTS */
 	
 	public void loadModule(XNModule m) {
+		invalidateDispatchCache();
+		invalidateParseCache();
+		unshareLanguageConstructs();
 		for (Map.Entry<String, XOMVariant> e : m.constants.entrySet()) {
 			builtInConstants.put(XIONUtil.normalizeVarName(e.getKey()), e.getValue());
 		}
@@ -468,7 +662,7 @@ public class XNContext implements Serializable, Cloneable {
 	}
 	
 	public XNModule.Command getCommandInterpreter(String name) {
-		return commandInterpreters.get(XIONUtil.normalizeVarName(name));
+		return getDispatchCacheEntry(name).command;
 	}
 	
 	public boolean hasCommandInterpreter(String name) {
@@ -476,7 +670,7 @@ public class XNContext implements Serializable, Cloneable {
 	}
 	
 	public XNModule.Function getFunctionInterpreter(String name) {
-		return functionInterpreters.get(XIONUtil.normalizeVarName(name));
+		return getDispatchCacheEntry(name).function;
 	}
 	
 	public boolean hasFunctionInterpreter(String name) {
@@ -539,14 +733,17 @@ public class XNContext implements Serializable, Cloneable {
 	
 	public void addUserConstant(String name, XOMVariant value) {
 		userConstants.put(XIONUtil.normalizeVarName(name), value);
+		invalidateParseCache();
 	}
 	
 	public void addUserOrdinal(String name, int value) {
 		userOrdinals.put(XIONUtil.normalizeVarName(name), value);
+		invalidateParseCache();
 	}
 	
 	public void addUserDataType(String name, XOMDataType<? extends XOMVariant> type) {
 		userDataTypes.put(XIONUtil.normalizeVarName(name), type);
+		invalidateParseCache();
 	}
 	
 	public XOMVariableMap globalVariables() {
@@ -560,21 +757,21 @@ public class XNContext implements Serializable, Cloneable {
 	public void defineGlobalUserCommand(String name, XNMessageHandler handler) {
 		name = XIONUtil.normalizeVarName(name);
 		globalUserCommands.put(name, handler);
+		invalidateDispatchCache();
 	}
 	
 	public XNMessageHandler getGlobalUserCommand(String name) {
-		name = XIONUtil.normalizeVarName(name);
-		return globalUserCommands.get(name);
+		return getDispatchCacheEntry(name).userCommand;
 	}
 	
 	public void defineGlobalUserFunction(String name, XNFunctionHandler handler) {
 		name = XIONUtil.normalizeVarName(name);
 		globalUserFunctions.put(name, handler);
+		invalidateDispatchCache();
 	}
 	
 	public XNFunctionHandler getGlobalUserFunction(String name) {
-		name = XIONUtil.normalizeVarName(name);
-		return globalUserFunctions.get(name);
+		return getDispatchCacheEntry(name).userFunction;
 	}
 	
 	public void addIncludedScript(String path) {
@@ -664,6 +861,7 @@ public class XNContext implements Serializable, Cloneable {
 	}
 	
 	public void setTextEncoding(String s) {
+		if (!s.equals(textEncoding)) invalidateFormatCache();
 		textEncoding = s;
 	}
 	
@@ -707,6 +905,7 @@ public class XNContext implements Serializable, Cloneable {
 	
 	public void setFirstResponder(XNResponder resp) {
 		firstResponder = resp;
+		invalidateDispatchCache();
 	}
 	
 	public void pushResponder(XNResponder resp) {
@@ -39,6 +39,9 @@ import com.kreative.openxion.ast.XNExpression;
 import com.kreative.openxion.ast.XNModifier;
 import com.kreative.openxion.ast.XNStringExpression;
 import com.kreative.openxion.binpack.*;
+import com.kreative.openxion.io.XNIOManager;
+import com.kreative.openxion.io.XNIOStream;
+import com.kreative.openxion.io.XNIOStreamInputStream;
 import com.kreative.openxion.io.XOMURLIOManager;
 import com.kreative.openxion.tr.Matchor;
 import com.kreative.openxion.tr.Multiplexor;
@@ -47,6 +50,7 @@ import com.kreative.openxion.tr.Transformor;
 import com.kreative.openxion.util.Base64;
 import com.kreative.openxion.util.EndlessInputStream;
 import com.kreative.openxion.util.XIONUtil;
+import com.kreative.openxion.xom.XOMValue;
 import com.kreative.openxion.xom.XOMVariant;
 import com.kreative.openxion.xom.inst.*;
 import com.kreative.openxion.xom.type.*;
@@ -118,6 +122,7 @@ public class XNExtendedModule extends XNModule {
 		functions.put("trreplaceall", f_trreplaceall);
 		functions.put("trrinstr", f_trrinstr);
 		functions.put("unpack", f_unpack);
+		functions.put("unpackrecords", f_unpackrecords);
 		functions.put("urldecode", f_urldecode);
 		functions.put("urlencode", f_urlencode);
 		functions.put("urlquerydecode", f_urlquerydecode);
@@ -599,6 +604,156 @@ public class XNExtendedModule extends XNModule {
 		}
 	}
 	
+	/*
+	 * The reg, tr, pack, and unpack functions are often called with the same
+	 * few patterns over and over, such as once for every line of a file.
+	 * Compiling a pattern costs far more than using it, so the compiled
+	 * Patterns, Matchors, Transformors, and DataLayouts are kept here, keyed
+	 * by what kind of object they are and the pattern text they were
+	 * compiled from. The cache is shared by every context, possibly on
+	 * different threads, so all access to it is synchronized. Only the most
+	 * recently used are kept.
+	 */
+	
+	private static final int PATTERN_CACHE_LIMIT = 256;
+	
+	private static final Map<String, Object> patternCache = new LinkedHashMap<String, Object>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+		protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+			return size() > PATTERN_CACHE_LIMIT;
+		}
+	};
+	
+	private static long patternCacheHits = 0;
+	private static long patternCacheMisses = 0;
+	
+	private static Object getCachedPattern(String key) {
+		synchronized (patternCache) {
+			Object o = patternCache.get(key);
+			if (o != null) patternCacheHits++;
+			else patternCacheMisses++;
+			return o;
+		}
+	}
+	
+	private static void putCachedPattern(String key, Object o) {
+		synchronized (patternCache) {
+			patternCache.put(key, o);
+		}
+	}
+	
+	public static long getPatternCacheHits() {
+		synchronized (patternCache) {
+			return patternCacheHits;
+		}
+	}
+	
+	public static long getPatternCacheMisses() {
+		synchronized (patternCache) {
+			return patternCacheMisses;
+		}
+	}
+	
+	public static int getPatternCacheSize() {
+		synchronized (patternCache) {
+			return patternCache.size();
+		}
+	}
+	
+	public static void clearPatternCache() {
+		synchronized (patternCache) {
+			patternCache.clear();
+			patternCacheHits = 0;
+			patternCacheMisses = 0;
+		}
+	}
+	
+	private static DataLayout dataLayout(String d) {
+		String key = "f" + d;
+		Object cached = getCachedPattern(key);
+		if (cached instanceof DataLayout) return (DataLayout)cached;
+		DataLayout layout;
+		try {
+			layout = new DataLayout(new DataFormatParser(new StringReader(d)).parseAuto());
+		} catch (Exception e) {
+			throw new XNScriptError("Invalid format string: " + e.getMessage());
+		}
+		putCachedPattern(key, layout);
+		return layout;
+	}
+	
+	private static Pattern regexPattern(String d) {
+		String key = "r" + d;
+		Object cached = getCachedPattern(key);
+		if (cached instanceof Pattern) return (Pattern)cached;
+		Pattern p = Pattern.compile(d);
+		putCachedPattern(key, p);
+		return p;
+	}
+	
+	private static Matchor trMatchor(String d) {
+		String key = "m" + d;
+		Object cached = getCachedPattern(key);
+		if (cached instanceof Matchor) return (Matchor)cached;
+		Matchor m = TrPattern.compile(d, false).matchor();
+		putCachedPattern(key, m);
+		return m;
+	}
+	
+	private static Transformor trTransformor(XNContext ctx, String functionName, List<? extends XOMVariant> l) {
+		String a1 = l.get(1).toTextString(ctx);
+		String a2 = l.get(2).toTextString(ctx);
+		String a3 = (l.size() > 3) ? l.get(3).toTextString(ctx) : "";
+		String key = "t" + l.size() + "\u0000" + a1 + "\u0000" + a2 + "\u0000" + a3;
+		Object cached = getCachedPattern(key);
+		if (cached instanceof Transformor) return (Transformor)cached;
+		Transformor tx;
+		if (a1.startsWith("-")) {
+			boolean c = a1.contains("c");
+			boolean d = a1.contains("d");
+			boolean s = a1.contains("s");
+			if (d) {
+				if (s) {
+					if (l.size() != 4)
+						throw new XNScriptError("Can't understand arguments to "+functionName);
+					TrPattern a = TrPattern.compile(a2, c);
+					TrPattern b = TrPattern.compile(a3, false);
+					tx = new Multiplexor(a.deletor(), b.squeezor());
+				} else {
+					if (l.size() != 3)
+						throw new XNScriptError("Can't understand arguments to "+functionName);
+					TrPattern a = TrPattern.compile(a2, c);
+					tx = a.deletor();
+				}
+			} else {
+				if (s) {
+					if (l.size() == 3) {
+						TrPattern a = TrPattern.compile(a2, c);
+						tx = a.squeezor();
+					} else {
+						TrPattern a = TrPattern.compile(a2, c);
+						TrPattern b = TrPattern.compile(a3, false);
+						tx = new Multiplexor(TrPattern.translator(a, b), b.squeezor());
+					}
+				} else {
+					if (l.size() != 4)
+						throw new XNScriptError("Can't understand arguments to "+functionName);
+					TrPattern a = TrPattern.compile(a2, c);
+					TrPattern b = TrPattern.compile(a3, false);
+					tx = TrPattern.translator(a, b);
+				}
+			}
+		} else {
+			if (l.size() != 3)
+				throw new XNScriptError("Can't understand arguments to "+functionName);
+			TrPattern a = TrPattern.compile(a1, false);
+			TrPattern b = TrPattern.compile(a2, false);
+			tx = TrPattern.translator(a, b);
+		}
+		putCachedPattern(key, tx);
+		return tx;
+	}
+	
 	private static List<? extends XOMVariant> listParameter(XNContext ctx, String functionName, XOMVariant parameter, boolean primitive) {
 		List<? extends XOMVariant> l = (parameter == null) ? new Vector<XOMVariant>() : primitive ? parameter.toPrimitiveList(ctx) : parameter.toVariantList(ctx);
 		return l;
@@ -1118,16 +1273,12 @@ public class XNExtendedModule extends XNModule {
 		public XOMVariant evaluateFunction(XNContext ctx, String functionName, XNModifier modifier, XOMVariant parameter) {
 			List<? extends XOMVariant> l = listParameter(ctx, functionName, parameter, true);
 			if (l.size() < 1) throw new XNScriptError("Can't understand arguments to "+functionName);
-			List<DataField> format;
-			try {
-				format = new DataFormatParser(new StringReader(l.get(0).toTextString(ctx))).parseAuto();
-			} catch (Exception e) {
-				throw new XNScriptError("Invalid format string: " + e.getMessage());
-			}
+			DataLayout layout = dataLayout(l.get(0).toTextString(ctx));
+			List<DataField> format = layout.format();
 			List<Object> things = XOMtoNative(format, l.subList(1, l.size()), ctx);
 			byte[] res;
 			try {
-				res = new DataWriter(format).pack(things);
+				res = new DataWriter(layout).pack(things);
 			} catch (NumberFormatException e) {
 				throw new XNScriptError("Expected numeric value here");
 			} catch (Exception e) {
@@ -1191,7 +1342,7 @@ public class XNExtendedModule extends XNModule {
 			String s = l.get(0).toTextString(ctx);
 			if (s.length() == 0) return XOMInteger.ZERO;
 			String d = l.get(1).toTextString(ctx);
-			return new XOMInteger(s.split(d).length);
+			return new XOMInteger(regexPattern(d).split(s).length);
 		}
 	};
 	
@@ -1201,7 +1352,7 @@ public class XNExtendedModule extends XNModule {
 			String s = l.get(0).toTextString(ctx);
 			if (s.length() == 0) return XOMString.EMPTY_STRING;
 			String d = l.get(1).toTextString(ctx);
-			String[] flds = s.split(d);
+			String[] flds = regexPattern(d).split(s);
 			List<XOMVariant> vlds = new Vector<XOMVariant>();
 			for (String fld : flds) {
 				vlds.add(new XOMString(fld));
@@ -1215,7 +1366,7 @@ public class XNExtendedModule extends XNModule {
 			List<? extends XOMVariant> l = listParameter(ctx, functionName, parameter, 2, true);
 			String s = l.get(0).toTextString(ctx);
 			String d = l.get(1).toTextString(ctx);
-			Matcher m = Pattern.compile(d).matcher(s);
+			Matcher m = regexPattern(d).matcher(s);
 			if (m.find()) {
 				return new XOMInteger(m.start()+1);
 			} else {
@@ -1229,7 +1380,7 @@ public class XNExtendedModule extends XNModule {
 			List<? extends XOMVariant> l = listParameter(ctx, functionName, parameter, 2, true);
 			String s = l.get(0).toTextString(ctx);
 			String d = l.get(1).toTextString(ctx);
-			return s.matches(d) ? XOMBoolean.TRUE : XOMBoolean.FALSE;
+			return regexPattern(d).matcher(s).matches() ? XOMBoolean.TRUE : XOMBoolean.FALSE;
 		}
 	};
 	
@@ -1239,7 +1390,7 @@ public class XNExtendedModule extends XNModule {
 			String s = l.get(0).toTextString(ctx);
 			if (s.length() == 0) return XOMString.EMPTY_STRING;
 			String d = l.get(1).toTextString(ctx);
-			String[] flds = s.split(d);
+			String[] flds = regexPattern(d).split(s);
 			int n = XOMIntegerType.instance.makeInstanceFrom(ctx, l.get(2), true).toInt();
 			if (n < 1 || n > flds.length) return XOMString.EMPTY_STRING;
 			else return new XOMString(flds[n-1]);
@@ -1251,7 +1402,7 @@ public class XNExtendedModule extends XNModule {
 			List<? extends XOMVariant> l = listParameter(ctx, functionName, parameter, 2, true);
 			String s = l.get(1).toTextString(ctx);
 			String d = l.get(0).toTextString(ctx);
-			Matcher m = Pattern.compile(d).matcher(s);
+			Matcher m = regexPattern(d).matcher(s);
 			if (m.find()) {
 				return new XOMInteger(m.start()+1);
 			} else {
@@ -1266,7 +1417,7 @@ public class XNExtendedModule extends XNModule {
 			String str = l.get(0).toTextString(ctx);
 			String src = l.get(1).toTextString(ctx);
 			String rep = l.get(2).toTextString(ctx);
-			return new XOMString(str.replaceFirst(src, rep));
+			return new XOMString(regexPattern(src).matcher(str).replaceFirst(rep));
 		}
 	};
 	
@@ -1276,7 +1427,7 @@ public class XNExtendedModule extends XNModule {
 			String str = l.get(0).toTextString(ctx);
 			String src = l.get(1).toTextString(ctx);
 			String rep = l.get(2).toTextString(ctx);
-			return new XOMString(str.replaceAll(src, rep));
+			return new XOMString(regexPattern(src).matcher(str).replaceAll(rep));
 		}
 	};
 	
@@ -1285,7 +1436,7 @@ public class XNExtendedModule extends XNModule {
 			List<? extends XOMVariant> l = listParameter(ctx, functionName, parameter, 2, true);
 			String s = l.get(0).toTextString(ctx);
 			String d = l.get(1).toTextString(ctx);
-			Matcher m = Pattern.compile(d).matcher(s);
+			Matcher m = regexPattern(d).matcher(s);
 			int i = 0;
 			while (m.find()) i = m.start()+1;
 			return new XOMInteger(i);
@@ -1298,7 +1449,7 @@ public class XNExtendedModule extends XNModule {
 			String s = l.get(0).toTextString(ctx);
 			if (s.length() == 0) return XOMInteger.ZERO;
 			String d = l.get(1).toTextString(ctx);
-			Matchor m = TrPattern.compile(d, false).matchor();
+			Matchor m = trMatchor(d);
 			return new XOMInteger(m.split(s).length);
 		}
 	};
@@ -1309,7 +1460,7 @@ public class XNExtendedModule extends XNModule {
 			String s = l.get(0).toTextString(ctx);
 			if (s.length() == 0) return XOMString.EMPTY_STRING;
 			String d = l.get(1).toTextString(ctx);
-			Matchor m = TrPattern.compile(d, false).matchor();
+			Matchor m = trMatchor(d);
 			String[] flds = m.split(s);
 			List<XOMVariant> vlds = new Vector<XOMVariant>();
 			for (String fld : flds) {
@@ -1324,7 +1475,7 @@ public class XNExtendedModule extends XNModule {
 			List<? extends XOMVariant> l = listParameter(ctx, functionName, parameter, 2, true);
 			String s = l.get(0).toTextString(ctx);
 			String d = l.get(1).toTextString(ctx);
-			Matchor m = TrPattern.compile(d, false).matchor();
+			Matchor m = trMatchor(d);
 			return new XOMInteger(m.findIn(s)+1);
 		}
 	};
@@ -1334,7 +1485,7 @@ public class XNExtendedModule extends XNModule {
 			List<? extends XOMVariant> l = listParameter(ctx, functionName, parameter, 2, true);
 			String s = l.get(0).toTextString(ctx);
 			String d = l.get(1).toTextString(ctx);
-			Matchor m = TrPattern.compile(d, false).matchor();
+			Matchor m = trMatchor(d);
 			return m.matchesAll(s) ? XOMBoolean.TRUE : XOMBoolean.FALSE;
 		}
 	};
@@ -1345,7 +1496,7 @@ public class XNExtendedModule extends XNModule {
 			String s = l.get(0).toTextString(ctx);
 			if (s.length() == 0) return XOMString.EMPTY_STRING;
 			String d = l.get(1).toTextString(ctx);
-			Matchor m = TrPattern.compile(d, false).matchor();
+			Matchor m = trMatchor(d);
 			String[] flds = m.split(s);
 			int n = XOMIntegerType.instance.makeInstanceFrom(ctx, l.get(2), true).toInt();
 			if (n < 1 || n > flds.length) return XOMString.EMPTY_STRING;
@@ -1358,7 +1509,7 @@ public class XNExtendedModule extends XNModule {
 			List<? extends XOMVariant> l = listParameter(ctx, functionName, parameter, 2, true);
 			String s = l.get(1).toTextString(ctx);
 			String d = l.get(0).toTextString(ctx);
-			Matchor m = TrPattern.compile(d, false).matchor();
+			Matchor m = trMatchor(d);
 			return new XOMInteger(m.findIn(s)+1);
 		}
 	};
@@ -1367,52 +1518,7 @@ public class XNExtendedModule extends XNModule {
 		public XOMVariant evaluateFunction(XNContext ctx, String functionName, XNModifier modifier, XOMVariant parameter) {
 			List<? extends XOMVariant> l = listParameter(ctx, functionName, parameter, 3, 4, true);
 			String str = l.get(0).toTextString(ctx);
-			String a1 = l.get(1).toTextString(ctx);
-			String a2 = l.get(2).toTextString(ctx);
-			String a3 = (l.size() > 3) ? l.get(3).toTextString(ctx) : "";
-			Transformor tx;
-			if (a1.startsWith("-")) {
-				boolean c = a1.contains("c");
-				boolean d = a1.contains("d");
-				boolean s = a1.contains("s");
-				if (d) {
-					if (s) {
-						if (l.size() != 4)
-							throw new XNScriptError("Can't understand arguments to "+functionName);
-						TrPattern a = TrPattern.compile(a2, c);
-						TrPattern b = TrPattern.compile(a3, false);
-						tx = new Multiplexor(a.deletor(), b.squeezor());
-					} else {
-						if (l.size() != 3)
-							throw new XNScriptError("Can't understand arguments to "+functionName);
-						TrPattern a = TrPattern.compile(a2, c);
-						tx = a.deletor();
-					}
-				} else {
-					if (s) {
-						if (l.size() == 3) {
-							TrPattern a = TrPattern.compile(a2, c);
-							tx = a.squeezor();
-						} else {
-							TrPattern a = TrPattern.compile(a2, c);
-							TrPattern b = TrPattern.compile(a3, false);
-							tx = new Multiplexor(TrPattern.translator(a, b), b.squeezor());
-						}
-					} else {
-						if (l.size() != 4)
-							throw new XNScriptError("Can't understand arguments to "+functionName);
-						TrPattern a = TrPattern.compile(a2, c);
-						TrPattern b = TrPattern.compile(a3, false);
-						tx = TrPattern.translator(a, b);
-					}
-				}
-			} else {
-				if (l.size() != 3)
-					throw new XNScriptError("Can't understand arguments to "+functionName);
-				TrPattern a = TrPattern.compile(a1, false);
-				TrPattern b = TrPattern.compile(a2, false);
-				tx = TrPattern.translator(a, b);
-			}
+			Transformor tx = trTransformor(ctx, functionName, l);
 			return new XOMString(tx.transformFirst(str));
 		}
 	};
@@ -1421,52 +1527,7 @@ public class XNExtendedModule extends XNModule {
 		public XOMVariant evaluateFunction(XNContext ctx, String functionName, XNModifier modifier, XOMVariant parameter) {
 			List<? extends XOMVariant> l = listParameter(ctx, functionName, parameter, 3, 4, true);
 			String str = l.get(0).toTextString(ctx);
-			String a1 = l.get(1).toTextString(ctx);
-			String a2 = l.get(2).toTextString(ctx);
-			String a3 = (l.size() > 3) ? l.get(3).toTextString(ctx) : "";
-			Transformor tx;
-			if (a1.startsWith("-")) {
-				boolean c = a1.contains("c");
-				boolean d = a1.contains("d");
-				boolean s = a1.contains("s");
-				if (d) {
-					if (s) {
-						if (l.size() != 4)
-							throw new XNScriptError("Can't understand arguments to "+functionName);
-						TrPattern a = TrPattern.compile(a2, c);
-						TrPattern b = TrPattern.compile(a3, false);
-						tx = new Multiplexor(a.deletor(), b.squeezor());
-					} else {
-						if (l.size() != 3)
-							throw new XNScriptError("Can't understand arguments to "+functionName);
-						TrPattern a = TrPattern.compile(a2, c);
-						tx = a.deletor();
-					}
-				} else {
-					if (s) {
-						if (l.size() == 3) {
-							TrPattern a = TrPattern.compile(a2, c);
-							tx = a.squeezor();
-						} else {
-							TrPattern a = TrPattern.compile(a2, c);
-							TrPattern b = TrPattern.compile(a3, false);
-							tx = new Multiplexor(TrPattern.translator(a, b), b.squeezor());
-						}
-					} else {
-						if (l.size() != 4)
-							throw new XNScriptError("Can't understand arguments to "+functionName);
-						TrPattern a = TrPattern.compile(a2, c);
-						TrPattern b = TrPattern.compile(a3, false);
-						tx = TrPattern.translator(a, b);
-					}
-				}
-			} else {
-				if (l.size() != 3)
-					throw new XNScriptError("Can't understand arguments to "+functionName);
-				TrPattern a = TrPattern.compile(a1, false);
-				TrPattern b = TrPattern.compile(a2, false);
-				tx = TrPattern.translator(a, b);
-			}
+			Transformor tx = trTransformor(ctx, functionName, l);
 			return new XOMString(tx.transformAll(str));
 		}
 	};
@@ -1476,7 +1537,7 @@ public class XNExtendedModule extends XNModule {
 			List<? extends XOMVariant> l = listParameter(ctx, functionName, parameter, 2, true);
 			String s = l.get(0).toTextString(ctx);
 			String d = l.get(1).toTextString(ctx);
-			Matchor m = TrPattern.compile(d, false).matchor();
+			Matchor m = trMatchor(d);
 			return new XOMInteger(m.findLastIn(s)+1);
 		}
 	};
@@ -1484,16 +1545,18 @@ public class XNExtendedModule extends XNModule {
 	private static final Function f_unpack = new Function() {
 		public XOMVariant evaluateFunction(XNContext ctx, String functionName, XNModifier modifier, XOMVariant parameter) {
 			List<? extends XOMVariant> l = listParameter(ctx, functionName, parameter, 2, true);
-			List<DataField> format;
-			try {
-				format = new DataFormatParser(new StringReader(l.get(0).toTextString(ctx))).parseAuto();
-			} catch (Exception e) {
-				throw new XNScriptError("Invalid format string: " + e.getMessage());
-			}
+			DataLayout layout = dataLayout(l.get(0).toTextString(ctx));
+			List<DataField> format = layout.format();
 			byte[] data = XOMBinaryType.instance.makeInstanceFrom(ctx, l.get(1)).toByteArray();
 			List<Object> things;
 			try {
-				things = new DataReader(format).unpack(new EndlessInputStream(new ByteArrayInputStream(data)), data.length);
+				if (layout.isFixed()) {
+					// missing data reads as zeros, the same as with EndlessInputStream
+					if (data.length < layout.fixedLength()) data = Arrays.copyOf(data, layout.fixedLength());
+					things = new DataReader(layout).unpack(data);
+				} else {
+					things = new DataReader(layout).unpack(new EndlessInputStream(new ByteArrayInputStream(data)), data.length);
+				}
 			} catch (NumberFormatException e) {
 				throw new XNScriptError("Expected number here");
 			} catch (EOFException e) {
@@ -1503,70 +1566,218 @@ public class XNExtendedModule extends XNModule {
 			}
 			return new XOMList(nativeToXOM(format, things, ctx));
 		}
-		private List<XOMVariant> nativeToXOM(List<DataField> format, List<Object> things, XNContext ctx) {
-			List<XOMVariant> l = new ArrayList<XOMVariant>();
-			Iterator<Object> ti = things.iterator();
-			for (DataField df : format) {
-				if (df.type().returns()) {
-					Object o = ti.hasNext() ? ti.next() : null;
-					l.add(nativeToXOMwithCount(df, o, ctx));
+	};
+	
+	private static final Function f_unpackrecords = new Function() {
+		public XOMVariant evaluateFunction(XNContext ctx, String functionName, XNModifier modifier, XOMVariant parameter) {
+			List<? extends XOMVariant> l = listParameter(ctx, functionName, parameter, 2, true);
+			DataLayout layout = dataLayout(l.get(0).toTextString(ctx));
+			return new UnpackedRecords(l.get(0).toTextString(ctx), layout, l.get(1));
+		}
+	};
+	
+	/*
+	 * The value returned by unpackRecords. Nothing is read until the records
+	 * are asked for; repeat for each then gets them one at a time, so a file
+	 * of any size can be gone through without holding it all in memory.
+	 * The source is an open file or URL, which is read from its current
+	 * position on, a file, which is read from the beginning each time,
+	 * or anything that can be made into binary data.
+	 */
+	private static class UnpackedRecords extends XOMValue {
+		private static final long serialVersionUID = 1L;
+		
+		private String formatString;
+		private DataLayout layout;
+		private XOMVariant source;
+		
+		public UnpackedRecords(String formatString, DataLayout layout, XOMVariant source) {
+			this.formatString = formatString;
+			this.layout = layout;
+			this.source = source;
+		}
+		
+		private DataReader.RecordReader open(XNContext ctx) throws IOException {
+			DataReader reader = new DataReader(layout);
+			if (!(source instanceof XOMBinary)) {
+				XNIOManager io = ctx.getIOManager(source);
+				XNIOStream stream = (io == null) ? null : io.getStream(ctx, source);
+				if (stream != null) {
+					return reader.records(new XNIOStreamInputStream(stream), stream.length() - stream.getFilePointer());
 				}
+				if (XOMFileType.instance.canMakeInstanceFrom(ctx, source)) {
+					if (!ctx.allow(XNSecurityKey.FILE_SYSTEM_READ, "Operation", "Read", "Object", source.toLanguageString()))
+						throw new XNScriptError("Security settings do not allow read from file");
+					File f = XOMFileType.instance.makeInstanceFrom(ctx, source).toFile();
+					return reader.records(new BufferedInputStream(new FileInputStream(f)), f.length());
+				}
+			}
+			byte[] data = XOMBinaryType.instance.makeInstanceFrom(ctx, source).toByteArray();
+			return reader.records(new ByteArrayInputStream(data), data.length);
+		}
+		
+		public Iterator<XOMVariant> toVariantIterator(XNContext ctx) {
+			try {
+				return new RecordIterator(ctx, layout, open(ctx));
+			} catch (IOException e) {
+				throw new XNScriptError(e, "Can't unpack records from this");
+			}
+		}
+		
+		public List<? extends XOMVariant> toVariantList(XNContext ctx) {
+			List<XOMVariant> l = new ArrayList<XOMVariant>();
+			RecordIterator i = (RecordIterator)toVariantIterator(ctx);
+			try {
+				while (i.hasNext()) l.add(i.next());
+			} finally {
+				i.close();
 			}
 			return l;
 		}
-		private XOMVariant nativeToXOMwithCount(DataField df, Object o, XNContext ctx) {
-			if (df.count() == null || df.type().usesCustomCount()) {
-				return nativeToXOMwithoutCount(df, o, ctx);
-			} else {
-				List<?> things;
-				if (o instanceof List) things = (List<?>)o;
-				else { ArrayList<Object> tmp = new ArrayList<Object>(); tmp.add(o); things = tmp; }
-				List<XOMVariant> l = new ArrayList<XOMVariant>();
-				for (Object oi : things) l.add(nativeToXOMwithoutCount(df, oi, ctx));
-				return new XOMList(l);
+		
+		public List<? extends XOMVariant> toPrimitiveList(XNContext ctx) {
+			return toVariantList(ctx);
+		}
+		
+		public String toLanguageString() {
+			return "unpackRecords(" + XIONUtil.quote(formatString) + ", " + source.toLanguageString() + ")";
+		}
+		
+		public String toTextString(XNContext ctx) {
+			return new XOMList(toVariantList(ctx)).toTextString(ctx);
+		}
+		
+		public int hashCode() {
+			return formatString.hashCode() ^ source.hashCode();
+		}
+		
+		public boolean equals(Object o) {
+			return (this == o);
+		}
+	}
+	
+	/*
+	 * Iterates over the records of an UnpackedRecords. The stream is closed
+	 * once the last record has been read, or when close is called, which
+	 * repeat for each does however the loop is left.
+	 */
+	private static class RecordIterator implements Iterator<XOMVariant>, Closeable {
+		private XNContext ctx;
+		private DataLayout layout;
+		private DataReader.RecordReader records;
+		private boolean closed;
+		
+		public RecordIterator(XNContext ctx, DataLayout layout, DataReader.RecordReader records) {
+			this.ctx = ctx;
+			this.layout = layout;
+			this.records = records;
+			this.closed = false;
+		}
+		
+		public boolean hasNext() {
+			if (closed) return false;
+			try {
+				if (records.hasNext()) return true;
+				close();
+				return false;
+			} catch (IOException e) {
+				close();
+				throw new XNScriptError(e, e.getMessage());
 			}
 		}
-		@SuppressWarnings("unchecked")
-		private XOMVariant nativeToXOMwithoutCount(DataField df, Object o, XNContext ctx) {
-			switch (df.type()) {
-			case BOOLEAN: return ((Boolean)o).booleanValue() ? XOMBoolean.TRUE : XOMBoolean.FALSE;
-			case ENUM: return new XOMString(o.toString());
-			case BITFIELD:
-				List<Object> bfl = (List<Object>)o;
-				StringBuffer bfs = new StringBuffer();
-				for (Object oi : bfl) {
-					bfs.append(oi.toString());
-					bfs.append(',');
-				}
-				if (bfs.length() > 0 && bfs.charAt(bfs.length()-1) == ',') {
-					bfs.deleteCharAt(bfs.length()-1);
+		
+		public XOMVariant next() {
+			if (closed) throw new NoSuchElementException();
+			try {
+				return new XOMList(nativeToXOM(layout.format(), records.next(), ctx));
+			} catch (NumberFormatException e) {
+				throw new XNScriptError("Expected number here");
+			} catch (EOFException e) {
+				throw new NoSuchElementException();
+			} catch (IOException e) {
+				throw new XNScriptError(e, e.getMessage());
+			}
+		}
+		
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+		
+		public void close() {
+			if (!closed) {
+				closed = true;
+				try {
+					records.close();
+				} catch (IOException e) {
+					// nothing more can be done
 				}
-				return new XOMString(bfs.toString());
-			case BINT: return new XOMString(o.toString());
-			case OINT: return new XOMString(o.toString());
-			case HINT: return new XOMString(o.toString());
-			case UINT: return new XOMInteger((Number)o);
-			case SINT: return new XOMInteger((Number)o);
-			case UFIXED: return new XOMNumber((Number)o);
-			case SFIXED: return new XOMNumber((Number)o);
-			case FLOAT: return new XOMNumber((Number)o);
-			case COMPLEX: return new XOMComplex(((Number[])o)[0], ((Number[])o)[1]);
-			case CHAR: return new XOMString(o.toString());
-			case PSTRING: return new XOMString(o.toString());
-			case CSTRING: return new XOMString(o.toString());
-			case DATE: return new XOMDate((GregorianCalendar)o);
-			case COLOR: return new XOMColor((float[])o);
-			case BINARY: return new XOMBinary((byte[])o);
-			case STRUCT:
-				List<DataField> sfmt = (List<DataField>)df.elaboration();
-				List<Object> things;
-				if (o instanceof List) things = (List<Object>)o;
-				else { ArrayList<Object> tmp = new ArrayList<Object>(); tmp.add(o); things = tmp; }
-				return new XOMList(nativeToXOM(sfmt, things, ctx));
-			default: throw new XNScriptError("Unknown data type: " + df.type().toString());
 			}
 		}
-	};
+	}
+	
+	private static List<XOMVariant> nativeToXOM(List<DataField> format, List<Object> things, XNContext ctx) {
+		List<XOMVariant> l = new ArrayList<XOMVariant>();
+		Iterator<Object> ti = things.iterator();
+		for (DataField df : format) {
+			if (df.type().returns()) {
+				Object o = ti.hasNext() ? ti.next() : null;
+				l.add(nativeToXOMwithCount(df, o, ctx));
+			}
+		}
+		return l;
+	}
+	private static XOMVariant nativeToXOMwithCount(DataField df, Object o, XNContext ctx) {
+		if (df.count() == null || df.type().usesCustomCount()) {
+			return nativeToXOMwithoutCount(df, o, ctx);
+		} else {
+			List<?> things;
+			if (o instanceof List) things = (List<?>)o;
+			else { ArrayList<Object> tmp = new ArrayList<Object>(); tmp.add(o); things = tmp; }
+			List<XOMVariant> l = new ArrayList<XOMVariant>();
+			for (Object oi : things) l.add(nativeToXOMwithoutCount(df, oi, ctx));
+			return new XOMList(l);
+		}
+	}
+	@SuppressWarnings("unchecked")
+	private static XOMVariant nativeToXOMwithoutCount(DataField df, Object o, XNContext ctx) {
+		switch (df.type()) {
+		case BOOLEAN: return ((Boolean)o).booleanValue() ? XOMBoolean.TRUE : XOMBoolean.FALSE;
+		case ENUM: return new XOMString(o.toString());
+		case BITFIELD:
+			List<Object> bfl = (List<Object>)o;
+			StringBuffer bfs = new StringBuffer();
+			for (Object oi : bfl) {
+				bfs.append(oi.toString());
+				bfs.append(',');
+			}
+			if (bfs.length() > 0 && bfs.charAt(bfs.length()-1) == ',') {
+				bfs.deleteCharAt(bfs.length()-1);
+			}
+			return new XOMString(bfs.toString());
+		case BINT: return new XOMString(o.toString());
+		case OINT: return new XOMString(o.toString());
+		case HINT: return new XOMString(o.toString());
+		case UINT: return new XOMInteger((Number)o);
+		case SINT: return new XOMInteger((Number)o);
+		case UFIXED: return new XOMNumber((Number)o);
+		case SFIXED: return new XOMNumber((Number)o);
+		case FLOAT: return new XOMNumber((Number)o);
+		case COMPLEX: return new XOMComplex(((Number[])o)[0], ((Number[])o)[1]);
+		case CHAR: return new XOMString(o.toString());
+		case PSTRING: return new XOMString(o.toString());
+		case CSTRING: return new XOMString(o.toString());
+		case DATE: return new XOMDate((GregorianCalendar)o);
+		case COLOR: return new XOMColor((float[])o);
+		case BINARY: return new XOMBinary((byte[])o);
+		case STRUCT:
+			List<DataField> sfmt = (List<DataField>)df.elaboration();
+			List<Object> things;
+			if (o instanceof List) things = (List<Object>)o;
+			else { ArrayList<Object> tmp = new ArrayList<Object>(); tmp.add(o); things = tmp; }
+			return new XOMList(nativeToXOM(sfmt, things, ctx));
+		default: throw new XNScriptError("Unknown data type: " + df.type().toString());
+		}
+	}
 	
 	private static final Function f_urldecode = new Function() {
 		@SuppressWarnings("deprecation")
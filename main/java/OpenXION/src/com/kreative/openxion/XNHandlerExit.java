@@ -44,6 +44,7 @@ public class XNHandlerExit implements Serializable, Cloneable {
 	private XNResponder nextResponderValue;
 	private XOMVariant errorValue;
 	private String blockTypeValue;
+	private XNScriptError thrownError;
 	
 	public XNHandlerExitStatus status() {
 		return status;
@@ -65,6 +66,10 @@ public class XNHandlerExit implements Serializable, Cloneable {
 		return blockTypeValue;
 	}
 	
+	public XNScriptError thrownError() {
+		return thrownError;
+	}
+	
 	private XNHandlerExit(XNHandlerExitStatus s, XOMVariant r, XNResponder n, XOMVariant e, String b) {
 		status = s; returnValue = r; nextResponderValue = n; errorValue = e; blockTypeValue = b;
 	}
@@ -103,4 +108,10 @@ public class XNHandlerExit implements Serializable, Cloneable {
 	public static XNHandlerExit nextedBlock(String blockType) {
 		return new XNHandlerExit(XNHandlerExitStatus.NEXTED, null, null, null, blockType);
 	}
+	
+	public static XNHandlerExit thrown(XNScriptError error) {
+		XNHandlerExit exit = new XNHandlerExit(XNHandlerExitStatus.THROWN, null, null, null, null);
+		exit.thrownError = error;
+		return exit;
+	}
 }
@@ -32,7 +32,8 @@ package com.kreative.openxion;
  * return, exit, pass, or next statement, or by reaching the
  * end of the statement list. If the handler exited by a
  * throw statement, an actual exception is thrown instead of
- * returning an XNHandlerExit.
+ * returning an XNHandlerExit; THROWN is only seen by the blocks
+ * between a throw statement and the try block that catches it.
  * @since OpenXION 0.9
  * @author Rebecca G. Bettencourt, Kreative Software
  */
@@ -56,5 +57,9 @@ public enum XNHandlerExitStatus {
 	/**
 	 * Execution of the handler ended with a <code>next</code> statement.
 	 */
-	NEXTED
+	NEXTED,
+	/**
+	 * Execution of a block ended with a <code>throw</code> statement.
+	 */
+	THROWN
 }
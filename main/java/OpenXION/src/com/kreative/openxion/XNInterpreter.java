@@ -46,6 +46,80 @@ import com.kreative.openxion.xom.type.*;
 public class XNInterpreter {
 	private XNContext context;
 	
+	/*
+	 * Expressions and statements are dispatched to the method that handles
+	 * them by looking up their class once and switching on the result, rather
+	 * than testing each node against every type with instanceof.
+	 */
+	
+	private static enum ExpressionKind {
+		STRING(XNStringExpression.class),
+		NUMBER(XNNumberExpression.class),
+		EMPTY(XNEmptyExpression.class),
+		CONSTANT(XNConstantExpression.class),
+		ME(XNMeExpression.class),
+		SUPER(XNSuperExpression.class),
+		UNARY(XNUnaryExpression.class),
+		BINARY(XNBinaryExpression.class),
+		INSTANCE_OF(XNInstanceOfExpression.class),
+		BETWEEN(XNBetweenExpression.class),
+		IF(XNIfExpression.class),
+		LIST(XNListExpression.class),
+		DICTIONARY(XNDictionaryExpression.class),
+		VARIABLE(XNVariableExpression.class),
+		NEW(XNNewExpression.class),
+		VARIANT_DESCRIPTOR(XNVariantDescriptor.class),
+		FUNCTION_CALL(XNFunctionCallPropertyDescriptor.class),
+		UNKNOWN(null);
+		private final Class<? extends XNExpression> type;
+		private ExpressionKind(Class<? extends XNExpression> type) { this.type = type; }
+	}
+	
+	private static final ClassValue<ExpressionKind> EXPRESSION_KINDS = new ClassValue<ExpressionKind>() {
+		protected ExpressionKind computeValue(Class<?> cls) {
+			for (ExpressionKind k : ExpressionKind.values()) {
+				if (k.type != null && k.type.isAssignableFrom(cls)) return k;
+			}
+			return ExpressionKind.UNKNOWN;
+		}
+	};
+	
+	private static enum StatementKind {
+		COMMAND(XNCommandStatement.class),
+		CONSTANT_DECLARATION(XNConstantDeclaration.class),
+		DO(XNDoStatement.class),
+		EXIT(XNExitStatement.class),
+		FUNCTION_HANDLER(XNFunctionHandler.class),
+		IF_BLOCK(XNIfBlock.class),
+		INCLUDE(XNIncludeStatement.class),
+		MESSAGE_HANDLER(XNMessageHandler.class),
+		NEXT(XNNextStatement.class),
+		OBJECT_TYPE_DECLARATION(XNObjectTypeDeclaration.class),
+		ORDINAL_DECLARATION(XNOrdinalDeclaration.class),
+		PASS(XNPassStatement.class),
+		REPEAT_BLOCK(XNRepeatBlock.class),
+		RETURN(XNReturnStatement.class),
+		SEND(XNSendStatement.class),
+		SWITCH_BLOCK(XNSwitchBlock.class),
+		TELL_BLOCK(XNTellBlock.class),
+		THROW(XNThrowStatement.class),
+		TRY_BLOCK(XNTryBlock.class),
+		USE(XNUseStatement.class),
+		VARIABLE_DECLARATION(XNVariableDeclaration.class),
+		UNKNOWN(null);
+		private final Class<? extends XNStatement> type;
+		private StatementKind(Class<? extends XNStatement> type) { this.type = type; }
+	}
+	
+	private static final ClassValue<StatementKind> STATEMENT_KINDS = new ClassValue<StatementKind>() {
+		protected StatementKind computeValue(Class<?> cls) {
+			for (StatementKind k : StatementKind.values()) {
+				if (k.type != null && k.type.isAssignableFrom(cls)) return k;
+			}
+			return StatementKind.UNKNOWN;
+		}
+	};
+	
 	public XNInterpreter(XNContext context) {
 		this.context = context;
 	}
@@ -56,908 +130,977 @@ public class XNInterpreter {
 	
 	public XOMVariant evaluateExpressionString(String s) {
 		if (s == null) return XOMEmpty.EMPTY;
-		XNLexer lexer = new XNLexer(s, new StringReader(s));
-		XNParser parser = new XNParser(context, lexer);
-		XNExpression expr = parser.getListExpression(null);
-		if (parser.getToken().isEOF()) {
-			return evaluateExpression(expr);
-		} else {
-			throw new XNScriptError("Can't understand this");
+		XNExpression expr = context.getParsedExpression(s);
+		if (expr == null) {
+			XNLexer lexer = new XNLexer(s, new StringReader(s));
+			XNParser parser = new XNParser(context, lexer);
+			expr = parser.getListExpression(null);
+			if (!parser.getToken().isEOF()) {
+				throw new XNScriptError("Can't understand this");
+			}
+			context.putParsedExpression(s, expr);
 		}
+		return evaluateExpression(expr);
 	}
 	
 	public XOMVariant evaluateExpressionStringOrLiteral(String s) {
 		if (s == null) return XOMEmpty.EMPTY;
-		XNLexer lexer = new XNLexer(s, new StringReader(s));
-		XNParser parser = new XNParser(context, lexer);
-		try {
-			XNExpression expr = parser.getListExpression(null);
-			if (parser.getToken().isEOF()) {
-				return evaluateExpression(expr);
-			} else {
+		XNExpression expr = context.getParsedExpression(s);
+		if (expr == null) {
+			XNLexer lexer = new XNLexer(s, new StringReader(s));
+			XNParser parser = new XNParser(context, lexer);
+			try {
+				expr = parser.getListExpression(null);
+				if (!parser.getToken().isEOF()) {
+					return new XOMString(s);
+				}
+			} catch (XNParseError pe) {
 				return new XOMString(s);
 			}
-		} catch (XNParseError pe) {
-			return new XOMString(s);
+			context.putParsedExpression(s, expr);
+		}
+		return evaluateExpression(expr);
+	}
+	
+	public static XOMVariant evaluateNumberLiteral(String theNumber) {
+		try {
+			BigDecimal d = new BigDecimal(theNumber.replace("''", "E-").replace("'", "E+"));
+			try {
+				BigInteger i = d.toBigIntegerExact();
+				return new XOMInteger(i);
+			} catch (Exception e) {
+				return new XOMNumber(d);
+			}
+		} catch (Exception e) {
+			return new XOMString(theNumber);
 		}
 	}
 	
 	public XOMVariant evaluateExpression(XNExpression expr) {
 		if (expr == null) return XOMEmpty.EMPTY;
+		if (expr.resolved != null && expr.resolved.isValid(context)) return expr.resolved.getValue();
 		try {
-			if (expr instanceof XNStringExpression) {
-				String theString = XIONUtil.unquote(((XNStringExpression)expr).literal.image, context.getTextEncoding());
-				return new XOMString(theString);
+			switch (EXPRESSION_KINDS.get(expr.getClass())) {
+			case STRING: return evaluateStringExpression((XNStringExpression)expr);
+			case NUMBER: return evaluateNumberExpression((XNNumberExpression)expr);
+			case EMPTY: return evaluateEmptyExpression((XNEmptyExpression)expr);
+			case CONSTANT: return evaluateConstantExpression((XNConstantExpression)expr);
+			case ME: return evaluateMeExpression((XNMeExpression)expr);
+			case SUPER: return evaluateSuperExpression((XNSuperExpression)expr);
+			case UNARY: return evaluateUnaryExpression((XNUnaryExpression)expr);
+			case BINARY: return evaluateBinaryExpression((XNBinaryExpression)expr);
+			case INSTANCE_OF: return evaluateInstanceOfExpression((XNInstanceOfExpression)expr);
+			case BETWEEN: return evaluateBetweenExpression((XNBetweenExpression)expr);
+			case IF: return evaluateIfExpression((XNIfExpression)expr);
+			case LIST: return evaluateListExpression((XNListExpression)expr);
+			case DICTIONARY: return evaluateDictionaryExpression((XNDictionaryExpression)expr);
+			case VARIABLE: return evaluateVariableExpression((XNVariableExpression)expr);
+			case NEW: return evaluateNewExpression((XNNewExpression)expr);
+			case VARIANT_DESCRIPTOR: return evaluateVariantDescriptor((XNVariantDescriptor)expr);
+			case FUNCTION_CALL: return evaluateFunctionCallPropertyDescriptor((XNFunctionCallPropertyDescriptor)expr);
+			default: throw new XNScriptError("Can't understand this");
+			}
+		} catch (XNScriptError err) {
+			err.setLineAndCol(expr.getBeginLine(), expr.getBeginCol());
+			throw err;
+		}
+	}
+	
+	private XOMVariant evaluateStringExpression(XNStringExpression expr) {
+		String theString = XIONUtil.unquote(expr.literal.image, context.getTextEncoding());
+		return new XOMString(theString);
+	}
+	
+	private XOMVariant evaluateNumberExpression(XNNumberExpression expr) {
+		return evaluateNumberLiteral(expr.literal.image);
+	}
+	
+	private XOMVariant evaluateEmptyExpression(XNEmptyExpression expr) {
+		return XOMEmpty.EMPTY;
+	}
+	
+	private XOMVariant evaluateConstantExpression(XNConstantExpression expr) {
+		String constName = expr.constant.image;
+		XOMVariant theConstant = context.getConstant(constName);
+		if (theConstant != null) return theConstant;
+		else throw new XNScriptError("The constant "+constName+" is not defined");
+	}
+	
+	private XOMVariant evaluateMeExpression(XNMeExpression expr) {
+		XNResponder resp = context.getCurrentResponder();
+		if (resp instanceof XOMVariant) return (XOMVariant)resp;
+		else return XOMInterpreter.INTERPRETER;
+	}
+	
+	private XOMVariant evaluateSuperExpression(XNSuperExpression expr) {
+		XNResponder resp = context.getCurrentResponder();
+		if (resp instanceof XOMUserObject) return ((XOMUserObject)resp).asSuper();
+		else if (resp instanceof XOMVariant) return (XOMVariant)resp;
+		else return XOMInterpreter.INTERPRETER;
+	}
+	
+	private XOMVariant evaluateUnaryExpression(XNUnaryExpression expr) {
+		XNOperator op = expr.operator;
+		XNExpression a = expr.argument;
+		XOMVariant av;
+		boolean ab;
+		BigInteger ai;
+		switch (op) {
+		case NOT:
+			av = evaluateExpression(a).asPrimitive(context);
+			ab = XOMBooleanType.instance.makeInstanceFrom(context, av).toBoolean();
+			return ab ? XOMBoolean.FALSE : XOMBoolean.TRUE;
+		case UNARY_SUBTRACT:
+			av = evaluateExpression(a).asPrimitive(context);
+			if (av instanceof XOMInteger) {
+				return ((XOMInteger)av).negate();
+			}
+			else if (av instanceof XOMNumber) {
+				return ((XOMNumber)av).negate();
+			}
+			else if (av instanceof XOMComplex) {
+				return ((XOMComplex)av).negate();
+			}
+			else if (XOMIntegerType.instance.canMakeInstanceFrom(context, av, true)) {
+				XOMInteger i = XOMIntegerType.instance.makeInstanceFrom(context, av, true);
+				return i.negate();
+			}
+			else if (XOMNumberType.instance.canMakeInstanceFrom(context, av, true)) {
+				XOMNumber n = XOMNumberType.instance.makeInstanceFrom(context, av, true);
+				return n.negate();
+			}
+			else if (XOMComplexType.instance.canMakeInstanceFrom(context, av, true)) {
+				XOMComplex c = XOMComplexType.instance.makeInstanceFrom(context, av, true);
+				return c.negate();
+			}
+			else {
+				throw new XOMMorphError("number");
+			}
+		case BIT_NOT:
+			av = evaluateExpression(a).asPrimitive(context);
+			ai = XOMIntegerType.instance.makeInstanceFrom(context, av, true).toBigInteger();
+			if (ai == null) return XOMInteger.NaN;
+			return new XOMInteger(ai.not());
+		case EXISTS:
+			if (a instanceof XNVariantDescriptor) {
+				return variantExists((XNVariantDescriptor)a) ? XOMBoolean.TRUE : XOMBoolean.FALSE;
+			} else {
+				throw new XNScriptError("Can't understand this");
+			}
+		case NOT_EXISTS:
+			if (a instanceof XNVariantDescriptor) {
+				return variantExists((XNVariantDescriptor)a) ? XOMBoolean.FALSE : XOMBoolean.TRUE;
+			} else {
+				throw new XNScriptError("Can't understand this");
+			}
+		case REFERENCE_TO:
+			return new XOMReference(evaluateExpression(a));
+		case REFERENT_OF:
+			av = evaluateExpression(a).asPrimitive(context);
+			return XOMReferenceType.instance.makeInstanceFrom(context, av).dereference(true);
+		default:
+			throw new XNScriptError("Can't understand this");
+		}
+	}
+	
+	private XOMVariant evaluateBinaryExpression(XNBinaryExpression expr) {
+		XNOperator op = expr.operator;
+		XNExpression a = expr.left;
+		XNExpression b = expr.right;
+		MathContext mc = context.getMathContext();
+		MathProcessor mp = context.getMathProcessor();
+		XOMVariant av, bv;
+		String as, bs;
+		boolean ab, bb;
+		List<? extends XOMVariant> al, bl;
+		BigInteger ai, bi;
+		XOMNumber an, bn;
+		XOMComplex ac, bc;
+		XOMPoint ap;
+		XOMRectangle ar, br;
+		int cmp;
+		switch (op) {
+		case EXPONENT:
+			av = evaluateExpression(a).asPrimitive(context);
+			bv = evaluateExpression(b).asPrimitive(context);
+			if (av instanceof XOMComplex && bv instanceof XOMComplex) {
+				ac = XOMComplexType.instance.makeInstanceFrom(context, av, true);
+				bc = XOMComplexType.instance.makeInstanceFrom(context, bv, true);
+				return XOMComplexMath.pow(ac, bc, mc, mp);
+			}
+			else if (av instanceof XOMNumber && bv instanceof XOMNumber) {
+				an = XOMNumberType.instance.makeInstanceFrom(context, av, true);
+				bn = XOMNumberType.instance.makeInstanceFrom(context, bv, true);
+				return XOMNumberMath.pow(an, bn, mc, mp);
 			}
-			else if (expr instanceof XNNumberExpression) {
-				String theNumber = ((XNNumberExpression)expr).literal.image;
+			else if (XOMNumberType.instance.canMakeInstanceFrom(context, av, true) && XOMNumberType.instance.canMakeInstanceFrom(context, bv, true)) {
+				an = XOMNumberType.instance.makeInstanceFrom(context, av, true);
+				bn = XOMNumberType.instance.makeInstanceFrom(context, bv, true);
+				return XOMNumberMath.pow(an, bn, mc, mp);
+			}
+			else if (XOMComplexType.instance.canMakeInstanceFrom(context, av, true) && XOMComplexType.instance.canMakeInstanceFrom(context, bv, true)) {
+				ac = XOMComplexType.instance.makeInstanceFrom(context, av, true);
+				bc = XOMComplexType.instance.makeInstanceFrom(context, bv, true);
+				return XOMComplexMath.pow(ac, bc, mc, mp);
+			}
+			else {
+				throw new XOMMorphError("number");
+			}
+		case MULTIPLY:
+			av = evaluateExpression(a).asPrimitive(context);
+			bv = evaluateExpression(b).asPrimitive(context);
+			if ((an = XOMNumberMath.longMultiply(context, av, bv)) != null) {
+				return an;
+			}
+			else if (av instanceof XOMComplex && bv instanceof XOMComplex) {
+				ac = XOMComplexType.instance.makeInstanceFrom(context, av, true);
+				bc = XOMComplexType.instance.makeInstanceFrom(context, bv, true);
+				return ac.multiply(bc, mc);
+			}
+			else if (av instanceof XOMNumber && bv instanceof XOMNumber) {
+				an = XOMNumberType.instance.makeInstanceFrom(context, av, true);
+				bn = XOMNumberType.instance.makeInstanceFrom(context, bv, true);
+				return an.multiply(bn, mc);
+			}
+			else if (XOMNumberType.instance.canMakeInstanceFrom(context, av, true) && XOMNumberType.instance.canMakeInstanceFrom(context, bv, true)) {
+				an = XOMNumberType.instance.makeInstanceFrom(context, av, true);
+				bn = XOMNumberType.instance.makeInstanceFrom(context, bv, true);
+				return an.multiply(bn, mc);
+			}
+			else if (XOMComplexType.instance.canMakeInstanceFrom(context, av, true) && XOMComplexType.instance.canMakeInstanceFrom(context, bv, true)) {
+				ac = XOMComplexType.instance.makeInstanceFrom(context, av, true);
+				bc = XOMComplexType.instance.makeInstanceFrom(context, bv, true);
+				return ac.multiply(bc, mc);
+			}
+			else {
+				throw new XOMMorphError("number");
+			}
+		case DIVIDE:
+			av = evaluateExpression(a).asPrimitive(context);
+			bv = evaluateExpression(b).asPrimitive(context);
+			if (av instanceof XOMComplex && bv instanceof XOMComplex) {
+				ac = XOMComplexType.instance.makeInstanceFrom(context, av, true);
+				bc = XOMComplexType.instance.makeInstanceFrom(context, bv, true);
+				return ac.divide(bc, mc);
+			}
+			else if (av instanceof XOMNumber && bv instanceof XOMNumber) {
+				an = XOMNumberType.instance.makeInstanceFrom(context, av, true);
+				bn = XOMNumberType.instance.makeInstanceFrom(context, bv, true);
+				return an.divide(bn, mc);
+			}
+			else if (XOMNumberType.instance.canMakeInstanceFrom(context, av, true) && XOMNumberType.instance.canMakeInstanceFrom(context, bv, true)) {
+				an = XOMNumberType.instance.makeInstanceFrom(context, av, true);
+				bn = XOMNumberType.instance.makeInstanceFrom(context, bv, true);
+				return an.divide(bn, mc);
+			}
+			else if (XOMComplexType.instance.canMakeInstanceFrom(context, av, true) && XOMComplexType.instance.canMakeInstanceFrom(context, bv, true)) {
+				ac = XOMComplexType.instance.makeInstanceFrom(context, av, true);
+				bc = XOMComplexType.instance.makeInstanceFrom(context, bv, true);
+				return ac.divide(bc, mc);
+			}
+			else {
+				throw new XOMMorphError("number");
+			}
+		case QUOT:
+			av = evaluateExpression(a).asPrimitive(context);
+			bv = evaluateExpression(b).asPrimitive(context);
+			if (av instanceof XOMComplex && bv instanceof XOMComplex) {
+				ac = XOMComplexType.instance.makeInstanceFrom(context, av, true);
+				bc = XOMComplexType.instance.makeInstanceFrom(context, bv, true);
+				return ac.divide(bc, mc).trunc();
+			}
+			else if (av instanceof XOMNumber && bv instanceof XOMNumber) {
+				an = XOMNumberType.instance.makeInstanceFrom(context, av, true);
+				bn = XOMNumberType.instance.makeInstanceFrom(context, bv, true);
+				return an.divide(bn, mc).trunc();
+			}
+			else if (XOMNumberType.instance.canMakeInstanceFrom(context, av, true) && XOMNumberType.instance.canMakeInstanceFrom(context, bv, true)) {
+				an = XOMNumberType.instance.makeInstanceFrom(context, av, true);
+				bn = XOMNumberType.instance.makeInstanceFrom(context, bv, true);
+				return an.divide(bn, mc).trunc();
+			}
+			else if (XOMComplexType.instance.canMakeInstanceFrom(context, av, true) && XOMComplexType.instance.canMakeInstanceFrom(context, bv, true)) {
+				ac = XOMComplexType.instance.makeInstanceFrom(context, av, true);
+				bc = XOMComplexType.instance.makeInstanceFrom(context, bv, true);
+				return ac.divide(bc, mc).trunc();
+			}
+			else {
+				throw new XOMMorphError("number");
+			}
+		case REM:
+			av = evaluateExpression(a).asPrimitive(context);
+			bv = evaluateExpression(b).asPrimitive(context);
+			if (av instanceof XOMComplex && bv instanceof XOMComplex) {
+				ac = XOMComplexType.instance.makeInstanceFrom(context, av, true);
+				bc = XOMComplexType.instance.makeInstanceFrom(context, bv, true);
+				return ac.subtract(bc.multiply(ac.divide(bc, mc).trunc(), mc), mc);
+			}
+			else if (av instanceof XOMNumber && bv instanceof XOMNumber) {
+				an = XOMNumberType.instance.makeInstanceFrom(context, av, true);
+				bn = XOMNumberType.instance.makeInstanceFrom(context, bv, true);
+				return an.subtract(bn.multiply(an.divide(bn, mc).trunc(), mc), mc);
+			}
+			else if (XOMNumberType.instance.canMakeInstanceFrom(context, av, true) && XOMNumberType.instance.canMakeInstanceFrom(context, bv, true)) {
+				an = XOMNumberType.instance.makeInstanceFrom(context, av, true);
+				bn = XOMNumberType.instance.makeInstanceFrom(context, bv, true);
+				return an.subtract(bn.multiply(an.divide(bn, mc).trunc(), mc), mc);
+			}
+			else if (XOMComplexType.instance.canMakeInstanceFrom(context, av, true) && XOMComplexType.instance.canMakeInstanceFrom(context, bv, true)) {
+				ac = XOMComplexType.instance.makeInstanceFrom(context, av, true);
+				bc = XOMComplexType.instance.makeInstanceFrom(context, bv, true);
+				return ac.subtract(bc.multiply(ac.divide(bc, mc).trunc(), mc), mc);
+			}
+			else {
+				throw new XOMMorphError("number");
+			}
+		case DIV:
+			av = evaluateExpression(a).asPrimitive(context);
+			bv = evaluateExpression(b).asPrimitive(context);
+			if ((an = XOMNumberMath.longDiv(context, av, bv)) != null) {
+				return an;
+			}
+			else if (av instanceof XOMComplex && bv instanceof XOMComplex) {
+				ac = XOMComplexType.instance.makeInstanceFrom(context, av, true);
+				bc = XOMComplexType.instance.makeInstanceFrom(context, bv, true);
+				return ac.divide(bc, mc).floor();
+			}
+			else if (av instanceof XOMNumber && bv instanceof XOMNumber) {
+				an = XOMNumberType.instance.makeInstanceFrom(context, av, true);
+				bn = XOMNumberType.instance.makeInstanceFrom(context, bv, true);
+				return an.divide(bn, mc).floor();
+			}
+			else if (XOMNumberType.instance.canMakeInstanceFrom(context, av, true) && XOMNumberType.instance.canMakeInstanceFrom(context, bv, true)) {
+				an = XOMNumberType.instance.makeInstanceFrom(context, av, true);
+				bn = XOMNumberType.instance.makeInstanceFrom(context, bv, true);
+				return an.divide(bn, mc).floor();
+			}
+			else if (XOMComplexType.instance.canMakeInstanceFrom(context, av, true) && XOMComplexType.instance.canMakeInstanceFrom(context, bv, true)) {
+				ac = XOMComplexType.instance.makeInstanceFrom(context, av, true);
+				bc = XOMComplexType.instance.makeInstanceFrom(context, bv, true);
+				return ac.divide(bc, mc).floor();
+			}
+			else {
+				throw new XOMMorphError("number");
+			}
+		case MOD:
+			av = evaluateExpression(a).asPrimitive(context);
+			bv = evaluateExpression(b).asPrimitive(context);
+			if ((an = XOMNumberMath.longMod(context, av, bv)) != null) {
+				return an;
+			}
+			else if (av instanceof XOMComplex && bv instanceof XOMComplex) {
+				ac = XOMComplexType.instance.makeInstanceFrom(context, av, true);
+				bc = XOMComplexType.instance.makeInstanceFrom(context, bv, true);
+				return ac.subtract(bc.multiply(ac.divide(bc, mc).floor(), mc), mc);
+			}
+			else if (av instanceof XOMNumber && bv instanceof XOMNumber) {
+				an = XOMNumberType.instance.makeInstanceFrom(context, av, true);
+				bn = XOMNumberType.instance.makeInstanceFrom(context, bv, true);
+				return an.subtract(bn.multiply(an.divide(bn, mc).floor(), mc), mc);
+			}
+			else if (XOMNumberType.instance.canMakeInstanceFrom(context, av, true) && XOMNumberType.instance.canMakeInstanceFrom(context, bv, true)) {
+				an = XOMNumberType.instance.makeInstanceFrom(context, av, true);
+				bn = XOMNumberType.instance.makeInstanceFrom(context, bv, true);
+				return an.subtract(bn.multiply(an.divide(bn, mc).floor(), mc), mc);
+			}
+			else if (XOMComplexType.instance.canMakeInstanceFrom(context, av, true) && XOMComplexType.instance.canMakeInstanceFrom(context, bv, true)) {
+				ac = XOMComplexType.instance.makeInstanceFrom(context, av, true);
+				bc = XOMComplexType.instance.makeInstanceFrom(context, bv, true);
+				return ac.subtract(bc.multiply(ac.divide(bc, mc).floor(), mc), mc);
+			}
+			else {
+				throw new XOMMorphError("number");
+			}
+		case ADD:
+			av = evaluateExpression(a).asPrimitive(context);
+			bv = evaluateExpression(b).asPrimitive(context);
+			if ((an = XOMNumberMath.longAdd(context, av, bv)) != null) {
+				return an;
+			}
+			else if (av instanceof XOMComplex && bv instanceof XOMComplex) {
+				ac = XOMComplexType.instance.makeInstanceFrom(context, av, true);
+				bc = XOMComplexType.instance.makeInstanceFrom(context, bv, true);
+				return ac.add(bc, mc);
+			}
+			else if (av instanceof XOMNumber && bv instanceof XOMNumber) {
+				an = XOMNumberType.instance.makeInstanceFrom(context, av, true);
+				bn = XOMNumberType.instance.makeInstanceFrom(context, bv, true);
+				return an.add(bn, mc);
+			}
+			else if (XOMNumberType.instance.canMakeInstanceFrom(context, av, true) && XOMNumberType.instance.canMakeInstanceFrom(context, bv, true)) {
+				an = XOMNumberType.instance.makeInstanceFrom(context, av, true);
+				bn = XOMNumberType.instance.makeInstanceFrom(context, bv, true);
+				return an.add(bn, mc);
+			}
+			else if (XOMComplexType.instance.canMakeInstanceFrom(context, av, true) && XOMComplexType.instance.canMakeInstanceFrom(context, bv, true)) {
+				ac = XOMComplexType.instance.makeInstanceFrom(context, av, true);
+				bc = XOMComplexType.instance.makeInstanceFrom(context, bv, true);
+				return ac.add(bc, mc);
+			}
+			else {
+				throw new XOMMorphError("number");
+			}
+		case SUBTRACT:
+			av = evaluateExpression(a).asPrimitive(context);
+			bv = evaluateExpression(b).asPrimitive(context);
+			if ((an = XOMNumberMath.longSubtract(context, av, bv)) != null) {
+				return an;
+			}
+			else if (av instanceof XOMComplex && bv instanceof XOMComplex) {
+				ac = XOMComplexType.instance.makeInstanceFrom(context, av, true);
+				bc = XOMComplexType.instance.makeInstanceFrom(context, bv, true);
+				return ac.subtract(bc, mc);
+			}
+			else if (av instanceof XOMNumber && bv instanceof XOMNumber) {
+				an = XOMNumberType.instance.makeInstanceFrom(context, av, true);
+				bn = XOMNumberType.instance.makeInstanceFrom(context, bv, true);
+				return an.subtract(bn, mc);
+			}
+			else if (XOMNumberType.instance.canMakeInstanceFrom(context, av, true) && XOMNumberType.instance.canMakeInstanceFrom(context, bv, true)) {
+				an = XOMNumberType.instance.makeInstanceFrom(context, av, true);
+				bn = XOMNumberType.instance.makeInstanceFrom(context, bv, true);
+				return an.subtract(bn, mc);
+			}
+			else if (XOMComplexType.instance.canMakeInstanceFrom(context, av, true) && XOMComplexType.instance.canMakeInstanceFrom(context, bv, true)) {
+				ac = XOMComplexType.instance.makeInstanceFrom(context, av, true);
+				bc = XOMComplexType.instance.makeInstanceFrom(context, bv, true);
+				return ac.subtract(bc, mc);
+			}
+			else {
+				throw new XOMMorphError("number");
+			}
+		case SHIFT_LEFT:
+			av = evaluateExpression(a).asPrimitive(context);
+			bv = evaluateExpression(b).asPrimitive(context);
+			ai = XOMIntegerType.instance.makeInstanceFrom(context, av, true).toBigInteger();
+			bi = XOMIntegerType.instance.makeInstanceFrom(context, bv, true).toBigInteger();
+			if (ai == null || bi == null) return XOMInteger.NaN;
+			return new XOMInteger(ai.shiftLeft(bi.intValue()));
+		case SHIFT_RIGHT_SIGNED:
+			av = evaluateExpression(a).asPrimitive(context);
+			bv = evaluateExpression(b).asPrimitive(context);
+			ai = XOMIntegerType.instance.makeInstanceFrom(context, av, true).toBigInteger();
+			bi = XOMIntegerType.instance.makeInstanceFrom(context, bv, true).toBigInteger();
+			if (ai == null || bi == null) return XOMInteger.NaN;
+			return new XOMInteger(ai.shiftRight(bi.intValue()));
+		case SHIFT_RIGHT_UNSIGNED:
+			av = evaluateExpression(a).asPrimitive(context);
+			bv = evaluateExpression(b).asPrimitive(context);
+			ai = XOMIntegerType.instance.makeInstanceFrom(context, av, true).toBigInteger();
+			bi = XOMIntegerType.instance.makeInstanceFrom(context, bv, true).toBigInteger();
+			if (ai == null || bi == null) return XOMInteger.NaN;
+			return new XOMInteger(ai.shiftRight(bi.intValue()));
+		case BIT_AND:
+			av = evaluateExpression(a).asPrimitive(context);
+			bv = evaluateExpression(b).asPrimitive(context);
+			ai = XOMIntegerType.instance.makeInstanceFrom(context, av, true).toBigInteger();
+			bi = XOMIntegerType.instance.makeInstanceFrom(context, bv, true).toBigInteger();
+			if (ai == null || bi == null) return XOMInteger.NaN;
+			return new XOMInteger(ai.and(bi));
+		case BIT_XOR:
+			av = evaluateExpression(a).asPrimitive(context);
+			bv = evaluateExpression(b).asPrimitive(context);
+			ai = XOMIntegerType.instance.makeInstanceFrom(context, av, true).toBigInteger();
+			bi = XOMIntegerType.instance.makeInstanceFrom(context, bv, true).toBigInteger();
+			if (ai == null || bi == null) return XOMInteger.NaN;
+			return new XOMInteger(ai.xor(bi));
+		case BIT_OR:
+			av = evaluateExpression(a).asPrimitive(context);
+			bv = evaluateExpression(b).asPrimitive(context);
+			ai = XOMIntegerType.instance.makeInstanceFrom(context, av, true).toBigInteger();
+			bi = XOMIntegerType.instance.makeInstanceFrom(context, bv, true).toBigInteger();
+			if (ai == null || bi == null) return XOMInteger.NaN;
+			return new XOMInteger(ai.or(bi));
+		case STR_CONCAT:
+			av = evaluateExpression(a).asPrimitive(context);
+			bv = evaluateExpression(b).asPrimitive(context);
+			as = av.toTextString(context);
+			bs = bv.toTextString(context);
+			return new XOMString(as + bs);
+		case STR_CONCAT_SPACE:
+			av = evaluateExpression(a).asPrimitive(context);
+			bv = evaluateExpression(b).asPrimitive(context);
+			as = av.toTextString(context);
+			bs = bv.toTextString(context);
+			return new XOMString(as + " " + bs);
+		case LIST_APPEND:
+			av = evaluateExpression(a).asPrimitive(context);
+			bv = evaluateExpression(b).asPrimitive(context);
+			al = av.toPrimitiveList(context);
+			Vector<XOMVariant> realbl = new Vector<XOMVariant>();
+			realbl.add(bv);
+			return new XOMList(al, realbl);
+		case LIST_CONCAT:
+			av = evaluateExpression(a).asPrimitive(context);
+			bv = evaluateExpression(b).asPrimitive(context);
+			al = av.toPrimitiveList(context);
+			bl = bv.toPrimitiveList(context);
+			return new XOMList(al, bl);
+		case LT_NUM:
+			try {
+				av = evaluateExpression(a).asPrimitive(context);
+				bv = evaluateExpression(b).asPrimitive(context);
+				return (compareVariants(av,bv) < 0) ? XOMBoolean.TRUE : XOMBoolean.FALSE;
+			} catch (NaNComparisonException nce) {
+				return XOMBoolean.FALSE;
+			}
+		case GT_NUM:
+			try {
+				av = evaluateExpression(a).asPrimitive(context);
+				bv = evaluateExpression(b).asPrimitive(context);
+				return (compareVariants(av,bv) > 0) ? XOMBoolean.TRUE : XOMBoolean.FALSE;
+			} catch (NaNComparisonException nce) {
+				return XOMBoolean.FALSE;
+			}
+		case LE_NUM:
+			try {
+				av = evaluateExpression(a).asPrimitive(context);
+				bv = evaluateExpression(b).asPrimitive(context);
+				return (compareVariants(av,bv) <= 0) ? XOMBoolean.TRUE : XOMBoolean.FALSE;
+			} catch (NaNComparisonException nce) {
+				return XOMBoolean.FALSE;
+			}
+		case GE_NUM:
+			try {
+				av = evaluateExpression(a).asPrimitive(context);
+				bv = evaluateExpression(b).asPrimitive(context);
+				return (compareVariants(av,bv) >= 0) ? XOMBoolean.TRUE : XOMBoolean.FALSE;
+			} catch (NaNComparisonException nce) {
+				return XOMBoolean.FALSE;
+			}
+		case CONTAINS:
+			av = evaluateExpression(a).asPrimitive(context);
+			bv = evaluateExpression(b).asPrimitive(context);
+			as = av.toTextString(context).toLowerCase();
+			bs = bv.toTextString(context).toLowerCase();
+			return (as.contains(bs)) ? XOMBoolean.TRUE : XOMBoolean.FALSE;
+		case STARTS_WITH:
+			av = evaluateExpression(a).asPrimitive(context);
+			bv = evaluateExpression(b).asPrimitive(context);
+			as = av.toTextString(context).toLowerCase();
+			bs = bv.toTextString(context).toLowerCase();
+			return (as.startsWith(bs)) ? XOMBoolean.TRUE : XOMBoolean.FALSE;
+		case ENDS_WITH:
+			av = evaluateExpression(a).asPrimitive(context);
+			bv = evaluateExpression(b).asPrimitive(context);
+			as = av.toTextString(context).toLowerCase();
+			bs = bv.toTextString(context).toLowerCase();
+			return (as.endsWith(bs)) ? XOMBoolean.TRUE : XOMBoolean.FALSE;
+		case IN:
+			av = evaluateExpression(a).asPrimitive(context);
+			bv = evaluateExpression(b).asPrimitive(context);
+			as = av.toTextString(context).toLowerCase();
+			bs = bv.toTextString(context).toLowerCase();
+			return (bs.contains(as)) ? XOMBoolean.TRUE : XOMBoolean.FALSE;
+		case WITHIN:
+			av = evaluateExpression(a).asPrimitive(context);
+			bv = evaluateExpression(b).asPrimitive(context);
+			br = XOMRectangleType.instance.makeInstanceFrom(context, bv);
+			if (XOMRectangleType.instance.canMakeInstanceFrom(context, av)) {
+				ar = XOMRectangleType.instance.makeInstanceFrom(context, av);
+				return br.contains(ar) ? XOMBoolean.TRUE : XOMBoolean.FALSE;
+			}
+			else if (XOMPointType.instance.canMakeInstanceFrom(context, av)) {
+				ap = XOMPointType.instance.makeInstanceFrom(context, av);
+				return br.contains(ap) ? XOMBoolean.TRUE : XOMBoolean.FALSE;
+			}
+			else {
+				throw new XOMMorphError("point");
+			}
+		case ELEMENT_OF:
+			av = evaluateExpression(a).asPrimitive(context);
+			bv = evaluateExpression(b).asPrimitive(context);
+			bl = bv.toPrimitiveList(context);
+			for (XOMVariant v : bl) {
 				try {
-					BigDecimal d = new BigDecimal(theNumber.replace("''", "E-").replace("'", "E+"));
-					try {
-						BigInteger i = d.toBigIntegerExact();
-						return new XOMInteger(i);
-					} catch (Exception e) {
-						return new XOMNumber(d);
-					}
-				} catch (Exception e) {
-					return new XOMString(theNumber);
+					if (compareVariants(av,v) == 0) return XOMBoolean.TRUE;
+				} catch (NaNComparisonException nce) {
+					// nothing
 				}
 			}
-			else if (expr instanceof XNEmptyExpression) {
-				return XOMEmpty.EMPTY;
-			}
-			else if (expr instanceof XNConstantExpression) {
-				String constName = ((XNConstantExpression)expr).constant.image;
-				XOMVariant theConstant = context.getConstant(constName);
-				if (theConstant != null) return theConstant;
-				else throw new XNScriptError("The constant "+constName+" is not defined");
-			}
-			else if (expr instanceof XNMeExpression) {
-				XNResponder resp = context.getCurrentResponder();
-				if (resp instanceof XOMVariant) return (XOMVariant)resp;
-				else return XOMInterpreter.INTERPRETER;
-			}
-			else if (expr instanceof XNSuperExpression) {
-				XNResponder resp = context.getCurrentResponder();
-				if (resp instanceof XOMUserObject) return ((XOMUserObject)resp).asSuper();
-				else if (resp instanceof XOMVariant) return (XOMVariant)resp;
-				else return XOMInterpreter.INTERPRETER;
-			}
-			else if (expr instanceof XNUnaryExpression) {
-				XNOperator op = ((XNUnaryExpression)expr).operator;
-				XNExpression a = ((XNUnaryExpression)expr).argument;
-				XOMVariant av;
-				boolean ab;
-				BigInteger ai;
-				switch (op) {
-				case NOT:
-					av = evaluateExpression(a).asPrimitive(context);
-					ab = XOMBooleanType.instance.makeInstanceFrom(context, av).toBoolean();
-					return ab ? XOMBoolean.FALSE : XOMBoolean.TRUE;
-				case UNARY_SUBTRACT:
-					av = evaluateExpression(a).asPrimitive(context);
-					if (av instanceof XOMInteger) {
-						return ((XOMInteger)av).negate();
-					}
-					else if (av instanceof XOMNumber) {
-						return ((XOMNumber)av).negate();
-					}
-					else if (av instanceof XOMComplex) {
-						return ((XOMComplex)av).negate();
-					}
-					else if (XOMIntegerType.instance.canMakeInstanceFrom(context, av, true)) {
-						XOMInteger i = XOMIntegerType.instance.makeInstanceFrom(context, av, true);
-						return i.negate();
-					}
-					else if (XOMNumberType.instance.canMakeInstanceFrom(context, av, true)) {
-						XOMNumber n = XOMNumberType.instance.makeInstanceFrom(context, av, true);
-						return n.negate();
-					}
-					else if (XOMComplexType.instance.canMakeInstanceFrom(context, av, true)) {
-						XOMComplex c = XOMComplexType.instance.makeInstanceFrom(context, av, true);
-						return c.negate();
-					}
-					else {
-						throw new XOMMorphError("number");
-					}
-				case BIT_NOT:
-					av = evaluateExpression(a).asPrimitive(context);
-					ai = XOMIntegerType.instance.makeInstanceFrom(context, av, true).toBigInteger();
-					if (ai == null) return XOMInteger.NaN;
-					return new XOMInteger(ai.not());
-				case EXISTS:
-					if (a instanceof XNVariantDescriptor) {
-						return variantExists((XNVariantDescriptor)a) ? XOMBoolean.TRUE : XOMBoolean.FALSE;
-					} else {
-						throw new XNScriptError("Can't understand this");
-					}
-				case NOT_EXISTS:
-					if (a instanceof XNVariantDescriptor) {
-						return variantExists((XNVariantDescriptor)a) ? XOMBoolean.FALSE : XOMBoolean.TRUE;
-					} else {
-						throw new XNScriptError("Can't understand this");
-					}
-				case REFERENCE_TO:
-					return new XOMReference(evaluateExpression(a));
-				case REFERENT_OF:
-					av = evaluateExpression(a).asPrimitive(context);
-					return XOMReferenceType.instance.makeInstanceFrom(context, av).dereference(true);
-				default:
-					throw new XNScriptError("Can't understand this");
-				}
+			return XOMBoolean.FALSE;
+		case PRECISELY_ELEMENT_OF:
+			av = evaluateExpression(a).asPrimitive(context);
+			bv = evaluateExpression(b).asPrimitive(context);
+			bl = bv.toPrimitiveList(context);
+			for (XOMVariant v : bl) {
+				if (av.equals(v)) return XOMBoolean.TRUE;
 			}
-			else if (expr instanceof XNBinaryExpression) {
-				XNOperator op = ((XNBinaryExpression)expr).operator;
-				XNExpression a = ((XNBinaryExpression)expr).left;
-				XNExpression b = ((XNBinaryExpression)expr).right;
-				MathContext mc = context.getMathContext();
-				MathProcessor mp = context.getMathProcessor();
-				XOMVariant av, bv;
-				String as, bs;
-				boolean ab, bb;
-				List<? extends XOMVariant> al, bl;
-				BigInteger ai, bi;
-				XOMNumber an, bn;
-				XOMComplex ac, bc;
-				XOMPoint ap;
-				XOMRectangle ar, br;
-				int cmp;
-				switch (op) {
-				case EXPONENT:
-					av = evaluateExpression(a).asPrimitive(context);
-					bv = evaluateExpression(b).asPrimitive(context);
-					if (av instanceof XOMComplex && bv instanceof XOMComplex) {
-						ac = XOMComplexType.instance.makeInstanceFrom(context, av, true);
-						bc = XOMComplexType.instance.makeInstanceFrom(context, bv, true);
-						return XOMComplexMath.pow(ac, bc, mc, mp);
-					}
-					else if (av instanceof XOMNumber && bv instanceof XOMNumber) {
-						an = XOMNumberType.instance.makeInstanceFrom(context, av, true);
-						bn = XOMNumberType.instance.makeInstanceFrom(context, bv, true);
-						return XOMNumberMath.pow(an, bn, mc, mp);
-					}
-					else if (XOMNumberType.instance.canMakeInstanceFrom(context, av, true) && XOMNumberType.instance.canMakeInstanceFrom(context, bv, true)) {
-						an = XOMNumberType.instance.makeInstanceFrom(context, av, true);
-						bn = XOMNumberType.instance.makeInstanceFrom(context, bv, true);
-						return XOMNumberMath.pow(an, bn, mc, mp);
-					}
-					else if (XOMComplexType.instance.canMakeInstanceFrom(context, av, true) && XOMComplexType.instance.canMakeInstanceFrom(context, bv, true)) {
-						ac = XOMComplexType.instance.makeInstanceFrom(context, av, true);
-						bc = XOMComplexType.instance.makeInstanceFrom(context, bv, true);
-						return XOMComplexMath.pow(ac, bc, mc, mp);
-					}
-					else {
-						throw new XOMMorphError("number");
-					}
-				case MULTIPLY:
-					av = evaluateExpression(a).asPrimitive(context);
-					bv = evaluateExpression(b).asPrimitive(context);
-					if (av instanceof XOMComplex && bv instanceof XOMComplex) {
-						ac = XOMComplexType.instance.makeInstanceFrom(context, av, true);
-						bc = XOMComplexType.instance.makeInstanceFrom(context, bv, true);
-						return ac.multiply(bc, mc);
-					}
-					else if (av instanceof XOMNumber && bv instanceof XOMNumber) {
-						an = XOMNumberType.instance.makeInstanceFrom(context, av, true);
-						bn = XOMNumberType.instance.makeInstanceFrom(context, bv, true);
-						return an.multiply(bn, mc);
-					}
-					else if (XOMNumberType.instance.canMakeInstanceFrom(context, av, true) && XOMNumberType.instance.canMakeInstanceFrom(context, bv, true)) {
-						an = XOMNumberType.instance.makeInstanceFrom(context, av, true);
-						bn = XOMNumberType.instance.makeInstanceFrom(context, bv, true);
-						return an.multiply(bn, mc);
-					}
-					else if (XOMComplexType.instance.canMakeInstanceFrom(context, av, true) && XOMComplexType.instance.canMakeInstanceFrom(context, bv, true)) {
-						ac = XOMComplexType.instance.makeInstanceFrom(context, av, true);
-						bc = XOMComplexType.instance.makeInstanceFrom(context, bv, true);
-						return ac.multiply(bc, mc);
-					}
-					else {
-						throw new XOMMorphError("number");
-					}
-				case DIVIDE:
-					av = evaluateExpression(a).asPrimitive(context);
-					bv = evaluateExpression(b).asPrimitive(context);
-					if (av instanceof XOMComplex && bv instanceof XOMComplex) {
-						ac = XOMComplexType.instance.makeInstanceFrom(context, av, true);
-						bc = XOMComplexType.instance.makeInstanceFrom(context, bv, true);
-						return ac.divide(bc, mc);
-					}
-					else if (av instanceof XOMNumber && bv instanceof XOMNumber) {
-						an = XOMNumberType.instance.makeInstanceFrom(context, av, true);
-						bn = XOMNumberType.instance.makeInstanceFrom(context, bv, true);
-						return an.divide(bn, mc);
-					}
-					else if (XOMNumberType.instance.canMakeInstanceFrom(context, av, true) && XOMNumberType.instance.canMakeInstanceFrom(context, bv, true)) {
-						an = XOMNumberType.instance.makeInstanceFrom(context, av, true);
-						bn = XOMNumberType.instance.makeInstanceFrom(context, bv, true);
-						return an.divide(bn, mc);
-					}
-					else if (XOMComplexType.instance.canMakeInstanceFrom(context, av, true) && XOMComplexType.instance.canMakeInstanceFrom(context, bv, true)) {
-						ac = XOMComplexType.instance.makeInstanceFrom(context, av, true);
-						bc = XOMComplexType.instance.makeInstanceFrom(context, bv, true);
-						return ac.divide(bc, mc);
-					}
-					else {
-						throw new XOMMorphError("number");
-					}
-				case QUOT:
-					av = evaluateExpression(a).asPrimitive(context);
-					bv = evaluateExpression(b).asPrimitive(context);
-					if (av instanceof XOMComplex && bv instanceof XOMComplex) {
-						ac = XOMComplexType.instance.makeInstanceFrom(context, av, true);
-						bc = XOMComplexType.instance.makeInstanceFrom(context, bv, true);
-						return ac.divide(bc, mc).trunc();
-					}
-					else if (av instanceof XOMNumber && bv instanceof XOMNumber) {
-						an = XOMNumberType.instance.makeInstanceFrom(context, av, true);
-						bn = XOMNumberType.instance.makeInstanceFrom(context, bv, true);
-						return an.divide(bn, mc).trunc();
-					}
-					else if (XOMNumberType.instance.canMakeInstanceFrom(context, av, true) && XOMNumberType.instance.canMakeInstanceFrom(context, bv, true)) {
-						an = XOMNumberType.instance.makeInstanceFrom(context, av, true);
-						bn = XOMNumberType.instance.makeInstanceFrom(context, bv, true);
-						return an.divide(bn, mc).trunc();
-					}
-					else if (XOMComplexType.instance.canMakeInstanceFrom(context, av, true) && XOMComplexType.instance.canMakeInstanceFrom(context, bv, true)) {
-						ac = XOMComplexType.instance.makeInstanceFrom(context, av, true);
-						bc = XOMComplexType.instance.makeInstanceFrom(context, bv, true);
-						return ac.divide(bc, mc).trunc();
-					}
-					else {
-						throw new XOMMorphError("number");
-					}
-				case REM:
-					av = evaluateExpression(a).asPrimitive(context);
-					bv = evaluateExpression(b).asPrimitive(context);
-					if (av instanceof XOMComplex && bv instanceof XOMComplex) {
-						ac = XOMComplexType.instance.makeInstanceFrom(context, av, true);
-						bc = XOMComplexType.instance.makeInstanceFrom(context, bv, true);
-						return ac.subtract(bc.multiply(ac.divide(bc, mc).trunc(), mc), mc);
-					}
-					else if (av instanceof XOMNumber && bv instanceof XOMNumber) {
-						an = XOMNumberType.instance.makeInstanceFrom(context, av, true);
-						bn = XOMNumberType.instance.makeInstanceFrom(context, bv, true);
-						return an.subtract(bn.multiply(an.divide(bn, mc).trunc(), mc), mc);
-					}
-					else if (XOMNumberType.instance.canMakeInstanceFrom(context, av, true) && XOMNumberType.instance.canMakeInstanceFrom(context, bv, true)) {
-						an = XOMNumberType.instance.makeInstanceFrom(context, av, true);
-						bn = XOMNumberType.instance.makeInstanceFrom(context, bv, true);
-						return an.subtract(bn.multiply(an.divide(bn, mc).trunc(), mc), mc);
-					}
-					else if (XOMComplexType.instance.canMakeInstanceFrom(context, av, true) && XOMComplexType.instance.canMakeInstanceFrom(context, bv, true)) {
-						ac = XOMComplexType.instance.makeInstanceFrom(context, av, true);
-						bc = XOMComplexType.instance.makeInstanceFrom(context, bv, true);
-						return ac.subtract(bc.multiply(ac.divide(bc, mc).trunc(), mc), mc);
-					}
-					else {
-						throw new XOMMorphError("number");
-					}
-				case DIV:
-					av = evaluateExpression(a).asPrimitive(context);
-					bv = evaluateExpression(b).asPrimitive(context);
-					if (av instanceof XOMComplex && bv instanceof XOMComplex) {
-						ac = XOMComplexType.instance.makeInstanceFrom(context, av, true);
-						bc = XOMComplexType.instance.makeInstanceFrom(context, bv, true);
-						return ac.divide(bc, mc).floor();
-					}
-					else if (av instanceof XOMNumber && bv instanceof XOMNumber) {
-						an = XOMNumberType.instance.makeInstanceFrom(context, av, true);
-						bn = XOMNumberType.instance.makeInstanceFrom(context, bv, true);
-						return an.divide(bn, mc).floor();
-					}
-					else if (XOMNumberType.instance.canMakeInstanceFrom(context, av, true) && XOMNumberType.instance.canMakeInstanceFrom(context, bv, true)) {
-						an = XOMNumberType.instance.makeInstanceFrom(context, av, true);
-						bn = XOMNumberType.instance.makeInstanceFrom(context, bv, true);
-						return an.divide(bn, mc).floor();
-					}
-					else if (XOMComplexType.instance.canMakeInstanceFrom(context, av, true) && XOMComplexType.instance.canMakeInstanceFrom(context, bv, true)) {
-						ac = XOMComplexType.instance.makeInstanceFrom(context, av, true);
-						bc = XOMComplexType.instance.makeInstanceFrom(context, bv, true);
-						return ac.divide(bc, mc).floor();
-					}
-					else {
-						throw new XOMMorphError("number");
-					}
-				case MOD:
-					av = evaluateExpression(a).asPrimitive(context);
-					bv = evaluateExpression(b).asPrimitive(context);
-					if (av instanceof XOMComplex && bv instanceof XOMComplex) {
-						ac = XOMComplexType.instance.makeInstanceFrom(context, av, true);
-						bc = XOMComplexType.instance.makeInstanceFrom(context, bv, true);
-						return ac.subtract(bc.multiply(ac.divide(bc, mc).floor(), mc), mc);
-					}
-					else if (av instanceof XOMNumber && bv instanceof XOMNumber) {
-						an = XOMNumberType.instance.makeInstanceFrom(context, av, true);
-						bn = XOMNumberType.instance.makeInstanceFrom(context, bv, true);
-						return an.subtract(bn.multiply(an.divide(bn, mc).floor(), mc), mc);
-					}
-					else if (XOMNumberType.instance.canMakeInstanceFrom(context, av, true) && XOMNumberType.instance.canMakeInstanceFrom(context, bv, true)) {
-						an = XOMNumberType.instance.makeInstanceFrom(context, av, true);
-						bn = XOMNumberType.instance.makeInstanceFrom(context, bv, true);
-						return an.subtract(bn.multiply(an.divide(bn, mc).floor(), mc), mc);
-					}
-					else if (XOMComplexType.instance.canMakeInstanceFrom(context, av, true) && XOMComplexType.instance.canMakeInstanceFrom(context, bv, true)) {
-						ac = XOMComplexType.instance.makeInstanceFrom(context, av, true);
-						bc = XOMComplexType.instance.makeInstanceFrom(context, bv, true);
-						return ac.subtract(bc.multiply(ac.divide(bc, mc).floor(), mc), mc);
-					}
-					else {
-						throw new XOMMorphError("number");
-					}
-				case ADD:
-					av = evaluateExpression(a).asPrimitive(context);
-					bv = evaluateExpression(b).asPrimitive(context);
-					if (av instanceof XOMComplex && bv instanceof XOMComplex) {
-						ac = XOMComplexType.instance.makeInstanceFrom(context, av, true);
-						bc = XOMComplexType.instance.makeInstanceFrom(context, bv, true);
-						return ac.add(bc, mc);
-					}
-					else if (av instanceof XOMNumber && bv instanceof XOMNumber) {
-						an = XOMNumberType.instance.makeInstanceFrom(context, av, true);
-						bn = XOMNumberType.instance.makeInstanceFrom(context, bv, true);
-						return an.add(bn, mc);
-					}
-					else if (XOMNumberType.instance.canMakeInstanceFrom(context, av, true) && XOMNumberType.instance.canMakeInstanceFrom(context, bv, true)) {
-						an = XOMNumberType.instance.makeInstanceFrom(context, av, true);
-						bn = XOMNumberType.instance.makeInstanceFrom(context, bv, true);
-						return an.add(bn, mc);
-					}
-					else if (XOMComplexType.instance.canMakeInstanceFrom(context, av, true) && XOMComplexType.instance.canMakeInstanceFrom(context, bv, true)) {
-						ac = XOMComplexType.instance.makeInstanceFrom(context, av, true);
-						bc = XOMComplexType.instance.makeInstanceFrom(context, bv, true);
-						return ac.add(bc, mc);
-					}
-					else {
-						throw new XOMMorphError("number");
-					}
-				case SUBTRACT:
-					av = evaluateExpression(a).asPrimitive(context);
-					bv = evaluateExpression(b).asPrimitive(context);
-					if (av instanceof XOMComplex && bv instanceof XOMComplex) {
-						ac = XOMComplexType.instance.makeInstanceFrom(context, av, true);
-						bc = XOMComplexType.instance.makeInstanceFrom(context, bv, true);
-						return ac.subtract(bc, mc);
-					}
-					else if (av instanceof XOMNumber && bv instanceof XOMNumber) {
-						an = XOMNumberType.instance.makeInstanceFrom(context, av, true);
-						bn = XOMNumberType.instance.makeInstanceFrom(context, bv, true);
-						return an.subtract(bn, mc);
-					}
-					else if (XOMNumberType.instance.canMakeInstanceFrom(context, av, true) && XOMNumberType.instance.canMakeInstanceFrom(context, bv, true)) {
-						an = XOMNumberType.instance.makeInstanceFrom(context, av, true);
-						bn = XOMNumberType.instance.makeInstanceFrom(context, bv, true);
-						return an.subtract(bn, mc);
-					}
-					else if (XOMComplexType.instance.canMakeInstanceFrom(context, av, true) && XOMComplexType.instance.canMakeInstanceFrom(context, bv, true)) {
-						ac = XOMComplexType.instance.makeInstanceFrom(context, av, true);
-						bc = XOMComplexType.instance.makeInstanceFrom(context, bv, true);
-						return ac.subtract(bc, mc);
-					}
-					else {
-						throw new XOMMorphError("number");
-					}
-				case SHIFT_LEFT:
-					av = evaluateExpression(a).asPrimitive(context);
-					bv = evaluateExpression(b).asPrimitive(context);
-					ai = XOMIntegerType.instance.makeInstanceFrom(context, av, true).toBigInteger();
-					bi = XOMIntegerType.instance.makeInstanceFrom(context, bv, true).toBigInteger();
-					if (ai == null || bi == null) return XOMInteger.NaN;
-					return new XOMInteger(ai.shiftLeft(bi.intValue()));
-				case SHIFT_RIGHT_SIGNED:
-					av = evaluateExpression(a).asPrimitive(context);
-					bv = evaluateExpression(b).asPrimitive(context);
-					ai = XOMIntegerType.instance.makeInstanceFrom(context, av, true).toBigInteger();
-					bi = XOMIntegerType.instance.makeInstanceFrom(context, bv, true).toBigInteger();
-					if (ai == null || bi == null) return XOMInteger.NaN;
-					return new XOMInteger(ai.shiftRight(bi.intValue()));
-				case SHIFT_RIGHT_UNSIGNED:
-					av = evaluateExpression(a).asPrimitive(context);
-					bv = evaluateExpression(b).asPrimitive(context);
-					ai = XOMIntegerType.instance.makeInstanceFrom(context, av, true).toBigInteger();
-					bi = XOMIntegerType.instance.makeInstanceFrom(context, bv, true).toBigInteger();
-					if (ai == null || bi == null) return XOMInteger.NaN;
-					return new XOMInteger(ai.shiftRight(bi.intValue()));
-				case BIT_AND:
-					av = evaluateExpression(a).asPrimitive(context);
-					bv = evaluateExpression(b).asPrimitive(context);
-					ai = XOMIntegerType.instance.makeInstanceFrom(context, av, true).toBigInteger();
-					bi = XOMIntegerType.instance.makeInstanceFrom(context, bv, true).toBigInteger();
-					if (ai == null || bi == null) return XOMInteger.NaN;
-					return new XOMInteger(ai.and(bi));
-				case BIT_XOR:
-					av = evaluateExpression(a).asPrimitive(context);
-					bv = evaluateExpression(b).asPrimitive(context);
-					ai = XOMIntegerType.instance.makeInstanceFrom(context, av, true).toBigInteger();
-					bi = XOMIntegerType.instance.makeInstanceFrom(context, bv, true).toBigInteger();
-					if (ai == null || bi == null) return XOMInteger.NaN;
-					return new XOMInteger(ai.xor(bi));
-				case BIT_OR:
-					av = evaluateExpression(a).asPrimitive(context);
-					bv = evaluateExpression(b).asPrimitive(context);
-					ai = XOMIntegerType.instance.makeInstanceFrom(context, av, true).toBigInteger();
-					bi = XOMIntegerType.instance.makeInstanceFrom(context, bv, true).toBigInteger();
-					if (ai == null || bi == null) return XOMInteger.NaN;
-					return new XOMInteger(ai.or(bi));
-				case STR_CONCAT:
-					av = evaluateExpression(a).asPrimitive(context);
-					bv = evaluateExpression(b).asPrimitive(context);
-					as = av.toTextString(context);
-					bs = bv.toTextString(context);
-					return new XOMString(as + bs);
-				case STR_CONCAT_SPACE:
-					av = evaluateExpression(a).asPrimitive(context);
-					bv = evaluateExpression(b).asPrimitive(context);
-					as = av.toTextString(context);
-					bs = bv.toTextString(context);
-					return new XOMString(as + " " + bs);
-				case LIST_APPEND:
-					av = evaluateExpression(a).asPrimitive(context);
-					bv = evaluateExpression(b).asPrimitive(context);
-					al = av.toPrimitiveList(context);
-					Vector<XOMVariant> realbl = new Vector<XOMVariant>();
-					realbl.add(bv);
-					return new XOMList(al, realbl);
-				case LIST_CONCAT:
-					av = evaluateExpression(a).asPrimitive(context);
-					bv = evaluateExpression(b).asPrimitive(context);
-					al = av.toPrimitiveList(context);
-					bl = bv.toPrimitiveList(context);
-					return new XOMList(al, bl);
-				case LT_NUM:
-					try {
-						av = evaluateExpression(a).asPrimitive(context);
-						bv = evaluateExpression(b).asPrimitive(context);
-						return (compareVariants(av,bv) < 0) ? XOMBoolean.TRUE : XOMBoolean.FALSE;
-					} catch (NaNComparisonException nce) {
-						return XOMBoolean.FALSE;
-					}
-				case GT_NUM:
-					try {
-						av = evaluateExpression(a).asPrimitive(context);
-						bv = evaluateExpression(b).asPrimitive(context);
-						return (compareVariants(av,bv) > 0) ? XOMBoolean.TRUE : XOMBoolean.FALSE;
-					} catch (NaNComparisonException nce) {
-						return XOMBoolean.FALSE;
-					}
-				case LE_NUM:
-					try {
-						av = evaluateExpression(a).asPrimitive(context);
-						bv = evaluateExpression(b).asPrimitive(context);
-						return (compareVariants(av,bv) <= 0) ? XOMBoolean.TRUE : XOMBoolean.FALSE;
-					} catch (NaNComparisonException nce) {
-						return XOMBoolean.FALSE;
-					}
-				case GE_NUM:
-					try {
-						av = evaluateExpression(a).asPrimitive(context);
-						bv = evaluateExpression(b).asPrimitive(context);
-						return (compareVariants(av,bv) >= 0) ? XOMBoolean.TRUE : XOMBoolean.FALSE;
-					} catch (NaNComparisonException nce) {
-						return XOMBoolean.FALSE;
-					}
-				case CONTAINS:
-					av = evaluateExpression(a).asPrimitive(context);
-					bv = evaluateExpression(b).asPrimitive(context);
-					as = av.toTextString(context).toLowerCase();
-					bs = bv.toTextString(context).toLowerCase();
-					return (as.contains(bs)) ? XOMBoolean.TRUE : XOMBoolean.FALSE;
-				case STARTS_WITH:
-					av = evaluateExpression(a).asPrimitive(context);
-					bv = evaluateExpression(b).asPrimitive(context);
-					as = av.toTextString(context).toLowerCase();
-					bs = bv.toTextString(context).toLowerCase();
-					return (as.startsWith(bs)) ? XOMBoolean.TRUE : XOMBoolean.FALSE;
-				case ENDS_WITH:
-					av = evaluateExpression(a).asPrimitive(context);
-					bv = evaluateExpression(b).asPrimitive(context);
-					as = av.toTextString(context).toLowerCase();
-					bs = bv.toTextString(context).toLowerCase();
-					return (as.endsWith(bs)) ? XOMBoolean.TRUE : XOMBoolean.FALSE;
-				case IN:
-					av = evaluateExpression(a).asPrimitive(context);
-					bv = evaluateExpression(b).asPrimitive(context);
-					as = av.toTextString(context).toLowerCase();
-					bs = bv.toTextString(context).toLowerCase();
-					return (bs.contains(as)) ? XOMBoolean.TRUE : XOMBoolean.FALSE;
-				case WITHIN:
-					av = evaluateExpression(a).asPrimitive(context);
-					bv = evaluateExpression(b).asPrimitive(context);
-					br = XOMRectangleType.instance.makeInstanceFrom(context, bv);
-					if (XOMRectangleType.instance.canMakeInstanceFrom(context, av)) {
-						ar = XOMRectangleType.instance.makeInstanceFrom(context, av);
-						return br.contains(ar) ? XOMBoolean.TRUE : XOMBoolean.FALSE;
-					}
-					else if (XOMPointType.instance.canMakeInstanceFrom(context, av)) {
-						ap = XOMPointType.instance.makeInstanceFrom(context, av);
-						return br.contains(ap) ? XOMBoolean.TRUE : XOMBoolean.FALSE;
-					}
-					else {
-						throw new XOMMorphError("point");
-					}
-				case ELEMENT_OF:
-					av = evaluateExpression(a).asPrimitive(context);
-					bv = evaluateExpression(b).asPrimitive(context);
-					bl = bv.toPrimitiveList(context);
-					for (XOMVariant v : bl) {
-						try {
-							if (compareVariants(av,v) == 0) return XOMBoolean.TRUE;
-						} catch (NaNComparisonException nce) {
-							// nothing
-						}
-					}
-					return XOMBoolean.FALSE;
-				case PRECISELY_ELEMENT_OF:
-					av = evaluateExpression(a).asPrimitive(context);
-					bv = evaluateExpression(b).asPrimitive(context);
-					bl = bv.toPrimitiveList(context);
-					for (XOMVariant v : bl) {
-						if (av.equals(v)) return XOMBoolean.TRUE;
-					}
-					return XOMBoolean.FALSE;
-				case NOT_CONTAINS:
-					av = evaluateExpression(a).asPrimitive(context);
-					bv = evaluateExpression(b).asPrimitive(context);
-					as = av.toTextString(context).toLowerCase();
-					bs = bv.toTextString(context).toLowerCase();
-					return (!as.contains(bs)) ? XOMBoolean.TRUE : XOMBoolean.FALSE;
-				case NOT_STARTS_WITH:
-					av = evaluateExpression(a).asPrimitive(context);
-					bv = evaluateExpression(b).asPrimitive(context);
-					as = av.toTextString(context).toLowerCase();
-					bs = bv.toTextString(context).toLowerCase();
-					return (!as.startsWith(bs)) ? XOMBoolean.TRUE : XOMBoolean.FALSE;
-				case NOT_ENDS_WITH:
-					av = evaluateExpression(a).asPrimitive(context);
-					bv = evaluateExpression(b).asPrimitive(context);
-					as = av.toTextString(context).toLowerCase();
-					bs = bv.toTextString(context).toLowerCase();
-					return (!as.endsWith(bs)) ? XOMBoolean.TRUE : XOMBoolean.FALSE;
-				case NOT_IN:
-					av = evaluateExpression(a).asPrimitive(context);
-					bv = evaluateExpression(b).asPrimitive(context);
-					as = av.toTextString(context).toLowerCase();
-					bs = bv.toTextString(context).toLowerCase();
-					return (!bs.contains(as)) ? XOMBoolean.TRUE : XOMBoolean.FALSE;
-				case NOT_WITHIN:
-					av = evaluateExpression(a).asPrimitive(context);
-					bv = evaluateExpression(b).asPrimitive(context);
-					br = XOMRectangleType.instance.makeInstanceFrom(context, bv);
-					if (XOMRectangleType.instance.canMakeInstanceFrom(context, av)) {
-						ar = XOMRectangleType.instance.makeInstanceFrom(context, av);
-						return (!br.contains(ar)) ? XOMBoolean.TRUE : XOMBoolean.FALSE;
-					}
-					else if (XOMPointType.instance.canMakeInstanceFrom(context, av)) {
-						ap = XOMPointType.instance.makeInstanceFrom(context, av);
-						return (!br.contains(ap)) ? XOMBoolean.TRUE : XOMBoolean.FALSE;
-					}
-					else {
-						throw new XOMMorphError("point");
-					}
-				case NOT_ELEMENT_OF:
-					av = evaluateExpression(a).asPrimitive(context);
-					bv = evaluateExpression(b).asPrimitive(context);
-					bl = bv.toPrimitiveList(context);
-					for (XOMVariant v : bl) {
-						try {
-							if (compareVariants(av,v) == 0) return XOMBoolean.FALSE;
-						} catch (NaNComparisonException nce) {
-							// nothing
-						}
-					}
-					return XOMBoolean.TRUE;
-				case NOT_PRECISELY_ELEMENT_OF:
-					av = evaluateExpression(a).asPrimitive(context);
-					bv = evaluateExpression(b).asPrimitive(context);
-					bl = bv.toPrimitiveList(context);
-					for (XOMVariant v : bl) {
-						if (av.equals(v)) return XOMBoolean.FALSE;
-					}
-					return XOMBoolean.TRUE;
-				case EQUAL:
-					try {
-						av = evaluateExpression(a).asPrimitive(context);
-						bv = evaluateExpression(b).asPrimitive(context);
-						return (compareVariants(av,bv) == 0) ? XOMBoolean.TRUE : XOMBoolean.FALSE;
-					} catch (NaNComparisonException nce) {
-						return XOMBoolean.FALSE;
-					}
-				case STRICT_EQUAL:
-					av = evaluateExpression(a).asPrimitive(context);
-					bv = evaluateExpression(b).asPrimitive(context);
-					return (av.equals(bv)) ? XOMBoolean.TRUE : XOMBoolean.FALSE;
-				case NOT_EQUAL:
-					try {
-						av = evaluateExpression(a).asPrimitive(context);
-						bv = evaluateExpression(b).asPrimitive(context);
-						return (compareVariants(av,bv) != 0) ? XOMBoolean.TRUE : XOMBoolean.FALSE;
-					} catch (NaNComparisonException nce) {
-						return XOMBoolean.FALSE;
-					}
-				case NOT_STRICT_EQUAL:
-					av = evaluateExpression(a).asPrimitive(context);
-					bv = evaluateExpression(b).asPrimitive(context);
-					return (!av.equals(bv)) ? XOMBoolean.TRUE : XOMBoolean.FALSE;
-				case CMP_NUM:
-					try {
-						av = evaluateExpression(a).asPrimitive(context);
-						bv = evaluateExpression(b).asPrimitive(context);
-						cmp = compareVariants(av,bv);
-						return (cmp < 0) ? XOMInteger.ONE.negate() : (cmp > 0) ? XOMInteger.ONE : XOMInteger.ZERO;
-					} catch (NaNComparisonException nce) {
-						return XOMBoolean.FALSE;
-					}
-				case CMP_STR:
-					av = evaluateExpression(a).asPrimitive(context);
-					bv = evaluateExpression(b).asPrimitive(context);
-					as = av.toTextString(context);
-					bs = bv.toTextString(context);
-					cmp = as.compareToIgnoreCase(bs);
-					return (cmp < 0) ? XOMInteger.ONE.negate() : (cmp > 0) ? XOMInteger.ONE : XOMInteger.ZERO;
-				case AND:
-					av = evaluateExpression(a).asPrimitive(context);
-					bv = evaluateExpression(b).asPrimitive(context);
-					ab = XOMBooleanType.instance.makeInstanceFrom(context, av).toBoolean();
-					bb = XOMBooleanType.instance.makeInstanceFrom(context, bv).toBoolean();
-					return (ab && bb) ? XOMBoolean.TRUE : XOMBoolean.FALSE;
-				case SHORT_AND:
-					av = evaluateExpression(a).asPrimitive(context);
-					ab = XOMBooleanType.instance.makeInstanceFrom(context, av).toBoolean();
-					if (!ab) return XOMBoolean.FALSE;
-					bv = evaluateExpression(b).asPrimitive(context);
-					bb = XOMBooleanType.instance.makeInstanceFrom(context, bv).toBoolean();
-					if (!bb) return XOMBoolean.FALSE;
-					return XOMBoolean.TRUE;
-				case OR:
-					av = evaluateExpression(a).asPrimitive(context);
-					bv = evaluateExpression(b).asPrimitive(context);
-					ab = XOMBooleanType.instance.makeInstanceFrom(context, av).toBoolean();
-					bb = XOMBooleanType.instance.makeInstanceFrom(context, bv).toBoolean();
-					return (ab || bb) ? XOMBoolean.TRUE : XOMBoolean.FALSE;
-				case SHORT_OR:
-					av = evaluateExpression(a).asPrimitive(context);
-					ab = XOMBooleanType.instance.makeInstanceFrom(context, av).toBoolean();
-					if (ab) return XOMBoolean.TRUE;
-					bv = evaluateExpression(b).asPrimitive(context);
-					bb = XOMBooleanType.instance.makeInstanceFrom(context, bv).toBoolean();
-					if (bb) return XOMBoolean.TRUE;
-					return XOMBoolean.FALSE;
-				default:
-					throw new XNScriptError("Can't understand this");
-				}
+			return XOMBoolean.FALSE;
+		case NOT_CONTAINS:
+			av = evaluateExpression(a).asPrimitive(context);
+			bv = evaluateExpression(b).asPrimitive(context);
+			as = av.toTextString(context).toLowerCase();
+			bs = bv.toTextString(context).toLowerCase();
+			return (!as.contains(bs)) ? XOMBoolean.TRUE : XOMBoolean.FALSE;
+		case NOT_STARTS_WITH:
+			av = evaluateExpression(a).asPrimitive(context);
+			bv = evaluateExpression(b).asPrimitive(context);
+			as = av.toTextString(context).toLowerCase();
+			bs = bv.toTextString(context).toLowerCase();
+			return (!as.startsWith(bs)) ? XOMBoolean.TRUE : XOMBoolean.FALSE;
+		case NOT_ENDS_WITH:
+			av = evaluateExpression(a).asPrimitive(context);
+			bv = evaluateExpression(b).asPrimitive(context);
+			as = av.toTextString(context).toLowerCase();
+			bs = bv.toTextString(context).toLowerCase();
+			return (!as.endsWith(bs)) ? XOMBoolean.TRUE : XOMBoolean.FALSE;
+		case NOT_IN:
+			av = evaluateExpression(a).asPrimitive(context);
+			bv = evaluateExpression(b).asPrimitive(context);
+			as = av.toTextString(context).toLowerCase();
+			bs = bv.toTextString(context).toLowerCase();
+			return (!bs.contains(as)) ? XOMBoolean.TRUE : XOMBoolean.FALSE;
+		case NOT_WITHIN:
+			av = evaluateExpression(a).asPrimitive(context);
+			bv = evaluateExpression(b).asPrimitive(context);
+			br = XOMRectangleType.instance.makeInstanceFrom(context, bv);
+			if (XOMRectangleType.instance.canMakeInstanceFrom(context, av)) {
+				ar = XOMRectangleType.instance.makeInstanceFrom(context, av);
+				return (!br.contains(ar)) ? XOMBoolean.TRUE : XOMBoolean.FALSE;
 			}
-			else if (expr instanceof XNInstanceOfExpression) {
-				XNOperator op = ((XNInstanceOfExpression)expr).operator;
-				String dtn = ((XNInstanceOfExpression)expr).datatype.toNameString();
-				XOMDataType<? extends XOMVariant> dt = context.getDataType(dtn);
-				XNExpression a = ((XNInstanceOfExpression)expr).argument;
-				XOMVariant av = evaluateExpression(a).asValue(context);
-				switch (op) {
-				case IS_A:
-					if (dt == null) return XOMBoolean.FALSE;
-					else if (dt.canMakeInstanceFrom(context, av)) return XOMBoolean.TRUE;
-					else return XOMBoolean.FALSE;
-				case IS_PRECISELY_A:
-					if (dt == null) return XOMBoolean.FALSE;
-					else if (dt.getInstanceClass().isAssignableFrom(av.getClass())) return XOMBoolean.TRUE;
-					else return XOMBoolean.FALSE;
-				case IS_NOT_A:
-					if (dt == null) return XOMBoolean.TRUE;
-					else if (dt.canMakeInstanceFrom(context, av)) return XOMBoolean.FALSE;
-					else return XOMBoolean.TRUE;
-				case IS_NOT_PRECISELY_A:
-					if (dt == null) return XOMBoolean.TRUE;
-					else if (dt.getInstanceClass().isAssignableFrom(av.getClass())) return XOMBoolean.FALSE;
-					else return XOMBoolean.TRUE;
-				case AS:
-					if (dt == null) throw new XNScriptError("Unknown variant type");
-					else return dt.makeInstanceFrom(context, av);
-				default:
-					throw new XNScriptError("Can't understand this");
-				}
+			else if (XOMPointType.instance.canMakeInstanceFrom(context, av)) {
+				ap = XOMPointType.instance.makeInstanceFrom(context, av);
+				return (!br.contains(ap)) ? XOMBoolean.TRUE : XOMBoolean.FALSE;
+			}
+			else {
+				throw new XOMMorphError("point");
 			}
-			else if (expr instanceof XNBetweenExpression) {
+		case NOT_ELEMENT_OF:
+			av = evaluateExpression(a).asPrimitive(context);
+			bv = evaluateExpression(b).asPrimitive(context);
+			bl = bv.toPrimitiveList(context);
+			for (XOMVariant v : bl) {
 				try {
-					XOMVariant l = evaluateExpression(((XNBetweenExpression)expr).left).asPrimitive(context);
-					XNOperator op = ((XNBetweenExpression)expr).operator;
-					XOMVariant rs = evaluateExpression(((XNBetweenExpression)expr).rightStart).asPrimitive(context);
-					XOMVariant re = evaluateExpression(((XNBetweenExpression)expr).rightEnd).asPrimitive(context);
-					int cs = compareVariants(rs, l);
-					int ce = compareVariants(l, re);
-					switch (op) {
-					case BETWEEN:
-						if (cs < 0 && ce < 0) return XOMBoolean.TRUE;
-						else if (cs == 0 && ((XNBetweenExpression)expr).isLeftInclusive()) return XOMBoolean.TRUE;
-						else if (ce == 0 && ((XNBetweenExpression)expr).isRightInclusive()) return XOMBoolean.TRUE;
-						else return XOMBoolean.FALSE;
-					case NOT_BETWEEN:
-						if (cs < 0 && ce < 0) return XOMBoolean.FALSE;
-						else if (cs == 0 && ((XNBetweenExpression)expr).isLeftInclusive()) return XOMBoolean.FALSE;
-						else if (ce == 0 && ((XNBetweenExpression)expr).isRightInclusive()) return XOMBoolean.FALSE;
-						else return XOMBoolean.TRUE;
-					default:
-						throw new XNScriptError("Can't understand this");
-					}
+					if (compareVariants(av,v) == 0) return XOMBoolean.FALSE;
 				} catch (NaNComparisonException nce) {
-					return XOMBoolean.FALSE;
+					// nothing
 				}
 			}
-			else if (expr instanceof XNIfExpression) {
-				XNExpression c = ((XNIfExpression)expr).condition;
-				XNExpression t = ((XNIfExpression)expr).trueCase;
-				XNExpression f = ((XNIfExpression)expr).falseCase;
-				if (XOMBooleanType.instance.makeInstanceFrom(context, evaluateExpression(c).asPrimitive(context)).toBoolean()) {
-					return evaluateExpression(t);
-				} else {
-					return evaluateExpression(f);
-				}
+			return XOMBoolean.TRUE;
+		case NOT_PRECISELY_ELEMENT_OF:
+			av = evaluateExpression(a).asPrimitive(context);
+			bv = evaluateExpression(b).asPrimitive(context);
+			bl = bv.toPrimitiveList(context);
+			for (XOMVariant v : bl) {
+				if (av.equals(v)) return XOMBoolean.FALSE;
 			}
-			else if (expr instanceof XNListExpression) {
-				List<XOMVariant> theList = new Vector<XOMVariant>();
-				for (XNExpression e : ((XNListExpression)expr).exprs) {
-					theList.add(evaluateExpression(e).asPrimitive(context));
-				}
-				return new XOMList(theList);
-			}
-			else if (expr instanceof XNDictionaryExpression) {
-				XNDictionaryExpression de = (XNDictionaryExpression)expr;
-				Map<String, XOMVariant> theMap = new LinkedHashMap<String, XOMVariant>();
-				for (int i = 0; i < de.keyExprs.size() && i < de.valueExprs.size(); i++) {
-					String k = evaluateExpression(de.keyExprs.get(i)).toTextString(context);
-					XOMVariant v = evaluateExpression(de.valueExprs.get(i)).asPrimitive(context);
-					theMap.put(k, v);
-				}
-				return new XOMDictionary(theMap);
-			}
-			else if (expr instanceof XNVariableExpression) {
-				String name = ((XNVariableExpression)expr).varname.image;
-				return new XOMVariable(context.getVariableMap(name), name);
-			}
-			else if (expr instanceof XNNewExpression) {
-				XNDataType dataTypeObj = ((XNNewExpression)expr).datatype;
-				String dataTypeStr = dataTypeObj.toNameString();
-				XOMDataType<? extends XOMVariant> dataType = context.getDataType(dataTypeStr);
-				XNExpression parentExpression = ((XNNewExpression)expr).parentVariant;
-				XOMVariant parent = (parentExpression == null) ? null : evaluateExpression(parentExpression);
+			return XOMBoolean.TRUE;
+		case EQUAL:
+			try {
+				av = evaluateExpression(a).asPrimitive(context);
+				bv = evaluateExpression(b).asPrimitive(context);
+				return (compareVariants(av,bv) == 0) ? XOMBoolean.TRUE : XOMBoolean.FALSE;
+			} catch (NaNComparisonException nce) {
+				return XOMBoolean.FALSE;
+			}
+		case STRICT_EQUAL:
+			av = evaluateExpression(a).asPrimitive(context);
+			bv = evaluateExpression(b).asPrimitive(context);
+			return (av.equals(bv)) ? XOMBoolean.TRUE : XOMBoolean.FALSE;
+		case NOT_EQUAL:
+			try {
+				av = evaluateExpression(a).asPrimitive(context);
+				bv = evaluateExpression(b).asPrimitive(context);
+				return (compareVariants(av,bv) != 0) ? XOMBoolean.TRUE : XOMBoolean.FALSE;
+			} catch (NaNComparisonException nce) {
+				return XOMBoolean.FALSE;
+			}
+		case NOT_STRICT_EQUAL:
+			av = evaluateExpression(a).asPrimitive(context);
+			bv = evaluateExpression(b).asPrimitive(context);
+			return (!av.equals(bv)) ? XOMBoolean.TRUE : XOMBoolean.FALSE;
+		case CMP_NUM:
+			try {
+				av = evaluateExpression(a).asPrimitive(context);
+				bv = evaluateExpression(b).asPrimitive(context);
+				cmp = compareVariants(av,bv);
+				return (cmp < 0) ? XOMInteger.ONE.negate() : (cmp > 0) ? XOMInteger.ONE : XOMInteger.ZERO;
+			} catch (NaNComparisonException nce) {
+				return XOMBoolean.FALSE;
+			}
+		case CMP_STR:
+			av = evaluateExpression(a).asPrimitive(context);
+			bv = evaluateExpression(b).asPrimitive(context);
+			as = av.toTextString(context);
+			bs = bv.toTextString(context);
+			cmp = as.compareToIgnoreCase(bs);
+			return (cmp < 0) ? XOMInteger.ONE.negate() : (cmp > 0) ? XOMInteger.ONE : XOMInteger.ZERO;
+		case AND:
+			av = evaluateExpression(a).asPrimitive(context);
+			bv = evaluateExpression(b).asPrimitive(context);
+			ab = XOMBooleanType.instance.makeInstanceFrom(context, av).toBoolean();
+			bb = XOMBooleanType.instance.makeInstanceFrom(context, bv).toBoolean();
+			return (ab && bb) ? XOMBoolean.TRUE : XOMBoolean.FALSE;
+		case SHORT_AND:
+			av = evaluateExpression(a).asPrimitive(context);
+			ab = XOMBooleanType.instance.makeInstanceFrom(context, av).toBoolean();
+			if (!ab) return XOMBoolean.FALSE;
+			bv = evaluateExpression(b).asPrimitive(context);
+			bb = XOMBooleanType.instance.makeInstanceFrom(context, bv).toBoolean();
+			if (!bb) return XOMBoolean.FALSE;
+			return XOMBoolean.TRUE;
+		case OR:
+			av = evaluateExpression(a).asPrimitive(context);
+			bv = evaluateExpression(b).asPrimitive(context);
+			ab = XOMBooleanType.instance.makeInstanceFrom(context, av).toBoolean();
+			bb = XOMBooleanType.instance.makeInstanceFrom(context, bv).toBoolean();
+			return (ab || bb) ? XOMBoolean.TRUE : XOMBoolean.FALSE;
+		case SHORT_OR:
+			av = evaluateExpression(a).asPrimitive(context);
+			ab = XOMBooleanType.instance.makeInstanceFrom(context, av).toBoolean();
+			if (ab) return XOMBoolean.TRUE;
+			bv = evaluateExpression(b).asPrimitive(context);
+			bb = XOMBooleanType.instance.makeInstanceFrom(context, bv).toBoolean();
+			if (bb) return XOMBoolean.TRUE;
+			return XOMBoolean.FALSE;
+		default:
+			throw new XNScriptError("Can't understand this");
+		}
+	}
+	
+	private XOMVariant evaluateInstanceOfExpression(XNInstanceOfExpression expr) {
+		XNOperator op = expr.operator;
+		String dtn = expr.datatype.toNameString();
+		XOMDataType<? extends XOMVariant> dt = context.getDataType(dtn);
+		XNExpression a = expr.argument;
+		XOMVariant av = evaluateExpression(a).asValue(context);
+		switch (op) {
+		case IS_A:
+			if (dt == null) return XOMBoolean.FALSE;
+			else if (dt.canMakeInstanceFrom(context, av)) return XOMBoolean.TRUE;
+			else return XOMBoolean.FALSE;
+		case IS_PRECISELY_A:
+			if (dt == null) return XOMBoolean.FALSE;
+			else if (dt.getInstanceClass().isAssignableFrom(av.getClass())) return XOMBoolean.TRUE;
+			else return XOMBoolean.FALSE;
+		case IS_NOT_A:
+			if (dt == null) return XOMBoolean.TRUE;
+			else if (dt.canMakeInstanceFrom(context, av)) return XOMBoolean.FALSE;
+			else return XOMBoolean.TRUE;
+		case IS_NOT_PRECISELY_A:
+			if (dt == null) return XOMBoolean.TRUE;
+			else if (dt.getInstanceClass().isAssignableFrom(av.getClass())) return XOMBoolean.FALSE;
+			else return XOMBoolean.TRUE;
+		case AS:
+			if (dt == null) throw new XNScriptError("Unknown variant type");
+			else return dt.makeInstanceFrom(context, av);
+		default:
+			throw new XNScriptError("Can't understand this");
+		}
+	}
+	
+	private XOMVariant evaluateBetweenExpression(XNBetweenExpression expr) {
+		try {
+			XOMVariant l = evaluateExpression(expr.left).asPrimitive(context);
+			XNOperator op = expr.operator;
+			XOMVariant rs = evaluateExpression(expr.rightStart).asPrimitive(context);
+			XOMVariant re = evaluateExpression(expr.rightEnd).asPrimitive(context);
+			int cs = compareVariants(rs, l);
+			int ce = compareVariants(l, re);
+			switch (op) {
+			case BETWEEN:
+				if (cs < 0 && ce < 0) return XOMBoolean.TRUE;
+				else if (cs == 0 && expr.isLeftInclusive()) return XOMBoolean.TRUE;
+				else if (ce == 0 && expr.isRightInclusive()) return XOMBoolean.TRUE;
+				else return XOMBoolean.FALSE;
+			case NOT_BETWEEN:
+				if (cs < 0 && ce < 0) return XOMBoolean.FALSE;
+				else if (cs == 0 && expr.isLeftInclusive()) return XOMBoolean.FALSE;
+				else if (ce == 0 && expr.isRightInclusive()) return XOMBoolean.FALSE;
+				else return XOMBoolean.TRUE;
+			default:
+				throw new XNScriptError("Can't understand this");
+			}
+		} catch (NaNComparisonException nce) {
+			return XOMBoolean.FALSE;
+		}
+	}
+	
+	private XOMVariant evaluateIfExpression(XNIfExpression expr) {
+		XNExpression c = expr.condition;
+		XNExpression t = expr.trueCase;
+		XNExpression f = expr.falseCase;
+		if (XOMBooleanType.instance.makeInstanceFrom(context, evaluateExpression(c).asPrimitive(context)).toBoolean()) {
+			return evaluateExpression(t);
+		} else {
+			return evaluateExpression(f);
+		}
+	}
+	
+	private XOMVariant evaluateListExpression(XNListExpression expr) {
+		List<XOMVariant> theList = new Vector<XOMVariant>();
+		for (XNExpression e : expr.exprs) {
+			theList.add(evaluateExpression(e).asPrimitive(context));
+		}
+		return new XOMList(theList);
+	}
+	
+	private XOMVariant evaluateDictionaryExpression(XNDictionaryExpression expr) {
+		XNDictionaryExpression de = expr;
+		Map<String, XOMVariant> theMap = new LinkedHashMap<String, XOMVariant>();
+		for (int i = 0; i < de.keyExprs.size() && i < de.valueExprs.size(); i++) {
+			String k = evaluateExpression(de.keyExprs.get(i)).toTextString(context);
+			XOMVariant v = evaluateExpression(de.valueExprs.get(i)).asPrimitive(context);
+			theMap.put(k, v);
+		}
+		return new XOMDictionary(theMap);
+	}
+	
+	private XOMVariant evaluateVariableExpression(XNVariableExpression expr) {
+		XNStackFrame f = (expr.slotIndex > 0) ? context.getCurrentStackFrame() : null;
+		if (f != null) {
+			XOMVariable v = f.getLocalSlot(expr.slotScope, expr.slotIndex);
+			if (v != null) return v;
+		}
+		String name = expr.varname.image;
+		XOMVariableMap vm = context.getVariableMap(name);
+		XOMVariable v = new XOMVariable(vm, name);
+		if (f != null && vm == f.localVariables()) {
+			f.setLocalSlot(expr.slotScope, expr.slotIndex, v);
+		}
+		return v;
+	}
+	
+	private XOMVariant evaluateNewExpression(XNNewExpression expr) {
+		XNDataType dataTypeObj = expr.datatype;
+		String dataTypeStr = dataTypeObj.toNameString();
+		XOMDataType<? extends XOMVariant> dataType = context.getDataType(dataTypeStr);
+		XNExpression parentExpression = expr.parentVariant;
+		XOMVariant parent = (parentExpression == null) ? null : evaluateExpression(parentExpression);
+		if (parent != null) {
+			return dataType.createChildVariant(context, parent);
+		} else {
+			return dataType.createInstance(context);
+		}
+	}
+	
+	private XOMVariant evaluateVariantDescriptor(XNVariantDescriptor expr) {
+		XNDataType dataTypeObj = expr.datatype;
+		String dataTypeStr = dataTypeObj.toNameString();
+		XOMDataType<? extends XOMVariant> dataType = context.getDataType(dataTypeStr);
+		XNExpression parentExpression = expr.parentVariant;
+		XOMVariant parent = (parentExpression == null) ? null : evaluateExpression(parentExpression);
+		if (expr instanceof XNVariantIdDescriptor) {
+			XNExpression idExpression = ((XNVariantIdDescriptor)expr).id;
+			XOMVariant idVar = evaluateExpression(idExpression).asPrimitive(context);
+			XOMInteger idInt = XOMIntegerType.instance.makeInstanceFrom(context, idVar, true);
+			if (parent != null) {
+				return dataType.getChildVariantByID(context, parent, idInt.toInt());
+			} else {
+				return dataType.getInstanceByID(context, idInt.toInt());
+			}
+		} else if (expr instanceof XNVariantIndexNameDescriptor) {
+			XNExpression startExpr = ((XNVariantIndexNameDescriptor)expr).start;
+			XNExpression endExpr = ((XNVariantIndexNameDescriptor)expr).end;
+			if (startExpr != null && endExpr != null) {
+				int start = XOMIntegerType.instance.makeInstanceFrom(context, evaluateExpression(startExpr).asPrimitive(context), true).toInt();
+				int end = XOMIntegerType.instance.makeInstanceFrom(context, evaluateExpression(endExpr).asPrimitive(context), true).toInt();
 				if (parent != null) {
-					return dataType.createChildVariant(context, parent);
+					return dataType.getChildVariantByIndex(context, parent, start, end);
 				} else {
-					return dataType.createInstance(context);
+					return dataType.getInstanceByIndex(context, start, end);
 				}
-			}
-			else if (expr instanceof XNVariantDescriptor) {
-				XNDataType dataTypeObj = ((XNVariantDescriptor)expr).datatype;
-				String dataTypeStr = dataTypeObj.toNameString();
-				XOMDataType<? extends XOMVariant> dataType = context.getDataType(dataTypeStr);
-				XNExpression parentExpression = ((XNVariantDescriptor)expr).parentVariant;
-				XOMVariant parent = (parentExpression == null) ? null : evaluateExpression(parentExpression);
-				if (expr instanceof XNVariantIdDescriptor) {
-					XNExpression idExpression = ((XNVariantIdDescriptor)expr).id;
-					XOMVariant idVar = evaluateExpression(idExpression).asPrimitive(context);
-					XOMInteger idInt = XOMIntegerType.instance.makeInstanceFrom(context, idVar, true);
+			} else if (startExpr != null) {
+				XOMVariant idxNameVar = evaluateExpression(startExpr).asPrimitive(context);
+				if (!idxNameVar.toTextString(context).equals("") && XOMIntegerType.instance.canMakeInstanceFrom(context, idxNameVar, true)) {
+					int index = XOMIntegerType.instance.makeInstanceFrom(context, idxNameVar, true).toInt();
 					if (parent != null) {
-						return dataType.getChildVariantByID(context, parent, idInt.toInt());
-					} else {
-						return dataType.getInstanceByID(context, idInt.toInt());
-					}
-				} else if (expr instanceof XNVariantIndexNameDescriptor) {
-					XNExpression startExpr = ((XNVariantIndexNameDescriptor)expr).start;
-					XNExpression endExpr = ((XNVariantIndexNameDescriptor)expr).end;
-					if (startExpr != null && endExpr != null) {
-						int start = XOMIntegerType.instance.makeInstanceFrom(context, evaluateExpression(startExpr).asPrimitive(context), true).toInt();
-						int end = XOMIntegerType.instance.makeInstanceFrom(context, evaluateExpression(endExpr).asPrimitive(context), true).toInt();
-						if (parent != null) {
-							return dataType.getChildVariantByIndex(context, parent, start, end);
-						} else {
-							return dataType.getInstanceByIndex(context, start, end);
-						}
-					} else if (startExpr != null) {
-						XOMVariant idxNameVar = evaluateExpression(startExpr).asPrimitive(context);
-						if (!idxNameVar.toTextString(context).equals("") && XOMIntegerType.instance.canMakeInstanceFrom(context, idxNameVar, true)) {
-							int index = XOMIntegerType.instance.makeInstanceFrom(context, idxNameVar, true).toInt();
-							if (parent != null) {
-								return dataType.getChildVariantByIndex(context, parent, index);
-							} else {
-								return dataType.getInstanceByIndex(context, index);
-							}
-						} else {
-							String name = idxNameVar.toTextString(context);
-							if (parent != null) {
-								return dataType.getChildVariantByName(context, parent, name);
-							} else {
-								return dataType.getInstanceByName(context, name);
-							}
-						}
-					} else if (endExpr != null) {
-						XOMVariant idxNameVar = evaluateExpression(endExpr).asPrimitive(context);
-						if (!idxNameVar.toTextString(context).equals("") && XOMIntegerType.instance.canMakeInstanceFrom(context, idxNameVar, true)) {
-							int index = XOMIntegerType.instance.makeInstanceFrom(context, idxNameVar, true).toInt();
-							if (parent != null) {
-								return dataType.getChildVariantByIndex(context, parent, index);
-							} else {
-								return dataType.getInstanceByIndex(context, index);
-							}
-						} else {
-							String name = idxNameVar.toTextString(context);
-							if (parent != null) {
-								return dataType.getChildVariantByName(context, parent, name);
-							} else {
-								return dataType.getInstanceByName(context, name);
-							}
-						}
+						return dataType.getChildVariantByIndex(context, parent, index);
 					} else {
-						throw new XNScriptError("Can't understand this");
+						return dataType.getInstanceByIndex(context, index);
 					}
-				} else if (expr instanceof XNVariantMassDescriptor) {
+				} else {
+					String name = idxNameVar.toTextString(context);
 					if (parent != null) {
-						return dataType.getChildMassVariant(context, parent);
+						return dataType.getChildVariantByName(context, parent, name);
 					} else {
-						return dataType.getMassInstance(context);
+						return dataType.getInstanceByName(context, name);
 					}
-				} else if (expr instanceof XNVariantOrdinalDescriptor) {
-					XNToken startOrdinal = ((XNVariantOrdinalDescriptor)expr).startOrdinal;
-					XNToken endOrdinal = ((XNVariantOrdinalDescriptor)expr).endOrdinal;
-					if (startOrdinal != null && endOrdinal != null) {
-						int start = context.getOrdinal(startOrdinal.image);
-						int end = context.getOrdinal(endOrdinal.image);
-						if (parent != null) {
-							return dataType.getChildVariantByIndex(context, parent, start, end);
-						} else {
-							return dataType.getInstanceByIndex(context, start, end);
-						}
-					} else if (startOrdinal != null) {
-						int start = context.getOrdinal(startOrdinal.image);
-						if (parent != null) {
-							return dataType.getChildVariantByIndex(context, parent, start);
-						} else {
-							return dataType.getInstanceByIndex(context, start);
-						}
-					} else if (endOrdinal != null) {
-						int end = context.getOrdinal(endOrdinal.image);
-						if (parent != null) {
-							return dataType.getChildVariantByIndex(context, parent, end);
-						} else {
-							return dataType.getInstanceByIndex(context, end);
-						}
+				}
+			} else if (endExpr != null) {
+				XOMVariant idxNameVar = evaluateExpression(endExpr).asPrimitive(context);
+				if (!idxNameVar.toTextString(context).equals("") && XOMIntegerType.instance.canMakeInstanceFrom(context, idxNameVar, true)) {
+					int index = XOMIntegerType.instance.makeInstanceFrom(context, idxNameVar, true).toInt();
+					if (parent != null) {
+						return dataType.getChildVariantByIndex(context, parent, index);
 					} else {
-						throw new XNScriptError("Can't understand this");
+						return dataType.getInstanceByIndex(context, index);
 					}
-				} else if (expr instanceof XNVariantSingletonDescriptor) {
+				} else {
+					String name = idxNameVar.toTextString(context);
 					if (parent != null) {
-						return dataType.getChildSingletonVariant(context, parent);
+						return dataType.getChildVariantByName(context, parent, name);
 					} else {
-						return dataType.getSingletonInstance(context);
+						return dataType.getInstanceByName(context, name);
 					}
-				} else {
-					throw new XNScriptError("Can't understand this");
 				}
+			} else {
+				throw new XNScriptError("Can't understand this");
 			}
-			else if (expr instanceof XNFunctionCallPropertyDescriptor) {
-				XNFunctionCallPropertyDescriptor fc = (XNFunctionCallPropertyDescriptor)expr;
-				XOMVariant argument = (fc.argument == null) ? null : evaluateExpression(fc.argument).asValue(context);
-				if (fc.isBuiltInFunction()) {
-					if (argument != null && argument.canGetProperty(context, fc.identifier)) {
-						return argument.getProperty(context, fc.modifier, fc.identifier);
-					} else if (
-							(argument == null || XOMInterpreterType.instance.canMakeInstanceFrom(context, argument)) &&
-							context.hasGlobalProperty(fc.identifier) &&
-							context.getGlobalProperty(fc.identifier).canGetProperty(context, fc.identifier)
-					) {
-						return context.getGlobalProperty(fc.identifier).getProperty(context, fc.modifier, fc.identifier);
-					} else {
-						return evaluateBuiltInFunction(fc.identifier, fc.modifier, argument);
-					}
+		} else if (expr instanceof XNVariantMassDescriptor) {
+			if (parent != null) {
+				return dataType.getChildMassVariant(context, parent);
+			} else {
+				return dataType.getMassInstance(context);
+			}
+		} else if (expr instanceof XNVariantOrdinalDescriptor) {
+			XNToken startOrdinal = ((XNVariantOrdinalDescriptor)expr).startOrdinal;
+			XNToken endOrdinal = ((XNVariantOrdinalDescriptor)expr).endOrdinal;
+			if (startOrdinal != null && endOrdinal != null) {
+				int start = context.getOrdinal(startOrdinal.image);
+				int end = context.getOrdinal(endOrdinal.image);
+				if (parent != null) {
+					return dataType.getChildVariantByIndex(context, parent, start, end);
 				} else {
-					XOMVariant ret = evaluateFunction(fc.identifier, fc.modifier, fc.argument, argument);
-					return (ret == null) ? XOMEmpty.EMPTY : ret;
+					return dataType.getInstanceByIndex(context, start, end);
 				}
-			}
-			else {
+			} else if (startOrdinal != null) {
+				int start = context.getOrdinal(startOrdinal.image);
+				if (parent != null) {
+					return dataType.getChildVariantByIndex(context, parent, start);
+				} else {
+					return dataType.getInstanceByIndex(context, start);
+				}
+			} else if (endOrdinal != null) {
+				int end = context.getOrdinal(endOrdinal.image);
+				if (parent != null) {
+					return dataType.getChildVariantByIndex(context, parent, end);
+				} else {
+					return dataType.getInstanceByIndex(context, end);
+				}
+			} else {
 				throw new XNScriptError("Can't understand this");
 			}
-		} catch (XNScriptError err) {
-			err.setLineAndCol(expr.getBeginLine(), expr.getBeginCol());
-			throw err;
+		} else if (expr instanceof XNVariantSingletonDescriptor) {
+			if (parent != null) {
+				return dataType.getChildSingletonVariant(context, parent);
+			} else {
+				return dataType.getSingletonInstance(context);
+			}
+		} else {
+			throw new XNScriptError("Can't understand this");
+		}
+	}
+	
+	private XOMVariant evaluateFunctionCallPropertyDescriptor(XNFunctionCallPropertyDescriptor expr) {
+		XNFunctionCallPropertyDescriptor fc = expr;
+		XOMVariant argument = (fc.argument == null) ? null : evaluateExpression(fc.argument).asValue(context);
+		if (fc.isBuiltInFunction()) {
+			if (argument != null && argument.canGetProperty(context, fc.identifier)) {
+				return argument.getProperty(context, fc.modifier, fc.identifier);
+			} else if (
+					context.hasGlobalProperty(fc.identifier) &&
+					(argument == null || XOMInterpreterType.instance.canMakeInstanceFrom(context, argument)) &&
+					context.getGlobalProperty(fc.identifier).canGetProperty(context, fc.identifier)
+			) {
+				return context.getGlobalProperty(fc.identifier).getProperty(context, fc.modifier, fc.identifier);
+			} else {
+				return evaluateBuiltInFunction(fc.identifier, fc.modifier, argument);
+			}
+		} else {
+			XOMVariant ret = evaluateFunction(fc.identifier, fc.modifier, fc.argument, argument);
+			return (ret == null) ? XOMEmpty.EMPTY : ret;
 		}
 	}
 	
@@ -997,7 +1140,7 @@ public class XNInterpreter {
 		XNResponder resp = context.getFirstResponder();
 		
 		// try local declarations first
-		if (context.getCurrentStackFrame() != null) {
+		if (context.getCurrentStackFrame() != null && context.getCurrentStackFrame().hasLocalUserFunctions()) {
 			XNFunctionHandler fh = context.getCurrentStackFrame().getLocalUserFunction(functionName);
 			if (fh != null) {
 				context.pushResponder(resp);
@@ -1090,6 +1233,7 @@ public class XNInterpreter {
 	
 	private XNHandlerExit evaluateUserFunction(XNFunctionHandler handler, List<XOMVariant> parameters) {
 		XNStackFrame f = new XNStackFrame(handler.name, parameters);
+		f.setLocalSlots(handler.slotScope, handler.slotCount);
 		if (handler.parameters != null) {
 			for (int i = 0; i < handler.parameters.size(); i++) {
 				XNHandlerParameter param = handler.parameters.get(i);
@@ -1275,10 +1419,18 @@ public class XNInterpreter {
 	
 	public void executeScriptString(String s) {
 		if (s == null) return;
-		XNLexer lexer = new XNLexer(s, new StringReader(s));
-		XNParser parser = new XNParser(context, lexer);
-		List<XNStatement> program = parser.parse();
-		executeScript(program);
+		executeScript(parseScriptString(s));
+	}
+	
+	private List<XNStatement> parseScriptString(String s) {
+		List<XNStatement> program = context.getParsedScript(s);
+		if (program == null) {
+			XNLexer lexer = new XNLexer(s, new StringReader(s));
+			XNParser parser = new XNParser(context, lexer);
+			program = parser.parse();
+			context.putParsedScript(s, program);
+		}
+		return program;
 	}
 	
 	public void executeScript(List<XNStatement> stats) {
@@ -1310,9 +1462,7 @@ public class XNInterpreter {
 		context.setFirstResponder(recip);
 		context.pushResponder(recip);
 		try {
-			XNLexer lexer = new XNLexer(message, new StringReader(message));
-			XNParser parser = new XNParser(context, lexer);
-			List<XNStatement> stats = parser.parse();
+			List<XNStatement> stats = parseScriptString(message);
 			XNHandlerExit exit = executeStatements(stats);
 			switch (exit.status()) {
 			case RETURNED:
@@ -1369,9 +1519,24 @@ public class XNInterpreter {
 	}
 	
 	public XNHandlerExit executeStatements(List<XNStatement> stats) {
+		XNHandlerExit exit = executeBlock(stats);
+		if (exit.status() == XNHandlerExitStatus.THROWN) {
+			throw exit.thrownError();
+		}
+		return exit;
+	}
+	
+	/*
+	 * Like executeStatements, but an error raised by a throw statement comes
+	 * back as a THROWN exit instead of an exception, so that it can travel
+	 * to an enclosing try block in the same handler the same way exit and
+	 * next do. Only the blocks inside a handler use this; anything that
+	 * runs a handler, script, or message goes through executeStatements.
+	 */
+	private XNHandlerExit executeBlock(List<XNStatement> stats) {
 		if (stats == null) return XNHandlerExit.ended();
 		for (XNStatement stat : stats) {
-			XNHandlerExit exit = executeStatement(stat);
+			XNHandlerExit exit = executeBlockStatement(stat);
 			if (exit.status() != XNHandlerExitStatus.ENDED) {
 				return exit;
 			}
@@ -1380,468 +1545,579 @@ public class XNInterpreter {
 	}
 	
 	public XNHandlerExit executeStatement(XNStatement stat) {
+		XNHandlerExit exit = executeBlockStatement(stat);
+		if (exit.status() == XNHandlerExitStatus.THROWN) {
+			throw exit.thrownError();
+		}
+		return exit;
+	}
+	
+	/*
+	 * Like executeStatement, but a throw statement comes back
+	 * as a THROWN exit, the same as in executeBlock.
+	 */
+	private XNHandlerExit executeBlockStatement(XNStatement stat) {
 		if (stat == null) return XNHandlerExit.ended();
 		try {
-			if (stat instanceof XNCommandStatement) {
-				String commandName = ((XNCommandStatement)stat).commandName;
-				List<XNExpression> params = ((XNCommandStatement)stat).parameters;
-				executeCommand(commandName, params);
-				return XNHandlerExit.ended();
-			} else if (stat instanceof XNConstantDeclaration) {
-				String constantName = ((XNConstantDeclaration)stat).identifier;
-				XNExpression evalue = ((XNConstantDeclaration)stat).value;
-				if (!context.hasConstant(constantName)) {
-					context.addUserConstant(constantName, evaluateExpression(evalue).asPrimitive(context));
-				}
-				return XNHandlerExit.ended();
-			} else if (stat instanceof XNDoStatement) {
-				XOMVariant what = evaluateExpression(((XNDoStatement)stat).whatToDo).asPrimitive(context);
-				XNExpression elang = ((XNDoStatement)stat).language;
-				XOMVariant vlang = (elang == null) ? XOMEmpty.EMPTY : evaluateExpression(elang).asPrimitive(context);
-				String slang = vlang.toTextString(context);
-				if (slang.equalsIgnoreCase("") || slang.equalsIgnoreCase("xion") || slang.equalsIgnoreCase("openxion") || slang.equalsIgnoreCase("hypertalk")) {
-					if (!context.allow(XNSecurityKey.DO_AND_VALUE, "Code", what.toTextString(context), "Language", slang))
-						throw new XNScriptError("Security settings do not allow do");
-					executeScriptString(what.toTextString(context));
-					return XNHandlerExit.ended();
-				} else if (context.hasExternalLanguage(slang)) {
-					if (!context.allow(XNSecurityKey.EXTERNAL_SCRIPTS, "Code", what.toTextString(context), "Language", slang))
-						throw new XNScriptError("Security settings do not allow do");
-					XOMVariant returnValue = context.getExternalLanguage(slang).execute(what.toTextString(context));
-					if (returnValue != null) {
-						context.setResult(returnValue);
-					}
-					return XNHandlerExit.ended();
+			switch (STATEMENT_KINDS.get(stat.getClass())) {
+			case COMMAND: return executeCommandStatement((XNCommandStatement)stat);
+			case CONSTANT_DECLARATION: return executeConstantDeclaration((XNConstantDeclaration)stat);
+			case DO: return executeDoStatement((XNDoStatement)stat);
+			case EXIT: return executeExitStatement((XNExitStatement)stat);
+			case FUNCTION_HANDLER: return executeFunctionHandler((XNFunctionHandler)stat);
+			case IF_BLOCK: return executeIfBlock((XNIfBlock)stat);
+			case INCLUDE: return executeIncludeStatement((XNIncludeStatement)stat);
+			case MESSAGE_HANDLER: return executeMessageHandler((XNMessageHandler)stat);
+			case NEXT: return executeNextStatement((XNNextStatement)stat);
+			case OBJECT_TYPE_DECLARATION: return executeObjectTypeDeclaration((XNObjectTypeDeclaration)stat);
+			case ORDINAL_DECLARATION: return executeOrdinalDeclaration((XNOrdinalDeclaration)stat);
+			case PASS: return executePassStatement((XNPassStatement)stat);
+			case REPEAT_BLOCK: return executeRepeatBlock((XNRepeatBlock)stat);
+			case RETURN: return executeReturnStatement((XNReturnStatement)stat);
+			case SEND: return executeSendStatement((XNSendStatement)stat);
+			case SWITCH_BLOCK: return executeSwitchBlock((XNSwitchBlock)stat);
+			case TELL_BLOCK: return executeTellBlock((XNTellBlock)stat);
+			case THROW: return executeThrowStatement((XNThrowStatement)stat);
+			case TRY_BLOCK: return executeTryBlock((XNTryBlock)stat);
+			case USE: return executeUseStatement((XNUseStatement)stat);
+			case VARIABLE_DECLARATION: return executeVariableDeclaration((XNVariableDeclaration)stat);
+			default: throw new XNScriptError("Can't understand this");
+			}
+		} catch (XNScriptError err) {
+			err.setLineAndCol(stat.getBeginLine(), stat.getBeginCol());
+			throw err;
+		}
+	}
+	
+	private XNHandlerExit executeCommandStatement(XNCommandStatement stat) {
+		String commandName = stat.commandName;
+		List<XNExpression> params = stat.parameters;
+		executeCommand(commandName, params);
+		return XNHandlerExit.ended();
+	}
+	
+	private XNHandlerExit executeConstantDeclaration(XNConstantDeclaration stat) {
+		String constantName = stat.identifier;
+		XNExpression evalue = stat.value;
+		if (!context.hasConstant(constantName)) {
+			context.addUserConstant(constantName, evaluateExpression(evalue).asPrimitive(context));
+		}
+		return XNHandlerExit.ended();
+	}
+	
+	private XNHandlerExit executeDoStatement(XNDoStatement stat) {
+		XOMVariant what = evaluateExpression(stat.whatToDo).asPrimitive(context);
+		XNExpression elang = stat.language;
+		XOMVariant vlang = (elang == null) ? XOMEmpty.EMPTY : evaluateExpression(elang).asPrimitive(context);
+		String slang = vlang.toTextString(context);
+		if (slang.equalsIgnoreCase("") || slang.equalsIgnoreCase("xion") || slang.equalsIgnoreCase("openxion") || slang.equalsIgnoreCase("hypertalk")) {
+			if (!context.allow(XNSecurityKey.DO_AND_VALUE, "Code", what.toTextString(context), "Language", slang))
+				throw new XNScriptError("Security settings do not allow do");
+			executeScriptString(what.toTextString(context));
+			return XNHandlerExit.ended();
+		} else if (context.hasExternalLanguage(slang)) {
+			if (!context.allow(XNSecurityKey.EXTERNAL_SCRIPTS, "Code", what.toTextString(context), "Language", slang))
+				throw new XNScriptError("Security settings do not allow do");
+			XOMVariant returnValue = context.getExternalLanguage(slang).execute(what.toTextString(context));
+			if (returnValue != null) {
+				context.setResult(returnValue);
+			}
+			return XNHandlerExit.ended();
+		} else {
+			throw new XNScriptError("The "+slang+" language is not supported");
+		}
+	}
+	
+	private XNHandlerExit executeExitStatement(XNExitStatement stat) {
+		if (stat.whatToExitTo == null) {
+			if (stat.error != null) {
+				XOMVariant err = evaluateExpression(stat.error).asPrimitive(context);
+				return XNHandlerExit.exitedBlockWithError(stat.whatToExit, err);
+			} else {
+				return XNHandlerExit.exitedBlock(stat.whatToExit);
+			}
+		} else {
+			XOMVariant exitTo = evaluateExpression(stat.whatToExitTo).asValue(context);
+			if (XOMInterpreterType.instance.canMakeInstanceFrom(context, exitTo)) {
+				if (stat.error != null) {
+					XOMVariant err = evaluateExpression(stat.error).asPrimitive(context);
+					throw new XNExitedToInterpreterException(err.toTextString(context));
 				} else {
-					throw new XNScriptError("The "+slang+" language is not supported");
+					throw new XNExitedToInterpreterException();
 				}
-			} else if (stat instanceof XNExitStatement) {
-				if (((XNExitStatement)stat).whatToExitTo == null) {
-					if (((XNExitStatement)stat).error != null) {
-						XOMVariant err = evaluateExpression(((XNExitStatement)stat).error).asPrimitive(context);
-						return XNHandlerExit.exitedBlockWithError(((XNExitStatement)stat).whatToExit, err);
-					} else {
-						return XNHandlerExit.exitedBlock(((XNExitStatement)stat).whatToExit);
-					}
-				} else {
-					XOMVariant exitTo = evaluateExpression(((XNExitStatement)stat).whatToExitTo).asValue(context);
-					if (XOMInterpreterType.instance.canMakeInstanceFrom(context, exitTo)) {
-						if (((XNExitStatement)stat).error != null) {
-							XOMVariant err = evaluateExpression(((XNExitStatement)stat).error).asPrimitive(context);
-							throw new XNExitedToInterpreterException(err.toTextString(context));
-						} else {
-							throw new XNExitedToInterpreterException();
-						}
-					} else {
-						throw new XNScriptError("Can't exit to this");
+			} else {
+				throw new XNScriptError("Can't exit to this");
+			}
+		}
+	}
+	
+	private XNHandlerExit executeFunctionHandler(XNFunctionHandler stat) {
+		if (context.getCurrentStackFrame() != null) {
+			context.getCurrentStackFrame().defineLocalUserFunction(stat.name, stat);
+		} else {
+			context.defineGlobalUserFunction(stat.name, stat);
+		}
+		return XNHandlerExit.ended();
+	}
+	
+	private XNHandlerExit executeIfBlock(XNIfBlock stat) {
+		XOMVariant condition = evaluateExpression(stat.condition).asPrimitive(context);
+		if (XOMBooleanType.instance.makeInstanceFrom(context, condition).toBoolean()) {
+			XNHandlerExit exit = executeBlock(stat.thenBlock);
+			if (exit.status() == XNHandlerExitStatus.EXITED && "if".equalsIgnoreCase(exit.blockTypeValue())) {
+				exit = XNHandlerExit.ended();
+			}
+			return exit;
+		} else if (stat.elseBlock != null) {
+			XNHandlerExit exit = executeBlock(stat.elseBlock);
+			if (exit.status() == XNHandlerExitStatus.EXITED && "if".equalsIgnoreCase(exit.blockTypeValue())) {
+				exit = XNHandlerExit.ended();
+			}
+			return exit;
+		} else {
+			return XNHandlerExit.ended();
+		}
+	}
+	
+	private XNHandlerExit executeIncludeStatement(XNIncludeStatement stat) {
+		XNIncludeStatement is = stat;
+		String path = evaluateExpression(is.scriptName).toTextString(context);
+		File file = XIONUtil.locateInclude(context, path, is.ask);
+		if (file != null) {
+			if (!(is.once && context.hasIncludedScript(file.getAbsolutePath()))) {
+				context.addIncludedScript(file.getAbsolutePath());
+				try {
+					executeScriptFile(file, context.getTextEncoding());
+				} catch (IOException ioe) {
+					if (is.require) {
+						throw new XNScriptError("Cannot read required include " + path);
 					}
 				}
-			} else if (stat instanceof XNFunctionHandler) {
-				if (context.getCurrentStackFrame() != null) {
-					context.getCurrentStackFrame().defineLocalUserFunction(((XNFunctionHandler)stat).name, (XNFunctionHandler)stat);
+			}
+			return XNHandlerExit.ended();
+		} else if (is.require) {
+			throw new XNScriptError("Cannot find required include " + path);
+		} else {
+			return XNHandlerExit.ended();
+		}
+	}
+	
+	private XNHandlerExit executeMessageHandler(XNMessageHandler stat) {
+		if (context.getCurrentStackFrame() != null) {
+			context.getCurrentStackFrame().defineLocalUserCommand(stat.name, stat);
+		} else {
+			context.defineGlobalUserCommand(stat.name, stat);
+		}
+		return XNHandlerExit.ended();
+	}
+	
+	private XNHandlerExit executeNextStatement(XNNextStatement stat) {
+		return XNHandlerExit.nextedBlock(stat.whatToNext);
+	}
+	
+	private XNHandlerExit executeObjectTypeDeclaration(XNObjectTypeDeclaration stat) {
+		XOMUserObjectType t = new XOMUserObjectType(context, stat);
+		for (XNObjectTypeName name : stat.names) {
+			String nameString = "";
+			for (String s : name.name) nameString += " "+s;
+			nameString = XIONUtil.normalizeVarName(nameString);
+			if (!context.hasDataType(nameString)) {
+				if (name.plural) {
+					context.addUserDataType(nameString, t.listType());
 				} else {
-					context.defineGlobalUserFunction(((XNFunctionHandler)stat).name, (XNFunctionHandler)stat);
+					context.addUserDataType(nameString, t);
 				}
-				return XNHandlerExit.ended();
-			} else if (stat instanceof XNIfBlock) {
-				XOMVariant condition = evaluateExpression(((XNIfBlock)stat).condition).asPrimitive(context);
-				if (XOMBooleanType.instance.makeInstanceFrom(context, condition).toBoolean()) {
-					XNHandlerExit exit = executeStatements(((XNIfBlock)stat).thenBlock);
-					if (exit.status() == XNHandlerExitStatus.EXITED && "if".equalsIgnoreCase(exit.blockTypeValue())) {
-						exit = XNHandlerExit.ended();
-					}
-					return exit;
-				} else if (((XNIfBlock)stat).elseBlock != null) {
-					XNHandlerExit exit = executeStatements(((XNIfBlock)stat).elseBlock);
-					if (exit.status() == XNHandlerExitStatus.EXITED && "if".equalsIgnoreCase(exit.blockTypeValue())) {
-						exit = XNHandlerExit.ended();
+			}
+		}
+		return XNHandlerExit.ended();
+	}
+	
+	private XNHandlerExit executeOrdinalDeclaration(XNOrdinalDeclaration stat) {
+		String ordinalName = stat.identifier;
+		XNExpression evalue = stat.value;
+		if (!context.hasOrdinal(ordinalName)) {
+			XOMInteger i = XOMIntegerType.instance.makeInstanceFrom(context, evaluateExpression(evalue).asPrimitive(context), true);
+			context.addUserOrdinal(ordinalName, i.toInt());
+		}
+		return XNHandlerExit.ended();
+	}
+	
+	private XNHandlerExit executePassStatement(XNPassStatement stat) {
+		if (stat.whatToPassTo == null) {
+			return XNHandlerExit.passed();
+		} else {
+			XOMVariant passTo = evaluateExpression(stat.whatToPassTo).asValue(context);
+			if (passTo instanceof XNResponder) {
+				return XNHandlerExit.passedTo((XNResponder)passTo);
+			} else if (XOMInterpreterType.instance.canMakeInstanceFrom(context, passTo)) {
+				return XNHandlerExit.passedToInterpreter();
+			} else {
+				throw new XNScriptError("Can't pass to this");
+			}
+		}
+	}
+	
+	private XNHandlerExit executeRepeatBlock(XNRepeatBlock stat) {
+		XNRepeatParameters rp = stat.params;
+		List<XNStatement> body = stat.body;
+		List<XNStatement> lastlyBody = stat.lastlyBody;
+		if (rp instanceof XNRepeatForParameters) {
+			XNExpression countExpr = ((XNRepeatForParameters)rp).count;
+			XOMVariant countVar = (countExpr == null) ? null : evaluateExpression(countExpr).asPrimitive(context);
+			boolean infinite;
+			int countInt;
+			if (countVar == null) {
+				infinite = true;
+				countInt = Integer.MAX_VALUE;
+			} else {
+				XOMNumber i = XOMNumberType.instance.makeInstanceFrom(context, countVar, true);
+				if (i.isZero() || i.isPos()) {
+					if (i.isInfinite()) {
+						infinite = true;
+						countInt = Integer.MAX_VALUE;
+					} else try {
+						infinite = false;
+						countInt = i.toBigDecimal().intValueExact();
+					} catch (Exception e) {
+						throw new XNScriptError("Expected non-negative integer here");
 					}
-					return exit;
 				} else {
-					return XNHandlerExit.ended();
+					throw new XNScriptError("Expected non-negative integer here");
 				}
-			} else if (stat instanceof XNIncludeStatement) {
-				XNIncludeStatement is = (XNIncludeStatement)stat;
-				String path = evaluateExpression(is.scriptName).toTextString(context);
-				File file = XIONUtil.locateInclude(context, path, is.ask);
-				if (file != null) {
-					if (!(is.once && context.hasIncludedScript(file.getAbsolutePath()))) {
-						context.addIncludedScript(file.getAbsolutePath());
-						try {
-							executeScriptFile(file, context.getTextEncoding());
-						} catch (IOException ioe) {
-							if (is.require) {
-								throw new XNScriptError("Cannot read required include " + path);
-							}
-						}
-					}
-					return XNHandlerExit.ended();
-				} else if (is.require) {
-					throw new XNScriptError("Cannot find required include " + path);
-				} else {
+			}
+			while (infinite || countInt-- > 0) {
+				XNHandlerExit exit = executeBlock(body);
+				if (exit.status() == XNHandlerExitStatus.EXITED && "repeat".equalsIgnoreCase(exit.blockTypeValue())) {
 					return XNHandlerExit.ended();
+				} else if (exit.status() == XNHandlerExitStatus.NEXTED && "repeat".equalsIgnoreCase(exit.blockTypeValue())) {
+					// keep looping
+				} else if (exit.status() != XNHandlerExitStatus.ENDED) {
+					return exit;
 				}
-			} else if (stat instanceof XNMessageHandler) {
-				if (context.getCurrentStackFrame() != null) {
-					context.getCurrentStackFrame().defineLocalUserCommand(((XNMessageHandler)stat).name, (XNMessageHandler)stat);
-				} else {
-					context.defineGlobalUserCommand(((XNMessageHandler)stat).name, (XNMessageHandler)stat);
-				}
-				return XNHandlerExit.ended();
-			} else if (stat instanceof XNNextStatement) {
-				return XNHandlerExit.nextedBlock(((XNNextStatement)stat).whatToNext);
-			} else if (stat instanceof XNObjectTypeDeclaration) {
-				XOMUserObjectType t = new XOMUserObjectType(context, (XNObjectTypeDeclaration)stat);
-				for (XNObjectTypeName name : ((XNObjectTypeDeclaration)stat).names) {
-					String nameString = "";
-					for (String s : name.name) nameString += " "+s;
-					nameString = XIONUtil.normalizeVarName(nameString);
-					if (!context.hasDataType(nameString)) {
-						if (name.plural) {
-							context.addUserDataType(nameString, t.listType());
-						} else {
-							context.addUserDataType(nameString, t);
-						}
-					}
-				}
-				return XNHandlerExit.ended();
-			} else if (stat instanceof XNOrdinalDeclaration) {
-				String ordinalName = ((XNOrdinalDeclaration)stat).identifier;
-				XNExpression evalue = ((XNOrdinalDeclaration)stat).value;
-				if (!context.hasOrdinal(ordinalName)) {
-					XOMInteger i = XOMIntegerType.instance.makeInstanceFrom(context, evaluateExpression(evalue).asPrimitive(context), true);
-					context.addUserOrdinal(ordinalName, i.toInt());
+			}
+			if (lastlyBody != null) return executeBlock(lastlyBody);
+			else return XNHandlerExit.ended();
+		}
+		else if (rp instanceof XNRepeatWhileParameters) {
+			XNExpression condition = ((XNRepeatWhileParameters)rp).condition;
+			while (XOMBooleanType.instance.makeInstanceFrom(context, evaluateExpression(condition).asPrimitive(context)).toBoolean()) {
+				XNHandlerExit exit = executeBlock(body);
+				if (exit.status() == XNHandlerExitStatus.EXITED && "repeat".equalsIgnoreCase(exit.blockTypeValue())) {
+					return XNHandlerExit.ended();
+				} else if (exit.status() == XNHandlerExitStatus.NEXTED && "repeat".equalsIgnoreCase(exit.blockTypeValue())) {
+					// keep looping
+				} else if (exit.status() != XNHandlerExitStatus.ENDED) {
+					return exit;
 				}
-				return XNHandlerExit.ended();
-			} else if (stat instanceof XNPassStatement) {
-				if (((XNPassStatement)stat).whatToPassTo == null) {
-					return XNHandlerExit.passed();
-				} else {
-					XOMVariant passTo = evaluateExpression(((XNPassStatement)stat).whatToPassTo).asValue(context);
-					if (passTo instanceof XNResponder) {
-						return XNHandlerExit.passedTo((XNResponder)passTo);
-					} else if (XOMInterpreterType.instance.canMakeInstanceFrom(context, passTo)) {
-						return XNHandlerExit.passedToInterpreter();
-					} else {
-						throw new XNScriptError("Can't pass to this");
-					}
+			}
+			if (lastlyBody != null) return executeBlock(lastlyBody);
+			else return XNHandlerExit.ended();
+		}
+		else if (rp instanceof XNRepeatUntilParameters) {
+			XNExpression condition = ((XNRepeatUntilParameters)rp).condition;
+			do {
+				XNHandlerExit exit = executeBlock(body);
+				if (exit.status() == XNHandlerExitStatus.EXITED && "repeat".equalsIgnoreCase(exit.blockTypeValue())) {
+					return XNHandlerExit.ended();
+				} else if (exit.status() == XNHandlerExitStatus.NEXTED && "repeat".equalsIgnoreCase(exit.blockTypeValue())) {
+					// keep looping
+				} else if (exit.status() != XNHandlerExitStatus.ENDED) {
+					return exit;
 				}
-			} else if (stat instanceof XNRepeatBlock) {
-				XNRepeatParameters rp = ((XNRepeatBlock)stat).params;
-				List<XNStatement> body = ((XNRepeatBlock)stat).body;
-				List<XNStatement> lastlyBody = ((XNRepeatBlock)stat).lastlyBody;
-				if (rp instanceof XNRepeatForParameters) {
-					XNExpression countExpr = ((XNRepeatForParameters)rp).count;
-					XOMVariant countVar = (countExpr == null) ? null : evaluateExpression(countExpr).asPrimitive(context);
-					boolean infinite;
-					int countInt;
-					if (countVar == null) {
-						infinite = true;
-						countInt = Integer.MAX_VALUE;
-					} else {
-						XOMNumber i = XOMNumberType.instance.makeInstanceFrom(context, countVar, true);
-						if (i.isZero() || i.isPos()) {
-							if (i.isInfinite()) {
-								infinite = true;
-								countInt = Integer.MAX_VALUE;
-							} else try {
-								infinite = false;
-								countInt = i.toBigDecimal().intValueExact();
-							} catch (Exception e) {
-								throw new XNScriptError("Expected non-negative integer here");
-							}
-						} else {
-							throw new XNScriptError("Expected non-negative integer here");
-						}
+			} while (!XOMBooleanType.instance.makeInstanceFrom(context, evaluateExpression(condition).asPrimitive(context)).toBoolean());
+			if (lastlyBody != null) return executeBlock(lastlyBody);
+			else return XNHandlerExit.ended();
+		}
+		else if (rp instanceof XNRepeatWithParameters) {
+			XOMVariant dest = evaluateExpression(((XNRepeatWithParameters)rp).identifier).asVariable(context, true);
+			XOMVariant start = evaluateExpression(((XNRepeatWithParameters)rp).startvalue).asPrimitive(context);
+			XOMVariant end = evaluateExpression(((XNRepeatWithParameters)rp).endvalue).asPrimitive(context);
+			XOMNumber step =
+				(((XNRepeatWithParameters)rp).stepvalue == null) ?
+						(((XNRepeatWithParameters)rp).toToken.image.toLowerCase().contains("down") ? XOMNumber.ONE.negate() : XOMNumber.ONE) :
+							XOMNumberType.instance.makeInstanceFrom(context, evaluateExpression(((XNRepeatWithParameters)rp).stepvalue).asPrimitive(context), true);
+			dest.putIntoContents(context, start);
+			while (true) {
+				try {
+					if (step.isPos()) {
+						if (compareVariants(dest,end) > 0) break;
 					}
-					while (infinite || countInt-- > 0) {
-						XNHandlerExit exit = executeStatements(body);
-						if (exit.status() == XNHandlerExitStatus.EXITED && "repeat".equalsIgnoreCase(exit.blockTypeValue())) {
-							return XNHandlerExit.ended();
-						} else if (exit.status() == XNHandlerExitStatus.NEXTED && "repeat".equalsIgnoreCase(exit.blockTypeValue())) {
-							// keep looping
-						} else if (exit.status() != XNHandlerExitStatus.ENDED) {
-							return exit;
-						}
+					else if (step.isNeg()) {
+						if (compareVariants(dest,end) < 0) break;
 					}
-					if (lastlyBody != null) return executeStatements(lastlyBody);
-					else return XNHandlerExit.ended();
-				}
-				else if (rp instanceof XNRepeatWhileParameters) {
-					XNExpression condition = ((XNRepeatWhileParameters)rp).condition;
-					while (XOMBooleanType.instance.makeInstanceFrom(context, evaluateExpression(condition).asPrimitive(context)).toBoolean()) {
-						XNHandlerExit exit = executeStatements(body);
-						if (exit.status() == XNHandlerExitStatus.EXITED && "repeat".equalsIgnoreCase(exit.blockTypeValue())) {
-							return XNHandlerExit.ended();
-						} else if (exit.status() == XNHandlerExitStatus.NEXTED && "repeat".equalsIgnoreCase(exit.blockTypeValue())) {
-							// keep looping
-						} else if (exit.status() != XNHandlerExitStatus.ENDED) {
-							return exit;
-						}
+					else if (step.isNaN()) {
+						break;
 					}
-					if (lastlyBody != null) return executeStatements(lastlyBody);
-					else return XNHandlerExit.ended();
+				} catch (NaNComparisonException nce) {
+					break;
 				}
-				else if (rp instanceof XNRepeatUntilParameters) {
-					XNExpression condition = ((XNRepeatUntilParameters)rp).condition;
-					do {
-						XNHandlerExit exit = executeStatements(body);
-						if (exit.status() == XNHandlerExitStatus.EXITED && "repeat".equalsIgnoreCase(exit.blockTypeValue())) {
-							return XNHandlerExit.ended();
-						} else if (exit.status() == XNHandlerExitStatus.NEXTED && "repeat".equalsIgnoreCase(exit.blockTypeValue())) {
-							// keep looping
-						} else if (exit.status() != XNHandlerExitStatus.ENDED) {
-							return exit;
-						}
-					} while (!XOMBooleanType.instance.makeInstanceFrom(context, evaluateExpression(condition).asPrimitive(context)).toBoolean());
-					if (lastlyBody != null) return executeStatements(lastlyBody);
-					else return XNHandlerExit.ended();
+				
+				XNHandlerExit exit = executeBlock(body);
+				if (exit.status() == XNHandlerExitStatus.EXITED && "repeat".equalsIgnoreCase(exit.blockTypeValue())) {
+					return XNHandlerExit.ended();
+				} else if (exit.status() == XNHandlerExitStatus.NEXTED && "repeat".equalsIgnoreCase(exit.blockTypeValue())) {
+					// keep looping
+				} else if (exit.status() != XNHandlerExitStatus.ENDED) {
+					return exit;
 				}
-				else if (rp instanceof XNRepeatWithParameters) {
-					XOMVariant dest = evaluateExpression(((XNRepeatWithParameters)rp).identifier).asVariable(context, true);
-					XOMVariant start = evaluateExpression(((XNRepeatWithParameters)rp).startvalue).asPrimitive(context);
-					XOMVariant end = evaluateExpression(((XNRepeatWithParameters)rp).endvalue).asPrimitive(context);
-					XOMNumber step =
-						(((XNRepeatWithParameters)rp).stepvalue == null) ?
-								(((XNRepeatWithParameters)rp).toToken.image.toLowerCase().contains("down") ? XOMNumber.ONE.negate() : XOMNumber.ONE) :
-									XOMNumberType.instance.makeInstanceFrom(context, evaluateExpression(((XNRepeatWithParameters)rp).stepvalue).asPrimitive(context), true);
-					dest.putIntoContents(context, start);
-					while (true) {
-						try {
-							if (step.isPos()) {
-								if (compareVariants(dest,end) > 0) break;
-							}
-							else if (step.isNeg()) {
-								if (compareVariants(dest,end) < 0) break;
-							}
-							else if (step.isNaN()) {
-								break;
-							}
-						} catch (NaNComparisonException nce) {
-							break;
-						}
-						
-						XNHandlerExit exit = executeStatements(body);
-						if (exit.status() == XNHandlerExitStatus.EXITED && "repeat".equalsIgnoreCase(exit.blockTypeValue())) {
-							return XNHandlerExit.ended();
-						} else if (exit.status() == XNHandlerExitStatus.NEXTED && "repeat".equalsIgnoreCase(exit.blockTypeValue())) {
-							// keep looping
-						} else if (exit.status() != XNHandlerExitStatus.ENDED) {
-							return exit;
-						}
-						
-						MathContext mc = context.getMathContext();
-						if (dest instanceof XOMNumber && step instanceof XOMNumber) {
-							XOMNumber destn = XOMNumberType.instance.makeInstanceFrom(context, dest, true);
-							XOMNumber stepn = XOMNumberType.instance.makeInstanceFrom(context, step, true);
-							dest.putIntoContents(context, destn.add(stepn, mc));
-						}
-						else if (XOMNumberType.instance.canMakeInstanceFrom(context, dest, true) && XOMNumberType.instance.canMakeInstanceFrom(context, step, true)) {
-							XOMNumber destn = XOMNumberType.instance.makeInstanceFrom(context, dest, true);
-							XOMNumber stepn = XOMNumberType.instance.makeInstanceFrom(context, step, true);
-							dest.putIntoContents(context, destn.add(stepn, mc));
-						}
-						else {
-							throw new XOMMorphError("number");
-						}
-					}
-					if (lastlyBody != null) return executeStatements(lastlyBody);
-					else return XNHandlerExit.ended();
+				
+				MathContext mc = context.getMathContext();
+				if (dest instanceof XOMNumber && step instanceof XOMNumber) {
+					XOMNumber destn = XOMNumberType.instance.makeInstanceFrom(context, dest, true);
+					XOMNumber stepn = XOMNumberType.instance.makeInstanceFrom(context, step, true);
+					dest.putIntoContents(context, destn.add(stepn, mc));
 				}
-				else if (rp instanceof XNRepeatForEachParameters) {
-					String name = ((XNRepeatForEachParameters)rp).identifier;
-					List<? extends XOMVariant> list = evaluateExpression(((XNRepeatForEachParameters)rp).list).toVariantList(context);
-					for (XOMVariant item : list) {
-						XOMVariant dest = new XOMVariable(context.getVariableMap(name), name);
-						dest.putIntoContents(context, item);
-						XNHandlerExit exit = executeStatements(body);
-						if (exit.status() == XNHandlerExitStatus.EXITED && "repeat".equalsIgnoreCase(exit.blockTypeValue())) {
-							return XNHandlerExit.ended();
-						} else if (exit.status() == XNHandlerExitStatus.NEXTED && "repeat".equalsIgnoreCase(exit.blockTypeValue())) {
-							// keep looping
-						} else if (exit.status() != XNHandlerExitStatus.ENDED) {
-							return exit;
-						}
-					}
-					if (lastlyBody != null) return executeStatements(lastlyBody);
-					else return XNHandlerExit.ended();
+				else if (XOMNumberType.instance.canMakeInstanceFrom(context, dest, true) && XOMNumberType.instance.canMakeInstanceFrom(context, step, true)) {
+					XOMNumber destn = XOMNumberType.instance.makeInstanceFrom(context, dest, true);
+					XOMNumber stepn = XOMNumberType.instance.makeInstanceFrom(context, step, true);
+					dest.putIntoContents(context, destn.add(stepn, mc));
 				}
 				else {
-					throw new XNScriptError("Can't understand this");
-				}
-			} else if (stat instanceof XNReturnStatement) {
-				if (((XNReturnStatement)stat).whatToReturn == null) {
-					return XNHandlerExit.returned();
-				} else {
-					return XNHandlerExit.returned(evaluateExpression(((XNReturnStatement)stat).whatToReturn).asValue(context));
-				}
-			} else if (stat instanceof XNSendStatement) {
-				String message = evaluateExpression(((XNSendStatement)stat).message).toTextString(context);
-				XOMVariant recip = evaluateExpression(((XNSendStatement)stat).recipient).asValue(context);
-				boolean reply = ((XNSendStatement)stat).withReply;
-				if (recip instanceof XNResponder) {
-					sendMessageString((XNResponder)recip, message);
-					if (!reply) context.setResult(null);
-					return XNHandlerExit.ended();
-				} else if (XOMInterpreterType.instance.canMakeInstanceFrom(context, recip)) {
-					if (!context.allow(XNSecurityKey.DO_AND_VALUE, "Code", message, "Language", "XION via Send"))
-						throw new XNScriptError("Security settings do not allow send");
-					sendMessageString(null, message);
-					if (!reply) context.setResult(null);
-					return XNHandlerExit.ended();
-				} else {
-					throw new XNScriptError("Can't send to this");
+					throw new XOMMorphError("number");
 				}
-			} else if (stat instanceof XNSwitchBlock) {
-				XOMVariant switchOn = evaluateExpression(((XNSwitchBlock)stat).switchOn).asPrimitive(context);
-				List<XNCaseBlock> possibleCases = new Vector<XNCaseBlock>();
-				List<XNCaseBlock> defaultCases = new Vector<XNCaseBlock>();
-				for (XNCaseBlock caseBlock : ((XNSwitchBlock)stat).cases) {
-					if (possibleCases.isEmpty()) {
-						if (caseBlock.caseValues != null && !caseBlock.caseValues.isEmpty()) {
-							for (XNExpression caseValue : caseBlock.caseValues) {
-								XOMVariant caseOf = evaluateExpression(caseValue).asPrimitive(context);
-								try { if (compareVariants(switchOn, caseOf) == 0) {
-									possibleCases.add(caseBlock);
-								}} catch (NaNComparisonException nce) {}
-							}
-						}
-					} else {
-						possibleCases.add(caseBlock);
-					}
-					if (defaultCases.isEmpty()) {
-						if (caseBlock.caseValues == null || caseBlock.caseValues.isEmpty()) {
-							defaultCases.add(caseBlock);
-						}
-					} else {
-						defaultCases.add(caseBlock);
-					}
-				}
-				if (possibleCases.isEmpty()) possibleCases = defaultCases;
-				for (XNCaseBlock caseOf : possibleCases) {
-					XNHandlerExit exit = executeStatements(caseOf.caseStatements);
-					if (exit.status() == XNHandlerExitStatus.EXITED && "switch".equalsIgnoreCase(exit.blockTypeValue())) {
+			}
+			if (lastlyBody != null) return executeBlock(lastlyBody);
+			else return XNHandlerExit.ended();
+		}
+		else if (rp instanceof XNRepeatForEachParameters) {
+			String name = ((XNRepeatForEachParameters)rp).identifier;
+			Iterator<? extends XOMVariant> items = evaluateExpression(((XNRepeatForEachParameters)rp).list).toVariantIterator(context);
+			try {
+				while (items.hasNext()) {
+					XOMVariant item = items.next();
+					XOMVariant dest = new XOMVariable(context.getVariableMap(name), name);
+					dest.putIntoContents(context, item);
+					XNHandlerExit exit = executeBlock(body);
+					if (exit.status() == XNHandlerExitStatus.EXITED && "repeat".equalsIgnoreCase(exit.blockTypeValue())) {
 						return XNHandlerExit.ended();
-					}
-					else if (exit.status() == XNHandlerExitStatus.NEXTED && "case".equalsIgnoreCase(exit.blockTypeValue())) {
-						continue;
-					}
-					else {
+					} else if (exit.status() == XNHandlerExitStatus.NEXTED && "repeat".equalsIgnoreCase(exit.blockTypeValue())) {
+						// keep looping
+					} else if (exit.status() != XNHandlerExitStatus.ENDED) {
 						return exit;
 					}
 				}
-				return XNHandlerExit.ended();
-			} else if (stat instanceof XNTellBlock) {
-				List<XNStatement> message = ((XNTellBlock)stat).messages;
-				XOMVariant recip = evaluateExpression(((XNTellBlock)stat).recipient).asValue(context);
-				if (recip instanceof XNResponder) {
-					sendMessage((XNResponder)recip, message);
-					return XNHandlerExit.ended();
-				} else if (XOMInterpreterType.instance.canMakeInstanceFrom(context, recip)) {
-					sendMessage(null, message);
-					return XNHandlerExit.ended();
-				} else {
-					throw new XNScriptError("Can't tell this");
-				}
-			} else if (stat instanceof XNThrowStatement) {
-				XNExpression err = ((XNThrowStatement)stat).whatToThrow;
-				throw new XNScriptError(evaluateExpression(err).toTextString(context));
-			} else if (stat instanceof XNTryBlock) {
-				XNHandlerExit exit = XNHandlerExit.ended();
-				try {
-					if (((XNTryBlock)stat).tryBlock != null) {
-						exit = executeStatements(((XNTryBlock)stat).tryBlock);
-						if (exit.status() == XNHandlerExitStatus.EXITED && "try".equalsIgnoreCase(exit.blockTypeValue())) {
-							exit = XNHandlerExit.ended();
-						}
-					}
-				} catch (XNScriptError err) {
-					if (((XNTryBlock)stat).catchBlock != null) {
-						context.getVariableMap(((XNTryBlock)stat).catchIdentifier).declareVariable(context, ((XNTryBlock)stat).catchIdentifier, XOMStringType.instance, new XOMString(err.getMessage()));
-						exit = executeStatements(((XNTryBlock)stat).catchBlock);
-						if (exit.status() == XNHandlerExitStatus.EXITED && "try".equalsIgnoreCase(exit.blockTypeValue())) {
-							exit = XNHandlerExit.ended();
-						}
-					}
-				} finally {
-					if (((XNTryBlock)stat).finallyBlock != null) {
-						exit = executeStatements(((XNTryBlock)stat).finallyBlock);
-						if (exit.status() == XNHandlerExitStatus.EXITED && "try".equalsIgnoreCase(exit.blockTypeValue())) {
-							exit = XNHandlerExit.ended();
-						}
-					}
-				}
-				return exit;
-			} else if (stat instanceof XNUseStatement) {
-				XNExpression cln = ((XNUseStatement)stat).className;
-				String[] classNames = evaluateExpression(cln).toTextString(context).split("[,:;]");
-				if (!context.allow(XNSecurityKey.MODULE_LOAD, "Modules", classNames.toString()))
-					throw new XNScriptError("Security settings do not allow use");
-				for (String className : classNames) {
+			} finally {
+				// an iterator that reads from a file it opened itself
+				// must let go of it however the loop is left
+				if (items instanceof Closeable) {
 					try {
-						Class<? extends XNModule> module = Class.forName(className).asSubclass(XNModule.class);
-						XNModule m = null;
-						try {
-							java.lang.reflect.Method in = module.getMethod("instance");
-							m = (XNModule)in.invoke(null);
-						} catch (Exception e) {
-							m = module.newInstance();
-						}
-						if (m != null) {
-							context.loadModule(m);
-						} else {
-							throw new XNScriptError("Can't load module "+className);
-						}
-					}
-					catch (ClassNotFoundException cnfe) {
-						throw new XNScriptError("Can't find module "+className);
-					}
-					catch (ClassCastException cce) {
-						throw new XNScriptError("Can't find module "+className);
-					}
-					catch (IllegalAccessException iae) {
-						throw new XNScriptError("Can't load module "+className);
-					}
-					catch (InstantiationException ie) {
-						throw new XNScriptError("Can't load module "+className);
+						((Closeable)items).close();
+					} catch (IOException e) {
+						// nothing more can be done
 					}
 				}
-				return XNHandlerExit.ended();
-			} else if (stat instanceof XNVariableDeclaration) {
-				XNVariableScope scope = ((XNVariableDeclaration)stat).scope;
-				for (XNVariableInitializer init : ((XNVariableDeclaration)stat).vars) {
-					String name = init.name;
-					XNDataType datatypeObj = init.datatype;
-					XNExpression valueExpr = init.value;
-					context.setVariableScope(name, scope);
-					if (context.getVariableMap(name).getVariable(context, name) == null) {
-						XOMDataType<? extends XOMVariant> datatype =
-							(datatypeObj == null) ?
-									XOMStringType.instance :
-										context.getDataType(datatypeObj.toNameString());
-						if (datatype == null) throw new XNScriptError("Unrecognized data type");
-						XOMVariant value =
-							(valueExpr == null) ?
-									XOMEmpty.EMPTY :
-										evaluateExpression(valueExpr).asPrimitive(context);
-						context.getVariableMap(name).declareVariable(context, name, datatype, value);
+			}
+			if (lastlyBody != null) return executeBlock(lastlyBody);
+			else return XNHandlerExit.ended();
+		}
+		else {
+			throw new XNScriptError("Can't understand this");
+		}
+	}
+	
+	private XNHandlerExit executeReturnStatement(XNReturnStatement stat) {
+		if (stat.whatToReturn == null) {
+			return XNHandlerExit.returned();
+		} else {
+			return XNHandlerExit.returned(evaluateExpression(stat.whatToReturn).asValue(context));
+		}
+	}
+	
+	private XNHandlerExit executeSendStatement(XNSendStatement stat) {
+		String message = evaluateExpression(stat.message).toTextString(context);
+		XOMVariant recip = evaluateExpression(stat.recipient).asValue(context);
+		boolean reply = stat.withReply;
+		if (recip instanceof XNResponder) {
+			sendMessageString((XNResponder)recip, message);
+			if (!reply) context.setResult(null);
+			return XNHandlerExit.ended();
+		} else if (XOMInterpreterType.instance.canMakeInstanceFrom(context, recip)) {
+			if (!context.allow(XNSecurityKey.DO_AND_VALUE, "Code", message, "Language", "XION via Send"))
+				throw new XNScriptError("Security settings do not allow send");
+			sendMessageString(null, message);
+			if (!reply) context.setResult(null);
+			return XNHandlerExit.ended();
+		} else {
+			throw new XNScriptError("Can't send to this");
+		}
+	}
+	
+	private XNHandlerExit executeSwitchBlock(XNSwitchBlock stat) {
+		XOMVariant switchOn = evaluateExpression(stat.switchOn).asPrimitive(context);
+		List<XNCaseBlock> possibleCases = new Vector<XNCaseBlock>();
+		List<XNCaseBlock> defaultCases = new Vector<XNCaseBlock>();
+		for (XNCaseBlock caseBlock : stat.cases) {
+			if (possibleCases.isEmpty()) {
+				if (caseBlock.caseValues != null && !caseBlock.caseValues.isEmpty()) {
+					for (XNExpression caseValue : caseBlock.caseValues) {
+						XOMVariant caseOf = evaluateExpression(caseValue).asPrimitive(context);
+						try { if (compareVariants(switchOn, caseOf) == 0) {
+							possibleCases.add(caseBlock);
+						}} catch (NaNComparisonException nce) {}
 					}
 				}
-				return XNHandlerExit.ended();
 			} else {
-				throw new XNScriptError("Can't understand this");
+				possibleCases.add(caseBlock);
+			}
+			if (defaultCases.isEmpty()) {
+				if (caseBlock.caseValues == null || caseBlock.caseValues.isEmpty()) {
+					defaultCases.add(caseBlock);
+				}
+			} else {
+				defaultCases.add(caseBlock);
+			}
+		}
+		if (possibleCases.isEmpty()) possibleCases = defaultCases;
+		for (XNCaseBlock caseOf : possibleCases) {
+			XNHandlerExit exit = executeBlock(caseOf.caseStatements);
+			if (exit.status() == XNHandlerExitStatus.EXITED && "switch".equalsIgnoreCase(exit.blockTypeValue())) {
+				return XNHandlerExit.ended();
+			}
+			else if (exit.status() == XNHandlerExitStatus.NEXTED && "case".equalsIgnoreCase(exit.blockTypeValue())) {
+				continue;
+			}
+			else {
+				return exit;
 			}
+		}
+		return XNHandlerExit.ended();
+	}
+	
+	private XNHandlerExit executeTellBlock(XNTellBlock stat) {
+		List<XNStatement> message = stat.messages;
+		XOMVariant recip = evaluateExpression(stat.recipient).asValue(context);
+		if (recip instanceof XNResponder) {
+			sendMessage((XNResponder)recip, message);
+			return XNHandlerExit.ended();
+		} else if (XOMInterpreterType.instance.canMakeInstanceFrom(context, recip)) {
+			sendMessage(null, message);
+			return XNHandlerExit.ended();
+		} else {
+			throw new XNScriptError("Can't tell this");
+		}
+	}
+	
+	private XNHandlerExit executeThrowStatement(XNThrowStatement stat) {
+		XNExpression err = stat.whatToThrow;
+		String message = evaluateExpression(err).toTextString(context);
+		return XNHandlerExit.thrown(XNScriptError.stackless(stat.getBeginLine(), stat.getBeginCol(), message));
+	}
+	
+	private XNHandlerExit executeTryBlock(XNTryBlock stat) {
+		XNHandlerExit exit;
+		try {
+			exit = executeTryAndCatchBlocks(stat);
 		} catch (XNScriptError err) {
-			err.setLineAndCol(stat.getBeginLine(), stat.getBeginCol());
-			throw err;
+			if (stat.finallyBlock == null) throw err;
+			exit = XNHandlerExit.thrown(err);
+		} catch (RuntimeException e) {
+			if (stat.finallyBlock != null) executeStatements(stat.finallyBlock);
+			throw e;
+		}
+		if (stat.finallyBlock != null) {
+			XNHandlerExit finallyExit = executeBlock(stat.finallyBlock);
+			if (finallyExit.status() == XNHandlerExitStatus.EXITED && "try".equalsIgnoreCase(finallyExit.blockTypeValue())) {
+				finallyExit = XNHandlerExit.ended();
+			}
+			// an error from the catch block still gets out unless the finally block throws its own
+			if (exit.status() != XNHandlerExitStatus.THROWN || finallyExit.status() == XNHandlerExitStatus.THROWN) {
+				exit = finallyExit;
+			}
+		}
+		return exit;
+	}
+	
+	private XNHandlerExit executeTryAndCatchBlocks(XNTryBlock stat) {
+		XNHandlerExit exit = XNHandlerExit.ended();
+		if (stat.tryBlock != null) {
+			try {
+				exit = executeBlock(stat.tryBlock);
+			} catch (XNScriptError err) {
+				exit = XNHandlerExit.thrown(err);
+			}
+			if (exit.status() == XNHandlerExitStatus.EXITED && "try".equalsIgnoreCase(exit.blockTypeValue())) {
+				exit = XNHandlerExit.ended();
+			}
+		}
+		if (exit.status() == XNHandlerExitStatus.THROWN) {
+			if (stat.catchBlock != null) {
+				context.getVariableMap(stat.catchIdentifier).declareVariable(context, stat.catchIdentifier, XOMStringType.instance, new XOMString(exit.thrownError().getMessage()));
+				exit = executeBlock(stat.catchBlock);
+				if (exit.status() == XNHandlerExitStatus.EXITED && "try".equalsIgnoreCase(exit.blockTypeValue())) {
+					exit = XNHandlerExit.ended();
+				}
+			} else {
+				exit = XNHandlerExit.ended();
+			}
+		}
+		return exit;
+	}
+	
+	private XNHandlerExit executeUseStatement(XNUseStatement stat) {
+		XNExpression cln = stat.className;
+		String[] classNames = evaluateExpression(cln).toTextString(context).split("[,:;]");
+		if (!context.allow(XNSecurityKey.MODULE_LOAD, "Modules", classNames.toString()))
+			throw new XNScriptError("Security settings do not allow use");
+		for (String className : classNames) {
+			try {
+				Class<? extends XNModule> module = Class.forName(className).asSubclass(XNModule.class);
+				XNModule m = null;
+				try {
+					java.lang.reflect.Method in = module.getMethod("instance");
+					m = (XNModule)in.invoke(null);
+				} catch (Exception e) {
+					m = module.newInstance();
+				}
+				if (m != null) {
+					context.loadModule(m);
+				} else {
+					throw new XNScriptError("Can't load module "+className);
+				}
+			}
+			catch (ClassNotFoundException cnfe) {
+				throw new XNScriptError("Can't find module "+className);
+			}
+			catch (ClassCastException cce) {
+				throw new XNScriptError("Can't find module "+className);
+			}
+			catch (IllegalAccessException iae) {
+				throw new XNScriptError("Can't load module "+className);
+			}
+			catch (InstantiationException ie) {
+				throw new XNScriptError("Can't load module "+className);
+			}
 		}
+		return XNHandlerExit.ended();
+	}
+	
+	private XNHandlerExit executeVariableDeclaration(XNVariableDeclaration stat) {
+		XNVariableScope scope = stat.scope;
+		for (XNVariableInitializer init : stat.vars) {
+			String name = init.name;
+			XNDataType datatypeObj = init.datatype;
+			XNExpression valueExpr = init.value;
+			context.setVariableScope(name, scope);
+			if (context.getVariableMap(name).getVariable(context, name) == null) {
+				XOMDataType<? extends XOMVariant> datatype =
+					(datatypeObj == null) ?
+							XOMStringType.instance :
+								context.getDataType(datatypeObj.toNameString());
+				if (datatype == null) throw new XNScriptError("Unrecognized data type");
+				XOMVariant value =
+					(valueExpr == null) ?
+							XOMEmpty.EMPTY :
+								evaluateExpression(valueExpr).asPrimitive(context);
+				context.getVariableMap(name).declareVariable(context, name, datatype, value);
+			}
+		}
+		return XNHandlerExit.ended();
 	}
 	
 	private void executeCommand(String commandName, List<XNExpression> parameters) {
 		XNResponder resp = context.getFirstResponder();
 		
 		// try local declarations first
-		if (context.getCurrentStackFrame() != null) {
+		if (context.getCurrentStackFrame() != null && context.getCurrentStackFrame().hasLocalUserCommands()) {
 			XNMessageHandler mh = context.getCurrentStackFrame().getLocalUserCommand(commandName);
 			if (mh != null) {
 				List<XOMVariant> paramValues = new Vector<XOMVariant>();
@@ -1930,6 +2206,7 @@ public class XNInterpreter {
 	
 	private XNHandlerExit executeUserCommand(XNMessageHandler handler, List<XOMVariant> parameters) {
 		XNStackFrame f = new XNStackFrame(handler.name, parameters);
+		f.setLocalSlots(handler.slotScope, handler.slotCount);
 		if (handler.parameters != null) {
 			for (int i = 0; i < handler.parameters.size(); i++) {
 				XNHandlerParameter param = handler.parameters.get(i);
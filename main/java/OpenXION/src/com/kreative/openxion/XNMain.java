@@ -31,6 +31,7 @@ import java.io.*;
 import java.util.*;
 
 import com.kreative.openxion.ast.XNStringExpression;
+import com.kreative.openxion.io.XOMFileIOManager;
 import com.kreative.openxion.util.XIONUtil;
 import com.kreative.openxion.xom.inst.XOMBoolean;
 import com.kreative.openxion.xom.inst.XOMDictionary;
@@ -52,6 +53,14 @@ public class XNMain {
 	
 	public static void main(String[] args) {
 		final XNStdInOutUI ui = new XNStdInOutUI(true);
+		// buffer output that is going to a file or a pipe
+		ui.setBufferedOutput(!XNStdInOutUI.isOutputTerminal());
+		// write out whatever is still buffered even if the script dies
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			public void run() {
+				ui.flush();
+			}
+		});
 		final XNContext ctx = new XNContext(ui);
 		readEnviron(ctx);
 		ctx.loadModule(XNStandardModule.instance());
@@ -82,6 +91,7 @@ public class XNMain {
 					else if (arg.equals("-c")) lastOption = Option.STATEMENT;
 					else if (arg.equals("-m")) lastOption = Option.MODULE;
 					else if (arg.equals("-E")) lastOption = Option.TEXT_ENCODING;
+					else if (arg.equals("-F")) lastOption = Option.MAPPED_FILE_THRESHOLD;
 					else if (arg.equals("-D")) lastOption = Option.VARIABLE;
 					else if (arg.equals("-s")) lastOption = Option.SECURITY_PROFILE;
 					else if (arg.equals("-M")) lastOption = Option.MESSAGE_FILE;
@@ -104,6 +114,8 @@ public class XNMain {
 						}
 					}
 					else if (arg.equals("-W")) setCGIVariables(ctx);
+					else if (arg.equals("-b")) ui.setBufferedOutput(true);
+					else if (arg.equals("-u")) ui.setBufferedOutput(false);
 					else if (arg.equals("-p")) ui.setFancyPrompts(false);
 					else if (arg.equals("-P")) ui.setFancyPrompts(true);
 					else if (arg.equals("-r")) ctx.reset();
@@ -135,12 +147,14 @@ public class XNMain {
 								captureStream.println(se.getMessage() + " on line " + se.getLine() + " at character " + se.getCol());
 								if (stackTrace) se.printStackTrace();
 							} catch (Exception e) {
+								ui.flush();
 								e.printStackTrace();
 								System.exit(0);
 							}
 							
 							ctx.setUI(ui);
 							ByteArrayInputStream captureStream2 = new ByteArrayInputStream(capture.toByteArray());
+							ui.flush();
 							try {
 								Process p = Runtime.getRuntime().exec(new String[]{"diff", new File(arg+".out").getAbsolutePath(), "-"});
 								byte[] stuff = new byte[8192];
@@ -161,9 +175,11 @@ public class XNMain {
 							try {
 								interp.executeScriptFile(new File(arg), textEncoding);
 							} catch (IOException e) {
+								ui.flush();
 								System.err.println("Could not read script file: "+arg);
 								if (stackTrace) e.printStackTrace();
 							} catch (XNScriptError se) {
+								ui.flush();
 								System.err.println(se.getMessage() + " on line " + se.getLine() + " at character " + se.getCol());
 								if (stackTrace) se.printStackTrace();
 							}
@@ -174,6 +190,7 @@ public class XNMain {
 						try {
 							ui.println(interp.evaluateExpressionString(arg).toTextString(ctx));
 						} catch (XNScriptError se) {
+							ui.flush();
 							System.err.println(se.getMessage());
 							if (stackTrace) se.printStackTrace();
 						}
@@ -183,6 +200,7 @@ public class XNMain {
 						try {
 							interp.executeScriptString(arg);
 						} catch (XNScriptError se) {
+							ui.flush();
 							System.err.println(se.getMessage());
 							if (stackTrace) se.printStackTrace();
 						}
@@ -201,6 +219,13 @@ public class XNMain {
 					case TEXT_ENCODING:
 						textEncoding = arg;
 						break;
+					case MAPPED_FILE_THRESHOLD:
+						try {
+							XOMFileIOManager.instance.setMappedFileThreshold(Long.parseLong(arg));
+						} catch (NumberFormatException nfe) {
+							System.err.println("Can't understand -F option: "+arg);
+						}
+						break;
 					case VARIABLE:
 						String[] ss = arg.split("=", 2);
 						if (ss.length == 2) {
@@ -310,6 +335,7 @@ public class XNMain {
 			}
 		}
 		writeEnviron(ctx);
+		ui.flush();
 		System.exit(0);
 	}
 	
@@ -319,6 +345,7 @@ public class XNMain {
 		STATEMENT,
 		MODULE,
 		TEXT_ENCODING,
+		MAPPED_FILE_THRESHOLD,
 		VARIABLE,
 		SECURITY_PROFILE,
 		MESSAGE_FILE
@@ -496,10 +523,14 @@ public class XNMain {
 	private static void help(XNStdInOutUI ui) {
 		// // // // <---10---><---20---><---30---><---40---><---50---><---60---><---70---><---80--->
 		ui.println("Usage: xion [options] [--] [programfile] [programfile] [...]");
+		ui.println("  -b                  buffer output, flushing it only before input, every");
+		ui.println("                      second, and at exit (default if not on a terminal)");
 		ui.println("  -c statement        execute the specified statements");
 		ui.println("  -D var=value        set the value of a global variable");
 		ui.println("  -E encoding         specify the text encoding used to read script files");
 		ui.println("  -e expression       evaluate and print the specified expression");
+		ui.println("  -F size             read files of at least size bytes through memory mapping");
+		ui.println("                      until they are first written");
 		ui.println("  -f programfile      execute the specified script file");
 		ui.println("  -h, --help          print help screen");
 		ui.println("  -i                  start an interactive shell");
@@ -516,6 +547,7 @@ public class XNMain {
 		ui.println("  -T                  instead of printing output, print file name and");
 		ui.println("                      diff of output against .out file (testing mode)");
 		ui.println("                      (-s allow recommended with this option)");
+		ui.println("  -u                  flush output after every line (default on a terminal)");
 		ui.println("  -V                  import environment variables as XION globals");
 		ui.println("  -v, --version       print OpenXION, Java, and OS version numbers");
 		ui.println("  -W                  import CGI environment variables as XION globals");
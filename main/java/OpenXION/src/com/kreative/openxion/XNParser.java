@@ -2788,6 +2788,7 @@ public class XNParser {
 		while (!lookToken(1).isEOF()) {
 			scr.add(getStatement(null, true));
 		}
+		new XNResolver(context).resolve(scr);
 		return scr;
 	}
 	
@@ -0,0 +1,124 @@
+/*
+ * Copyright &copy; 2026 Rebecca G. Bettencourt / Kreative Software
+ * <p>
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * <a href="http://www.mozilla.org/MPL/">http://www.mozilla.org/MPL/</a>
+ * <p>
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ * <p>
+ * Alternatively, the contents of this file may be used under the terms
+ * of the GNU Lesser General Public License (the "LGPL License"), in which
+ * case the provisions of LGPL License are applicable instead of those
+ * above. If you wish to allow use of your version of this file only
+ * under the terms of the LGPL License and not to allow others to use
+ * your version of this file under the MPL, indicate your decision by
+ * deleting the provisions above and replace them with the notice and
+ * other provisions required by the LGPL License. If you do not delete
+ * the provisions above, a recipient may use your version of this file
+ * under either the MPL or the LGPL License.
+ * @since OpenXION 1.4
+ * @author Rebecca G. Bettencourt, Kreative Software
+ */
+
+package com.kreative.openxion;
+
+import com.kreative.openxion.math.XOMNumberMath;
+import com.kreative.openxion.xom.XOMVariant;
+
+/**
+ * XNResolvedValue is the value of an expression computed ahead of time
+ * by XNResolver, along with the conditions under which it is still valid.
+ * @since OpenXION 1.4
+ * @author Rebecca G. Bettencourt, Kreative Software
+ */
+public final class XNResolvedValue {
+	private static final String[] NO_NAMES = new String[0];
+	private static final XOMVariant[] NO_VALUES = new XOMVariant[0];
+	
+	private final XOMVariant value;
+	private final String textEncoding;
+	private final String[] constantNames;
+	private final XOMVariant[] constantValues;
+	private final boolean longMath;
+	private final boolean longDivision;
+	
+	private XNResolvedValue(XOMVariant value, String textEncoding, String[] constantNames, XOMVariant[] constantValues, boolean longMath, boolean longDivision) {
+		this.value = value;
+		this.textEncoding = textEncoding;
+		this.constantNames = constantNames;
+		this.constantValues = constantValues;
+		this.longMath = longMath;
+		this.longDivision = longDivision;
+	}
+	
+	/**
+	 * A value that does not depend on the context, such as a number literal.
+	 */
+	public static XNResolvedValue of(XOMVariant value) {
+		return new XNResolvedValue(value, null, NO_NAMES, NO_VALUES, false, false);
+	}
+	
+	/**
+	 * A value that is only valid while the text encoding stays the same,
+	 * such as a string literal.
+	 */
+	public static XNResolvedValue ofTextEncoding(XOMVariant value, String textEncoding) {
+		return new XNResolvedValue(value, textEncoding, NO_NAMES, NO_VALUES, false, false);
+	}
+	
+	/**
+	 * A value that is only valid while the named constant still has
+	 * the same value, i.e. has not been redefined by the script or a module.
+	 */
+	public static XNResolvedValue ofConstant(String name, XOMVariant value) {
+		return new XNResolvedValue(value, null, new String[]{name}, new XOMVariant[]{value}, false, false);
+	}
+	
+	/**
+	 * A value computed from the values of other resolved expressions.
+	 * It is valid whenever all of them are valid.
+	 * @param longMath true if the value was computed using long arithmetic
+	 * and is only valid while the precision allows it.
+	 * @param longDivision true if that arithmetic was div or mod.
+	 */
+	public static XNResolvedValue derive(XOMVariant value, boolean longMath, boolean longDivision, XNResolvedValue... operands) {
+		String textEncoding = null;
+		int n = 0;
+		for (XNResolvedValue op : operands) {
+			if (op.textEncoding != null) {
+				if (textEncoding == null) textEncoding = op.textEncoding;
+				else if (!textEncoding.equals(op.textEncoding)) return null;
+			}
+			n += op.constantNames.length;
+			longMath |= op.longMath;
+			longDivision |= op.longDivision;
+		}
+		String[] constantNames = new String[n];
+		XOMVariant[] constantValues = new XOMVariant[n];
+		n = 0;
+		for (XNResolvedValue op : operands) {
+			System.arraycopy(op.constantNames, 0, constantNames, n, op.constantNames.length);
+			System.arraycopy(op.constantValues, 0, constantValues, n, op.constantValues.length);
+			n += op.constantNames.length;
+		}
+		return new XNResolvedValue(value, textEncoding, constantNames, constantValues, longMath, longDivision);
+	}
+	
+	public XOMVariant getValue() {
+		return value;
+	}
+	
+	public boolean isValid(XNContext ctx) {
+		if (textEncoding != null && !textEncoding.equals(ctx.getTextEncoding())) return false;
+		for (int i = 0; i < constantNames.length; i++) {
+			if (ctx.getConstant(constantNames[i]) != constantValues[i]) return false;
+		}
+		if (longMath && !XOMNumberMath.canUseLongMath(ctx.getMathContext(), longDivision)) return false;
+		return true;
+	}
+}
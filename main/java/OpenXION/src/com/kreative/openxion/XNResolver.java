@@ -0,0 +1,234 @@
+/*
+ * Copyright &copy; 2026 Rebecca G. Bettencourt / Kreative Software
+ * <p>
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * <a href="http://www.mozilla.org/MPL/">http://www.mozilla.org/MPL/</a>
+ * <p>
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ * <p>
+ * Alternatively, the contents of this file may be used under the terms
+ * of the GNU Lesser General Public License (the "LGPL License"), in which
+ * case the provisions of LGPL License are applicable instead of those
+ * above. If you wish to allow use of your version of this file only
+ * under the terms of the LGPL License and not to allow others to use
+ * your version of this file under the MPL, indicate your decision by
+ * deleting the provisions above and replace them with the notice and
+ * other provisions required by the LGPL License. If you do not delete
+ * the provisions above, a recipient may use your version of this file
+ * under either the MPL or the LGPL License.
+ * @since OpenXION 1.4
+ * @author Rebecca G. Bettencourt, Kreative Software
+ */
+
+
+package com.kreative.openxion;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import com.kreative.openxion.ast.XNBinaryExpression;
+import com.kreative.openxion.ast.XNConstantExpression;
+import com.kreative.openxion.ast.XNExpression;
+import com.kreative.openxion.ast.XNFunctionHandler;
+import com.kreative.openxion.ast.XNMessageHandler;
+import com.kreative.openxion.ast.XNNumberExpression;
+import com.kreative.openxion.ast.XNStatement;
+import com.kreative.openxion.ast.XNStringExpression;
+import com.kreative.openxion.ast.XNUnaryExpression;
+import com.kreative.openxion.ast.XNVariableExpression;
+import com.kreative.openxion.math.XOMNumberMath;
+import com.kreative.openxion.util.XIONUtil;
+import com.kreative.openxion.xom.XOMVariant;
+import com.kreative.openxion.xom.inst.XOMEmpty;
+import com.kreative.openxion.xom.inst.XOMInteger;
+import com.kreative.openxion.xom.inst.XOMNumber;
+import com.kreative.openxion.xom.inst.XOMString;
+
+/**
+ * XNResolver walks a parsed script and computes ahead of time the values of
+ * literals and of simple operations on them, so that the interpreter does not
+ * have to parse the same number or unquote the same string every time it
+ * evaluates the expression. Each value carries the conditions under which it
+ * was computed (text encoding, constant values, precision) and is ignored by
+ * the interpreter whenever those no longer hold.
+ * <p>
+ * XNResolver also numbers the variable names used in each handler, so that
+ * XNStackFrame can keep the handler's local variables in an array.
+ * @since OpenXION 1.4
+ * @author Rebecca G. Bettencourt, Kreative Software
+ */
+public class XNResolver {
+	private static final AtomicInteger nextSlotScope = new AtomicInteger();
+	
+	private XNContext context;
+	private Map<Object,Object> visited;
+	private Map<String,Integer> slots;
+	private int slotScope;
+	
+	public XNResolver(XNContext context) {
+		this.context = context;
+		this.visited = new IdentityHashMap<Object,Object>();
+	}
+	
+	public void resolve(List<XNStatement> script) {
+		resolveIn(script);
+	}
+	
+	public XNResolvedValue resolve(XNExpression expr) {
+		resolveIn(expr);
+		return expr.resolved;
+	}
+	
+	private void resolveIn(Object o) {
+		if (o == null || o instanceof XNToken) return;
+		if (visited.put(o, o) != null) return;
+		
+		if (o instanceof XNMessageHandler || o instanceof XNFunctionHandler) {
+			Map<String,Integer> outerSlots = slots;
+			int outerSlotScope = slotScope;
+			slots = new HashMap<String,Integer>();
+			slotScope = nextSlotScope.incrementAndGet();
+			resolveFields(o);
+			if (o instanceof XNMessageHandler) {
+				((XNMessageHandler)o).slotScope = slotScope;
+				((XNMessageHandler)o).slotCount = slots.size();
+			} else {
+				((XNFunctionHandler)o).slotScope = slotScope;
+				((XNFunctionHandler)o).slotCount = slots.size();
+			}
+			slots = outerSlots;
+			slotScope = outerSlotScope;
+		} else if (o instanceof Object[]) {
+			for (Object oo : (Object[])o) {
+				resolveIn(oo);
+			}
+		} else if (o instanceof Collection) {
+			for (Object oo : (Collection<?>)o) {
+				resolveIn(oo);
+			}
+		} else if (o instanceof Map) {
+			for (Object oo : ((Map<?,?>)o).values()) {
+				resolveIn(oo);
+			}
+		} else {
+			resolveFields(o);
+			if (o instanceof XNVariableExpression && slots != null) {
+				XNVariableExpression ve = (XNVariableExpression)o;
+				String name = ve.varname.image;
+				Integer slot = slots.get(name);
+				if (slot == null) {
+					slot = slots.size() + 1;
+					slots.put(name, slot);
+				}
+				ve.slotScope = slotScope;
+				ve.slotIndex = slot;
+			}
+			if (o instanceof XNExpression) {
+				XNExpression expr = (XNExpression)o;
+				expr.resolved = resolveExpression(expr);
+			}
+		}
+	}
+	
+	private void resolveFields(Object o) {
+		Class<?> c = o.getClass();
+		while (c.getSimpleName().startsWith("XN")) {
+			Field[] flds = c.getDeclaredFields();
+			for (Field fld : flds) {
+				if (Modifier.isStatic(fld.getModifiers())) continue;
+				else if (!Modifier.isPublic(fld.getModifiers())) continue;
+				else try {
+					fld.setAccessible(true);
+					resolveIn(fld.get(o));
+				} catch (IllegalAccessException iae) {}
+			}
+			c = c.getSuperclass();
+		}
+	}
+	
+	private XNResolvedValue resolveExpression(XNExpression expr) {
+		if (expr instanceof XNStringExpression) {
+			String textEncoding = context.getTextEncoding();
+			String theString = XIONUtil.unquote(((XNStringExpression)expr).literal.image, textEncoding);
+			return XNResolvedValue.ofTextEncoding(new XOMString(theString), textEncoding);
+		}
+		else if (expr instanceof XNNumberExpression) {
+			return XNResolvedValue.of(XNInterpreter.evaluateNumberLiteral(((XNNumberExpression)expr).literal.image));
+		}
+		else if (expr instanceof XNConstantExpression) {
+			String constName = ((XNConstantExpression)expr).constant.image;
+			XOMVariant theConstant = context.getConstant(constName);
+			if (isFoldable(theConstant)) return XNResolvedValue.ofConstant(constName, theConstant);
+			else return null;
+		}
+		else if (expr instanceof XNUnaryExpression) {
+			XNUnaryExpression ue = (XNUnaryExpression)expr;
+			if (ue.argument == null || ue.argument.resolved == null) return null;
+			XOMVariant av = ue.argument.resolved.getValue();
+			switch (ue.operator) {
+			case UNARY_SUBTRACT:
+				if (av instanceof XOMInteger) return XNResolvedValue.derive(((XOMInteger)av).negate(), false, false, ue.argument.resolved);
+				if (av instanceof XOMNumber) return XNResolvedValue.derive(((XOMNumber)av).negate(), false, false, ue.argument.resolved);
+				return null;
+			default:
+				return null;
+			}
+		}
+		else if (expr instanceof XNBinaryExpression) {
+			XNBinaryExpression be = (XNBinaryExpression)expr;
+			if (be.left == null || be.left.resolved == null) return null;
+			if (be.right == null || be.right.resolved == null) return null;
+			XOMVariant av = be.left.resolved.getValue();
+			XOMVariant bv = be.right.resolved.getValue();
+			XOMVariant rv;
+			switch (be.operator) {
+			case STR_CONCAT:
+				if (!(isText(av) && isText(bv))) return null;
+				rv = new XOMString(av.toTextString(context) + bv.toTextString(context));
+				return XNResolvedValue.derive(rv, false, false, be.left.resolved, be.right.resolved);
+			case STR_CONCAT_SPACE:
+				if (!(isText(av) && isText(bv))) return null;
+				rv = new XOMString(av.toTextString(context) + " " + bv.toTextString(context));
+				return XNResolvedValue.derive(rv, false, false, be.left.resolved, be.right.resolved);
+			case ADD:
+				if ((rv = XOMNumberMath.longAdd(context, av, bv)) == null) return null;
+				return XNResolvedValue.derive(rv, true, false, be.left.resolved, be.right.resolved);
+			case SUBTRACT:
+				if ((rv = XOMNumberMath.longSubtract(context, av, bv)) == null) return null;
+				return XNResolvedValue.derive(rv, true, false, be.left.resolved, be.right.resolved);
+			case MULTIPLY:
+				if ((rv = XOMNumberMath.longMultiply(context, av, bv)) == null) return null;
+				return XNResolvedValue.derive(rv, true, false, be.left.resolved, be.right.resolved);
+			case DIV:
+				if ((rv = XOMNumberMath.longDiv(context, av, bv)) == null) return null;
+				return XNResolvedValue.derive(rv, true, true, be.left.resolved, be.right.resolved);
+			case MOD:
+				if ((rv = XOMNumberMath.longMod(context, av, bv)) == null) return null;
+				return XNResolvedValue.derive(rv, true, true, be.left.resolved, be.right.resolved);
+			default:
+				return null;
+			}
+		}
+		else {
+			return null;
+		}
+	}
+	
+	private static boolean isText(XOMVariant v) {
+		return (v instanceof XOMString) || (v instanceof XOMEmpty);
+	}
+	
+	private static boolean isFoldable(XOMVariant v) {
+		return (v instanceof XOMString) || (v instanceof XOMEmpty) || (v instanceof XOMInteger) || (v instanceof XOMNumber);
+	}
+}
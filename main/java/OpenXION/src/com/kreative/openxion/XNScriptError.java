@@ -95,6 +95,24 @@ public class XNScriptError extends RuntimeException {
 		this.originalError = oe;
 	}
 	
+	private XNScriptError(int line, int col, String s, boolean writableStackTrace) {
+		super(s, null, false, writableStackTrace);
+		this.line = line;
+		this.col = col;
+		this.originalError = null;
+	}
+	
+	/**
+	 * Creates an error that does not capture a Java stack trace.
+	 * This is meant for errors raised by the script itself, as by
+	 * a throw statement, where the line and column in the script
+	 * are all that matter and which a script may throw and catch
+	 * many times over.
+	 */
+	public static XNScriptError stackless(int line, int col, String s) {
+		return new XNScriptError(line, col, s, false);
+	}
+	
 	public int getLine() {
 		return line;
 	}
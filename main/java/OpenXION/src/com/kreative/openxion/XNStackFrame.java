@@ -33,6 +33,7 @@ import com.kreative.openxion.ast.XNVariableScope;
 import com.kreative.openxion.ast.XNMessageHandler;
 import com.kreative.openxion.ast.XNFunctionHandler;
 import com.kreative.openxion.util.XIONUtil;
+import com.kreative.openxion.xom.XOMVariable;
 import com.kreative.openxion.xom.XOMVariableMap;
 import com.kreative.openxion.xom.XOMVariant;
 
@@ -50,6 +51,8 @@ public class XNStackFrame implements Serializable, Cloneable {
 	private XOMVariableMap localVariables;
 	private Map<String, XNMessageHandler> localUserCommands;
 	private Map<String, XNFunctionHandler> localUserFunctions;
+	private transient int slotScope;
+	private transient XOMVariable[] slots;
 	
 	public XNStackFrame(String handlerName, List<? extends XOMVariant> parameters) {
 		this.handlerName = handlerName;
@@ -79,17 +82,46 @@ public class XNStackFrame implements Serializable, Cloneable {
 	public void setVariableScope(String name, XNVariableScope scope) {
 		name = XIONUtil.normalizeVarName(name);
 		variableScopes.put(name, scope);
+		if (slots != null) Arrays.fill(slots, null);
 	}
 	
 	public XOMVariableMap localVariables() {
 		return localVariables;
 	}
 	
+	/*
+	 * Local variables referenced by name in a handler are given slot numbers
+	 * by XNResolver. The first time a variable expression is evaluated in this
+	 * frame, the local variable it refers to is kept in its slot, so that later
+	 * evaluations do not have to look up its scope or its name. Slots are only
+	 * used for variables in localVariables, and are cleared whenever a scope
+	 * changes. Variables named any other way still go through the map.
+	 */
+	
+	public void setLocalSlots(int slotScope, int slotCount) {
+		this.slotScope = slotScope;
+		this.slots = (slotCount > 0) ? new XOMVariable[slotCount + 1] : null;
+	}
+	
+	public XOMVariable getLocalSlot(int slotScope, int slotIndex) {
+		if (slots == null || slotScope != this.slotScope || slotIndex >= slots.length) return null;
+		return slots[slotIndex];
+	}
+	
+	public void setLocalSlot(int slotScope, int slotIndex, XOMVariable v) {
+		if (slots == null || slotScope != this.slotScope || slotIndex >= slots.length) return;
+		slots[slotIndex] = v;
+	}
+	
 	public void defineLocalUserCommand(String name, XNMessageHandler handler) {
 		name = XIONUtil.normalizeVarName(name);
 		localUserCommands.put(name, handler);
 	}
 	
+	public boolean hasLocalUserCommands() {
+		return !localUserCommands.isEmpty();
+	}
+	
 	public XNMessageHandler getLocalUserCommand(String name) {
 		name = XIONUtil.normalizeVarName(name);
 		return localUserCommands.get(name);
@@ -100,6 +132,10 @@ public class XNStackFrame implements Serializable, Cloneable {
 		localUserFunctions.put(name, handler);
 	}
 	
+	public boolean hasLocalUserFunctions() {
+		return !localUserFunctions.isEmpty();
+	}
+	
 	public XNFunctionHandler getLocalUserFunction(String name) {
 		name = XIONUtil.normalizeVarName(name);
 		return localUserFunctions.get(name);
@@ -33,6 +33,7 @@ import java.math.*;
 import java.security.*;
 import java.text.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 import com.kreative.openxion.ast.*;
 import com.kreative.openxion.format.FormatString;
@@ -525,8 +526,11 @@ public class XNStandardModule extends XNModule {
 		functions.put("params",f_params);
 		functions.put("parent",f_parent);
 		functions.put("path",f_applicationordocumentpath);
+		functions.put("pfilter",f_pfilter);
 		functions.put("pick",f_npr);
+		functions.put("pmap",f_pmap);
 		functions.put("pow",f_pow);
+		functions.put("preduce",f_preduce);
 		functions.put("prod",f_prod);
 		functions.put("product",f_prod);
 		functions.put("progfile",f_applicationfile);
@@ -1566,7 +1570,7 @@ public class XNStandardModule extends XNModule {
 	private static long c_convert_0(long current, List<XNDateFormat> formats, String s, ParsePosition pos) {
 		if (formats.isEmpty()) return current;
 		for (XNDateFormat fmt : formats) {
-			Date parsedDate = fmt.toJavaDateFormat().parse(s,pos);
+			Date parsedDate = XNDateParser.parse(fmt, s, pos);
 			if (parsedDate != null) {
 				if (fmt.name().toLowerCase().endsWith("time")) {
 					return ((current / MS_PER_DAY) * MS_PER_DAY) + (parsedDate.getTime() % MS_PER_DAY);
@@ -1586,7 +1590,11 @@ public class XNStandardModule extends XNModule {
 			MathContext mc = ctx.getMathContext();
 			XOMVariant bv = interp.evaluateExpression(parameters.get(0)).asPrimitive(ctx);
 			XOMVariant av = interp.evaluateExpression(parameters.get(2)).asContainer(ctx, false);
-			if (av instanceof XOMComplex && bv instanceof XOMComplex) {
+			XOMNumber rn = XOMNumberMath.longAdd(ctx, av.asPrimitive(ctx), bv);
+			if (rn != null) {
+				av.putIntoContents(ctx, rn);
+			}
+			else if (av instanceof XOMComplex && bv instanceof XOMComplex) {
 				XOMComplex ac = XOMComplexType.instance.makeInstanceFrom(ctx, av, true);
 				XOMComplex bc = XOMComplexType.instance.makeInstanceFrom(ctx, bv, true);
 				av.putIntoContents(ctx, ac.add(bc, mc));
@@ -2193,7 +2201,11 @@ public class XNStandardModule extends XNModule {
 			MathContext mc = ctx.getMathContext();
 			XOMVariant av = interp.evaluateExpression(parameters.get(0)).asContainer(ctx, false);
 			XOMVariant bv = interp.evaluateExpression(parameters.get(2)).asPrimitive(ctx);
-			if (av instanceof XOMComplex && bv instanceof XOMComplex) {
+			XOMNumber rn = XOMNumberMath.longMultiply(ctx, av.asPrimitive(ctx), bv);
+			if (rn != null) {
+				av.putIntoContents(ctx, rn);
+			}
+			else if (av instanceof XOMComplex && bv instanceof XOMComplex) {
 				XOMComplex ac = XOMComplexType.instance.makeInstanceFrom(ctx, av, true);
 				XOMComplex bc = XOMComplexType.instance.makeInstanceFrom(ctx, bv, true);
 				av.putIntoContents(ctx, ac.multiply(bc, mc));
@@ -2275,7 +2287,11 @@ public class XNStandardModule extends XNModule {
 			MathContext mc = ctx.getMathContext();
 			XOMVariant bv = interp.evaluateExpression(parameters.get(0)).asPrimitive(ctx);
 			XOMVariant av = interp.evaluateExpression(parameters.get(2)).asContainer(ctx, false);
-			if (av instanceof XOMComplex && bv instanceof XOMComplex) {
+			XOMNumber rn = XOMNumberMath.longSubtract(ctx, av.asPrimitive(ctx), bv);
+			if (rn != null) {
+				av.putIntoContents(ctx, rn);
+			}
+			else if (av instanceof XOMComplex && bv instanceof XOMComplex) {
 				XOMComplex ac = XOMComplexType.instance.makeInstanceFrom(ctx, av, true);
 				XOMComplex bc = XOMComplexType.instance.makeInstanceFrom(ctx, bv, true);
 				av.putIntoContents(ctx, ac.subtract(bc, mc));
@@ -2382,8 +2398,8 @@ public class XNStandardModule extends XNModule {
 			current = c_convert_0(current, sf2, s, pos);
 			Date d = new Date(current);
 			String output = "";
-			if (!df1.isEmpty()) output += df1.get(df1.size()-1).toJavaDateFormat().format(d) + " ";
-			if (!df2.isEmpty()) output += df2.get(df2.size()-1).toJavaDateFormat().format(d) + " ";
+			if (!df1.isEmpty()) output += XNDateParser.getDateFormat(df1.get(df1.size()-1)).format(d) + " ";
+			if (!df2.isEmpty()) output += XNDateParser.getDateFormat(df2.get(df2.size()-1)).format(d) + " ";
 			
 			if (v.canPutContents(ctx)) {
 				v.putIntoContents(ctx, new XOMString(output.trim()));
@@ -2688,6 +2704,110 @@ public class XNStandardModule extends XNModule {
 		}
 	}
 	
+	private static List<XOMVariant> mapRange(XNInterpreter interp, String appliedFunctionName, XNModifier modifier, List<? extends XOMVariant> sourceList, int start, int end) {
+		List<XOMVariant> destList = new Vector<XOMVariant>(end - start);
+		for (int i = start; i < end; i++) {
+			XOMVariant destValue = interp.evaluateFunction(appliedFunctionName, modifier, null, sourceList.get(i));
+			destList.add(destValue);
+		}
+		return destList;
+	}
+	
+	private static List<XOMVariant> filterRange(XNContext ctx, XNInterpreter interp, String appliedFunctionName, XNModifier modifier, List<? extends XOMVariant> sourceList, int start, int end) {
+		List<XOMVariant> destList = new Vector<XOMVariant>();
+		for (int i = start; i < end; i++) {
+			XOMVariant sourceValue = sourceList.get(i);
+			XOMVariant destValue = interp.evaluateFunction(appliedFunctionName, modifier, null, sourceValue);
+			XOMBoolean destBoolean = XOMBooleanType.instance.makeInstanceFrom(ctx, destValue);
+			if (destBoolean.toBoolean()) destList.add(sourceValue);
+		}
+		return destList;
+	}
+	
+	private static XOMVariant reduceRange(XNInterpreter interp, String appliedFunctionName, XNModifier modifier, XOMVariant currentValue, List<? extends XOMVariant> sourceList, int start, int end) {
+		List<XOMVariant> appliedFunctionArguments = new Vector<XOMVariant>();
+		XNListExpression dummyExpression = new XNListExpression(new XNEmptyExpression(null, 0, 0));
+		for (int i = start; i < end; i++) {
+			appliedFunctionArguments.add(currentValue);
+			appliedFunctionArguments.add(sourceList.get(i));
+			currentValue = interp.evaluateFunction(appliedFunctionName, modifier, dummyExpression, new XOMList(appliedFunctionArguments));
+			appliedFunctionArguments.clear();
+		}
+		return currentValue;
+	}
+	
+	/*
+	 * pmap, pfilter, and preduce split their list into chunks and work on
+	 * the chunks at the same time in a ForkJoinPool, created the first time
+	 * it is needed and shared by every context using this module. Each chunk
+	 * is run in its own XNContext forked from the caller's. The applied
+	 * function sees global variables as they were when the call began,
+	 * but any changes it makes to them are thrown away when it returns,
+	 * and are never seen by the other chunks. Lists shorter than
+	 * PARALLEL_THRESHOLD are not worth the overhead and are processed
+	 * on the caller's context just as map, filter, and reduce would.
+	 */
+	
+	private static final int PARALLEL_THRESHOLD = 1024;
+	private static final int PARALLEL_MIN_CHUNK = 256;
+	private static ForkJoinPool parallelPool = null;
+	
+	private static synchronized ForkJoinPool parallelPool() {
+		if (parallelPool == null) {
+			parallelPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		}
+		return parallelPool;
+	}
+	
+	private static int parallelChunkCount(int size) {
+		int n = parallelPool().getParallelism() * 4;
+		return Math.max(1, Math.min(n, size / PARALLEL_MIN_CHUNK));
+	}
+	
+	private static abstract class ParallelChunk<T> extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		protected final XNContext ctx;
+		protected final List<? extends XOMVariant> list;
+		protected final int start;
+		protected final int end;
+		private T result;
+		private RuntimeException error;
+		public ParallelChunk(XNContext parent, List<? extends XOMVariant> list, int index, int count) {
+			// Fork here, on the caller's thread, while the parent is not in use.
+			this.ctx = parent.fork(true);
+			this.list = list;
+			this.start = (int)((long)list.size() * index / count);
+			this.end = (int)((long)list.size() * (index + 1) / count);
+		}
+		protected final void compute() {
+			try {
+				result = process(new XNInterpreter(ctx));
+			} catch (RuntimeException e) {
+				error = e;
+			}
+		}
+		protected abstract T process(XNInterpreter interp);
+	}
+	
+	private static <T> List<T> runParallel(final List<? extends ParallelChunk<T>> chunks) {
+		if (ForkJoinTask.inForkJoinPool()) {
+			ForkJoinTask.invokeAll(chunks);
+		} else {
+			parallelPool().invoke(new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+				protected void compute() {
+					invokeAll(chunks);
+				}
+			});
+		}
+		List<T> results = new ArrayList<T>(chunks.size());
+		for (ParallelChunk<T> chunk : chunks) {
+			if (chunk.error != null) throw chunk.error;
+			results.add(chunk.result);
+		}
+		return results;
+	}
+	
 	private static List<? extends XOMVariant> listParameter(XNContext ctx, String functionName, XOMVariant parameter, boolean primitive) {
 		List<? extends XOMVariant> l = (parameter == null) ? new Vector<XOMVariant>() : primitive ? parameter.toPrimitiveList(ctx) : parameter.toVariantList(ctx);
 		return l;
@@ -3793,15 +3913,9 @@ public class XNStandardModule extends XNModule {
 		public XOMVariant evaluateFunction(XNContext ctx, String functionName, XNModifier modifier, XOMVariant parameter) {
 			List<? extends XOMVariant> parameters = listParameter(ctx, functionName, parameter, 2, true);
 			List<? extends XOMVariant> sourceList = listParameter(ctx, functionName, parameters.get(0), true);
-			List<XOMVariant> destList = new Vector<XOMVariant>();
 			String appliedFunctionName = parameters.get(1).toTextString(ctx);
 			XNInterpreter interp = new XNInterpreter(ctx);
-			for (XOMVariant sourceValue : sourceList) {
-				XOMVariant destValue = interp.evaluateFunction(appliedFunctionName, modifier, null, sourceValue);
-				XOMBoolean destBoolean = XOMBooleanType.instance.makeInstanceFrom(ctx, destValue);
-				if (destBoolean.toBoolean()) destList.add(sourceValue);
-			}
-			return new XOMList(destList);
+			return new XOMList(filterRange(ctx, interp, appliedFunctionName, modifier, sourceList, 0, sourceList.size()));
 		}
 	};
 	
@@ -3844,7 +3958,7 @@ public class XNStandardModule extends XNModule {
 			} else {
 				String pattern = parameters.get(0).toTextString(ctx);
 				if (functionName.equals("'")) pattern = ctx.getMessage(pattern);
-				FormatString formatString = FormatString.compile(ctx, pattern);
+				FormatString formatString = ctx.getFormatString(pattern);
 				return new XOMString(formatString.format(ctx, parameters));
 			}
 		}
@@ -4417,14 +4531,9 @@ public class XNStandardModule extends XNModule {
 		public XOMVariant evaluateFunction(XNContext ctx, String functionName, XNModifier modifier, XOMVariant parameter) {
 			List<? extends XOMVariant> parameters = listParameter(ctx, functionName, parameter, 2, true);
 			List<? extends XOMVariant> sourceList = listParameter(ctx, functionName, parameters.get(0), true);
-			List<XOMVariant> destList = new Vector<XOMVariant>();
 			String appliedFunctionName = parameters.get(1).toTextString(ctx);
 			XNInterpreter interp = new XNInterpreter(ctx);
-			for (XOMVariant sourceValue : sourceList) {
-				XOMVariant destValue = interp.evaluateFunction(appliedFunctionName, modifier, null, sourceValue);
-				destList.add(destValue);
-			}
-			return new XOMList(destList);
+			return new XOMList(mapRange(interp, appliedFunctionName, modifier, sourceList, 0, sourceList.size()));
 		}
 	};
 	
@@ -4752,6 +4861,58 @@ public class XNStandardModule extends XNModule {
 		}
 	};
 	
+	private static final Function f_pfilter = new Function() {
+		public XOMVariant evaluateFunction(XNContext ctx, String functionName, XNModifier modifier, XOMVariant parameter) {
+			List<? extends XOMVariant> parameters = listParameter(ctx, functionName, parameter, 2, true);
+			List<? extends XOMVariant> sourceList = listParameter(ctx, functionName, parameters.get(0), true);
+			final String appliedFunctionName = parameters.get(1).toTextString(ctx);
+			final XNModifier appliedModifier = modifier;
+			if (sourceList.size() < PARALLEL_THRESHOLD) {
+				XNInterpreter interp = new XNInterpreter(ctx);
+				return new XOMList(filterRange(ctx, interp, appliedFunctionName, modifier, sourceList, 0, sourceList.size()));
+			}
+			List<ParallelChunk<List<XOMVariant>>> chunks = new ArrayList<ParallelChunk<List<XOMVariant>>>();
+			int n = parallelChunkCount(sourceList.size());
+			for (int i = 0; i < n; i++) {
+				chunks.add(new ParallelChunk<List<XOMVariant>>(ctx, sourceList, i, n) {
+					private static final long serialVersionUID = 1L;
+					protected List<XOMVariant> process(XNInterpreter interp) {
+						return filterRange(ctx, interp, appliedFunctionName, appliedModifier, list, start, end);
+					}
+				});
+			}
+			List<XOMVariant> destList = new Vector<XOMVariant>();
+			for (List<XOMVariant> result : runParallel(chunks)) destList.addAll(result);
+			return new XOMList(destList);
+		}
+	};
+	
+	private static final Function f_pmap = new Function() {
+		public XOMVariant evaluateFunction(XNContext ctx, String functionName, XNModifier modifier, XOMVariant parameter) {
+			List<? extends XOMVariant> parameters = listParameter(ctx, functionName, parameter, 2, true);
+			List<? extends XOMVariant> sourceList = listParameter(ctx, functionName, parameters.get(0), true);
+			final String appliedFunctionName = parameters.get(1).toTextString(ctx);
+			final XNModifier appliedModifier = modifier;
+			if (sourceList.size() < PARALLEL_THRESHOLD) {
+				XNInterpreter interp = new XNInterpreter(ctx);
+				return new XOMList(mapRange(interp, appliedFunctionName, modifier, sourceList, 0, sourceList.size()));
+			}
+			List<ParallelChunk<List<XOMVariant>>> chunks = new ArrayList<ParallelChunk<List<XOMVariant>>>();
+			int n = parallelChunkCount(sourceList.size());
+			for (int i = 0; i < n; i++) {
+				chunks.add(new ParallelChunk<List<XOMVariant>>(ctx, sourceList, i, n) {
+					private static final long serialVersionUID = 1L;
+					protected List<XOMVariant> process(XNInterpreter interp) {
+						return mapRange(interp, appliedFunctionName, appliedModifier, list, start, end);
+					}
+				});
+			}
+			List<XOMVariant> destList = new Vector<XOMVariant>(sourceList.size());
+			for (List<XOMVariant> result : runParallel(chunks)) destList.addAll(result);
+			return new XOMList(destList);
+		}
+	};
+	
 	private static final Function f_pow = new Function() {
 		public XOMVariant evaluateFunction(XNContext ctx, String functionName, XNModifier modifier, XOMVariant parameter) {
 			List<? extends XOMVariant> numbers = fpNumericListParameter(ctx, functionName, parameter);
@@ -4776,6 +4937,37 @@ public class XNStandardModule extends XNModule {
 		}
 	};
 	
+	private static final Function f_preduce = new Function() {
+		public XOMVariant evaluateFunction(XNContext ctx, String functionName, XNModifier modifier, XOMVariant parameter) {
+			List<? extends XOMVariant> parameters = listParameter(ctx, functionName, parameter, 2, 3, true);
+			List<? extends XOMVariant> sourceList = listParameter(ctx, functionName, parameters.get(0), true);
+			final XOMVariant initialValue = (parameters.size() > 2) ? parameters.get(2).asPrimitive(ctx) : XOMEmpty.EMPTY;
+			final String appliedFunctionName = parameters.get(1).toTextString(ctx);
+			final XNModifier appliedModifier = modifier;
+			XNInterpreter interp = new XNInterpreter(ctx);
+			if (sourceList.size() < PARALLEL_THRESHOLD) {
+				return reduceRange(interp, appliedFunctionName, modifier, initialValue, sourceList, 0, sourceList.size());
+			}
+			// Only the first chunk starts from the initial value; each of the others
+			// starts from its own first element. The results of the chunks are then
+			// combined in order, which gives the same answer as reduce as long as the
+			// applied function is associative.
+			List<ParallelChunk<XOMVariant>> chunks = new ArrayList<ParallelChunk<XOMVariant>>();
+			int n = parallelChunkCount(sourceList.size());
+			for (int i = 0; i < n; i++) {
+				chunks.add(new ParallelChunk<XOMVariant>(ctx, sourceList, i, n) {
+					private static final long serialVersionUID = 1L;
+					protected XOMVariant process(XNInterpreter interp) {
+						if (start == 0) return reduceRange(interp, appliedFunctionName, appliedModifier, initialValue, list, start, end);
+						else return reduceRange(interp, appliedFunctionName, appliedModifier, list.get(start), list, start + 1, end);
+					}
+				});
+			}
+			List<XOMVariant> results = runParallel(chunks);
+			return reduceRange(interp, appliedFunctionName, modifier, results.get(0), results, 1, results.size());
+		}
+	};
+	
 	private static final Function f_prod = new Function() {
 		public XOMVariant evaluateFunction(XNContext ctx, String functionName, XNModifier modifier, XOMVariant parameter) {
 			List<? extends XOMVariant> numbers = fpNumericListParameter(ctx, functionName, parameter);
@@ -4925,16 +5117,8 @@ public class XNStandardModule extends XNModule {
 			List<? extends XOMVariant> sourceList = listParameter(ctx, functionName, parameters.get(0), true);
 			XOMVariant currentValue = (parameters.size() > 2) ? parameters.get(2).asPrimitive(ctx) : XOMEmpty.EMPTY;
 			String appliedFunctionName = parameters.get(1).toTextString(ctx);
-			List<XOMVariant> appliedFunctionArguments = new Vector<XOMVariant>();
 			XNInterpreter interp = new XNInterpreter(ctx);
-			XNListExpression dummyExpression = new XNListExpression(new XNEmptyExpression(null, 0, 0));
-			for (XOMVariant sourceValue : sourceList) {
-				appliedFunctionArguments.add(currentValue);
-				appliedFunctionArguments.add(sourceValue);
-				currentValue = interp.evaluateFunction(appliedFunctionName, modifier, dummyExpression, new XOMList(appliedFunctionArguments));
-				appliedFunctionArguments.clear();
-			}
-			return currentValue;
+			return reduceRange(interp, appliedFunctionName, modifier, currentValue, sourceList, 0, sourceList.size());
 		}
 	};
 	
@@ -38,6 +38,9 @@ import java.util.*;
  * @author Rebecca G. Bettencourt, Kreative Software
  */
 public class XNStdInOutUI implements XNUI {
+	private static final int OUTPUT_BUFFER_SIZE = 65536;
+	private static final long OUTPUT_FLUSH_INTERVAL = 1000;
+	
 	private Class<?> terminalClass;
 	private Class<?> consoleReaderClass;
 	private Object consoleReaderObject;
@@ -50,6 +53,8 @@ public class XNStdInOutUI implements XNUI {
 	private Scanner in;
 	private PrintWriter out;
 	private boolean fancyPrompts;
+	private boolean bufferedOutput;
+	private Timer flushTimer;
 	
 	public XNStdInOutUI(boolean fancyPrompts) {
 		try {
@@ -78,11 +83,13 @@ public class XNStdInOutUI implements XNUI {
 			in = new Scanner(System.in);
 		}
 		try {
-			out = new PrintWriter(new OutputStreamWriter(System.out, "UTF-8"), true);
+			out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out, "UTF-8"), OUTPUT_BUFFER_SIZE));
 		} catch (UnsupportedEncodingException uee) {
-			out = new PrintWriter(new OutputStreamWriter(System.out), true);
+			out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), OUTPUT_BUFFER_SIZE));
 		}
 		this.fancyPrompts = fancyPrompts;
+		this.bufferedOutput = false;
+		this.flushTimer = null;
 	}
 	
 	public boolean fancyPrompts() {
@@ -93,16 +100,77 @@ public class XNStdInOutUI implements XNUI {
 		this.fancyPrompts = fancyPrompts;
 	}
 	
+	/**
+	 * Returns true if standard output is a terminal. System.console()
+	 * only tells this when standard input is also a terminal, so
+	 * otherwise, on systems with a Bourne shell, the shell is asked
+	 * to test the standard output it inherits from this process.
+	 * Elsewhere this returns false, and -u is needed to see output
+	 * on a terminal line by line when standard input is redirected.
+	 */
+	public static boolean isOutputTerminal() {
+		if (System.console() != null) return true;
+		if (File.separatorChar != '/') return false;
+		try {
+			ProcessBuilder pb = new ProcessBuilder("sh", "-c", "test -t 1");
+			pb.redirectOutput(ProcessBuilder.Redirect.INHERIT);
+			return pb.start().waitFor() == 0;
+		} catch (Exception e) {
+			return false;
+		}
+	}
+	
+	/**
+	 * Returns true if output is buffered instead of being flushed
+	 * after every line.
+	 */
+	public boolean bufferedOutput() {
+		return bufferedOutput;
+	}
+	
+	/**
+	 * Sets whether output is buffered instead of being flushed after
+	 * every line. Buffered output is still flushed before reading any
+	 * input, whenever the buffer fills up, once a second by a timer
+	 * thread, and when flush is called; it is meant for scripts run
+	 * non-interactively that print a lot of output.
+	 */
+	public void setBufferedOutput(boolean bufferedOutput) {
+		this.bufferedOutput = bufferedOutput;
+		if (bufferedOutput) {
+			if (flushTimer == null) {
+				flushTimer = new Timer("XNStdInOutUI output flush", true);
+				flushTimer.schedule(new TimerTask() {
+					public void run() {
+						out.flush();
+					}
+				}, OUTPUT_FLUSH_INTERVAL, OUTPUT_FLUSH_INTERVAL);
+			}
+		} else {
+			if (flushTimer != null) {
+				flushTimer.cancel();
+				flushTimer = null;
+			}
+			flush();
+		}
+	}
+	
+	public void flush() {
+		out.flush();
+	}
+	
 	void print(String s) {
 		out.print(s);
-		out.flush();
+		flush();
 	}
 	
 	void println(String s) {
 		out.println(s);
+		if (!bufferedOutput) out.flush();
 	}
 	
 	String getCommandLine() {
+		flush();
 		if (consoleReaderObject != null && consoleReaderReadlnPrompt != null && historyObject != null && historyAdd != null) {
 			try {
 				String line = (String)consoleReaderReadlnPrompt.invoke(consoleReaderObject, ">");
@@ -123,7 +191,7 @@ public class XNStdInOutUI implements XNUI {
 					historyAdd.invoke(historyObject, line);
 					return line;
 				} else {
-					out.println();
+					println("");
 					return null;
 				}
 			} catch (Exception e) {
@@ -148,7 +216,7 @@ public class XNStdInOutUI implements XNUI {
 				}
 				return line.trim();
 			} else {
-				out.println();
+				println("");
 				return null;
 			}
 		} else {
@@ -157,6 +225,7 @@ public class XNStdInOutUI implements XNUI {
 	}
 	
 	private String getLine() {
+		flush();
 		if (consoleReaderObject != null && consoleReaderReadlnPrompt != null) {
 			try {
 				return (String)consoleReaderReadlnPrompt.invoke(consoleReaderObject, "");
@@ -172,6 +241,7 @@ public class XNStdInOutUI implements XNUI {
 	}
 	
 	private String getPasswordLine() {
+		flush();
 		if (consoleReaderObject != null && consoleReaderReadlnPwprompt != null) {
 			try {
 				return (String)consoleReaderReadlnPwprompt.invoke(consoleReaderObject, "", Character.valueOf('*'));
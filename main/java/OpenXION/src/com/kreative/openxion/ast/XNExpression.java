@@ -28,10 +28,14 @@
 package com.kreative.openxion.ast;
 
 import java.io.Serializable;
+import com.kreative.openxion.XNResolvedValue;
 
 public abstract class XNExpression implements Serializable, Cloneable {
 	private static final long serialVersionUID = 1L;
 	
+	/** The value computed ahead of time by XNResolver, if any. */
+	public transient XNResolvedValue resolved;
+	
 	public abstract Object getSource();
 	public abstract int getBeginLine();
 	public abstract int getBeginCol();
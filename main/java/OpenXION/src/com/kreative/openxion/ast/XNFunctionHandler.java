@@ -38,6 +38,10 @@ public class XNFunctionHandler extends XNStatement {
 	public List<XNStatement> body;
 	public XNToken endFunctionToken;
 	
+	/** The number of local slots assigned by XNResolver, and their scope. */
+	public transient int slotScope;
+	public transient int slotCount;
+	
 	public int getFunctionLine() { if (functionToken == null) return 0; else return functionToken.beginLine; }
 	public int getFunctionCol() { if (functionToken == null) return 0; else return functionToken.beginColumn; }
 	public int getEndFunctionLine() { if (endFunctionToken == null) return 0; else return endFunctionToken.beginLine; }
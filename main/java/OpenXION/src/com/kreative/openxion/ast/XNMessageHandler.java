@@ -38,6 +38,10 @@ public class XNMessageHandler extends XNStatement {
 	public List<XNStatement> body;
 	public XNToken endMessageToken;
 	
+	/** The number of local slots assigned by XNResolver, and their scope. */
+	public transient int slotScope;
+	public transient int slotCount;
+	
 	public int getMessageLine() { if (messageToken == null) return 0; else return messageToken.beginLine; }
 	public int getMessageCol() { if (messageToken == null) return 0; else return messageToken.beginColumn; }
 	public int getEndMessageLine() { if (endMessageToken == null) return 0; else return endMessageToken.beginLine; }
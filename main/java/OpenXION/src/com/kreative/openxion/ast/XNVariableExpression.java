@@ -33,6 +33,10 @@ public class XNVariableExpression extends XNExpression {
 	private static final long serialVersionUID = 107L;
 	public XNToken varname;
 	
+	/** The handler and local slot assigned by XNResolver, or 0 if none. */
+	public transient int slotScope;
+	public transient int slotIndex;
+	
 	public XNVariableExpression(XNToken vn) {
 		this.varname = vn;
 	}
@@ -177,6 +177,7 @@ public class BitInputStream extends InputStream implements Closeable, DataInput
 	public BigInteger readInteger(int n) throws IOException {
 		if (n < 0) throw new IllegalArgumentException();
 		else if (n == 0) return BigInteger.ZERO;
+		else if (bitpos == 0 && ((n & 7) == 0)) return new BigInteger(readAlignedBytes(n, false));
 		else {
 			n--;
 			BigInteger i = (readBit() ? BigInteger.ONE.negate().shiftLeft(n) : BigInteger.ZERO);
@@ -193,24 +194,13 @@ public class BitInputStream extends InputStream implements Closeable, DataInput
 		else if (n == 0) return BigInteger.ZERO;
 		else if (bitpos != 0 || ((n & 7) != 0)) 
 			throw new IOException("Can't read little-endian values unless on a byte boundry with a byte-multiple width");
-		else {
-			int on = n;
-			int nb = (n >> 3) - 1;
-			BigInteger i = BigInteger.ZERO;
-			while (n > 0) {
-				n--;
-				if (readBit()) i = i.setBit((n & 7) | ((nb - (n >> 3)) << 3));
-			}
-			if (i.testBit(on-1)) {
-				i = i.xor(BigInteger.ONE.negate().shiftLeft(on));
-			}
-			return i;
-		}
+		else return new BigInteger(readAlignedBytes(n, true));
 	}
 	
 	public BigInteger readUnsignedInteger(int n) throws IOException {
 		if (n < 0) throw new IllegalArgumentException();
 		else if (n == 0) return BigInteger.ZERO;
+		else if (bitpos == 0 && ((n & 7) == 0)) return new BigInteger(1, readAlignedBytes(n, false));
 		else {
 			BigInteger i = BigInteger.ZERO;
 			while (n > 0) {
@@ -226,15 +216,26 @@ public class BitInputStream extends InputStream implements Closeable, DataInput
 		else if (n == 0) return BigInteger.ZERO;
 		else if (bitpos != 0 || ((n & 7) != 0)) 
 			throw new IOException("Can't read little-endian values unless on a byte boundry with a byte-multiple width");
-		else {
-			int nb = (n >> 3) - 1;
-			BigInteger i = BigInteger.ZERO;
-			while (n > 0) {
-				n--;
-				if (readBit()) i = i.setBit((n & 7) | ((nb - (n >> 3)) << 3));
+		else return new BigInteger(1, readAlignedBytes(n, true));
+	}
+	
+	/*
+	 * Fast path for integers that start on a byte boundary and span a whole
+	 * number of bytes: read them a byte at a time instead of a bit at a time.
+	 * Returns the bytes most significant first, as BigInteger expects.
+	 */
+	private byte[] readAlignedBytes(int n, boolean littleEndian) throws IOException {
+		byte[] b = new byte[n >> 3];
+		in.readFully(b);
+		bitsread += (long)n;
+		if (littleEndian) {
+			for (int i = 0, j = b.length-1; i < j; i++, j--) {
+				byte k = b[i];
+				b[i] = b[j];
+				b[j] = k;
 			}
-			return i;
 		}
+		return b;
 	}
 	
 	public Number readFloat(int n, MathContext mc) throws IOException {
@@ -105,6 +105,7 @@ public class BitOutputStream extends OutputStream implements Closeable, DataOutp
 	
 	public void writeInteger(int n, BigInteger i) throws IOException {
 		if (n < 0) throw new IllegalArgumentException();
+		else if (n > 0 && bitpos == 0 && ((n & 7) == 0)) writeAlignedBytes(n, i, false);
 		else while (n > 0) {
 			n--;
 			writeBit(i.testBit(n));
@@ -116,13 +117,23 @@ public class BitOutputStream extends OutputStream implements Closeable, DataOutp
 		else if (n == 0); // nothing
 		else if (bitpos != 0 || ((n & 7) != 0)) 
 			throw new IOException("Can't write little-endian values unless on a byte boundry with a byte-multiple width");
-		else {
-			int nb = (n >> 3) - 1;
-			while (n > 0) {
-				n--;
-				writeBit(i.testBit((n & 7) | ((nb - (n >> 3)) << 3)));
-			}
-		}
+		else writeAlignedBytes(n, i, true);
+	}
+	
+	/*
+	 * Fast path for integers that start on a byte boundary and span a whole
+	 * number of bytes: write the low n bits of the two's complement value
+	 * a byte at a time instead of a bit at a time.
+	 */
+	private void writeAlignedBytes(int n, BigInteger i, boolean littleEndian) throws IOException {
+		byte[] src = i.toByteArray();
+		byte[] b = new byte[n >> 3];
+		byte fill = (byte)((i.signum() < 0) ? -1 : 0);
+		for (int j = b.length-1, k = src.length-1; j >= 0; j--, k--) {
+			b[littleEndian ? (b.length-1-j) : j] = (k >= 0) ? src[k] : fill;
+		}
+		out.write(b);
+		bitswritten += (long)n;
 	}
 	
 	public void writeFloat(int n, MathContext mc, Number v) throws IOException {
@@ -158,6 +158,10 @@ public class DFBinaryExpression implements DFExpression {
 		}
 	}
 	
+	public boolean referencesFields() {
+		return left.referencesFields() || right.referencesFields();
+	}
+	
 	public String toString() {
 		StringBuffer s = new StringBuffer();
 		s.append("(");
@@ -48,6 +48,10 @@ public class DFConstantExpression implements DFExpression {
 		return value;
 	}
 	
+	public boolean referencesFields() {
+		return false;
+	}
+	
 	public String toString() {
 		return Integer.toString(value);
 	}
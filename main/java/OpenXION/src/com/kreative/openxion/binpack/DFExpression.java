@@ -33,4 +33,5 @@ public interface DFExpression {
 	public int evaluate();
 	public int evaluate(Map<?,?> fieldValues, BitInputStream in, long length);
 	public int evaluate(Map<?,?> fieldValues, BitOutputStream out);
+	public boolean referencesFields();
 }
@@ -83,6 +83,10 @@ public class DFFieldExpression implements DFExpression {
 		}
 	}
 	
+	public boolean referencesFields() {
+		return true;
+	}
+	
 	public String toString() {
 		StringBuffer s = new StringBuffer();
 		if (parent != null) {
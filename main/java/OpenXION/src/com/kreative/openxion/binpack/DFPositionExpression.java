@@ -42,6 +42,10 @@ public class DFPositionExpression implements DFExpression {
 		return (int)out.bytesWritten();
 	}
 	
+	public boolean referencesFields() {
+		return false;
+	}
+	
 	public String toString() {
 		return "position";
 	}
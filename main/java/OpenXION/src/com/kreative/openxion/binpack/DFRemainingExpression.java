@@ -42,6 +42,10 @@ public class DFRemainingExpression implements DFExpression {
 		return 0;
 	}
 	
+	public boolean referencesFields() {
+		return false;
+	}
+	
 	public String toString() {
 		return "remaining";
 	}
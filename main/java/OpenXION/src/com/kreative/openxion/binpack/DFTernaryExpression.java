@@ -102,6 +102,10 @@ public class DFTernaryExpression implements DFExpression {
 		}
 	}
 	
+	public boolean referencesFields() {
+		return det.referencesFields() || left.referencesFields() || right.referencesFields();
+	}
+	
 	public String toString() {
 		StringBuffer s = new StringBuffer();
 		s.append("(");
@@ -91,6 +91,10 @@ public class DFUnaryExpression implements DFExpression {
 		}
 	}
 	
+	public boolean referencesFields() {
+		return expr.referencesFields();
+	}
+	
 	public String toString() {
 		StringBuffer s = new StringBuffer();
 		s.append("(");
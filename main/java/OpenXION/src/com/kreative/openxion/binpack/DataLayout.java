@@ -0,0 +1,170 @@
+/*
+ * Copyright &copy; 2026 Rebecca G. Bettencourt / Kreative Software
+ * <p>
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * <a href="http://www.mozilla.org/MPL/">http://www.mozilla.org/MPL/</a>
+ * <p>
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ * <p>
+ * Alternatively, the contents of this file may be used under the terms
+ * of the GNU Lesser General Public License (the "LGPL License"), in which
+ * case the provisions of LGPL License are applicable instead of those
+ * above. If you wish to allow use of your version of this file only
+ * under the terms of the LGPL License and not to allow others to use
+ * your version of this file under the MPL, indicate your decision by
+ * deleting the provisions above and replace them with the notice and
+ * other provisions required by the LGPL License. If you do not delete
+ * the provisions above, a recipient may use your version of this file
+ * under either the MPL or the LGPL License.
+ * @since OpenXION 1.4
+ * @author Rebecca G. Bettencourt, Kreative Software
+ */
+
+package com.kreative.openxion.binpack;
+
+import java.util.*;
+
+/**
+ * A format that has been looked over once so that DataReader and DataWriter
+ * don't have to work the same things out again every time they use it.
+ * A DataLayout knows whether any count in the format refers to another
+ * field by name, and, when every field in the format has a fixed width
+ * that is a whole number of bytes, where each field starts, so that
+ * the fields can be read straight out of a byte array.
+ * A DataLayout never changes, so it may be shared and reused freely
+ * as long as the format it was made from is not changed.
+ */
+public class DataLayout {
+	private List<DataField> format;
+	private boolean referencesFields;
+	private int[] offsets;
+	private int[] widths;
+	private int[] counts;
+	private int length;
+	
+	public DataLayout(List<DataField> format) {
+		this.format = format;
+		this.referencesFields = referencesFields(format);
+		this.offsets = new int[format.size()];
+		this.widths = new int[format.size()];
+		this.counts = new int[format.size()];
+		this.length = -1;
+		long bits = 0;
+		for (int i = 0; i < format.size(); i++) {
+			DataField df = format.get(i);
+			int width = fixedWidth(df);
+			int count;
+			if (df.type() == DataType.ALIGN) {
+				if (df.count() != null) return;
+				if (df.size() > 1) bits += (df.size() - (bits % df.size())) % df.size();
+				width = 0;
+				count = -1;
+			} else if (df.count() == null) {
+				count = -1;
+			} else if (df.count() instanceof DFConstantExpression) {
+				count = Math.max(0, df.count().evaluate());
+			} else {
+				return;
+			}
+			if (width < 0 || (width & 7) != 0 || (bits & 7) != 0) return;
+			offsets[i] = (int)(bits >> 3);
+			widths[i] = (width >> 3);
+			counts[i] = count;
+			bits += (long)width * (long)((count < 0) ? 1 : count);
+			if (bits > Integer.MAX_VALUE) return;
+		}
+		if ((bits & 7) != 0) return;
+		this.length = (int)(bits >> 3);
+	}
+	
+	public List<DataField> format() {
+		return format;
+	}
+	
+	/**
+	 * Returns true if any count in this format, including those in nested
+	 * structures, refers to the value of another field by name. If not,
+	 * there is no need to keep track of field values by name while packing
+	 * or unpacking.
+	 */
+	public boolean referencesFields() {
+		return referencesFields;
+	}
+	
+	/**
+	 * Returns true if every field in this format has a fixed width
+	 * that is a whole number of bytes and starts on a byte boundary.
+	 */
+	public boolean isFixed() {
+		return (length >= 0);
+	}
+	
+	/**
+	 * Returns the total number of bytes taken up by this format
+	 * if it is fixed, or -1 if it is not.
+	 */
+	public int fixedLength() {
+		return length;
+	}
+	
+	int fieldOffset(int i) {
+		return offsets[i];
+	}
+	
+	int fieldWidth(int i) {
+		return widths[i];
+	}
+	
+	int fieldCount(int i) {
+		return counts[i];
+	}
+	
+	private static boolean referencesFields(List<DataField> format) {
+		for (DataField df : format) {
+			if (df.count() != null && df.count().referencesFields()) {
+				return true;
+			}
+			if (df.type() == DataType.STRUCT && df.elaboration() instanceof List) {
+				@SuppressWarnings("unchecked")
+				List<DataField> inner = (List<DataField>)df.elaboration();
+				if (referencesFields(inner)) return true;
+			}
+		}
+		return false;
+	}
+	
+	private static int fixedWidth(DataField df) {
+		switch (df.type()) {
+		case BOOLEAN:
+		case ENUM:
+		case BITFIELD:
+		case BINT:
+		case OINT:
+		case HINT:
+		case UINT:
+		case SINT:
+		case UFIXED:
+		case SFIXED:
+		case CHAR:
+		case DATE:
+		case COLOR:
+		case FILLER:
+		case MAGIC:
+			return df.size();
+		case FLOAT:
+		case COMPLEX:
+			if (!(df.elaboration() instanceof int[])) return -1;
+			int[] fpfmt = (int[])df.elaboration();
+			if (fpfmt[0] < 0 || fpfmt[1] < 0 || fpfmt[2] < 0) return -1;
+			int fpwidth = fpfmt[0] + fpfmt[1] + fpfmt[2];
+			return (df.type() == DataType.COMPLEX) ? (fpwidth * 2) : fpwidth;
+		default:
+			return -1;
+		}
+	}
+}
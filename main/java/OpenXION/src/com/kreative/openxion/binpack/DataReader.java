@@ -33,12 +33,21 @@ import java.util.*;
 
 public class DataReader {
 	private List<DataField> format;
+	private DataLayout layout;
 	
 	public DataReader(List<DataField> format) {
-		this.format = format;
+		this(new DataLayout(format));
+	}
+	
+	public DataReader(DataLayout layout) {
+		this.format = layout.format();
+		this.layout = layout;
 	}
 	
 	public List<Object> unpack(byte[] b) throws IOException {
+		if (layout.isFixed() && b.length >= layout.fixedLength()) {
+			return unpackFixed(b);
+		}
 		return unpack(new ByteArrayInputStream(b), b.length);
 	}
 	
@@ -51,7 +60,8 @@ public class DataReader {
 	}
 	
 	public List<Object> unpack(BitInputStream in, long length) throws IOException {
-		return unpack(format, new MapStack<String,Object>(), in, length, false).listed;
+		MapStack<String,Object> map = layout.referencesFields() ? new MapStack<String,Object>() : null;
+		return unpack(format, map, in, length, false).listed;
 	}
 	
 	public Map<String,Object> unpackNamed(byte[] b) throws IOException {
@@ -70,29 +80,178 @@ public class DataReader {
 		return unpack(format, new MapStack<String,Object>(), in, length, true).named;
 	}
 	
+	/**
+	 * Returns a RecordReader that unpacks records from the given stream
+	 * according to this format one at a time, as they are asked for,
+	 * until the end of the stream. If the stream ends partway through
+	 * a record, the rest of that record reads as zeros.
+	 */
+	public RecordReader records(InputStream in, long length) {
+		return new RecordReader(in, length);
+	}
+	
+	public class RecordReader implements Closeable {
+		private PushbackInputStream src;
+		private BitInputStream in;
+		private long length;
+		
+		private RecordReader(InputStream in, long length) {
+			this.src = new PushbackInputStream(in);
+			this.in = new BitInputStream(new ZeroPaddedInputStream(src));
+			this.length = length;
+		}
+		
+		public boolean hasNext() throws IOException {
+			int b = src.read();
+			if (b < 0) return false;
+			src.unread(b);
+			return true;
+		}
+		
+		public List<Object> next() throws IOException {
+			if (!hasNext()) throw new EOFException();
+			if (layout.isFixed()) {
+				if (layout.fixedLength() == 0) throw new IOException("Can't unpack records of zero length");
+				byte[] b = new byte[layout.fixedLength()];
+				in.readFully(b);
+				return unpackFixed(b);
+			} else {
+				long start = in.bitsRead();
+				List<Object> record = unpack(in, length);
+				if (in.bitsRead() == start) throw new IOException("Can't unpack records of zero length");
+				return record;
+			}
+		}
+		
+		public void close() throws IOException {
+			src.close();
+		}
+	}
+	
+	private static class ZeroPaddedInputStream extends FilterInputStream {
+		public ZeroPaddedInputStream(InputStream in) {
+			super(in);
+		}
+		public int read() throws IOException {
+			int b = in.read();
+			return (b < 0) ? 0 : b;
+		}
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = in.read(b, off, len);
+			if (n >= 0) return n;
+			Arrays.fill(b, off, off + len, (byte)0);
+			return len;
+		}
+	}
+	
 	private static class UnpackResult {
 		public List<Object> listed = new ArrayList<Object>();
 		public Map<String,Object> named = new HashMap<String,Object>();
 	}
 	
 	private static UnpackResult unpack(List<DataField> format, MapStack<String,Object> map, BitInputStream in, long length, boolean named) throws IOException {
+		// If nothing refers to fields by name, map is null and names are not kept.
 		UnpackResult res = new UnpackResult();
-		map.push(res.named);
+		if (map != null) map.push(res.named);
 		for (DataField df : format) {
 			if (df.type().returns()) {
 				Object o = unpackFieldWithCount(df, map, in, length, named);
 				res.listed.add(o);
-				if (df.name() != null) {
+				if (df.name() != null && (named || map != null)) {
 					res.named.put(df.name(), o);
 				}
 			} else {
 				unpackFieldWithCount(df, map, in, length, named);
 			}
 		}
-		map.pop();
+		if (map != null) map.pop();
+		return res;
+	}
+	
+	private List<Object> unpackFixed(byte[] b) throws IOException {
+		List<Object> res = new ArrayList<Object>();
+		for (int i = 0; i < format.size(); i++) {
+			DataField df = format.get(i);
+			int offset = layout.fieldOffset(i);
+			int width = layout.fieldWidth(i);
+			int count = layout.fieldCount(i);
+			if (count < 0) {
+				Object o = unpackFixedField(df, b, offset, width);
+				if (df.type().returns()) res.add(o);
+			} else {
+				List<Object> l = new ArrayList<Object>((count < 10) ? 10 : count);
+				for (int j = 0; j < count; j++, offset += width) {
+					l.add(unpackFixedField(df, b, offset, width));
+				}
+				if (df.type().returns()) res.add(l);
+			}
+		}
 		return res;
 	}
 	
+	private static Object unpackFixedField(DataField df, byte[] b, int offset, int width) throws IOException {
+		// integers are read straight out of the array; everything else
+		// is read the usual way from just the bytes belonging to the field
+		switch (df.type()) {
+		case ENUM:
+			BigInteger ev = unsignedValue(b, offset, width, df.littleEndian());
+			Map<?,?> em = (Map<?,?>)df.elaboration();
+			if (em.containsKey(ev)) return em.get(ev);
+			else return ev;
+		case BINT:
+			return unsignedValue(b, offset, width, df.littleEndian()).toString(2);
+		case OINT:
+			return unsignedValue(b, offset, width, df.littleEndian()).toString(8);
+		case HINT:
+			return unsignedValue(b, offset, width, df.littleEndian()).toString(16).toUpperCase();
+		case UINT:
+			return unsignedValue(b, offset, width, df.littleEndian());
+		case SINT:
+			return signedValue(b, offset, width, df.littleEndian());
+		case FILLER:
+		case ALIGN:
+			return null;
+		default:
+			BitInputStream in = new BitInputStream(new ByteArrayInputStream(b, offset, width));
+			return unpackFieldWithoutCount(df, null, in, width, false);
+		}
+	}
+	
+	private static BigInteger unsignedValue(byte[] b, int offset, int width, boolean littleEndian) {
+		if (width < 8) {
+			long v = 0;
+			for (int i = 0; i < width; i++) {
+				v = (v << 8) | (b[littleEndian ? (offset + width - 1 - i) : (offset + i)] & 0xFF);
+			}
+			return BigInteger.valueOf(v);
+		} else {
+			return new BigInteger(1, bytesValue(b, offset, width, littleEndian));
+		}
+	}
+	
+	private static BigInteger signedValue(byte[] b, int offset, int width, boolean littleEndian) {
+		if (width == 0) {
+			return BigInteger.ZERO;
+		} else if (width <= 8) {
+			long v = 0;
+			for (int i = 0; i < width; i++) {
+				v = (v << 8) | (b[littleEndian ? (offset + width - 1 - i) : (offset + i)] & 0xFF);
+			}
+			int shift = 64 - (width << 3);
+			return BigInteger.valueOf((v << shift) >> shift);
+		} else {
+			return new BigInteger(bytesValue(b, offset, width, littleEndian));
+		}
+	}
+	
+	private static byte[] bytesValue(byte[] b, int offset, int width, boolean littleEndian) {
+		byte[] v = new byte[width];
+		for (int i = 0; i < width; i++) {
+			v[i] = b[littleEndian ? (offset + width - 1 - i) : (offset + i)];
+		}
+		return v;
+	}
+	
 	private static Object unpackFieldWithCount(DataField df, MapStack<String,Object> map, BitInputStream in, long length, boolean named) throws IOException {
 		if (df.count() == null || df.type().usesCustomCount()) {
 			return unpackFieldWithoutCount(df, map, in, length, named);
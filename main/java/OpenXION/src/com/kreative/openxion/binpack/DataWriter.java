@@ -33,13 +33,19 @@ import java.util.*;
 
 public class DataWriter {
 	private List<DataField> format;
+	private DataLayout layout;
 	
 	public DataWriter(List<DataField> format) {
-		this.format = format;
+		this(new DataLayout(format));
+	}
+	
+	public DataWriter(DataLayout layout) {
+		this.format = layout.format();
+		this.layout = layout;
 	}
 	
 	public byte[] pack(List<?> l) throws IOException {
-		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ByteArrayOutputStream out = new ByteArrayOutputStream(layout.isFixed() ? layout.fixedLength() : 32);
 		pack(l, out);
 		return out.toByteArray();
 	}
@@ -53,7 +59,8 @@ public class DataWriter {
 	}
 	
 	public void pack(List<?> l, BitOutputStream out) throws IOException {
-		pack(format, l, new MapStack<String,Object>(), out);
+		MapStack<String,Object> map = layout.referencesFields() ? new MapStack<String,Object>() : null;
+		pack(format, l, map, out);
 	}
 	
 	public byte[] pack(Map<String,?> m) throws IOException {
@@ -75,13 +82,16 @@ public class DataWriter {
 	}
 	
 	private static void pack(List<DataField> format, List<?> l, MapStack<String,Object> map, BitOutputStream out) throws IOException {
+		// If nothing refers to fields by name, map is null and names are not kept.
 		Map<String,Object> m = new HashMap<String,Object>();
-		Iterator<?> li = l.iterator();
-		for (DataField df : format) {
-			if (df.type().returns()) {
-				Object o = li.hasNext() ? li.next() : null;
-				if (df.name() != null) {
-					m.put(df.name(), o);
+		if (map != null) {
+			Iterator<?> li = l.iterator();
+			for (DataField df : format) {
+				if (df.type().returns()) {
+					Object o = li.hasNext() ? li.next() : null;
+					if (df.name() != null) {
+						m.put(df.name(), o);
+					}
 				}
 			}
 		}
@@ -104,7 +114,7 @@ public class DataWriter {
 	
 	@SuppressWarnings("unchecked")
 	private static void pack(List<DataField> format, List<?> l, Map<String,?> m, MapStack<String,Object> map, BitOutputStream out) throws IOException {
-		map.push((Map<String,Object>)m);
+		if (map != null) map.push((Map<String,Object>)m);
 		Iterator<?> li = l.iterator();
 		for (DataField df : format) {
 			if (df.type().returns()) {
@@ -114,7 +124,7 @@ public class DataWriter {
 				packFieldWithCount(df, null, map, out);
 			}
 		}
-		map.pop();
+		if (map != null) map.pop();
 	}
 	
 	private static void packFieldWithCount(DataField df, Object o, MapStack<String,Object> map, BitOutputStream out) throws IOException {
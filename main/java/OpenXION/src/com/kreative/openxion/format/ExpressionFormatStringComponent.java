@@ -48,9 +48,20 @@ public class ExpressionFormatStringComponent extends Vector<FormatStringComponen
 	
 	@Override
 	public String format(XNContext ctx, List<? extends XOMVariant> vs) {
+		FormatStringComponent c = choose(ctx, vs);
+		return (c == null) ? "" : c.format(ctx, vs);
+	}
+	
+	@Override
+	public void format(XNContext ctx, List<? extends XOMVariant> vs, StringBuilder out) {
+		FormatStringComponent c = choose(ctx, vs);
+		if (c != null) c.format(ctx, vs, out);
+	}
+	
+	private FormatStringComponent choose(XNContext ctx, List<? extends XOMVariant> vs) {
 		switch (this.size()) {
-		case 0: return "";
-		case 1: return this.get(0).format(ctx, vs);
+		case 0: return null;
+		case 1: return this.get(0);
 		default:
 			XOMVariant v = arg.evaluate(ctx, vs);
 			int idx;
@@ -66,11 +77,11 @@ public class ExpressionFormatStringComponent extends Vector<FormatStringComponen
 				throw new XOMMorphError("integer or true or false");
 			}
 			if (idx < 0) {
-				return this.get(0).format(ctx, vs);
+				return this.get(0);
 			} else if (idx < this.size()) {
-				return this.get(idx).format(ctx, vs);
+				return this.get(idx);
 			} else {
-				return this.get(this.size()-1).format(ctx, vs);
+				return this.get(this.size()-1);
 			}
 		}
 	}
@@ -41,10 +41,15 @@ public class FormatString extends Vector<FormatStringComponent> implements Forma
 	
 	@Override
 	public String format(XNContext ctx, List<? extends XOMVariant> vs) {
-		StringBuffer s = new StringBuffer();
+		StringBuilder s = new StringBuilder();
+		format(ctx, vs, s);
+		return s.toString();
+	}
+	
+	@Override
+	public void format(XNContext ctx, List<? extends XOMVariant> vs, StringBuilder out) {
 		for (FormatStringComponent component : this) {
-			s.append(component.format(ctx, vs));
+			component.format(ctx, vs, out);
 		}
-		return s.toString();
 	}
 }
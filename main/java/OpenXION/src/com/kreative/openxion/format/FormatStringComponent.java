@@ -33,4 +33,5 @@ import com.kreative.openxion.xom.XOMVariant;
 
 public interface FormatStringComponent {
 	public String format(XNContext ctx, List<? extends XOMVariant> vs);
+	public void format(XNContext ctx, List<? extends XOMVariant> vs, StringBuilder out);
 }
@@ -49,6 +49,10 @@ import com.kreative.openxion.xom.type.XOMNumberType;
 public abstract class Formatter {
 	public abstract String format(XNContext ctx, XOMVariant v);
 	
+	public void format(XNContext ctx, XOMVariant v, StringBuilder out) {
+		out.append(format(ctx, v));
+	}
+	
 	public static final Formatter forTypeSpecifier(char ch) {
 		switch (ch) {
 		case 's': return StringFormatter;
@@ -85,21 +89,26 @@ public abstract class Formatter {
 	public static final Formatter ListFormatter = new Formatter() {
 		@Override
 		public String format(XNContext ctx, XOMVariant v) {
-			return formatList(ctx, v.toPrimitiveList(ctx));
+			StringBuilder s = new StringBuilder();
+			formatList(ctx, v.toPrimitiveList(ctx), s);
+			return s.toString();
+		}
+		@Override
+		public void format(XNContext ctx, XOMVariant v, StringBuilder out) {
+			formatList(ctx, v.toPrimitiveList(ctx), out);
 		}
-		private String formatList(XNContext ctx, List<? extends XOMVariant> list) {
-			StringBuffer s = new StringBuffer();
+		private void formatList(XNContext ctx, List<? extends XOMVariant> list, StringBuilder s) {
+			int start = s.length();
 			for (XOMVariant v : list) {
-				if (s.length() > 0) s.append(", ");
+				if (s.length() > start) s.append(", ");
 				if (v instanceof XOMList) {
 					s.append("(");
-					s.append(formatList(ctx, v.toPrimitiveList(ctx)));
+					formatList(ctx, v.toPrimitiveList(ctx), s);
 					s.append(")");
 				} else {
 					s.append(v.toTextString(ctx));
 				}
 			}
-			return s.toString();
 		}
 	};
 	
@@ -255,13 +264,18 @@ public abstract class Formatter {
 		};
 		@Override
 		public String format(XNContext ctx, XOMVariant v) {
+			StringBuilder s = new StringBuilder();
+			format(ctx, v, s);
+			return s.toString();
+		}
+		@Override
+		public void format(XNContext ctx, XOMVariant v, StringBuilder out) {
 			XOMBinary b = XOMBinaryType.instance.makeInstanceFrom(ctx, v);
-			StringBuffer s = new StringBuffer();
+			int start = out.length();
 			for (byte bb : b.toByteArray()) {
-				if (s.length() > 0) s.append(' ');
-				s.append(LOOKUP_HEX[bb & 0xFF]);
+				if (out.length() > start) out.append(' ');
+				out.append(LOOKUP_HEX[bb & 0xFF]);
 			}
-			return s.toString();
 		}
 	};
 }
@@ -42,4 +42,9 @@ public class LiteralFormatStringComponent implements FormatStringComponent {
 	public String format(XNContext ctx, List<? extends XOMVariant> vs) {
 		return literal;
 	}
+	
+	@Override
+	public void format(XNContext ctx, List<? extends XOMVariant> vs, StringBuilder out) {
+		out.append(literal);
+	}
 }
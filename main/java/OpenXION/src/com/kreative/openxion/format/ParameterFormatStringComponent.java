@@ -45,4 +45,9 @@ public class ParameterFormatStringComponent implements FormatStringComponent {
 	public String format(XNContext ctx, List<? extends XOMVariant> vs) {
 		return formatter.format(ctx, (parameterNumber < vs.size()) ? vs.get(parameterNumber) : XOMEmpty.EMPTY);
 	}
+	
+	@Override
+	public void format(XNContext ctx, List<? extends XOMVariant> vs, StringBuilder out) {
+		formatter.format(ctx, (parameterNumber < vs.size()) ? vs.get(parameterNumber) : XOMEmpty.EMPTY, out);
+	}
 }
@@ -59,37 +59,54 @@ public class TrimmingFormatter extends Formatter {
 	
 	@Override
 	public String format(XNContext ctx, XOMVariant v) {
-		StringBuffer s = new StringBuffer();
-		s.append(formatter.format(ctx, v));
+		StringBuilder s = new StringBuilder();
+		format(ctx, v, s);
+		return s.toString();
+	}
+	
+	@Override
+	public void format(XNContext ctx, XOMVariant v, StringBuilder out) {
+		int start = out.length();
+		formatter.format(ctx, v, out);
+		int length = out.length() - start;
 		if (rightPad != null) {
 			if (leftPad == null) {
-				if (s.length() < minLength) {
-					while (s.length() < minLength) s.append(rightPad);
-					s.delete(minLength, s.length());
-				} else if (s.length() > maxLength) {
-					s.delete(maxLength, s.length());
+				if (length < minLength) {
+					while (out.length() - start < minLength) out.append(rightPad);
+					out.setLength(start + minLength);
+				} else if (length > maxLength) {
+					out.setLength(start + maxLength);
 				}
 			} else {
-				if (s.length() < minLength) {
-					while (s.length() < minLength) {
-						s.insert(0, leftPad);
-						s.append(rightPad);
-					}
-					s.delete(0, (s.length() - minLength)/2);
-					s.delete(minLength, s.length());
-				} else if (s.length() > maxLength) {
-					s.delete(0, (s.length() - maxLength)/2);
-					s.delete(maxLength, s.length());
+				if (length < minLength) {
+					// pad both sides the same number of times,
+					// then keep the middle minLength characters
+					int n = 0;
+					while (length + n * (leftPad.length() + rightPad.length()) < minLength) n++;
+					out.insert(start, repeat(leftPad, n));
+					out.append(repeat(rightPad, n));
+					out.delete(start, start + (out.length() - start - minLength)/2);
+					out.setLength(start + minLength);
+				} else if (length > maxLength) {
+					out.delete(start, start + (length - maxLength)/2);
+					out.setLength(start + maxLength);
 				}
 			}
 		} else {
-			if (s.length() < minLength) {
-				while (s.length() < minLength) s.insert(0, leftPad);
-				s.delete(0, s.length() - minLength);
-			} else if (s.length() > maxLength) {
-				s.delete(0, s.length() - maxLength);
+			if (length < minLength) {
+				// the last minLength - length characters of leftPad repeated
+				int n = (minLength - length + leftPad.length() - 1) / leftPad.length();
+				String pad = repeat(leftPad, n);
+				out.insert(start, pad.substring(pad.length() - (minLength - length)));
+			} else if (length > maxLength) {
+				out.delete(start, start + length - maxLength);
 			}
 		}
-		return s.toString();
+	}
+	
+	private static String repeat(String s, int n) {
+		StringBuilder r = new StringBuilder(s.length() * n);
+		for (int i = 0; i < n; i++) r.append(s);
+		return r.toString();
 	}
 }
@@ -28,6 +28,11 @@
 package com.kreative.openxion.io;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
 import java.util.*;
 import com.kreative.openxion.XNContext;
 import com.kreative.openxion.XNScriptError;
@@ -70,37 +75,7 @@ public class TextIOMethod implements XNIOMethod {
 				encodings.containsKey(stream) ?
 					encodings.get(stream) :
 						ctx.getTextEncoding();
-			ByteArrayOutputStream tmp = new ByteArrayOutputStream();
-			while (true) {
-				String s = new String(tmp.toByteArray(), enc);
-				if (s.endsWith("\r")) {
-					int l = stream.lookahead();
-					if (l >= 0) {
-						ByteArrayOutputStream tmp2 = new ByteArrayOutputStream();
-						tmp2.write(tmp.toByteArray());
-						tmp2.write(l);
-						String s2 = new String(tmp2.toByteArray(), enc);
-						if (s2.endsWith("\r\n")) {
-							int a = stream.read();
-							if (a >= 0) tmp.write(a);
-							break;
-						} else {
-							break;
-						}
-					} else {
-						break;
-					}
-				}
-				else if (s.endsWith("\n") || s.endsWith("\u2028") || s.endsWith("\u2029")) {
-					break;
-				}
-				else {
-					int a = stream.read();
-					if (a < 0) break;
-					else tmp.write(a);
-				}
-			}
-			return new XOMString(new String(tmp.toByteArray(), enc));
+			return new XOMString(readText(stream, enc, -1, null));
 		} catch (IOException e) {
 			throw new XNScriptError(e, "Failed to read");
 		}
@@ -113,13 +88,7 @@ public class TextIOMethod implements XNIOMethod {
 					encodings.get(stream) :
 						ctx.getTextEncoding();
 			String end = stop.toTextString(ctx);
-			ByteArrayOutputStream tmp = new ByteArrayOutputStream();
-			while (!(new String(tmp.toByteArray(), enc).endsWith(end))) {
-				int a = stream.read();
-				if (a < 0) break;
-				else tmp.write(a);
-			}
-			return new XOMString(new String(tmp.toByteArray(), enc));
+			return new XOMString(readText(stream, enc, -1, end));
 		} catch (IOException e) {
 			throw new XNScriptError(e, "Failed to read");
 		}
@@ -148,13 +117,7 @@ public class TextIOMethod implements XNIOMethod {
 					encodings.get(stream) :
 						ctx.getTextEncoding();
 			String end = stop.toTextString(ctx);
-			ByteArrayOutputStream tmp = new ByteArrayOutputStream();
-			while (tmp.size() < len && !(new String(tmp.toByteArray(), enc).endsWith(end))) {
-				int a = stream.read();
-				if (a < 0) break;
-				else tmp.write(a);
-			}
-			return new XOMString(new String(tmp.toByteArray(), enc));
+			return new XOMString(readText(stream, enc, len, end));
 		} catch (IOException e) {
 			throw new XNScriptError(e, "Failed to read");
 		}
@@ -168,37 +131,7 @@ public class TextIOMethod implements XNIOMethod {
 				encodings.containsKey(stream) ?
 					encodings.get(stream) :
 						ctx.getTextEncoding();
-			ByteArrayOutputStream tmp = new ByteArrayOutputStream();
-			while (true) {
-				String s = new String(tmp.toByteArray(), enc);
-				if (s.endsWith("\r")) {
-					int l = stream.lookahead();
-					if (l >= 0) {
-						ByteArrayOutputStream tmp2 = new ByteArrayOutputStream();
-						tmp2.write(tmp.toByteArray());
-						tmp2.write(l);
-						String s2 = new String(tmp2.toByteArray(), enc);
-						if (s2.endsWith("\r\n")) {
-							int a = stream.read();
-							if (a >= 0) tmp.write(a);
-							break;
-						} else {
-							break;
-						}
-					} else {
-						break;
-					}
-				}
-				else if (s.endsWith("\n") || s.endsWith("\u2028") || s.endsWith("\u2029")) {
-					break;
-				}
-				else {
-					int a = stream.read();
-					if (a < 0) break;
-					else tmp.write(a);
-				}
-			}
-			return new XOMString(new String(tmp.toByteArray(), enc));
+			return new XOMString(readText(stream, enc, -1, null));
 		} catch (IOException e) {
 			throw new XNScriptError(e, "Failed to read");
 		}
@@ -213,13 +146,7 @@ public class TextIOMethod implements XNIOMethod {
 					encodings.get(stream) :
 						ctx.getTextEncoding();
 			String end = stop.toTextString(ctx);
-			ByteArrayOutputStream tmp = new ByteArrayOutputStream();
-			while (!(new String(tmp.toByteArray(), enc).endsWith(end))) {
-				int a = stream.read();
-				if (a < 0) break;
-				else tmp.write(a);
-			}
-			return new XOMString(new String(tmp.toByteArray(), enc));
+			return new XOMString(readText(stream, enc, -1, end));
 		} catch (IOException e) {
 			throw new XNScriptError(e, "Failed to read");
 		}
@@ -252,18 +179,100 @@ public class TextIOMethod implements XNIOMethod {
 					encodings.get(stream) :
 						ctx.getTextEncoding();
 			String end = stop.toTextString(ctx);
-			ByteArrayOutputStream tmp = new ByteArrayOutputStream();
-			while (tmp.size() < len && !(new String(tmp.toByteArray(), enc).endsWith(end))) {
-				int a = stream.read();
-				if (a < 0) break;
-				else tmp.write(a);
-			}
-			return new XOMString(new String(tmp.toByteArray(), enc));
+			return new XOMString(readText(stream, enc, len, end));
 		} catch (IOException e) {
 			throw new XNScriptError(e, "Failed to read");
 		}
 	}
 
+	/**
+	 * Reads one line from the stream's current position, decoded the same
+	 * way as read, and returns it without its line terminator, or returns
+	 * null if the stream is already at its end.
+	 */
+	public String readLine(XNContext ctx, XNIOStream stream) throws IOException {
+		if (stream.lookahead() < 0) return null;
+		String enc =
+			encodings.containsKey(stream) ?
+				encodings.get(stream) :
+					ctx.getTextEncoding();
+		String s = readText(stream, enc, -1, null);
+		int n = s.length();
+		if (s.endsWith("\r\n")) n -= 2;
+		else if (n > 0 && isLineBreak(s.charAt(n-1))) n--;
+		return s.substring(0, n);
+	}
+
+	/**
+	 * Reads and decodes text one byte at a time, stopping before the byte
+	 * that would exceed len (if len is not negative), after the decoded
+	 * text ends with end, or, if end is null, after a line terminator.
+	 * The decoder keeps its own state, so each byte is decoded only once.
+	 */
+	private static String readText(XNIOStream stream, String enc, int len, String end) throws IOException {
+		CharsetDecoder dec;
+		try {
+			dec = Charset.forName(enc).newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		} catch (IllegalArgumentException e) {
+			throw new UnsupportedEncodingException(enc);
+		}
+		ByteBuffer in = ByteBuffer.allocate(16);
+		CharBuffer out = CharBuffer.allocate(16);
+		StringBuilder s = new StringBuilder();
+		int count = 0;
+		while (len < 0 || count < len) {
+			if (end != null) {
+				if (endsWith(s, end)) break;
+			} else if (s.length() > 0) {
+				char ch = s.charAt(s.length() - 1);
+				if (ch == '\r') {
+					byte[] lf = "\n".getBytes(dec.charset());
+					if (lf.length == 1 && stream.lookahead() == (lf[0] & 0xFF)) {
+						decode(dec, in, out, s, stream.read());
+					}
+					break;
+				}
+				if (ch == '\n' || ch == '\u2028' || ch == '\u2029') break;
+			}
+			int a = stream.read();
+			if (a < 0) break;
+			decode(dec, in, out, s, a);
+			count++;
+		}
+		in.flip();
+		dec.decode(in, out, true);
+		dec.flush(out);
+		out.flip();
+		s.append(out);
+		return s.toString();
+	}
+	
+	private static void decode(CharsetDecoder dec, ByteBuffer in, CharBuffer out, StringBuilder s, int b) {
+		in.put((byte)b);
+		in.flip();
+		dec.decode(in, out, false);
+		in.compact();
+		out.flip();
+		s.append(out);
+		out.clear();
+	}
+	
+	private static boolean isLineBreak(char ch) {
+		return ch == '\n' || ch == '\r' || ch == '\u2028' || ch == '\u2029';
+	}
+	
+	private static boolean endsWith(StringBuilder s, String end) {
+		int n = end.length();
+		int o = s.length() - n;
+		if (o < 0) return false;
+		for (int i = 0; i < n; i++) {
+			if (s.charAt(o + i) != end.charAt(i)) return false;
+		}
+		return true;
+	}
+
 	public void write(XNContext ctx, XNIOStream stream, XOMVariant data) {
 		try {
 			byte[] b = data.toTextString(ctx).getBytes(
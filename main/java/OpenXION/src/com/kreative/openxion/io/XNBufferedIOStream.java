@@ -0,0 +1,307 @@
+/*
+ * Copyright &copy; 2026 Rebecca G. Bettencourt / Kreative Software
+ * <p>
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * <a href="http://www.mozilla.org/MPL/">http://www.mozilla.org/MPL/</a>
+ * <p>
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ * <p>
+ * Alternatively, the contents of this file may be used under the terms
+ * of the GNU Lesser General Public License (the "LGPL License"), in which
+ * case the provisions of LGPL License are applicable instead of those
+ * above. If you wish to allow use of your version of this file only
+ * under the terms of the LGPL License and not to allow others to use
+ * your version of this file under the MPL, indicate your decision by
+ * deleting the provisions above and replace them with the notice and
+ * other provisions required by the LGPL License. If you do not delete
+ * the provisions above, a recipient may use your version of this file
+ * under either the MPL or the LGPL License.
+ * @since OpenXION 1.4
+ * @author Rebecca G. Bettencourt, Kreative Software
+ */
+
+
+package com.kreative.openxion.io;
+
+import java.io.*;
+
+/**
+ * An XNBufferedIOStream is an XNFilterIOStream that reads ahead
+ * from the contained XNIOStream in blocks, so that reading a byte
+ * at a time (as TextIOMethod does) does not cost a system call
+ * per byte. Seeking within the buffered block does not touch the
+ * contained stream. Before any write or truncation, unread buffered
+ * bytes are discarded and the contained stream is moved back to
+ * the logical file pointer.
+ * @since OpenXION 1.4
+ * @author Rebecca G. Bettencourt, Kreative Software
+ */
+public class XNBufferedIOStream extends XNFilterIOStream {
+	public static final int DEFAULT_BUFFER_SIZE = 8192;
+	
+	private byte[] buf;
+	private int bufPos;
+	private int bufLen;
+	private long bufEnd;
+	
+	public XNBufferedIOStream(XNIOStream stream) {
+		this(stream, DEFAULT_BUFFER_SIZE);
+	}
+	
+	public XNBufferedIOStream(XNIOStream stream, int bufferSize) {
+		super(stream);
+		if (bufferSize <= 0) throw new IllegalArgumentException("Buffer size <= 0");
+		this.buf = new byte[bufferSize];
+		this.bufPos = 0;
+		this.bufLen = 0;
+		this.bufEnd = 0;
+	}
+	
+	private boolean fill() throws IOException {
+		bufPos = 0;
+		bufLen = stream.read(buf, 0, buf.length);
+		if (bufLen <= 0) {
+			bufLen = 0;
+			return false;
+		}
+		bufEnd = stream.getFilePointer();
+		return true;
+	}
+	
+	private void discard() throws IOException {
+		if (bufPos < bufLen) {
+			stream.seek(bufEnd - (bufLen - bufPos));
+		}
+		bufPos = 0;
+		bufLen = 0;
+	}
+	
+	public void close() throws IOException {
+		bufPos = 0;
+		bufLen = 0;
+		stream.close();
+	}
+	
+	public long getFilePointer() throws IOException {
+		if (bufLen > 0) return bufEnd - (bufLen - bufPos);
+		else return stream.getFilePointer();
+	}
+	
+	public int lookahead() throws IOException {
+		if (bufPos >= bufLen && !fill()) return -1;
+		return buf[bufPos] & 0xFF;
+	}
+	
+	public int read() throws IOException {
+		if (bufPos >= bufLen && !fill()) return -1;
+		return buf[bufPos++] & 0xFF;
+	}
+	
+	public int read(byte[] b) throws IOException {
+		return read(b, 0, b.length);
+	}
+	
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len <= 0) return 0;
+		int n = 0;
+		while (n < len) {
+			if (bufPos < bufLen) {
+				int k = Math.min(len - n, bufLen - bufPos);
+				System.arraycopy(buf, bufPos, b, off + n, k);
+				bufPos += k;
+				n += k;
+			} else if (len - n >= buf.length) {
+				bufPos = 0;
+				bufLen = 0;
+				int k = stream.read(b, off + n, len - n);
+				if (k <= 0) break;
+				n += k;
+			} else if (!fill()) {
+				break;
+			}
+		}
+		return (n > 0) ? n : -1;
+	}
+	
+	public boolean readBoolean() throws IOException {
+		return readUnsignedByte() != 0;
+	}
+	
+	public byte readByte() throws IOException {
+		return (byte)readUnsignedByte();
+	}
+	
+	public char readChar() throws IOException {
+		return (char)readUnsignedShort();
+	}
+	
+	public double readDouble() throws IOException {
+		return Double.longBitsToDouble(readLong());
+	}
+	
+	public float readFloat() throws IOException {
+		return Float.intBitsToFloat(readInt());
+	}
+	
+	public void readFully(byte[] b) throws IOException, EOFException {
+		readFully(b, 0, b.length);
+	}
+	
+	public void readFully(byte[] b, int off, int len) throws IOException, EOFException {
+		int n = 0;
+		while (n < len) {
+			int k = read(b, off + n, len - n);
+			if (k < 0) throw new EOFException();
+			n += k;
+		}
+	}
+	
+	public int readInt() throws IOException {
+		int a = readUnsignedShort();
+		int b = readUnsignedShort();
+		return (a << 16) | b;
+	}
+	
+	public String readLine() throws IOException {
+		StringBuffer line = new StringBuffer();
+		int c = read();
+		if (c < 0) return null;
+		while (c >= 0 && c != '\n') {
+			if (c == '\r') {
+				if (lookahead() == '\n') read();
+				break;
+			}
+			line.append((char)c);
+			c = read();
+		}
+		return line.toString();
+	}
+	
+	public long readLong() throws IOException {
+		long a = readInt() & 0xFFFFFFFFL;
+		long b = readInt() & 0xFFFFFFFFL;
+		return (a << 32) | b;
+	}
+	
+	public short readShort() throws IOException {
+		return (short)readUnsignedShort();
+	}
+	
+	public int readUnsignedByte() throws IOException {
+		int a = read();
+		if (a < 0) throw new EOFException();
+		return a;
+	}
+	
+	public int readUnsignedShort() throws IOException {
+		int a = readUnsignedByte();
+		int b = readUnsignedByte();
+		return (a << 8) | b;
+	}
+	
+	public String readUTF() throws IOException {
+		return DataInputStream.readUTF(this);
+	}
+	
+	public void seek(long pos) throws IOException {
+		if (bufLen > 0) {
+			long bufStart = bufEnd - bufLen;
+			if (pos >= bufStart && pos <= bufEnd) {
+				bufPos = (int)(pos - bufStart);
+				return;
+			}
+		}
+		bufPos = 0;
+		bufLen = 0;
+		stream.seek(pos);
+	}
+	
+	public void setLength(long newLength) throws IOException {
+		discard();
+		stream.setLength(newLength);
+	}
+	
+	public int skipBytes(int n) throws IOException {
+		// Same semantics as RandomAccessFile.skipBytes.
+		if (n <= 0) return 0;
+		long pos = getFilePointer();
+		long newPos = Math.min(pos + n, length());
+		seek(newPos);
+		return (int)(newPos - pos);
+	}
+	
+	public void write(byte[] b) throws IOException {
+		discard();
+		stream.write(b);
+	}
+	
+	public void write(byte[] b, int off, int len) throws IOException {
+		discard();
+		stream.write(b, off, len);
+	}
+	
+	public void write(int b) throws IOException {
+		discard();
+		stream.write(b);
+	}
+	
+	public void writeBoolean(boolean v) throws IOException {
+		discard();
+		stream.writeBoolean(v);
+	}
+	
+	public void writeByte(int v) throws IOException {
+		discard();
+		stream.writeByte(v);
+	}
+	
+	public void writeBytes(String s) throws IOException {
+		discard();
+		stream.writeBytes(s);
+	}
+	
+	public void writeChar(int v) throws IOException {
+		discard();
+		stream.writeChar(v);
+	}
+	
+	public void writeChars(String s) throws IOException {
+		discard();
+		stream.writeChars(s);
+	}
+	
+	public void writeDouble(double v) throws IOException {
+		discard();
+		stream.writeDouble(v);
+	}
+	
+	public void writeFloat(float v) throws IOException {
+		discard();
+		stream.writeFloat(v);
+	}
+	
+	public void writeInt(int v) throws IOException {
+		discard();
+		stream.writeInt(v);
+	}
+	
+	public void writeLong(long v) throws IOException {
+		discard();
+		stream.writeLong(v);
+	}
+	
+	public void writeShort(int v) throws IOException {
+		discard();
+		stream.writeShort(v);
+	}
+	
+	public void writeUTF(String str) throws IOException {
+		discard();
+		stream.writeUTF(str);
+	}
+}
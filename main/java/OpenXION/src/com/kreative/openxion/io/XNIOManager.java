@@ -54,4 +54,6 @@ public interface XNIOManager {
 	public void truncate(XNContext ctx, XOMVariant obj);
 	public void truncate(XNContext ctx, XOMVariant obj, long pos);
 	public void close(XNContext ctx, XOMVariant obj);
+	/** Returns the underlying stream of an open object, or null if it is not open. */
+	public XNIOStream getStream(XNContext ctx, XOMVariant obj);
 }
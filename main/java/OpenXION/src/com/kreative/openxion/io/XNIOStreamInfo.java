@@ -42,6 +42,10 @@ public class XNIOStreamInfo {
 		this.justOpened = true;
 	}
 	
+	public XNIOStream getStream() {
+		return stream;
+	}
+	
 	public boolean justOpened() {
 		return justOpened;
 	}
@@ -0,0 +1,63 @@
+/*
+ * Copyright &copy; 2026 Rebecca G. Bettencourt / Kreative Software
+ * <p>
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * <a href="http://www.mozilla.org/MPL/">http://www.mozilla.org/MPL/</a>
+ * <p>
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ * <p>
+ * Alternatively, the contents of this file may be used under the terms
+ * of the GNU Lesser General Public License (the "LGPL License"), in which
+ * case the provisions of LGPL License are applicable instead of those
+ * above. If you wish to allow use of your version of this file only
+ * under the terms of the LGPL License and not to allow others to use
+ * your version of this file under the MPL, indicate your decision by
+ * deleting the provisions above and replace them with the notice and
+ * other provisions required by the LGPL License. If you do not delete
+ * the provisions above, a recipient may use your version of this file
+ * under either the MPL or the LGPL License.
+ * @since OpenXION 1.4
+ * @author Rebecca G. Bettencourt, Kreative Software
+ */
+
+package com.kreative.openxion.io;
+
+import java.io.*;
+
+/**
+ * XNIOStreamInputStream reads an XNIOStream as a plain InputStream,
+ * starting from the stream's current file pointer. Closing it does
+ * not close the XNIOStream.
+ * @since OpenXION 1.4
+ * @author Rebecca G. Bettencourt, Kreative Software
+ */
+public class XNIOStreamInputStream extends InputStream {
+	private XNIOStream stream;
+	
+	public XNIOStreamInputStream(XNIOStream stream) {
+		this.stream = stream;
+	}
+	
+	public int read() throws IOException {
+		return stream.read();
+	}
+	
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) return 0;
+		return stream.read(b, off, len);
+	}
+	
+	public long skip(long n) throws IOException {
+		if (n <= 0) return 0;
+		return stream.skipBytes((int)Math.min(n, Integer.MAX_VALUE));
+	}
+	
+	public void close() throws IOException {
+		// the XNIOStream belongs to whoever opened it
+	}
+}
@@ -0,0 +1,325 @@
+/*
+ * Copyright &copy; 2026 Rebecca G. Bettencourt / Kreative Software
+ * <p>
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * <a href="http://www.mozilla.org/MPL/">http://www.mozilla.org/MPL/</a>
+ * <p>
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ * <p>
+ * Alternatively, the contents of this file may be used under the terms
+ * of the GNU Lesser General Public License (the "LGPL License"), in which
+ * case the provisions of LGPL License are applicable instead of those
+ * above. If you wish to allow use of your version of this file only
+ * under the terms of the LGPL License and not to allow others to use
+ * your version of this file under the MPL, indicate your decision by
+ * deleting the provisions above and replace them with the notice and
+ * other provisions required by the LGPL License. If you do not delete
+ * the provisions above, a recipient may use your version of this file
+ * under either the MPL or the LGPL License.
+ * @since OpenXION 1.4
+ * @author Rebecca G. Bettencourt, Kreative Software
+ */
+
+
+package com.kreative.openxion.io;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * XNMappedFileIOStream is an XNIOStream that reads through
+ * memory-mapped windows of a file instead of a system call per read.
+ * Files larger than one window (including files over 2 GB) are
+ * handled by remapping the window that contains the file pointer.
+ * Writes go through the file's channel; since the mapping is shared,
+ * they are visible to later reads without remapping, and reads past
+ * the end of the mapped window map the bytes a write has added.
+ * If another process truncates the file while it is mapped, reading
+ * the missing bytes makes the JVM throw an InternalError, and the
+ * mapping is not released until it is garbage collected, so this is
+ * best kept to large files that are only being read.
+ * @since OpenXION 1.4
+ * @author Rebecca G. Bettencourt, Kreative Software
+ */
+public class XNMappedFileIOStream implements XNIOStream {
+	public static final int DEFAULT_WINDOW_SIZE = 1 << 26;
+	
+	private RandomAccessFile raf;
+	private FileChannel channel;
+	private int windowSize;
+	private MappedByteBuffer map;
+	private long mapStart;
+	private int mapLen;
+	private long pos;
+	
+	public XNMappedFileIOStream(File f, String mode) throws IOException {
+		this(f, mode, DEFAULT_WINDOW_SIZE);
+	}
+	
+	public XNMappedFileIOStream(String path, String mode) throws IOException {
+		this(new File(path), mode, DEFAULT_WINDOW_SIZE);
+	}
+	
+	public XNMappedFileIOStream(File f, String mode, int windowSize) throws IOException {
+		if (windowSize <= 0) throw new IllegalArgumentException("Window size <= 0");
+		this.raf = new RandomAccessFile(f, mode);
+		this.channel = raf.getChannel();
+		this.windowSize = windowSize;
+		this.map = null;
+		this.mapStart = 0;
+		this.mapLen = 0;
+		this.pos = 0;
+	}
+	
+	/**
+	 * Makes sure the byte at the file pointer is mapped.
+	 * @return the number of mapped bytes available from the file pointer,
+	 * or zero at end of file.
+	 */
+	private int window() throws IOException {
+		if (map != null && pos >= mapStart && pos < mapStart + mapLen) {
+			return (int)(mapStart + mapLen - pos);
+		}
+		long size = channel.size();
+		if (pos >= size) return 0;
+		map = null;
+		mapStart = pos - (pos % windowSize);
+		mapLen = (int)Math.min(windowSize, size - mapStart);
+		map = channel.map(FileChannel.MapMode.READ_ONLY, mapStart, mapLen);
+		return (int)(mapStart + mapLen - pos);
+	}
+	
+	public void close() throws IOException {
+		map = null;
+		raf.close();
+	}
+	
+	public long getFilePointer() throws IOException {
+		return pos;
+	}
+	
+	public long length() throws IOException {
+		return channel.size();
+	}
+	
+	public int lookahead() throws IOException {
+		if (window() <= 0) return -1;
+		return map.get((int)(pos - mapStart)) & 0xFF;
+	}
+	
+	public int read() throws IOException {
+		if (window() <= 0) return -1;
+		return map.get((int)(pos++ - mapStart)) & 0xFF;
+	}
+	
+	public int read(byte[] b) throws IOException {
+		return read(b, 0, b.length);
+	}
+	
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len <= 0) return 0;
+		int n = 0;
+		while (n < len) {
+			int avail = window();
+			if (avail <= 0) break;
+			int k = Math.min(len - n, avail);
+			ByteBuffer src = map.duplicate();
+			src.position((int)(pos - mapStart));
+			src.get(b, off + n, k);
+			pos += k;
+			n += k;
+		}
+		return (n > 0) ? n : -1;
+	}
+	
+	public boolean readBoolean() throws IOException {
+		return readUnsignedByte() != 0;
+	}
+	
+	public byte readByte() throws IOException {
+		return (byte)readUnsignedByte();
+	}
+	
+	public char readChar() throws IOException {
+		return (char)readUnsignedShort();
+	}
+	
+	public double readDouble() throws IOException {
+		return Double.longBitsToDouble(readLong());
+	}
+	
+	public float readFloat() throws IOException {
+		return Float.intBitsToFloat(readInt());
+	}
+	
+	public void readFully(byte[] b) throws IOException, EOFException {
+		readFully(b, 0, b.length);
+	}
+	
+	public void readFully(byte[] b, int off, int len) throws IOException, EOFException {
+		int n = 0;
+		while (n < len) {
+			int k = read(b, off + n, len - n);
+			if (k < 0) throw new EOFException();
+			n += k;
+		}
+	}
+	
+	public int readInt() throws IOException {
+		if (window() >= 4) {
+			int v = map.getInt((int)(pos - mapStart));
+			pos += 4;
+			return v;
+		}
+		int a = readUnsignedShort();
+		int b = readUnsignedShort();
+		return (a << 16) | b;
+	}
+	
+	public String readLine() throws IOException {
+		StringBuffer line = new StringBuffer();
+		int c = read();
+		if (c < 0) return null;
+		while (c >= 0 && c != '\n') {
+			if (c == '\r') {
+				if (lookahead() == '\n') read();
+				break;
+			}
+			line.append((char)c);
+			c = read();
+		}
+		return line.toString();
+	}
+	
+	public long readLong() throws IOException {
+		if (window() >= 8) {
+			long v = map.getLong((int)(pos - mapStart));
+			pos += 8;
+			return v;
+		}
+		long a = readInt() & 0xFFFFFFFFL;
+		long b = readInt() & 0xFFFFFFFFL;
+		return (a << 32) | b;
+	}
+	
+	public short readShort() throws IOException {
+		return (short)readUnsignedShort();
+	}
+	
+	public int readUnsignedByte() throws IOException {
+		int a = read();
+		if (a < 0) throw new EOFException();
+		return a;
+	}
+	
+	public int readUnsignedShort() throws IOException {
+		int a = readUnsignedByte();
+		int b = readUnsignedByte();
+		return (a << 8) | b;
+	}
+	
+	public String readUTF() throws IOException {
+		return DataInputStream.readUTF(this);
+	}
+	
+	public void seek(long pos) throws IOException {
+		if (pos < 0) throw new IOException("Negative seek offset");
+		this.pos = pos;
+	}
+	
+	public void setLength(long newLength) throws IOException {
+		// Never touch a mapping that may now extend past the end of the file.
+		map = null;
+		raf.setLength(newLength);
+		if (pos > newLength) pos = newLength;
+	}
+	
+	public int skipBytes(int n) throws IOException {
+		// Same semantics as RandomAccessFile.skipBytes.
+		if (n <= 0) return 0;
+		long newPos = Math.min(pos + n, channel.size());
+		int k = (int)(newPos - pos);
+		pos = newPos;
+		return k;
+	}
+	
+	public void write(byte[] b) throws IOException {
+		write(b, 0, b.length);
+	}
+	
+	public void write(byte[] b, int off, int len) throws IOException {
+		ByteBuffer src = ByteBuffer.wrap(b, off, len);
+		while (src.hasRemaining()) {
+			pos += channel.write(src, pos);
+		}
+	}
+	
+	public void write(int b) throws IOException {
+		write(new byte[]{ (byte)b }, 0, 1);
+	}
+	
+	public void writeBoolean(boolean v) throws IOException {
+		write(v ? 1 : 0);
+	}
+	
+	public void writeByte(int v) throws IOException {
+		write(v);
+	}
+	
+	public void writeBytes(String s) throws IOException {
+		byte[] b = new byte[s.length()];
+		for (int i = 0; i < b.length; i++) b[i] = (byte)s.charAt(i);
+		write(b, 0, b.length);
+	}
+	
+	public void writeChar(int v) throws IOException {
+		write(new byte[]{ (byte)(v >>> 8), (byte)v }, 0, 2);
+	}
+	
+	public void writeChars(String s) throws IOException {
+		byte[] b = new byte[s.length() * 2];
+		for (int i = 0, j = 0; i < s.length(); i++) {
+			char ch = s.charAt(i);
+			b[j++] = (byte)(ch >>> 8);
+			b[j++] = (byte)ch;
+		}
+		write(b, 0, b.length);
+	}
+	
+	public void writeDouble(double v) throws IOException {
+		writeLong(Double.doubleToLongBits(v));
+	}
+	
+	public void writeFloat(float v) throws IOException {
+		writeInt(Float.floatToIntBits(v));
+	}
+	
+	public void writeInt(int v) throws IOException {
+		write(new byte[]{ (byte)(v >>> 24), (byte)(v >>> 16), (byte)(v >>> 8), (byte)v }, 0, 4);
+	}
+	
+	public void writeLong(long v) throws IOException {
+		byte[] b = new byte[8];
+		for (int i = 7; i >= 0; i--, v >>>= 8) b[i] = (byte)v;
+		write(b, 0, 8);
+	}
+	
+	public void writeShort(int v) throws IOException {
+		write(new byte[]{ (byte)(v >>> 8), (byte)v }, 0, 2);
+	}
+	
+	public void writeUTF(String str) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeUTF(str);
+		out.flush();
+		write(bytes.toByteArray());
+	}
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright &copy; 2026 Rebecca G. Bettencourt / Kreative Software
+ * <p>
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * <a href="http://www.mozilla.org/MPL/">http://www.mozilla.org/MPL/</a>
+ * <p>
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ * <p>
+ * Alternatively, the contents of this file may be used under the terms
+ * of the GNU Lesser General Public License (the "LGPL License"), in which
+ * case the provisions of LGPL License are applicable instead of those
+ * above. If you wish to allow use of your version of this file only
+ * under the terms of the LGPL License and not to allow others to use
+ * your version of this file under the MPL, indicate your decision by
+ * deleting the provisions above and replace them with the notice and
+ * other provisions required by the LGPL License. If you do not delete
+ * the provisions above, a recipient may use your version of this file
+ * under either the MPL or the LGPL License.
+ * @since OpenXION 1.4
+ * @author Rebecca G. Bettencourt, Kreative Software
+ */
+
+
+package com.kreative.openxion.io;
+
+import java.io.*;
+
+/**
+ * XNMappedReadIOStream reads a file through an XNMappedFileIOStream
+ * opened read-only until the first write or change of length, then
+ * reopens the file for writing as an ordinary buffered file stream
+ * at the same file pointer and does everything through that.
+ * This lets a file that may be written be mapped while it is only
+ * being read. If the file cannot be opened for writing, the write
+ * that tried to reopen it throws the IOException instead.
+ * @since OpenXION 1.4
+ * @author Rebecca G. Bettencourt, Kreative Software
+ */
+public class XNMappedReadIOStream extends XNFilterIOStream {
+	private File file;
+	private String mode;
+	private boolean mapped;
+	
+	public XNMappedReadIOStream(File f, String mode) throws IOException {
+		super(new XNMappedFileIOStream(f, "r"));
+		this.file = f;
+		this.mode = mode;
+		this.mapped = true;
+	}
+	
+	public XNMappedReadIOStream(String path, String mode) throws IOException {
+		this(new File(path), mode);
+	}
+	
+	private void writable() throws IOException {
+		if (mapped) {
+			XNIOStream out = new XNBufferedIOStream(new XNFileIOStream(file, mode));
+			out.seek(stream.getFilePointer());
+			stream.close();
+			stream = out;
+			mapped = false;
+		}
+	}
+	
+	public void setLength(long newLength) throws IOException {
+		writable();
+		super.setLength(newLength);
+	}
+	
+	public void write(byte[] b) throws IOException {
+		writable();
+		super.write(b);
+	}
+	
+	public void write(byte[] b, int off, int len) throws IOException {
+		writable();
+		super.write(b, off, len);
+	}
+	
+	public void write(int b) throws IOException {
+		writable();
+		super.write(b);
+	}
+	
+	public void writeBoolean(boolean v) throws IOException {
+		writable();
+		super.writeBoolean(v);
+	}
+	
+	public void writeByte(int v) throws IOException {
+		writable();
+		super.writeByte(v);
+	}
+	
+	public void writeBytes(String s) throws IOException {
+		writable();
+		super.writeBytes(s);
+	}
+	
+	public void writeChar(int v) throws IOException {
+		writable();
+		super.writeChar(v);
+	}
+	
+	public void writeChars(String s) throws IOException {
+		writable();
+		super.writeChars(s);
+	}
+	
+	public void writeDouble(double v) throws IOException {
+		writable();
+		super.writeDouble(v);
+	}
+	
+	public void writeFloat(float v) throws IOException {
+		writable();
+		super.writeFloat(v);
+	}
+	
+	public void writeInt(int v) throws IOException {
+		writable();
+		super.writeInt(v);
+	}
+	
+	public void writeLong(long v) throws IOException {
+		writable();
+		super.writeLong(v);
+	}
+	
+	public void writeShort(int v) throws IOException {
+		writable();
+		super.writeShort(v);
+	}
+	
+	public void writeUTF(String str) throws IOException {
+		writable();
+		super.writeUTF(str);
+	}
+}
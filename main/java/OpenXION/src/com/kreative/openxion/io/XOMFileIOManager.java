@@ -44,6 +44,33 @@ public class XOMFileIOManager implements XNIOManager {
 	public static final XOMFileIOManager instance = new XOMFileIOManager();
 	
 	private XNIOStreamInfoMap sim = new XNIOStreamInfoMap();
+	private long mappedFileThreshold = -1;
+	
+	/**
+	 * Returns the size at or above which existing, non-empty files
+	 * are read through memory-mapped streams. A negative value, the
+	 * default, means never. Empty files are never mapped, since
+	 * special files such as those in /proc report a length of zero.
+	 * A file opened where writing is allowed is read through the
+	 * mapping until it is first written, then reopened for writing
+	 * as an ordinary stream (see XNMappedReadIOStream).
+	 */
+	public long getMappedFileThreshold() {
+		return mappedFileThreshold;
+	}
+	
+	public void setMappedFileThreshold(long threshold) {
+		mappedFileThreshold = threshold;
+	}
+	
+	private XNIOStream openStream(File f, String mode) throws IOException {
+		if (mappedFileThreshold >= 0 && f.isFile() && f.length() > 0 && f.length() >= mappedFileThreshold) {
+			if (mode.equals("r")) return new XNMappedFileIOStream(f, mode);
+			else return new XNMappedReadIOStream(f, mode);
+		} else {
+			return new XNBufferedIOStream(new XNFileIOStream(f, mode));
+		}
+	}
 	
 	public boolean worksWith(XNContext ctx, XOMVariant obj) {
 		return XOMFileType.instance.canMakeInstanceFrom(ctx, obj);
@@ -68,12 +95,12 @@ public class XOMFileIOManager implements XNIOManager {
 				XNIOStream stream;
 				if (write) {
 					try {
-						stream = new XNFileIOStream(f, "rwd");
+						stream = openStream(f, "rwd");
 					} catch (IOException e) {
-						stream = new XNFileIOStream(f, "r");
+						stream = openStream(f, "r");
 					}
 				} else {
-					stream = new XNFileIOStream(f, "r");
+					stream = openStream(f, "r");
 				}
 				XNIOStreamInfo si = new XNIOStreamInfo(stream, method);
 				sim.setFileStreamInfo(ctx, obj, si);
@@ -217,6 +244,13 @@ public class XOMFileIOManager implements XNIOManager {
 		}
 	}
 
+	public XNIOStream getStream(XNContext ctx, XOMVariant obj) {
+		if (!ctx.allow(XNSecurityKey.FILE_SYSTEM_READ, "Operation", "Read", "Object", obj.toLanguageString()))
+			throw new XNScriptError("Security settings do not allow read from file");
+		XNIOStreamInfo si = sim.getFileStreamInfo(ctx, obj);
+		return (si == null) ? null : si.getStream();
+	}
+
 	public void close(XNContext ctx, XOMVariant obj) {
 		XNIOStreamInfo si = sim.getFileStreamInfo(ctx, obj);
 		if (si == null) {
@@ -218,6 +218,13 @@ public class XOMURLIOManager implements XNIOManager {
 		}
 	}
 
+	public XNIOStream getStream(XNContext ctx, XOMVariant obj) {
+		if (!ctx.allow(XNSecurityKey.INTERNET_ACCESS, "Operation", "Read", "Object", obj.toLanguageString()))
+			throw new XNScriptError("Security settings do not allow read from URL");
+		XNIOStreamInfo si = sim.getURLStreamInfo(ctx, obj);
+		return (si == null) ? null : si.getStream();
+	}
+
 	public void close(XNContext ctx, XOMVariant obj) {
 		XNIOStreamInfo si = sim.getURLStreamInfo(ctx, obj);
 		if (si == null) {
@@ -0,0 +1,71 @@
+/*
+ * Copyright &copy; 2026 Rebecca G. Bettencourt / Kreative Software
+ * <p>
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * <a href="http://www.mozilla.org/MPL/">http://www.mozilla.org/MPL/</a>
+ * <p>
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ * <p>
+ * Alternatively, the contents of this file may be used under the terms
+ * of the GNU Lesser General Public License (the "LGPL License"), in which
+ * case the provisions of LGPL License are applicable instead of those
+ * above. If you wish to allow use of your version of this file only
+ * under the terms of the LGPL License and not to allow others to use
+ * your version of this file under the MPL, indicate your decision by
+ * deleting the provisions above and replace them with the notice and
+ * other provisions required by the LGPL License. If you do not delete
+ * the provisions above, a recipient may use your version of this file
+ * under either the MPL or the LGPL License.
+ * @since OpenXION 1.5
+ * @author Rebecca G. Bettencourt, Kreative Software
+ */
+
+
+package com.kreative.openxion.jsr223;
+
+import java.util.List;
+
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+
+import com.kreative.openxion.ast.XNStatement;
+
+/**
+ * XNCompiledScript holds a XION script that has already been parsed
+ * by an XNScriptEngine, so that it can be run any number of times
+ * without lexing or parsing it again. Like the engine's own eval,
+ * each run gets a new context, so the variables declared from one
+ * ScriptContext's Bindings are gone by the next run.
+ * @since OpenXION 1.5
+ * @author Rebecca G. Bettencourt, Kreative Software
+ */
+public class XNCompiledScript extends CompiledScript {
+	private XNScriptEngine engine;
+	private List<XNStatement> program;
+	
+	public XNCompiledScript(XNScriptEngine engine, List<XNStatement> program) {
+		this.engine = engine;
+		this.program = program;
+	}
+	
+	public List<XNStatement> getProgram() {
+		return program;
+	}
+	
+	@Override
+	public Object eval(ScriptContext context) throws ScriptException {
+		return engine.execute(program, context);
+	}
+	
+	@Override
+	public ScriptEngine getEngine() {
+		return engine;
+	}
+}
@@ -29,10 +29,14 @@ package com.kreative.openxion.jsr223;
 
 import java.io.Reader;
 import java.io.StringReader;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.script.AbstractScriptEngine;
 import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
 import javax.script.ScriptContext;
 import javax.script.ScriptEngineFactory;
 import javax.script.ScriptException;
@@ -49,13 +53,26 @@ import com.kreative.openxion.XNStandardModule;
 import com.kreative.openxion.XNStdInOutUI;
 import com.kreative.openxion.XNUI;
 import com.kreative.openxion.ast.XNStatement;
+import com.kreative.openxion.xom.XOMVariableMap;
+import com.kreative.openxion.xom.XOMVariant;
+import com.kreative.openxion.xom.type.XOMVariantType;
 
-public class XNScriptEngine extends AbstractScriptEngine {
+/**
+ * XNScriptEngine runs XION scripts through the javax.script API.
+ * The engine may be used from any number of threads at once. Each
+ * evaluation runs in its own XNContext, forked from the engine's
+ * context, so nothing a script declares or changes, other than the
+ * Bindings, outlives that evaluation. Loaded modules are shared by all
+ * of these contexts. Values meant to be kept from one evaluation to
+ * the next, or shared between threads, belong in the Bindings.
+ * @since OpenXION 1.5
+ * @author Rebecca G. Bettencourt, Kreative Software
+ */
+public class XNScriptEngine extends AbstractScriptEngine implements Compilable {
 	private XNScriptEngineFactory factory;
 	private XNUI ui;
 	private XNContext ctx;
-	private XNInterpreter interp;
-	private XOMConverter conv;
+	private ThreadLocal<XNContext> parsers;
 	
 	public XNScriptEngine(XNScriptEngineFactory factory) {
 		this.factory = factory;
@@ -64,8 +81,29 @@ public class XNScriptEngine extends AbstractScriptEngine {
 		this.ctx.loadModule(XNStandardModule.instance());
 		this.ctx.loadModule(XNExtendedModule.instance());
 		this.ctx.loadModule(XNAudioModule.instance());
-		this.interp = new XNInterpreter(this.ctx);
-		this.conv = new XOMConverter(this.ctx);
+		/* Each thread parses in its own fork, which keeps its own parse cache. */
+		this.parsers = new ThreadLocal<XNContext>() {
+			@Override
+			protected XNContext initialValue() {
+				return fork();
+			}
+		};
+	}
+	
+	private XNContext fork() {
+		synchronized (ctx) {
+			return ctx.fork(false);
+		}
+	}
+	
+	/**
+	 * Returns the XNContext every evaluation is forked from.
+	 * Changes made to it while synchronized on it are seen by
+	 * every evaluation started afterward.
+	 * @return the XNContext every evaluation is forked from.
+	 */
+	public XNContext getXNContext() {
+		return ctx;
 	}
 	
 	@Override
@@ -75,30 +113,109 @@ public class XNScriptEngine extends AbstractScriptEngine {
 	
 	@Override
 	public Object eval(String script, ScriptContext context) throws ScriptException {
+		return execute(parse(script), context);
+	}
+	
+	@Override
+	public Object eval(Reader script, ScriptContext context) throws ScriptException {
+		return execute(parse(script), context);
+	}
+	
+	@Override
+	public CompiledScript compile(String script) throws ScriptException {
+		return new XNCompiledScript(this, parse(script));
+	}
+	
+	@Override
+	public CompiledScript compile(Reader script) throws ScriptException {
+		return new XNCompiledScript(this, parse(script));
+	}
+	
+	private List<XNStatement> parse(String script) throws ScriptException {
+		XNContext ctx = parsers.get();
 		try {
-			XNLexer l = new XNLexer(script, new StringReader(script));
-			XNParser p = new XNParser(ctx, l);
-			List<XNStatement> program = p.parse();
-			interp.executeScript(program);
-			return conv.toNative(ctx.getResult());
+			List<XNStatement> program = ctx.getParsedScript(script);
+			if (program == null) {
+				XNLexer l = new XNLexer(script, new StringReader(script));
+				XNParser p = new XNParser(ctx, l);
+				program = p.parse();
+				ctx.putParsedScript(script, program);
+			}
+			return program;
 		} catch (XNScriptError e) {
 			throw new ScriptException(e);
 		}
 	}
 	
-	@Override
-	public Object eval(Reader script, ScriptContext context) throws ScriptException {
+	private List<XNStatement> parse(Reader script) throws ScriptException {
+		XNContext ctx = parsers.get();
 		try {
 			XNLexer l = new XNLexer(script, script);
 			XNParser p = new XNParser(ctx, l);
-			List<XNStatement> program = p.parse();
-			interp.executeScript(program);
+			return p.parse();
+		} catch (XNScriptError e) {
+			throw new ScriptException(e);
+		}
+	}
+	
+	/**
+	 * Runs a parsed script. The global and engine scope bindings of the
+	 * given ScriptContext are converted with XOMConverter and declared
+	 * as global variables first; engine scope bindings take precedence.
+	 * Afterward, any of those variables the script changed are converted
+	 * back and stored in the bindings they came from. The script runs
+	 * in a new fork of the engine's context, which is then discarded.
+	 */
+	Object execute(List<XNStatement> program, ScriptContext context) throws ScriptException {
+		XNContext ctx = fork();
+		XOMConverter conv = new XOMConverter(ctx);
+		XOMVariableMap globals = ctx.globalVariables();
+		Map<String, Bindings> sources = new LinkedHashMap<String, Bindings>();
+		Map<String, XOMVariant> values = new LinkedHashMap<String, XOMVariant>();
+		if (context != null) {
+			bind(conv, context.getBindings(ScriptContext.GLOBAL_SCOPE), sources, values);
+			bind(conv, context.getBindings(ScriptContext.ENGINE_SCOPE), sources, values);
+		}
+		try {
+			for (Map.Entry<String, XOMVariant> e : values.entrySet()) {
+				globals.declareVariable(ctx, e.getKey(), XOMVariantType.instance, e.getValue());
+			}
+			try {
+				new XNInterpreter(ctx).executeScript(program);
+			} finally {
+				for (Map.Entry<String, Bindings> e : sources.entrySet()) {
+					XOMVariant v = globals.getVariable(ctx, e.getKey());
+					if (v != values.get(e.getKey())) {
+						e.getValue().put(e.getKey(), conv.toNative(v));
+					}
+				}
+			}
 			return conv.toNative(ctx.getResult());
 		} catch (XNScriptError e) {
 			throw new ScriptException(e);
 		}
 	}
 	
+	private static void bind(XOMConverter conv, Bindings b, Map<String, Bindings> sources, Map<String, XOMVariant> values) {
+		if (b == null) return;
+		for (Map.Entry<String, Object> e : b.entrySet()) {
+			if (isVariableName(e.getKey())) {
+				sources.put(e.getKey(), b);
+				values.put(e.getKey(), conv.fromNative(e.getValue()));
+			}
+		}
+	}
+	
+	private static boolean isVariableName(String name) {
+		if (name == null || name.length() == 0) return false;
+		if (!Character.isLetter(name.charAt(0)) && name.charAt(0) != '_') return false;
+		for (int i = 1; i < name.length(); i++) {
+			char ch = name.charAt(i);
+			if (!Character.isLetterOrDigit(ch) && ch != '_') return false;
+		}
+		return true;
+	}
+	
 	@Override
 	public ScriptEngineFactory getFactory() {
 		return factory;
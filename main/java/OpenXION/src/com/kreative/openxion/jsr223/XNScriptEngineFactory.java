@@ -62,7 +62,7 @@ public class XNScriptEngineFactory implements ScriptEngineFactory {
 		else if (key.equals(ScriptEngine.ENGINE_VERSION)) return XNMain.XION_VERSION;
 		else if (key.equals(ScriptEngine.LANGUAGE)) return "XION";
 		else if (key.equals(ScriptEngine.LANGUAGE_VERSION)) return "1.0";
-		else if (key.equals("THREADING")) return null; // assume not threadsafe until fully implemented
+		else if (key.equals("THREADING")) return "MULTITHREADED";
 		else return null;
 	}
 	
@@ -30,8 +30,8 @@ package com.kreative.openxion.math;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.math.MathContext;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Methods for mathematical functions of arbitrary numbers
@@ -47,8 +47,8 @@ public class BigMath extends MathProcessor {
 	private static final BigDecimal FOUR = BigDecimal.valueOf(4);
 	private static final BigDecimal NEGATIVE_ONE = BigDecimal.valueOf(-1);
 	
-	private static final Map<MathContext,BigDecimal> eCache = new HashMap<MathContext,BigDecimal>();
-	private static final Map<MathContext,BigDecimal> piCache = new HashMap<MathContext,BigDecimal>();
+	private static final Map<MathContext,BigDecimal> eCache = new ConcurrentHashMap<MathContext,BigDecimal>();
+	private static final Map<MathContext,BigDecimal> piCache = new ConcurrentHashMap<MathContext,BigDecimal>();
 	
 	/* Calculates e using Taylor series. */
 	public BigDecimal e(MathContext mc) {
@@ -28,8 +28,12 @@
 package com.kreative.openxion.math;
 
 import java.math.MathContext;
+import com.kreative.openxion.XNContext;
+import com.kreative.openxion.xom.XOMVariant;
 import com.kreative.openxion.xom.inst.XOMComplex;
+import com.kreative.openxion.xom.inst.XOMInteger;
 import com.kreative.openxion.xom.inst.XOMNumber;
+import com.kreative.openxion.xom.inst.XOMString;
 
 /**
  * Methods for mathematical operations on and functions of XOMNumbers.
@@ -39,6 +43,99 @@ import com.kreative.openxion.xom.inst.XOMNumber;
 public class XOMNumberMath {
 	private XOMNumberMath(){}
 	
+	/*
+	 * The longAdd, longSubtract, longMultiply, longDiv, and longMod methods
+	 * perform arithmetic on integers using primitive long math. They return
+	 * the same XOMNumber the corresponding XOMNumber operations would, or null
+	 * if either operand is not an XOMInteger, XOMNumber, or XOMString holding
+	 * an integer that fits in a long, if the result does not fit in a long,
+	 * or if the MathContext is not precise enough for the result to be exact.
+	 * The caller should then fall back to the XOMNumber operations.
+	 */
+	
+	private static final int LONG_MATH_MIN_PRECISION = 40;
+	
+	public static boolean canUseLongMath(MathContext mc, boolean division) {
+		if (division) return mc.getPrecision() >= LONG_MATH_MIN_PRECISION;
+		else return mc.getPrecision() == 0 || mc.getPrecision() >= LONG_MATH_MIN_PRECISION;
+	}
+	
+	private static boolean isLong(XNContext ctx, XOMVariant v) {
+		if (v instanceof XOMInteger) return ((XOMInteger)v).isLong();
+		if (v instanceof XOMNumber) return ((XOMNumber)v).isLong();
+		if (v instanceof XOMString) return isLong(((XOMString)v).toTextString(ctx));
+		return false;
+	}
+	
+	private static boolean isLong(String s) {
+		// Only plain decimal integers; anything else is parsed by XOMNumberType.
+		s = s.trim();
+		int i = (s.startsWith("-") || s.startsWith("+")) ? 1 : 0;
+		int n = s.length() - i;
+		if (n < 1 || n > 18) return false;
+		for (; i < s.length(); i++) {
+			char ch = s.charAt(i);
+			if (ch < '0' || ch > '9') return false;
+		}
+		return true;
+	}
+	
+	private static long toLong(XNContext ctx, XOMVariant v) {
+		if (v instanceof XOMInteger) return ((XOMInteger)v).toLong();
+		if (v instanceof XOMNumber) return ((XOMNumber)v).toLong();
+		return Long.parseLong(((XOMString)v).toTextString(ctx).trim());
+	}
+	
+	public static XOMNumber longAdd(XNContext ctx, XOMVariant av, XOMVariant bv) {
+		if (!canUseLongMath(ctx.getMathContext(), false)) return null;
+		if (!(isLong(ctx, av) && isLong(ctx, bv))) return null;
+		long a = toLong(ctx, av), b = toLong(ctx, bv), r = a + b;
+		if (((a ^ r) & (b ^ r)) < 0) return null;
+		return XOMNumber.valueOf(r);
+	}
+	
+	public static XOMNumber longSubtract(XNContext ctx, XOMVariant av, XOMVariant bv) {
+		if (!canUseLongMath(ctx.getMathContext(), false)) return null;
+		if (!(isLong(ctx, av) && isLong(ctx, bv))) return null;
+		long a = toLong(ctx, av), b = toLong(ctx, bv), r = a - b;
+		if (((a ^ b) & (a ^ r)) < 0) return null;
+		return XOMNumber.valueOf(r);
+	}
+	
+	public static XOMNumber longMultiply(XNContext ctx, XOMVariant av, XOMVariant bv) {
+		if (!canUseLongMath(ctx.getMathContext(), false)) return null;
+		if (!(isLong(ctx, av) && isLong(ctx, bv))) return null;
+		long a = toLong(ctx, av), b = toLong(ctx, bv);
+		// Multiplying by zero produces a signed zero.
+		if (a == 0 || b == 0) return null;
+		if (a != (int)a || b != (int)b) return null;
+		return XOMNumber.valueOf(a * b);
+	}
+	
+	public static XOMNumber longDiv(XNContext ctx, XOMVariant av, XOMVariant bv) {
+		if (!canUseLongMath(ctx.getMathContext(), true)) return null;
+		if (!(isLong(ctx, av) && isLong(ctx, bv))) return null;
+		long a = toLong(ctx, av), b = toLong(ctx, bv);
+		if (a == 0 || b == 0) return null;
+		if (a == Long.MIN_VALUE && b == -1) return null;
+		// Round toward negative infinity like div on big numbers does.
+		long q = a / b;
+		if ((a % b != 0) && ((a ^ b) < 0)) q--;
+		return XOMNumber.valueOf(q);
+	}
+	
+	public static XOMNumber longMod(XNContext ctx, XOMVariant av, XOMVariant bv) {
+		if (!canUseLongMath(ctx.getMathContext(), true)) return null;
+		if (!(isLong(ctx, av) && isLong(ctx, bv))) return null;
+		long a = toLong(ctx, av), b = toLong(ctx, bv);
+		if (a == 0 || b == 0) return null;
+		if (a == Long.MIN_VALUE && b == -1) return null;
+		// Take the sign of the divisor like mod on big numbers does.
+		long r = a % b;
+		if ((r != 0) && ((r ^ b) < 0)) r += b;
+		return XOMNumber.valueOf(r);
+	}
+	
 	public static XOMNumber fma(XOMNumber a, XOMNumber b, XOMNumber c, MathContext mc) {
 		return a.multiply(b, mc).add(c, mc);
 	}
@@ -31,6 +31,10 @@ import java.util.BitSet;
 import java.util.HashMap;
 import java.util.Map;
 
+/*
+ * A TrCachedCharacterSet may be shared by patterns in use on
+ * several threads at once, so its methods are synchronized.
+ */
 class TrCachedCharacterSet implements TrCharacterSet {
 	private TrCharacterSet set;
 	
@@ -40,7 +44,7 @@ class TrCachedCharacterSet implements TrCharacterSet {
 	
 	private int length = -1;
 	@Override
-	public int length() {
+	public synchronized int length() {
 		if (length >= 0) {
 			return length;
 		} else {
@@ -52,7 +56,7 @@ class TrCachedCharacterSet implements TrCharacterSet {
 	private BitSet containsChecked = new BitSet();
 	private BitSet contains = new BitSet();
 	@Override
-	public boolean contains(int codePoint) {
+	public synchronized boolean contains(int codePoint) {
 		if (codePoint < 0) return false;
 		if (containsChecked.get(codePoint)) {
 			return contains.get(codePoint);
@@ -69,7 +73,7 @@ class TrCachedCharacterSet implements TrCharacterSet {
 	
 	private Map<Integer,Integer> indexOf = new HashMap<Integer,Integer>();
 	@Override
-	public int indexOf(int codePoint) {
+	public synchronized int indexOf(int codePoint) {
 		if (codePoint < 0) return -1;
 		if (indexOf.containsKey(codePoint)) {
 			return indexOf.get(codePoint);
@@ -82,7 +86,7 @@ class TrCachedCharacterSet implements TrCharacterSet {
 	
 	private Map<Integer,Integer> charAt = new HashMap<Integer,Integer>();
 	@Override
-	public int charAt(int index) {
+	public synchronized int charAt(int index) {
 		if (index < 0) return -1;
 		if (charAt.containsKey(index)) {
 			return charAt.get(index);
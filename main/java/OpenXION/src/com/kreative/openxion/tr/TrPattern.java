@@ -28,25 +28,17 @@
 package com.kreative.openxion.tr;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class TrPattern {
-	private static Map<String, TrPattern> patterns = new HashMap<String, TrPattern>();
-	private static Map<String, TrPattern> cpatterns = new HashMap<String, TrPattern>();
-	
+	/**
+	 * Compiles a new TrPattern. Patterns are not cached here; callers
+	 * that use the same pattern repeatedly should keep what they compile.
+	 */
 	public static TrPattern compile(String pattern, boolean complement) {
-		Map<String, TrPattern> ps = (complement ? cpatterns : patterns);
-		if (ps.containsKey(pattern)) {
-			return ps.get(pattern);
-		} else {
-			TrPattern p = new TrPattern(pattern, complement);
-			ps.put(pattern, p);
-			return p;
-		}
+		return new TrPattern(pattern, complement);
 	}
 	
 	public static Translator translator(TrPattern inputPattern, TrPattern outputPattern) {
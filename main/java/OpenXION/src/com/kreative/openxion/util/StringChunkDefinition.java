@@ -28,6 +28,7 @@
 package com.kreative.openxion.util;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -39,9 +40,9 @@ import java.util.List;
  * @author Rebecca G. Bettencourt, Kreative Software
  */
 public abstract class StringChunkDefinition {
-	protected abstract int findFirst(String s, int start, int end);
-	protected abstract int findEnd(String s, int start, int end);
-	protected abstract int findNext(String s, int start, int end);
+	protected abstract int findFirst(CharSequence s, int start, int end);
+	protected abstract int findEnd(CharSequence s, int start, int end);
+	protected abstract int findNext(CharSequence s, int start, int end);
 	public boolean isDelimited() { return false; }
 	public String getDelimiter() { return null; }
 	
@@ -50,11 +51,11 @@ public abstract class StringChunkDefinition {
 		public static Character getInstance() { return instance; }
 		private Character() {}
 		@Override
-		protected int findFirst(String s, int start, int end) {
+		protected int findFirst(CharSequence s, int start, int end) {
 			return start;
 		}
 		@Override
-		protected int findEnd(String s, int start, int end) {
+		protected int findEnd(CharSequence s, int start, int end) {
 			if (start < end) {
 				boolean highSurrogate = java.lang.Character.isHighSurrogate(s.charAt(start));
 				start++;
@@ -65,7 +66,7 @@ public abstract class StringChunkDefinition {
 			return start;
 		}
 		@Override
-		protected int findNext(String s, int start, int end) {
+		protected int findNext(CharSequence s, int start, int end) {
 			return start;
 		}
 	}
@@ -77,18 +78,18 @@ public abstract class StringChunkDefinition {
 			this.lineEnding = lineEnding;
 		}
 		@Override
-		protected int findFirst(String s, int start, int end) {
+		protected int findFirst(CharSequence s, int start, int end) {
 			return start;
 		}
 		@Override
-		protected int findEnd(String s, int start, int end) {
+		protected int findEnd(CharSequence s, int start, int end) {
 			while (start < end && !isLineBreak(s.charAt(start))) {
 				start++;
 			}
 			return start;
 		}
 		@Override
-		protected int findNext(String s, int start, int end) {
+		protected int findNext(CharSequence s, int start, int end) {
 			if (start < end && isLineBreak(s.charAt(start))) {
 				boolean cr = (s.charAt(start) == '\r');
 				start++;
@@ -106,6 +107,14 @@ public abstract class StringChunkDefinition {
 		public String getDelimiter() {
 			return lineEnding;
 		}
+		@Override
+		public boolean equals(Object o) {
+			return (o instanceof Line) && ((Line)o).lineEnding.equals(lineEnding);
+		}
+		@Override
+		public int hashCode() {
+			return lineEnding.hashCode();
+		}
 		private static boolean isLineBreak(char ch) {
 			return ch == '\n' || ch == '\r' || ch == '\u2028' || ch == '\u2029';
 		}
@@ -118,24 +127,39 @@ public abstract class StringChunkDefinition {
 			this.itemDelimiter = itemDelimiter;
 		}
 		@Override
-		protected int findFirst(String s, int start, int end) {
+		protected int findFirst(CharSequence s, int start, int end) {
 			return start;
 		}
 		@Override
-		protected int findEnd(String s, int start, int end) {
-			start = s.indexOf(itemDelimiter, start);
+		protected int findEnd(CharSequence s, int start, int end) {
+			start = indexOf(s, itemDelimiter, start);
 			if (start < 0 || start > end) {
 				start = end;
 			}
 			return start;
 		}
 		@Override
-		protected int findNext(String s, int start, int end) {
-			if (start < end && s.substring(start).startsWith(itemDelimiter)) {
+		protected int findNext(CharSequence s, int start, int end) {
+			if (start < end && startsWith(s, itemDelimiter, start)) {
 				start += itemDelimiter.length();
 			}
 			return start;
 		}
+		private static int indexOf(CharSequence s, String t, int start) {
+			if (s instanceof String) return ((String)s).indexOf(t, start);
+			if (s instanceof StringBuilder) return ((StringBuilder)s).indexOf(t, start);
+			for (int i = Math.max(start, 0); i + t.length() <= s.length(); i++) {
+				if (startsWith(s, t, i)) return i;
+			}
+			return -1;
+		}
+		private static boolean startsWith(CharSequence s, String t, int start) {
+			if (start + t.length() > s.length()) return false;
+			for (int i = 0; i < t.length(); i++) {
+				if (s.charAt(start + i) != t.charAt(i)) return false;
+			}
+			return true;
+		}
 		@Override
 		public boolean isDelimited() {
 			return true;
@@ -144,6 +168,14 @@ public abstract class StringChunkDefinition {
 		public String getDelimiter() {
 			return itemDelimiter;
 		}
+		@Override
+		public boolean equals(Object o) {
+			return (o instanceof Item) && ((Item)o).itemDelimiter.equals(itemDelimiter);
+		}
+		@Override
+		public int hashCode() {
+			return itemDelimiter.hashCode();
+		}
 	}
 	
 	public static final class Word extends StringChunkDefinition {
@@ -151,21 +183,21 @@ public abstract class StringChunkDefinition {
 		public static Word getInstance() { return instance; }
 		private Word() {}
 		@Override
-		protected int findFirst(String s, int start, int end) {
+		protected int findFirst(CharSequence s, int start, int end) {
 			while (start < end && isWhiteSpace(s.charAt(start))) {
 				start++;
 			}
 			return start;
 		}
 		@Override
-		protected int findEnd(String s, int start, int end) {
+		protected int findEnd(CharSequence s, int start, int end) {
 			while (start < end && !isWhiteSpace(s.charAt(start))) {
 				start++;
 			}
 			return start;
 		}
 		@Override
-		protected int findNext(String s, int start, int end) {
+		protected int findNext(CharSequence s, int start, int end) {
 			while (start < end && isWhiteSpace(s.charAt(start))) {
 				start++;
 			}
@@ -181,14 +213,14 @@ public abstract class StringChunkDefinition {
 		public static Sentence getInstance() { return instance; }
 		private Sentence() {}
 		@Override
-		protected int findFirst(String s, int start, int end) {
+		protected int findFirst(CharSequence s, int start, int end) {
 			while (start < end && isWhiteSpace(s.charAt(start))) {
 				start++;
 			}
 			return start;
 		}
 		@Override
-		protected int findEnd(String s, int start, int end) {
+		protected int findEnd(CharSequence s, int start, int end) {
 			while (start < end && !isSentenceEnder(s.charAt(start))) {
 				start++;
 			}
@@ -198,7 +230,7 @@ public abstract class StringChunkDefinition {
 			return start;
 		}
 		@Override
-		protected int findNext(String s, int start, int end) {
+		protected int findNext(CharSequence s, int start, int end) {
 			while (start < end && isWhiteSpace(s.charAt(start))) {
 				start++;
 			}
@@ -217,21 +249,21 @@ public abstract class StringChunkDefinition {
 		public static Paragraph getInstance() { return instance; }
 		private Paragraph() {}
 		@Override
-		protected int findFirst(String s, int start, int end) {
+		protected int findFirst(CharSequence s, int start, int end) {
 			while (start < end && isLineBreak(s.charAt(start))) {
 				start++;
 			}
 			return start;
 		}
 		@Override
-		protected int findEnd(String s, int start, int end) {
+		protected int findEnd(CharSequence s, int start, int end) {
 			while (start < end && !isLineBreak(s.charAt(start))) {
 				start++;
 			}
 			return start;
 		}
 		@Override
-		protected int findNext(String s, int start, int end) {
+		protected int findNext(CharSequence s, int start, int end) {
 			while (start < end && isLineBreak(s.charAt(start))) {
 				start++;
 			}
@@ -260,8 +292,8 @@ public abstract class StringChunkDefinition {
 		private final int startIndex;
 		private final int endIndex;
 		private final int deleteEndIndex;
-		protected ChunkLocation(String s, int ws, int we, int i, int o, int u) {
-			this.content = s.substring(i, o);
+		protected ChunkLocation(CharSequence s, int ws, int we, int i, int o, int u) {
+			this.content = s.subSequence(i, o).toString();
 			this.firstChunkIndex = ws;
 			this.lastChunkIndex = we;
 			this.startIndex = i;
@@ -353,18 +385,259 @@ public abstract class StringChunkDefinition {
 		return null;
 	}
 	
+	/**
+	 * A ChunkIndex holds the boundaries of the chunks in a string,
+	 * so that the string does not have to be rescanned from the start
+	 * every time a chunk is accessed by ordinal. Chunks are only found
+	 * as far as they have been asked for, and characters are not stored
+	 * at all unless the string has surrogate pairs, since otherwise they
+	 * are just offsets. Since strings are immutable, an index never
+	 * becomes stale; it only needs to be dropped along with the string
+	 * it was built from.
+	 */
+	public static final class ChunkIndex {
+		private final StringChunkDefinition definition;
+		private final String sourceString;
+		private final boolean direct;
+		private int[] startIndexes;
+		private int[] endIndexes;
+		private int count;
+		private int next;
+		protected ChunkIndex(StringChunkDefinition d, String s) {
+			this.definition = d;
+			this.sourceString = s;
+			this.direct = (d instanceof Character) && (s.codePointCount(0, s.length()) == s.length());
+			if (direct) {
+				this.count = s.length();
+				this.next = -1;
+			} else {
+				this.startIndexes = new int[16];
+				this.endIndexes = new int[16];
+				this.count = 0;
+				this.next = d.findFirst(s, 0, s.length());
+			}
+		}
+		public StringChunkDefinition getDefinition() { return definition; }
+		public String getSourceString() { return sourceString; }
+		public synchronized int getChunkCount() { return scan(Integer.MAX_VALUE); }
+		public synchronized int getStartIndex(int chunkIndex) { scan(chunkIndex); return startOf(chunkIndex); }
+		public synchronized int getEndIndex(int chunkIndex) { scan(chunkIndex); return endOf(chunkIndex); }
+		public synchronized int getDeleteEndIndex(int chunkIndex) {
+			return (chunkIndex < scanPast(chunkIndex)) ? startOf(chunkIndex+1) : sourceString.length();
+		}
+		
+		private int startOf(int chunkIndex) { return direct ? (chunkIndex-1) : startIndexes[chunkIndex-1]; }
+		private int endOf(int chunkIndex) { return direct ? chunkIndex : endIndexes[chunkIndex-1]; }
+		
+		/*
+		 * Finds chunks until at least k have been found or the string runs out,
+		 * resuming where the last call stopped. Returns the number found, which
+		 * is less than k only if it is the number of chunks in the whole string.
+		 */
+		private int scan(int k) {
+			int end = sourceString.length();
+			while (count < k && next >= 0) {
+				if (next >= end) {
+					next = -1;
+					break;
+				}
+				if (count >= startIndexes.length) {
+					startIndexes = Arrays.copyOf(startIndexes, count * 2);
+					endIndexes = Arrays.copyOf(endIndexes, count * 2);
+				}
+				startIndexes[count] = next;
+				next = definition.findEnd(sourceString, next, end);
+				endIndexes[count] = next;
+				next = definition.findNext(sourceString, next, end);
+				count++;
+			}
+			return count;
+		}
+		
+		private int scanPast(int chunkIndex) {
+			return scan((chunkIndex < Integer.MAX_VALUE) ? (chunkIndex + 1) : chunkIndex);
+		}
+		
+		public synchronized ChunkLocation findChunk(int firstChunkIndex, int lastChunkIndex) {
+			int n = scanPast(Math.max(firstChunkIndex, lastChunkIndex));
+			int end = sourceString.length();
+			int startIndex = (firstChunkIndex < 1) ? 0 : (firstChunkIndex <= n) ? startOf(firstChunkIndex) : end;
+			int endIndex = (lastChunkIndex < 1) ? 0 : (lastChunkIndex <= n) ? endOf(lastChunkIndex) : end;
+			int deleteEndIndex = (lastChunkIndex < 0) ? 0 : (lastChunkIndex < n) ? startOf(lastChunkIndex+1) : end;
+			if (endIndex < startIndex) endIndex = startIndex;
+			if (deleteEndIndex < endIndex) deleteEndIndex = endIndex;
+			return new ChunkLocation(sourceString, firstChunkIndex, lastChunkIndex, startIndex, endIndex, deleteEndIndex);
+		}
+		
+		public ChunkInfo resolveChunk(int firstChunkIndex, int lastChunkIndex, boolean forPrepend, boolean forAppend) {
+			/*
+			 * Only indexes counted from the end, or the middle or any chunk,
+			 * need the whole string scanned. Positive indexes resolve the same
+			 * against any count past them as against the true count.
+			 */
+			int n;
+			synchronized (this) {
+				if (firstChunkIndex < 0 || lastChunkIndex < 0) n = scan(Integer.MAX_VALUE);
+				else n = scanPast(Math.max(firstChunkIndex, lastChunkIndex));
+			}
+			return definition.resolveChunk(sourceString, 0, sourceString.length(), n, firstChunkIndex, lastChunkIndex, forPrepend, forAppend, this);
+		}
+	}
+	
+	public final ChunkIndex indexChunks(String s) {
+		return new ChunkIndex(this, s);
+	}
+	
+	/**
+	 * A BufferIndex holds the boundaries of every chunk in a StringBuilder.
+	 * Unlike a ChunkIndex, it does not become stale as long as the buffer
+	 * is only modified through its replace method, which rescans only the
+	 * chunks around the modified range, so that a loop writing into chunks
+	 * of a string does not copy or rescan the whole string on every write.
+	 */
+	public static final class BufferIndex {
+		private final StringChunkDefinition definition;
+		private final StringBuilder buffer;
+		private int[] startIndexes;
+		private int[] endIndexes;
+		private int count;
+		protected BufferIndex(StringChunkDefinition d, StringBuilder b) {
+			this.definition = d;
+			this.buffer = b;
+			this.startIndexes = new int[16];
+			this.endIndexes = new int[16];
+			this.count = 0;
+			int start = d.findFirst(b, 0, b.length());
+			while (start < b.length()) {
+				add(start, d.findEnd(b, start, b.length()));
+				start = d.findNext(b, endIndexes[count-1], b.length());
+			}
+		}
+		public StringChunkDefinition getDefinition() { return definition; }
+		public StringBuilder getBuffer() { return buffer; }
+		public int getChunkCount() { return count; }
+		
+		private void add(int start, int end) {
+			if (count >= startIndexes.length) {
+				startIndexes = Arrays.copyOf(startIndexes, count * 2);
+				endIndexes = Arrays.copyOf(endIndexes, count * 2);
+			}
+			startIndexes[count] = start;
+			endIndexes[count] = end;
+			count++;
+		}
+		
+		public ChunkLocation findChunk(int firstChunkIndex, int lastChunkIndex) {
+			int n = count;
+			int end = buffer.length();
+			int startIndex = (firstChunkIndex < 1) ? 0 : (firstChunkIndex <= n) ? startIndexes[firstChunkIndex-1] : end;
+			int endIndex = (lastChunkIndex < 1) ? 0 : (lastChunkIndex <= n) ? endIndexes[lastChunkIndex-1] : end;
+			int deleteEndIndex = (lastChunkIndex < 0) ? 0 : (lastChunkIndex < n) ? startIndexes[lastChunkIndex] : end;
+			if (endIndex < startIndex) endIndex = startIndex;
+			if (deleteEndIndex < endIndex) deleteEndIndex = endIndex;
+			return new ChunkLocation(buffer, firstChunkIndex, lastChunkIndex, startIndex, endIndex, deleteEndIndex);
+		}
+		
+		/**
+		 * Resolves a chunk of the buffer. Any empty chunks that must be added
+		 * to put into a delimited chunk past either end of the buffer are
+		 * added to the buffer itself, so the returned ChunkInfo never has a
+		 * string to append or prepend. Its source is the buffer, and is only
+		 * valid until the buffer is next modified.
+		 */
+		public ChunkInfo resolveChunk(int firstChunkIndex, int lastChunkIndex, boolean forPrepend, boolean forAppend) {
+			int[] padding = definition.padChunks(count, firstChunkIndex, lastChunkIndex, forPrepend, forAppend);
+			if (padding[2] > 0) replace(buffer.length(), buffer.length(), definition.repeatDelimiter(padding[2]));
+			if (padding[3] > 0) replace(0, 0, definition.repeatDelimiter(padding[3]));
+			return new ChunkInfo(buffer, null, null, findChunk(padding[0], padding[1]));
+		}
+		
+		/**
+		 * Replaces the characters between start and end of the buffer
+		 * and updates the index to match.
+		 */
+		public void replace(int start, int end, String s) {
+			buffer.replace(start, end, s);
+			int delta = s.length() - (end - start);
+			int length = buffer.length();
+			/*
+			 * Where the next chunk starts depends only on what comes after the
+			 * start of the current one, so scanning resumes at the last chunk
+			 * starting before the change, and stops at the first chunk starting
+			 * after the change that also started a chunk before it. The chunks
+			 * from there on are the same as before, only moved by delta.
+			 */
+			int k = count;
+			while (k > 0 && startIndexes[k-1] >= start) k--;
+			int pos;
+			if (k > 0) pos = startIndexes[--k];
+			else pos = definition.findFirst(buffer, 0, length);
+			int resume = start + s.length();
+			int j = k;
+			int[] si = new int[4];
+			int[] ei = new int[4];
+			int m = 0;
+			while (true) {
+				if (pos >= length) {
+					j = count;
+					break;
+				}
+				if (pos >= resume) {
+					while (j < count && startIndexes[j] < pos - delta) j++;
+					if (j < count && startIndexes[j] == pos - delta) break;
+				}
+				if (m >= si.length) {
+					si = Arrays.copyOf(si, m * 2);
+					ei = Arrays.copyOf(ei, m * 2);
+				}
+				si[m] = pos;
+				pos = definition.findEnd(buffer, pos, length);
+				ei[m] = pos;
+				pos = definition.findNext(buffer, pos, length);
+				m++;
+			}
+			int newCount = k + m + (count - j);
+			if (newCount > startIndexes.length) {
+				startIndexes = Arrays.copyOf(startIndexes, Math.max(newCount, startIndexes.length * 2));
+				endIndexes = Arrays.copyOf(endIndexes, Math.max(newCount, endIndexes.length * 2));
+			}
+			System.arraycopy(startIndexes, j, startIndexes, k + m, count - j);
+			System.arraycopy(endIndexes, j, endIndexes, k + m, count - j);
+			if (delta != 0) {
+				for (int i = k + m; i < newCount; i++) {
+					startIndexes[i] += delta;
+					endIndexes[i] += delta;
+				}
+			}
+			System.arraycopy(si, 0, startIndexes, k, m);
+			System.arraycopy(ei, 0, endIndexes, k, m);
+			count = newCount;
+		}
+	}
+	
+	public final BufferIndex indexChunks(StringBuilder s) {
+		return new BufferIndex(this, s);
+	}
+	
 	public static final class ChunkInfo {
-		protected final String sourceString;
+		protected final CharSequence source;
+		protected String sourceString;
 		protected final String stringToAppend;
 		protected final String stringToPrepend;
 		protected final ChunkLocation location;
-		protected ChunkInfo(String s, String a, String p, ChunkLocation l) {
-			this.sourceString = s;
+		protected ChunkInfo(CharSequence s, String a, String p, ChunkLocation l) {
+			this.source = s;
 			this.stringToAppend = a;
 			this.stringToPrepend = p;
 			this.location = l;
 		}
-		public String getSourceString() { return sourceString; }
+		public String getSourceString() {
+			if (sourceString == null) sourceString = source.toString();
+			return sourceString;
+		}
+		public String getSourceString(int start, int end) {
+			return source.subSequence(start, end).toString();
+		}
 		public String getStringToAppend() { return stringToAppend; }
 		public String getStringToPrepend() { return stringToPrepend; }
 		public ChunkLocation getLocation() { return location; }
@@ -378,43 +651,65 @@ public abstract class StringChunkDefinition {
 	
 	public final ChunkInfo resolveChunk(String s, int start, int end, int firstChunkIndex, int lastChunkIndex, boolean forPrepend, boolean forAppend) {
 		int n = countChunks(s, start, end);
+		return resolveChunk(s, start, end, n, firstChunkIndex, lastChunkIndex, forPrepend, forAppend, null);
+	}
+	
+	private ChunkInfo resolveChunk(String s, int start, int end, int n, int firstChunkIndex, int lastChunkIndex, boolean forPrepend, boolean forAppend, ChunkIndex index) {
+		int[] padding = padChunks(n, firstChunkIndex, lastChunkIndex, forPrepend, forAppend);
+		String toAppend = null;
+		String toPrepend = null;
+		if (padding[2] >= 0) {
+			toAppend = repeatDelimiter(padding[2]);
+			s = s.substring(0, end) + toAppend + s.substring(end);
+			end += toAppend.length();
+		}
+		if (padding[3] >= 0) {
+			toPrepend = repeatDelimiter(padding[3]);
+			s = s.substring(0, start) + toPrepend + s.substring(start);
+			end += toPrepend.length();
+		}
+		ChunkLocation location;
+		if (index != null && toAppend == null && toPrepend == null) {
+			location = index.findChunk(padding[0], padding[1]);
+		} else {
+			location = findChunk(s, start, end, padding[0], padding[1]);
+		}
+		return new ChunkInfo(s, toAppend, toPrepend, location);
+	}
+	
+	/*
+	 * Resolves the first and last chunk indexes against a string of n chunks.
+	 * Putting into a delimited chunk past either end of the string adds empty
+	 * chunks first; returns the resolved indexes as they will be once that is
+	 * done, followed by the number of delimiters to append and to prepend,
+	 * or -1 for either when nothing is to be added there.
+	 */
+	private int[] padChunks(int n, int firstChunkIndex, int lastChunkIndex, boolean forPrepend, boolean forAppend) {
 		int[] chunkIndex = XIONUtil.index(1, n, firstChunkIndex, lastChunkIndex);
 		firstChunkIndex = chunkIndex[0];
 		lastChunkIndex = chunkIndex[1];
-		String toAppend = null;
-		String toPrepend = null;
+		int toAppend = -1;
+		int toPrepend = -1;
 		if (isDelimited()) {
 			if ((forPrepend && firstChunkIndex > n) || (forAppend && lastChunkIndex > n)) {
-				StringBuffer a = new StringBuffer();
 				int m = ((forPrepend && forAppend) ? Math.max(firstChunkIndex, lastChunkIndex) : forPrepend ? firstChunkIndex : forAppend ? lastChunkIndex : n) - n;
-				if (n == 0) {
-					m--;
-					n++;
-				}
-				while (m-- > 0) {
-					a.append(getDelimiter());
-					n++;
-				}
-				s = s.substring(0, end) + a.toString() + s.substring(end);
-				end += a.length();
-				toAppend = a.toString();
+				if (n == 0) m--;
+				toAppend = Math.max(0, m);
 			}
 			if ((forPrepend && firstChunkIndex < 1) || (forAppend && lastChunkIndex < 1)) {
-				StringBuffer a = new StringBuffer();
 				int m = 1 - ((forPrepend && forAppend) ? Math.min(firstChunkIndex, lastChunkIndex) : forPrepend ? firstChunkIndex : forAppend ? lastChunkIndex : 1);
-				while (m-- > 0) {
-					a.append(getDelimiter());
-					n++;
-					firstChunkIndex++;
-					lastChunkIndex++;
-				}
-				s = s.substring(0, start) + a.toString() + s.substring(start);
-				end += a.length();
-				toPrepend = a.toString();
+				toPrepend = Math.max(0, m);
+				firstChunkIndex += toPrepend;
+				lastChunkIndex += toPrepend;
 			}
 		}
-		ChunkLocation location = findChunk(s, start, end, firstChunkIndex, lastChunkIndex);
-		return new ChunkInfo(s, toAppend, toPrepend, location);
+		return new int[]{firstChunkIndex, lastChunkIndex, toAppend, toPrepend};
+	}
+	
+	private String repeatDelimiter(int count) {
+		StringBuffer a = new StringBuffer();
+		while (count-- > 0) a.append(getDelimiter());
+		return a.toString();
 	}
 	
 	public final ChunkInfo resolveChunkByContent(String s, int start, int end, String content) {
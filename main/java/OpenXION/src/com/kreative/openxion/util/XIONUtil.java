@@ -90,7 +90,9 @@ public class XIONUtil {
 	 * * * * * */
 	
 	public static String normalizeVarName(String s) {
-		return (s == null) ? "" : s.toLowerCase().trim().replaceAll(" +", " ");
+		if (s == null) return "";
+		s = s.toLowerCase().trim();
+		return (s.indexOf("  ") < 0) ? s : s.replaceAll(" +", " ");
 	}
 	
 	public static XOMVariant parseDescriptor(XNContext ctx, String s) {
@@ -0,0 +1,184 @@
+/*
+ * Copyright &copy; 2026 Rebecca G. Bettencourt / Kreative Software
+ * <p>
+ * The contents of this file are subject to the Mozilla Public License
+ * Version 1.1 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * <a href="http://www.mozilla.org/MPL/">http://www.mozilla.org/MPL/</a>
+ * <p>
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ * <p>
+ * Alternatively, the contents of this file may be used under the terms
+ * of the GNU Lesser General Public License (the "LGPL License"), in which
+ * case the provisions of LGPL License are applicable instead of those
+ * above. If you wish to allow use of your version of this file only
+ * under the terms of the LGPL License and not to allow others to use
+ * your version of this file under the MPL, indicate your decision by
+ * deleting the provisions above and replace them with the notice and
+ * other provisions required by the LGPL License. If you do not delete
+ * the provisions above, a recipient may use your version of this file
+ * under either the MPL or the LGPL License.
+ * @since OpenXION 1.5
+ * @author Rebecca G. Bettencourt, Kreative Software
+ */
+
+package com.kreative.openxion.util;
+
+import java.text.DateFormat;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.*;
+
+/**
+ * XNDateParser parses strings as dates in any of the formats given by
+ * XNDateFormat. DateFormat objects are expensive to create and are not
+ * thread-safe, so each thread keeps one of each kind for the current
+ * locale and time zone and reuses it.
+ * Each thread also remembers the last string it parsed, since a value
+ * is usually checked for being a date right before it is made into one.
+ * @since OpenXION 1.5
+ * @author Rebecca G. Bettencourt, Kreative Software
+ */
+public final class XNDateParser {
+	private XNDateParser() {}
+	
+	/**
+	 * The formats tried when a string is converted to a date,
+	 * in the order they are tried.
+	 */
+	public static final List<XNDateFormat> DATETIME_FORMATS =
+		Collections.unmodifiableList(XNDateFormat.allForName("datetime"));
+	
+	/**
+	 * The result of parsing a string as a date: the format that
+	 * matched and the time it gave, in milliseconds since 1970.
+	 */
+	public static final class Result {
+		private final XNDateFormat format;
+		private final long time;
+		private Result(XNDateFormat format, long time) {
+			this.format = format;
+			this.time = time;
+		}
+		public XNDateFormat getFormat() { return format; }
+		public long getTime() { return time; }
+		public Date toDate() { return new Date(time); }
+		public GregorianCalendar toCalendar() {
+			GregorianCalendar c = new GregorianCalendar();
+			c.setTimeInMillis(time);
+			return c;
+		}
+	}
+	
+	private static final class ThreadState {
+		private Locale locale = null;
+		private TimeZone zone = null;
+		private final DateFormat[] formats = new DateFormat[XNDateFormat.values().length];
+		private String lastString = null;
+		private Result lastResult = null;
+	}
+	
+	private static final ThreadLocal<ThreadState> state = new ThreadLocal<ThreadState>() {
+		protected ThreadState initialValue() {
+			return new ThreadState();
+		}
+	};
+	
+	private static ThreadState getState() {
+		ThreadState st = state.get();
+		Locale locale = Locale.getDefault();
+		TimeZone zone = TimeZone.getDefault();
+		if (!locale.equals(st.locale) || !zone.equals(st.zone)) {
+			Arrays.fill(st.formats, null);
+			st.locale = locale;
+			st.zone = zone;
+			st.lastString = null;
+			st.lastResult = null;
+		}
+		return st;
+	}
+	
+	private static DateFormat getDateFormat(ThreadState st, XNDateFormat fmt) {
+		DateFormat df = st.formats[fmt.ordinal()];
+		if (df == null) df = st.formats[fmt.ordinal()] = fmt.toJavaDateFormat();
+		return df;
+	}
+	
+	/**
+	 * Returns the current thread's DateFormat for the given format.
+	 * The DateFormat must not be changed or handed to another thread.
+	 */
+	public static DateFormat getDateFormat(XNDateFormat fmt) {
+		return getDateFormat(getState(), fmt);
+	}
+	
+	private static Date parse(DateFormat df, String s, ParsePosition pos) {
+		try {
+			return df.parse(s, pos);
+		} finally {
+			// Parsing a zone name sets the DateFormat's time zone,
+			// which would otherwise be used by every later use of it.
+			if (df instanceof SimpleDateFormat) df.setTimeZone(TimeZone.getDefault());
+		}
+	}
+	
+	/**
+	 * Parses a date from the given string in the given format,
+	 * starting at the given position, using the current thread's
+	 * DateFormat for that format. Returns null if it does not match.
+	 */
+	public static Date parse(XNDateFormat fmt, String s, ParsePosition pos) {
+		return parse(getDateFormat(getState(), fmt), s, pos);
+	}
+	
+	/**
+	 * Parses the given string as a date, trying each of the given formats
+	 * in order. A format only matches if nothing but whitespace is left
+	 * over after it. If a format matches only the start of the string,
+	 * the next format picks up where it left off, so that a date followed
+	 * by a time is taken as that time, as it always has been.
+	 * Returns null if no format matches.
+	 */
+	public static Result parse(String s, List<XNDateFormat> formats) {
+		ThreadState st = getState();
+		ParsePosition pos = new ParsePosition(0);
+		for (XNDateFormat fmt : formats) {
+			Date d = parse(getDateFormat(st, fmt), s, pos);
+			if (d != null && isBlank(s, pos.getIndex())) {
+				return new Result(fmt, d.getTime());
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Parses the given string as a date using the formats in
+	 * DATETIME_FORMATS. Returns null if no format matches.
+	 */
+	public static Result parse(String s) {
+		ThreadState st = getState();
+		if (s.equals(st.lastString)) return st.lastResult;
+		// every one of these formats has at least one number in it
+		Result r = hasDigit(s) ? parse(s, DATETIME_FORMATS) : null;
+		st.lastString = s;
+		st.lastResult = r;
+		return r;
+	}
+	
+	private static boolean hasDigit(String s) {
+		for (int i = 0, n = s.length(); i < n; i++) {
+			if (Character.isDigit(s.charAt(i))) return true;
+		}
+		return false;
+	}
+	
+	private static boolean isBlank(String s, int start) {
+		for (int i = start, n = s.length(); i < n; i++) {
+			if (s.charAt(i) > ' ') return false;
+		}
+		return true;
+	}
+}
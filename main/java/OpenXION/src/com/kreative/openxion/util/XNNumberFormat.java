@@ -47,6 +47,7 @@ public class XNNumberFormat {
 	private BigDecimal bdmin, bdmax;
 	private BigInteger bimin, bimax;
 	private double dmin, dmax;
+	private boolean plainIntegers;
 	
 	public XNNumberFormat(String pattern) {
 		if (pattern == null || pattern.trim().length() == 0) {
@@ -167,6 +168,26 @@ public class XNNumberFormat {
 		bimax = (maxExp < 0) ? BigInteger.ZERO : BigInteger.TEN.pow(maxExp);
 		dmin = Math.pow(10, (minExp+1));
 		dmax = Math.pow(10, maxExp);
+		plainIntegers = isPlain(nonExpFormat) && isPlain(expFormat);
+	}
+	
+	/*
+	 * If both formats write integers the same way Long.toString does,
+	 * integers that fit in a long can be formatted without DecimalFormat.
+	 */
+	private static boolean isPlain(DecimalFormat df) {
+		DecimalFormatSymbols dfs = df.getDecimalFormatSymbols();
+		return df.toPattern().indexOf('E') < 0
+			&& df.getMinimumIntegerDigits() <= 1
+			&& df.getMinimumFractionDigits() == 0
+			&& !df.isGroupingUsed()
+			&& df.getMultiplier() == 1
+			&& df.getPositivePrefix().equals("")
+			&& df.getPositiveSuffix().equals("")
+			&& df.getNegativePrefix().equals("-")
+			&& df.getNegativeSuffix().equals("")
+			&& dfs.getZeroDigit() == '0'
+			&& dfs.getMinusSign() == '-';
 	}
 	
 	public String pattern() {
@@ -176,6 +197,12 @@ public class XNNumberFormat {
 	public String format(Number number) {
 		if (number == null) {
 			return "NAN";
+		} else if (plainIntegers && (number instanceof Long || number instanceof Integer || number instanceof Short || number instanceof Byte)) {
+			return Long.toString(number.longValue());
+		} else if (plainIntegers && number instanceof BigInteger && ((BigInteger)number).bitLength() < 64) {
+			return Long.toString(number.longValue());
+		} else if (plainIntegers && number instanceof BigDecimal && ((BigDecimal)number).scale() == 0 && ((BigDecimal)number).precision() < 19) {
+			return Long.toString(number.longValue());
 		} else if (number instanceof BigDecimal) {
 			BigDecimal d = (BigDecimal)number;
 			String s;
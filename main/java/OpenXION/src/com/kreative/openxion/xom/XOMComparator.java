@@ -105,64 +105,62 @@ public class XOMComparator implements Comparator<XOMVariant> {
 		if (map.containsKey(o)) {
 			return map.get(o);
 		} else {
-			if (filter != null && interp != null) {
-				ctx.setVariableScope("each", XNVariableScope.LOCAL);
-				ctx.getVariableMap("each").declareVariable(ctx, "each", XOMStringType.instance, o);
-				o = interp.evaluateExpression(filter);
+			Object k = makeKey(o);
+			map.put(o, k);
+			return k;
+		}
+	}
+	
+	/**
+	 * Computes the sort key for the given value without remembering it.
+	 * Callers that keep their own keys can use this instead of getKey.
+	 */
+	public Object makeKey(XOMVariant o) {
+		if (filter != null && interp != null) {
+			ctx.setVariableScope("each", XNVariableScope.LOCAL);
+			ctx.getVariableMap("each").declareVariable(ctx, "each", XOMStringType.instance, o);
+			o = interp.evaluateExpression(filter);
+		}
+		switch (type) {
+		case TYPE_TEXT:
+			try {
+				return XOMStringType.instance.makeInstanceFrom(ctx,o).toTextString(ctx);
+			} catch (Exception e) {
+				return o.toTextString(ctx);
+			}
+		case TYPE_INTERNATIONAL:
+			try {
+				return coll.getCollationKey(XOMStringType.instance.makeInstanceFrom(ctx,o).toTextString(ctx));
+			} catch (Exception e) {
+				return o.toTextString(ctx);
 			}
-			switch (type) {
-			case TYPE_TEXT:
-				try {
-					String s = XOMStringType.instance.makeInstanceFrom(ctx,o).toTextString(ctx);
-					map.put(o, s);
-					return s;
-				} catch (Exception e) {
-					String s = o.toTextString(ctx);
-					map.put(o, s);
-					return s;
-				}
-			case TYPE_INTERNATIONAL:
-				try {
-					CollationKey k = coll.getCollationKey(XOMStringType.instance.makeInstanceFrom(ctx,o).toTextString(ctx));
-					map.put(o, k);
-					return k;
-				} catch (Exception e) {
-					String s = o.toTextString(ctx);
-					map.put(o, s);
-					return s;
-				}
-			case TYPE_NUMERIC:
-				try {
-					Number n = XOMNumberType.instance.makeInstanceFrom(ctx,o,false).toNumber();
-					map.put(o, n);
-					return n;
-				} catch (Exception e) {
-					String s = o.toTextString(ctx);
-					map.put(o, s);
-					return s;
-				}
-			case TYPE_DATETIME:
-				try {
-					Calendar c = XOMDateType.instance.makeInstanceFrom(ctx,o).toCalendar();
-					map.put(o, c);
-					return c;
-				} catch (Exception e) {
-					String s = o.toTextString(ctx);
-					map.put(o, s);
-					return s;
-				}
-			default:
-				String s = o.toTextString(ctx);
-				map.put(o, s);
-				return s;
+		case TYPE_NUMERIC:
+			try {
+				return XOMNumberType.instance.makeInstanceFrom(ctx,o,false).toNumber();
+			} catch (Exception e) {
+				return o.toTextString(ctx);
 			}
+		case TYPE_DATETIME:
+			try {
+				return XOMDateType.instance.makeInstanceFrom(ctx,o).toCalendar();
+			} catch (Exception e) {
+				return o.toTextString(ctx);
+			}
+		default:
+			return o.toTextString(ctx);
 		}
 	}
 	
 	public int compare(XOMVariant o1, XOMVariant o2) {
+		return compareKeys(getKey(o1), getKey(o2), o1, o2);
+	}
+	
+	/**
+	 * Compares two keys returned by getKey. The values the keys were
+	 * made from are only used if the keys are of different kinds.
+	 */
+	public int compareKeys(Object k1, Object k2, XOMVariant o1, XOMVariant o2) {
 		int cmp;
-		Object k1 = getKey(o1);
-		Object k2 = getKey(o2);
 		if (k1 instanceof CollationKey && k2 instanceof CollationKey) {
 			cmp = ((CollationKey)k1).compareTo((CollationKey)k2);
 		}
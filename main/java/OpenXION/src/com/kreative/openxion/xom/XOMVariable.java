@@ -31,12 +31,14 @@ import java.util.*;
 import com.kreative.openxion.XNContext;
 import com.kreative.openxion.XNScriptError;
 import com.kreative.openxion.ast.XNModifier;
+import com.kreative.openxion.util.StringChunkDefinition;
 import com.kreative.openxion.xom.inst.XOMDictionary;
 import com.kreative.openxion.xom.inst.XOMEmpty;
 import com.kreative.openxion.xom.inst.XOMString;
 import com.kreative.openxion.xom.inst.XOMBinary;
 import com.kreative.openxion.xom.inst.XOMList;
 import com.kreative.openxion.xom.type.XOMStringType;
+import com.kreative.openxion.xom.type.XOMVariantType;
 
 /**
  * XOMVariable represents a variable in a XION program.
@@ -49,36 +51,47 @@ import com.kreative.openxion.xom.type.XOMStringType;
  * @since OpenXION 0.9
  * @author Rebecca G. Bettencourt, Kreative Software
  */
-public final class XOMVariable extends XOMVariant {
+public final class XOMVariable extends XOMVariant implements XOMDictionaryContainer, XOMListContainer {
 	private static final long serialVersionUID = 1L;
 	
 	private XOMVariableMap vm;
 	private String name;
+	private transient XOMVariableMap.Slot slot;
 	
 	public XOMVariable(XOMVariableMap vm, String name) {
 		this.vm = vm;
 		this.name = name;
 	}
 	
+	private XOMVariableMap.Slot slot() {
+		if (slot == null) slot = vm.getSlot(name);
+		return slot;
+	}
+	
+	private XOMVariableMap.Slot slot(XOMVariant initialValue) {
+		if (slot == null) slot = vm.getOrCreateSlot(name, initialValue);
+		return slot;
+	}
+	
 	public final XOMVariant asValue(XNContext ctx) {
-		if (vm.isVariableDeclared(ctx, name))
-			return vm.getVariable(ctx, name).asValue(ctx);
+		if (slot() != null)
+			return vm.getValue(slot).asValue(ctx);
 		else
 			return new XOMString(name);
 	}
 	public final XOMVariant asPrimitive(XNContext ctx) {
-		if (vm.isVariableDeclared(ctx, name))
-			return vm.getVariable(ctx, name).asPrimitive(ctx);
+		if (slot() != null)
+			return vm.getValue(slot).asPrimitive(ctx);
 		else
 			return new XOMString(name);
 	}
 	public final XOMVariant asContainer(XNContext ctx, boolean resolveVariableNames) {
-		if (!vm.isVariableDeclared(ctx, name))
+		if (slot() == null)
 			vm.declareVariable(ctx, name, XOMStringType.instance, XOMEmpty.EMPTY);
 		return this;
 	}
 	public final XOMVariable asVariable(XNContext ctx, boolean resolveVariableNames) {
-		if (!vm.isVariableDeclared(ctx, name))
+		if (slot() == null)
 			vm.declareVariable(ctx, name, XOMStringType.instance, XOMEmpty.EMPTY);
 		return this;
 	}
@@ -101,8 +114,8 @@ public final class XOMVariable extends XOMVariant {
 		return true;
 	}
 	public final XOMVariant getContents(XNContext ctx) {
-		if (vm.isVariableDeclared(ctx, name))
-			return vm.getVariable(ctx, name);
+		if (slot() != null)
+			return vm.getValue(slot);
 		else
 			return XOMEmpty.EMPTY;
 	}
@@ -111,13 +124,46 @@ public final class XOMVariable extends XOMVariant {
 		return true;
 	}
 	public final void putIntoContents(XNContext ctx, XOMVariant contents) {
-		vm.setVariable(ctx, name, contents.asPrimitive(ctx));
+		contents = contents.asPrimitive(ctx);
+		vm.setVariable(ctx, slot(null), contents);
 	}
 	public final void putBeforeContents(XNContext ctx, XOMVariant contents) {
-		vm.prependVariable(ctx, name, contents.asPrimitive(ctx));
+		contents = contents.asPrimitive(ctx);
+		vm.prependVariable(ctx, slot(XOMEmpty.EMPTY), contents);
 	}
 	public final void putAfterContents(XNContext ctx, XOMVariant contents) {
-		vm.appendVariable(ctx, name, contents.asPrimitive(ctx));
+		contents = contents.asPrimitive(ctx);
+		vm.appendVariable(ctx, slot(XOMEmpty.EMPTY), contents);
+	}
+	public final void replaceText(XNContext ctx, int startCharIndex, int endCharIndex, XOMVariant contents) {
+		contents = contents.asPrimitive(ctx);
+		vm.replaceVariable(ctx, slot(XOMEmpty.EMPTY), startCharIndex, endCharIndex, contents);
+	}
+	public final StringChunkDefinition.ChunkInfo resolveChunk(XNContext ctx, StringChunkDefinition def, int firstChunkIndex, int lastChunkIndex, boolean forPrepend, boolean forAppend) {
+		if (forPrepend || forAppend)
+			return vm.resolveChunk(ctx, slot(XOMEmpty.EMPTY), def, firstChunkIndex, lastChunkIndex, forPrepend, forAppend);
+		else if (slot() != null)
+			return vm.resolveChunk(ctx, slot, def, firstChunkIndex, lastChunkIndex, false, false);
+		else
+			return null;
+	}
+	public final boolean hasBinaryContents(XNContext ctx) {
+		return (slot() != null) && vm.isBinaryVariable(ctx, slot);
+	}
+	public final int getBinaryLength(XNContext ctx) {
+		return vm.getBinaryLength(ctx, slot());
+	}
+	public final byte[] getBinary(XNContext ctx, int startByteIndex, int endByteIndex) {
+		return vm.getBinary(ctx, slot(), startByteIndex, endByteIndex);
+	}
+	public final void replaceBinary(XNContext ctx, int startByteIndex, int endByteIndex, byte[] contents) {
+		vm.replaceBinary(ctx, slot(), startByteIndex, endByteIndex, contents);
+	}
+	public final boolean hasListContents(XNContext ctx) {
+		return (slot() != null) && vm.isListVariable(ctx, slot);
+	}
+	public final List<? extends XOMVariant> getListElements(XNContext ctx) {
+		return vm.getListElements(ctx, slot());
 	}
 	public final void putIntoContents(XNContext ctx, XOMVariant contents, String property, XOMVariant value) {
 		throw new XNScriptError("Can't understand this");
@@ -178,6 +224,113 @@ public final class XOMVariable extends XOMVariant {
 		}
 	}
 	
+	public final boolean canDeleteEntry(XNContext ctx) {
+		return (slot() != null) && vm.isDictionaryVariable(ctx, slot);
+	}
+	public final void deleteEntry(XNContext ctx, String key) {
+		vm.deleteEntry(ctx, slot(), key);
+	}
+	public final boolean canGetEntry(XNContext ctx) {
+		return (slot() != null) && vm.isDictionaryVariable(ctx, slot);
+	}
+	public final XOMVariant getEntry(XNContext ctx, String key) {
+		XOMVariant v = vm.getEntry(ctx, slot(), key);
+		return (v != null) ? v : XOMEmpty.EMPTY;
+	}
+	public final boolean canPutEntry(XNContext ctx) {
+		return (slot() != null) && vm.isDictionaryVariable(ctx, slot);
+	}
+	public final void putIntoEntry(XNContext ctx, String key, XOMVariant value) {
+		vm.putEntry(ctx, slot(), key, value);
+	}
+	public final void putBeforeEntry(XNContext ctx, String key, XOMVariant value) {
+		XOMVariant v = vm.getEntry(ctx, slot(), key);
+		vm.putEntry(ctx, slot, key, (v != null) ? XOMVariantType.instance.makeInstanceFrom(ctx, value, v) : value);
+	}
+	public final void putAfterEntry(XNContext ctx, String key, XOMVariant value) {
+		XOMVariant v = vm.getEntry(ctx, slot(), key);
+		vm.putEntry(ctx, slot, key, (v != null) ? XOMVariantType.instance.makeInstanceFrom(ctx, v, value) : value);
+	}
+	public final void putIntoEntry(XNContext ctx, String key, XOMVariant value, String property, XOMVariant pvalue) {
+		throw new XNScriptError("Can't understand this");
+	}
+	public final void putBeforeEntry(XNContext ctx, String key, XOMVariant value, String property, XOMVariant pvalue) {
+		throw new XNScriptError("Can't understand this");
+	}
+	public final void putAfterEntry(XNContext ctx, String key, XOMVariant value, String property, XOMVariant pvalue) {
+		throw new XNScriptError("Can't understand this");
+	}
+	public final boolean canSortEntry(XNContext ctx) {
+		return false;
+	}
+	public final void sortEntry(XNContext ctx, String key, XOMComparator cmp) {
+		throw new XNScriptError("Can't understand this");
+	}
+	public final boolean canGetEntryProperty(XNContext ctx, String property) {
+		return false;
+	}
+	public final XOMVariant getEntryProperty(XNContext ctx, XNModifier modifier, String property, String key) {
+		throw new XNScriptError("Can't get that property");
+	}
+	public final boolean canSetEntryProperty(XNContext ctx, String property) {
+		return false;
+	}
+	public final void setEntryProperty(XNContext ctx, String property, String key, XOMVariant value) {
+		throw new XNScriptError("Can't set that property");
+	}
+	
+	public final boolean canDeleteList(XNContext ctx) {
+		return hasListContents(ctx);
+	}
+	public final void deleteList(XNContext ctx, int startElementIndex, int endElementIndex) {
+		vm.replaceList(ctx, slot(), startElementIndex, endElementIndex, Collections.<XOMVariant>emptyList());
+	}
+	public final boolean canGetList(XNContext ctx) {
+		return hasListContents(ctx);
+	}
+	public final XOMVariant getList(XNContext ctx, int startElementIndex, int endElementIndex) {
+		return new XOMList(vm.getListElements(ctx, slot()).subList(startElementIndex, endElementIndex));
+	}
+	public final boolean canPutList(XNContext ctx) {
+		return hasListContents(ctx);
+	}
+	public final void putIntoList(XNContext ctx, int startElementIndex, int endElementIndex, XOMVariant contents) {
+		vm.replaceList(ctx, slot(), startElementIndex, endElementIndex, Arrays.asList(contents.asPrimitive(ctx)));
+	}
+	public final void putBeforeList(XNContext ctx, int startElementIndex, int endElementIndex, XOMVariant contents) {
+		vm.replaceList(ctx, slot(), startElementIndex, startElementIndex, Arrays.asList(contents.asPrimitive(ctx)));
+	}
+	public final void putAfterList(XNContext ctx, int startElementIndex, int endElementIndex, XOMVariant contents) {
+		vm.replaceList(ctx, slot(), endElementIndex, endElementIndex, Arrays.asList(contents.asPrimitive(ctx)));
+	}
+	public final void putIntoList(XNContext ctx, int startElementIndex, int endElementIndex, XOMVariant contents, String property, XOMVariant value) {
+		throw new XNScriptError("Can't understand this");
+	}
+	public final void putBeforeList(XNContext ctx, int startElementIndex, int endElementIndex, XOMVariant contents, String property, XOMVariant value) {
+		throw new XNScriptError("Can't understand this");
+	}
+	public final void putAfterList(XNContext ctx, int startElementIndex, int endElementIndex, XOMVariant contents, String property, XOMVariant value) {
+		throw new XNScriptError("Can't understand this");
+	}
+	public final boolean canSortList(XNContext ctx) {
+		return false;
+	}
+	public final void sortList(XNContext ctx, int startElementIndex, int endElementIndex, XOMComparator cmp) {
+		throw new XNScriptError("Can't understand this");
+	}
+	public final boolean canGetListProperty(XNContext ctx, String property) {
+		return false;
+	}
+	public final XOMVariant getListProperty(XNContext ctx, XNModifier modifier, String property, int startElementIndex, int endElementIndex) {
+		throw new XNScriptError("Can't get that property");
+	}
+	public final boolean canSetListProperty(XNContext ctx, String property) {
+		return false;
+	}
+	public final void setListProperty(XNContext ctx, String property, int startElementIndex, int endElementIndex, XOMVariant value) {
+		throw new XNScriptError("Can't set that property");
+	}
+	
 	public final boolean canGetProperty(XNContext ctx, String property) {
 		return getContents(ctx).canGetProperty(ctx, property);
 	}
@@ -196,20 +349,26 @@ public final class XOMVariable extends XOMVariant {
 		return name;
 	}
 	public final String toTextString(XNContext ctx) {
-		if (vm.isVariableDeclared(ctx, name))
-			return vm.getVariable(ctx, name).toTextString(ctx);
+		if (slot() != null)
+			return vm.getValue(slot).toTextString(ctx);
 		else
 			return name;
 	}
 	public final List<? extends XOMVariant> toVariantList(XNContext ctx) {
-		if (vm.isVariableDeclared(ctx, name))
-			return vm.getVariable(ctx, name).toVariantList(ctx);
+		if (slot() != null)
+			return vm.getValue(slot).toVariantList(ctx);
 		else
 			return Arrays.asList(new XOMString(name));
 	}
+	public final Iterator<? extends XOMVariant> toVariantIterator(XNContext ctx) {
+		if (slot() != null)
+			return vm.getValue(slot).toVariantIterator(ctx);
+		else
+			return Arrays.asList(new XOMString(name)).iterator();
+	}
 	public final List<? extends XOMVariant> toPrimitiveList(XNContext ctx) {
-		if (vm.isVariableDeclared(ctx, name))
-			return vm.getVariable(ctx, name).toPrimitiveList(ctx);
+		if (slot() != null)
+			return vm.getValue(slot).toPrimitiveList(ctx);
 		else
 			return Arrays.asList(new XOMString(name));
 	}
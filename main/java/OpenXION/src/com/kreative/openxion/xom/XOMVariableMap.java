@@ -27,12 +27,23 @@
 
 package com.kreative.openxion.xom;
 
+import java.util.AbstractList;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import com.kreative.openxion.XNContext;
+import com.kreative.openxion.util.StringChunkDefinition;
+import com.kreative.openxion.xom.inst.XOMBinary;
+import com.kreative.openxion.xom.inst.XOMDictionary;
 import com.kreative.openxion.xom.inst.XOMEmpty;
+import com.kreative.openxion.xom.inst.XOMList;
 import com.kreative.openxion.xom.inst.XOMString;
+import com.kreative.openxion.xom.type.XOMBinaryType;
+import com.kreative.openxion.xom.type.XOMDictionaryType;
+import com.kreative.openxion.xom.type.XOMListType;
 import com.kreative.openxion.xom.type.XOMStringType;
+import com.kreative.openxion.xom.type.XOMVariantType;
 
 /**
  * XOMVariableMap keeps a map of variable assignments.
@@ -40,90 +51,412 @@ import com.kreative.openxion.xom.type.XOMStringType;
  * @author Rebecca G. Bettencourt, Kreative Software
  */
 public class XOMVariableMap {
-	private static final class CIString {
-		private String s;
-		public CIString(String s) {
-			this.s = s;
-		}
-		public String toString() {
-			return s;
-		}
-		public int hashCode() {
-			return s.toLowerCase().hashCode();
-		}
-		public boolean equals(Object o) {
-			return s.equalsIgnoreCase(o.toString());
+	/*
+	 * Each variable is kept in a Slot, found by the lower-cased variable name.
+	 * A Slot is never removed or replaced once created, so an XOMVariable may
+	 * hold on to it and read or write the variable with no further lookups.
+	 * Redeclaring a variable or merging another map updates the existing Slot.
+	 */
+	static final class Slot {
+		private XOMDataType<? extends XOMVariant> type;
+		private XOMVariant value;
+		private StringBuilder buffer;
+		private StringChunkDefinition.BufferIndex chunkIndex;
+		private BinaryBuffer binaryBuffer;
+		private LinkedHashMap<String,XOMVariant> dictionaryBuffer;
+		private ArrayList<XOMVariant> listBuffer;
+		private Slot(XOMDataType<? extends XOMVariant> type, XOMVariant value) {
+			this.type = type;
+			this.value = value;
 		}
 	}
 	
-	private Map<CIString, XOMDataType<? extends XOMVariant>> types;
-	private Map<CIString, XOMVariant> values;
+	private Map<String, Slot> slots;
 	
 	public XOMVariableMap() {
-		types = new LinkedHashMap<CIString, XOMDataType<? extends XOMVariant>>();
-		values = new LinkedHashMap<CIString, XOMVariant>();
+		slots = new LinkedHashMap<String, Slot>();
+	}
+	
+	private static String key(String name) {
+		return name.toLowerCase();
+	}
+	
+	Slot getSlot(String name) {
+		return slots.get(key(name));
+	}
+	
+	Slot getOrCreateSlot(String name, XOMVariant initialValue) {
+		String key = key(name);
+		Slot slot = slots.get(key);
+		if (slot == null) {
+			slot = new Slot(XOMStringType.instance, initialValue);
+			slots.put(key, slot);
+		}
+		return slot;
+	}
+	
+	private Slot declare(String name, XOMDataType<? extends XOMVariant> type) {
+		Slot slot = getOrCreateSlot(name, null);
+		discardBuffers(slot);
+		slot.type = type;
+		return slot;
 	}
 	
 	public XOMVariable declareVariable(XNContext ctx, String name) {
-		CIString ciname = new CIString(name);
-		types.put(ciname, XOMStringType.instance);
-		values.put(ciname, XOMString.EMPTY_STRING);
+		Slot slot = declare(name, XOMStringType.instance);
+		slot.value = XOMString.EMPTY_STRING;
 		return new XOMVariable(this, name);
 	}
 	
 	public XOMVariable declareVariable(XNContext ctx, String name, XOMDataType<? extends XOMVariant> type) {
-		CIString ciname = new CIString(name);
-		types.put(ciname, type);
-		values.put(ciname, type.makeInstanceFrom(ctx, XOMEmpty.EMPTY));
+		Slot slot = declare(name, type);
+		slot.value = type.makeInstanceFrom(ctx, XOMEmpty.EMPTY);
 		return new XOMVariable(this, name);
 	}
 	
 	public XOMVariable declareVariable(XNContext ctx, String name, XOMVariant value) {
-		CIString ciname = new CIString(name);
-		types.put(ciname, XOMStringType.instance);
-		values.put(ciname, new XOMString(value.toTextString(ctx)));
+		Slot slot = declare(name, XOMStringType.instance);
+		slot.value = new XOMString(value.toTextString(ctx));
 		return new XOMVariable(this, name);
 	}
 	
 	public XOMVariable declareVariable(XNContext ctx, String name, XOMDataType<? extends XOMVariant> type, XOMVariant value) {
-		CIString ciname = new CIString(name);
-		types.put(ciname, type);
-		values.put(ciname, type.makeInstanceFrom(ctx, value));
+		Slot slot = declare(name, type);
+		slot.value = type.makeInstanceFrom(ctx, value);
 		return new XOMVariable(this, name);
 	}
 	
 	public boolean isVariableDeclared(XNContext ctx, String name) {
-		CIString ciname = new CIString(name);
-		return (types.containsKey(ciname) || values.containsKey(ciname));
+		return slots.containsKey(key(name));
 	}
 	
 	public XOMVariant getVariable(XNContext ctx, String name) {
-		CIString ciname = new CIString(name);
-		return (values.containsKey(ciname)) ? values.get(ciname) : null;
+		Slot slot = getSlot(name);
+		return (slot == null) ? null : getValue(slot);
 	}
 	
 	public void setVariable(XNContext ctx, String name, XOMVariant value) {
-		CIString ciname = new CIString(name);
-		if (!types.containsKey(ciname)) types.put(ciname, XOMStringType.instance);
-		values.put(ciname, types.get(ciname).makeInstanceFrom(ctx, value.asPrimitive(ctx)));
+		setVariable(ctx, getOrCreateSlot(name, null), value);
+	}
+	
+	void setVariable(XNContext ctx, Slot slot, XOMVariant value) {
+		discardBuffers(slot);
+		slot.value = slot.type.makeInstanceFrom(ctx, value.asPrimitive(ctx));
 	}
 	
 	public void prependVariable(XNContext ctx, String name, XOMVariant value) {
-		CIString ciname = new CIString(name);
-		if (!types.containsKey(ciname)) types.put(ciname, XOMStringType.instance);
-		if (!values.containsKey(ciname)) values.put(ciname, XOMEmpty.EMPTY);
-		values.put(ciname, types.get(ciname).makeInstanceFrom(ctx, value.asPrimitive(ctx), values.get(ciname)));
+		prependVariable(ctx, getOrCreateSlot(name, XOMEmpty.EMPTY), value);
+	}
+	
+	void prependVariable(XNContext ctx, Slot slot, XOMVariant value) {
+		XOMVariant oldValue = getValue(slot);
+		discardBuffers(slot);
+		slot.value = slot.type.makeInstanceFrom(ctx, value.asPrimitive(ctx), oldValue);
 	}
 	
 	public void appendVariable(XNContext ctx, String name, XOMVariant value) {
-		CIString ciname = new CIString(name);
-		if (!types.containsKey(ciname)) types.put(ciname, XOMStringType.instance);
-		if (!values.containsKey(ciname)) values.put(ciname, XOMEmpty.EMPTY);
-		values.put(ciname, types.get(ciname).makeInstanceFrom(ctx, values.get(ciname), value.asPrimitive(ctx)));
+		appendVariable(ctx, getOrCreateSlot(name, XOMEmpty.EMPTY), value);
+	}
+	
+	void appendVariable(XNContext ctx, Slot slot, XOMVariant value) {
+		value = value.asPrimitive(ctx);
+		StringBuilder buffer = getBuffer(ctx, slot);
+		BinaryBuffer binaryBuffer = getBinaryBuffer(slot);
+		if (buffer != null && !(value instanceof XOMEmpty)) {
+			replaceBuffer(slot, buffer.length(), buffer.length(), value.toTextString(ctx));
+			slot.value = null;
+		} else if (binaryBuffer != null && value instanceof XOMBinary) {
+			byte[] b = ((XOMBinary)value).toByteArray();
+			binaryBuffer.replace(binaryBuffer.length, binaryBuffer.length, b, 0, b.length);
+			slot.value = null;
+		} else if (isListVariable(ctx, slot) && value instanceof XOMList) {
+			List<XOMVariant> listBuffer = getListBuffer(ctx, slot);
+			for (XOMVariant e : value.toVariantList(ctx)) {
+				if (slot.type == XOMListType.instance) e = e.asPrimitive(ctx).asValue(ctx);
+				listBuffer.add(e);
+			}
+			slot.value = null;
+		} else {
+			XOMVariant oldValue = getValue(slot);
+			discardBuffers(slot);
+			slot.value = slot.type.makeInstanceFrom(ctx, oldValue, value);
+		}
+	}
+	
+	/**
+	 * Replaces the characters between startCharIndex and endCharIndex
+	 * of the text of a variable. This is used by string chunks to modify
+	 * a variable without rebuilding the entire string.
+	 */
+	public void replaceVariable(XNContext ctx, String name, int startCharIndex, int endCharIndex, XOMVariant value) {
+		replaceVariable(ctx, getOrCreateSlot(name, XOMEmpty.EMPTY), startCharIndex, endCharIndex, value);
+	}
+	
+	void replaceVariable(XNContext ctx, Slot slot, int startCharIndex, int endCharIndex, XOMVariant value) {
+		value = value.asPrimitive(ctx);
+		StringBuilder buffer = getBuffer(ctx, slot);
+		if (buffer != null) {
+			replaceBuffer(slot, startCharIndex, endCharIndex, value.toTextString(ctx));
+			slot.value = null;
+		} else {
+			String s = getValue(slot).toTextString(ctx);
+			String left = s.substring(0, startCharIndex);
+			String right = s.substring(endCharIndex);
+			setVariable(ctx, slot, new XOMString(left + value.toTextString(ctx) + right));
+		}
+	}
+	
+	/**
+	 * Resolves a chunk of the text of a string variable against the
+	 * variable's own buffer, keeping the chunk boundaries of the buffer
+	 * for later chunk accesses, so that a loop reading or writing chunks
+	 * of a variable it is also modifying never copies the whole text.
+	 * Returns null if the variable does not hold text kept in a buffer.
+	 */
+	StringChunkDefinition.ChunkInfo resolveChunk(XNContext ctx, Slot slot, StringChunkDefinition def, int firstChunkIndex, int lastChunkIndex, boolean forPrepend, boolean forAppend) {
+		// Reading an unmodified variable uses the index cached on its value.
+		if (slot.buffer == null && !(forPrepend || forAppend)) return null;
+		StringBuilder buffer = getBuffer(ctx, slot);
+		if (buffer == null) return null;
+		if (slot.chunkIndex == null || !slot.chunkIndex.getDefinition().equals(def)) {
+			slot.chunkIndex = def.indexChunks(buffer);
+		}
+		int length = buffer.length();
+		StringChunkDefinition.ChunkInfo ci = slot.chunkIndex.resolveChunk(firstChunkIndex, lastChunkIndex, forPrepend, forAppend);
+		if (buffer.length() != length) slot.value = null;
+		return ci;
+	}
+	
+	/**
+	 * Returns true if the variable is a binary variable
+	 * whose bytes can be read and written in place using
+	 * getBinaryLength, getBinary, and replaceBinary.
+	 */
+	public boolean isBinaryVariable(XNContext ctx, String name) {
+		Slot slot = getSlot(name);
+		return (slot != null) && isBinaryVariable(ctx, slot);
+	}
+	
+	boolean isBinaryVariable(XNContext ctx, Slot slot) {
+		return (slot.type == XOMBinaryType.instance && (slot.binaryBuffer != null || slot.value instanceof XOMBinary));
+	}
+	
+	public int getBinaryLength(XNContext ctx, String name) {
+		return getBinaryLength(ctx, getSlot(name));
+	}
+	
+	int getBinaryLength(XNContext ctx, Slot slot) {
+		if (slot.binaryBuffer != null) return slot.binaryBuffer.length;
+		else return ((XOMBinary)slot.value).toByteArray().length;
+	}
+	
+	public byte[] getBinary(XNContext ctx, String name, int startByteIndex, int endByteIndex) {
+		return getBinary(ctx, getSlot(name), startByteIndex, endByteIndex);
+	}
+	
+	byte[] getBinary(XNContext ctx, Slot slot, int startByteIndex, int endByteIndex) {
+		byte[] data = (slot.binaryBuffer != null) ? slot.binaryBuffer.data : ((XOMBinary)slot.value).toByteArray();
+		byte[] b = new byte[endByteIndex - startByteIndex];
+		System.arraycopy(data, startByteIndex, b, 0, b.length);
+		return b;
+	}
+	
+	/**
+	 * Replaces the bytes between startByteIndex and endByteIndex
+	 * of a binary variable. When the replacement is the same length,
+	 * this is a write into the existing buffer with no reallocation.
+	 */
+	public void replaceBinary(XNContext ctx, String name, int startByteIndex, int endByteIndex, byte[] value) {
+		replaceBinary(ctx, getSlot(name), startByteIndex, endByteIndex, value);
+	}
+	
+	void replaceBinary(XNContext ctx, Slot slot, int startByteIndex, int endByteIndex, byte[] value) {
+		BinaryBuffer binaryBuffer = getBinaryBuffer(slot);
+		binaryBuffer.replace(startByteIndex, endByteIndex, value, 0, value.length);
+		slot.value = null;
+	}
+	
+	/**
+	 * Returns true if the variable holds a dictionary whose entries
+	 * can be read and written in place using getEntry, putEntry,
+	 * and deleteEntry.
+	 */
+	boolean isDictionaryVariable(XNContext ctx, Slot slot) {
+		if (slot.dictionaryBuffer != null) return true;
+		if (slot.type != XOMDictionaryType.instance && slot.type != XOMVariantType.instance) return false;
+		return (slot.value instanceof XOMDictionary);
+	}
+	
+	/**
+	 * Returns the value of an entry of a dictionary variable,
+	 * or null if there is no such entry.
+	 */
+	XOMVariant getEntry(XNContext ctx, Slot slot, String key) {
+		return getDictionaryBuffer(slot).get(key);
+	}
+	
+	void putEntry(XNContext ctx, Slot slot, String key, XOMVariant value) {
+		getDictionaryBuffer(slot).put(key, value);
+		slot.value = null;
+	}
+	
+	void deleteEntry(XNContext ctx, Slot slot, String key) {
+		getDictionaryBuffer(slot).remove(key);
+		slot.value = null;
+	}
+	
+	/**
+	 * Returns true if the variable holds a list whose elements
+	 * can be read and written in place using getListElements
+	 * and replaceList.
+	 */
+	boolean isListVariable(XNContext ctx, Slot slot) {
+		if (slot.listBuffer != null) return true;
+		if (slot.type != XOMListType.instance && slot.type != XOMVariantType.instance) return false;
+		return (slot.value instanceof XOMList);
+	}
+	
+	/**
+	 * Returns a read-only view of the primitive values of the elements
+	 * of a list variable. The view follows later changes to the variable
+	 * for as long as it is modified in place.
+	 */
+	List<XOMVariant> getListElements(final XNContext ctx, Slot slot) {
+		final List<XOMVariant> listBuffer = getListBuffer(ctx, slot);
+		return new AbstractList<XOMVariant>() {
+			public XOMVariant get(int index) {
+				return listBuffer.get(index).asPrimitive(ctx);
+			}
+			public int size() {
+				return listBuffer.size();
+			}
+		};
+	}
+	
+	/**
+	 * Replaces the elements between startElementIndex and endElementIndex
+	 * of a list variable. This is used by list chunks to modify a variable
+	 * without rebuilding the entire list.
+	 */
+	void replaceList(XNContext ctx, Slot slot, int startElementIndex, int endElementIndex, List<? extends XOMVariant> elements) {
+		List<XOMVariant> listBuffer = getListBuffer(ctx, slot);
+		listBuffer.subList(startElementIndex, endElementIndex).clear();
+		listBuffer.addAll(startElementIndex, elements);
+		slot.value = null;
+	}
+	
+	/*
+	 * A string variable that is modified in place keeps its text in a
+	 * StringBuilder, a binary variable keeps its bytes in a growable
+	 * BinaryBuffer, and a dictionary or list variable keeps its entries
+	 * or elements in a LinkedHashMap or ArrayList. The XOMString or
+	 * XOMBinary seen by the rest of OpenXION is only created when the
+	 * variable is read, and is then kept until the next modification,
+	 * so that a loop that only appends to a variable or writes into a
+	 * chunk of it does not copy the whole value on every iteration.
+	 * Buffers never leave this map, so variables still have value
+	 * semantics.
+	 */
+	
+	private StringBuilder getBuffer(XNContext ctx, Slot slot) {
+		if (slot.buffer == null && slot.type == XOMStringType.instance) {
+			if (slot.value instanceof XOMString) {
+				slot.buffer = new StringBuilder(slot.value.toTextString(ctx));
+			}
+		}
+		return slot.buffer;
+	}
+	
+	private static void replaceBuffer(Slot slot, int start, int end, String s) {
+		if (slot.chunkIndex != null) slot.chunkIndex.replace(start, end, s);
+		else slot.buffer.replace(start, end, s);
+	}
+	
+	private BinaryBuffer getBinaryBuffer(Slot slot) {
+		if (slot.binaryBuffer == null && slot.type == XOMBinaryType.instance) {
+			if (slot.value instanceof XOMBinary) {
+				slot.binaryBuffer = new BinaryBuffer(((XOMBinary)slot.value).toByteArray());
+			}
+		}
+		return slot.binaryBuffer;
+	}
+	
+	private LinkedHashMap<String,XOMVariant> getDictionaryBuffer(Slot slot) {
+		if (slot.dictionaryBuffer == null) {
+			slot.dictionaryBuffer = new LinkedHashMap<String,XOMVariant>(((XOMDictionary)slot.value).toMap());
+		}
+		return slot.dictionaryBuffer;
+	}
+	
+	private ArrayList<XOMVariant> getListBuffer(XNContext ctx, Slot slot) {
+		if (slot.listBuffer == null) {
+			slot.listBuffer = new ArrayList<XOMVariant>(slot.value.toVariantList(ctx));
+		}
+		return slot.listBuffer;
+	}
+	
+	XOMVariant getValue(Slot slot) {
+		if (slot.value == null) {
+			if (slot.buffer != null) {
+				slot.value = new XOMString(slot.buffer.toString());
+			} else if (slot.binaryBuffer != null) {
+				slot.value = new XOMBinary(slot.binaryBuffer.toByteArray());
+			} else if (slot.dictionaryBuffer != null) {
+				slot.value = new XOMDictionary(slot.dictionaryBuffer);
+			} else if (slot.listBuffer != null) {
+				slot.value = new XOMList(slot.listBuffer);
+			}
+		}
+		return slot.value;
+	}
+	
+	private static void discardBuffers(Slot slot) {
+		slot.buffer = null;
+		slot.chunkIndex = null;
+		slot.binaryBuffer = null;
+		slot.dictionaryBuffer = null;
+		slot.listBuffer = null;
+	}
+	
+	private static final class BinaryBuffer {
+		private byte[] data;
+		private int length;
+		public BinaryBuffer(byte[] b) {
+			this.data = new byte[Math.max(16, b.length + (b.length >> 1))];
+			this.length = b.length;
+			System.arraycopy(b, 0, data, 0, b.length);
+		}
+		public void replace(int start, int end, byte[] b, int offset, int count) {
+			int newLength = length - (end - start) + count;
+			if (newLength > data.length) {
+				byte[] newData = new byte[Math.max(newLength, data.length << 1)];
+				System.arraycopy(data, 0, newData, 0, length);
+				data = newData;
+			}
+			if (end - start != count) {
+				System.arraycopy(data, end, data, start + count, length - end);
+			}
+			System.arraycopy(b, offset, data, start, count);
+			length = newLength;
+		}
+		public byte[] toByteArray() {
+			byte[] b = new byte[length];
+			System.arraycopy(data, 0, b, 0, length);
+			return b;
+		}
 	}
 	
 	public void merge(XOMVariableMap vm) {
-		types.putAll(vm.types);
-		values.putAll(vm.values);
+		for (Map.Entry<String, Slot> e : vm.slots.entrySet()) {
+			Slot from = e.getValue();
+			Slot slot = slots.get(e.getKey());
+			if (slot == null) {
+				slot = new Slot(from.type, null);
+				slots.put(e.getKey(), slot);
+			}
+			discardBuffers(slot);
+			slot.type = from.type;
+			slot.value = vm.getValue(from);
+		}
 	}
 }
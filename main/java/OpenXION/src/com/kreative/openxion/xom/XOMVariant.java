@@ -28,6 +28,7 @@
 package com.kreative.openxion.xom;
 
 import java.io.Serializable;
+import java.util.Iterator;
 import java.util.List;
 import com.kreative.openxion.XNContext;
 import com.kreative.openxion.ast.XNModifier;
@@ -150,6 +151,15 @@ public abstract class XOMVariant implements Serializable {
 	 */
 	public abstract List<? extends XOMVariant> toPrimitiveList(XNContext ctx);
 	
+	/**
+	 * Returns the same elements as toVariantList, for a caller that will
+	 * only go through them once, in order. Subclasses whose elements are
+	 * expensive to produce all at once can produce them as they are asked for.
+	 */
+	public Iterator<? extends XOMVariant> toVariantIterator(XNContext ctx) {
+		return toVariantList(ctx).iterator();
+	}
+	
 	/**
 	 * Returns a hash code for this variant.
 	 * @return a hash code for this variant.
@@ -32,6 +32,7 @@ import com.kreative.openxion.XNContext;
 import com.kreative.openxion.ast.XNModifier;
 import com.kreative.openxion.util.XIONUtil;
 import com.kreative.openxion.xom.XOMContainer;
+import com.kreative.openxion.xom.XOMVariable;
 import com.kreative.openxion.xom.XOMVariant;
 import com.kreative.openxion.xom.XOMBinaryContainer;
 import com.kreative.openxion.xom.XOMComparator;
@@ -69,43 +70,72 @@ public class XOMBinaryByteChunk extends XOMContainer implements XOMBinaryContain
 	
 	private BinaryChunkInfo getChunkInfo(XNContext ctx, boolean puttingBefore, boolean puttingAfter) {
 		byte[] data;
+		int length;
 		if (puttingBefore || puttingAfter) {
-			data = XOMBinaryType.instance.makeInstanceFrom(ctx, (parent = parent.asContainer(ctx, false)).getContents(ctx)).toByteArray();
-		} else if (parent.canGetContents(ctx)) {
-			data = XOMBinaryType.instance.makeInstanceFrom(ctx, parent.getContents(ctx)).toByteArray();
+			parent = parent.asContainer(ctx, false);
+		}
+		if (parent instanceof XOMVariable && ((XOMVariable)parent).hasBinaryContents(ctx)) {
+			// Binary variables are read and written in place; see getFromParent and replaceInParent.
+			data = null;
+			length = ((XOMVariable)parent).getBinaryLength(ctx);
 		} else {
-			data = XOMBinaryType.instance.makeInstanceFrom(ctx, parent).toByteArray();
+			if (puttingBefore || puttingAfter || parent.canGetContents(ctx)) {
+				data = XOMBinaryType.instance.makeInstanceFrom(ctx, parent.getContents(ctx)).toByteArray();
+			} else {
+				data = XOMBinaryType.instance.makeInstanceFrom(ctx, parent).toByteArray();
+			}
+			length = data.length;
 		}
-		int[] idx = XIONUtil.index(0, data.length-1, startIndex, endIndex);
+		int[] idx = XIONUtil.index(0, length-1, startIndex, endIndex);
 		int s = idx[0], e = idx[1];
-		if ((puttingBefore && s > (data.length-1)) || (puttingAfter && e > (data.length-1))) {
-			int n = ( (puttingBefore && puttingAfter) ? Math.max(s,e) : puttingBefore ? s-1 : puttingAfter ? e : (data.length-1) )-(data.length-1);
+		if ((puttingBefore && s > (length-1)) || (puttingAfter && e > (length-1))) {
+			int n = ( (puttingBefore && puttingAfter) ? Math.max(s,e) : puttingBefore ? s-1 : puttingAfter ? e : (length-1) )-(length-1);
 			byte[] a = new byte[n];
-			data = XIONUtil.binaryConcat(data, a);
+			if (data != null) data = XIONUtil.binaryConcat(data, a);
+			length += n;
 			parent.putAfterContents(ctx, new XOMBinary(a));
 		}
 		if ((puttingBefore && s < 0) || (puttingAfter && e < 0)) {
 			int n = Math.abs( (puttingBefore && puttingAfter) ? Math.min(s,e) : puttingBefore ? s : puttingAfter ? e+1 : 0 );
 			byte[] a = new byte[n];
 			s += n; e += n;
-			data = XIONUtil.binaryConcat(a, data);
+			if (data != null) data = XIONUtil.binaryConcat(a, data);
+			length += n;
 			parent.putBeforeContents(ctx, new XOMBinary(a));
 		}
 		BinaryChunkInfo ci = new BinaryChunkInfo();
 		ci.parentContent = data;
-		ci.chunkCount = data.length;
+		ci.chunkCount = length;
 		ci.startChunkIndex = s;
 		ci.endChunkIndex = e;
 		ci.startByteIndex = s;
 		ci.endByteIndex = e+1;
 		if (ci.startByteIndex < 0) ci.startByteIndex = 0;
-		else if (ci.startByteIndex > data.length) ci.startByteIndex = data.length;
+		else if (ci.startByteIndex > length) ci.startByteIndex = length;
 		if (ci.endByteIndex < 0) ci.endByteIndex = 0;
-		else if (ci.endByteIndex > data.length) ci.endByteIndex = data.length;
+		else if (ci.endByteIndex > length) ci.endByteIndex = length;
 		if (ci.startByteIndex > ci.endByteIndex) ci.endByteIndex = ci.startByteIndex;
 		return ci;
 	}
 	
+	private byte[] getFromParent(XNContext ctx, BinaryChunkInfo ci, int startByteIndex, int endByteIndex) {
+		if (ci.parentContent == null) {
+			return ((XOMVariable)parent).getBinary(ctx, startByteIndex, endByteIndex);
+		} else {
+			return XIONUtil.binarySubstring(ci.parentContent, startByteIndex, endByteIndex);
+		}
+	}
+	
+	private void replaceInParent(XNContext ctx, BinaryChunkInfo ci, int startByteIndex, int endByteIndex, byte[] b) {
+		if (ci.parentContent == null) {
+			((XOMVariable)parent).replaceBinary(ctx, startByteIndex, endByteIndex, b);
+		} else {
+			byte[] left = XIONUtil.binarySubstring(ci.parentContent, 0, startByteIndex);
+			byte[] right = XIONUtil.binarySubstring(ci.parentContent, endByteIndex, ci.chunkCount);
+			parent.putIntoContents(ctx, new XOMBinary(XIONUtil.binaryConcat(left, b, right)));
+		}
+	}
+	
 	public boolean canDelete(XNContext ctx) {
 		if (parent instanceof XOMBinaryContainer && ((XOMBinaryContainer)parent).canDeleteBinary(ctx)) {
 			return true;
@@ -126,9 +156,7 @@ public class XOMBinaryByteChunk extends XOMContainer implements XOMBinaryContain
 		}
 		else if (parent.canPutContents(ctx)) {
 			BinaryChunkInfo ci = getChunkInfo(ctx, false, false);
-			byte[] left = XIONUtil.binarySubstring(ci.parentContent, 0, ci.startByteIndex);
-			byte[] right = XIONUtil.binarySubstring(ci.parentContent, ci.endByteIndex, ci.chunkCount);
-			parent.putIntoContents(ctx, new XOMBinary(XIONUtil.binaryConcat(left, right)));
+			replaceInParent(ctx, ci, ci.startByteIndex, ci.endByteIndex, new byte[0]);
 		}
 		else {
 			super.delete(ctx);
@@ -159,9 +187,7 @@ public class XOMBinaryByteChunk extends XOMContainer implements XOMBinaryContain
 			BinaryChunkInfo ci = getChunkInfo(ctx, false, false);
 			int s = Math.max(ci.startByteIndex, Math.min(ci.endByteIndex, ci.startByteIndex+startByteIndex));
 			int e = Math.max(ci.startByteIndex, Math.min(ci.endByteIndex, ci.startByteIndex+endByteIndex));
-			byte[] left = XIONUtil.binarySubstring(ci.parentContent, 0, s);
-			byte[] right = XIONUtil.binarySubstring(ci.parentContent, e, ci.chunkCount);
-			parent.putIntoContents(ctx, new XOMBinary(XIONUtil.binaryConcat(left, right)));
+			replaceInParent(ctx, ci, s, e, new byte[0]);
 		}
 		else {
 			super.delete(ctx);
@@ -180,7 +206,7 @@ public class XOMBinaryByteChunk extends XOMContainer implements XOMBinaryContain
 		}
 		else {
 			BinaryChunkInfo ci = getChunkInfo(ctx, false, false);
-			return new XOMBinary(XIONUtil.binarySubstring(ci.parentContent, ci.startByteIndex, ci.endByteIndex));
+			return new XOMBinary(getFromParent(ctx, ci, ci.startByteIndex, ci.endByteIndex));
 		}
 	}
 	
@@ -200,7 +226,7 @@ public class XOMBinaryByteChunk extends XOMContainer implements XOMBinaryContain
 			BinaryChunkInfo ci = getChunkInfo(ctx, false, false);
 			int s = Math.max(ci.startByteIndex, Math.min(ci.endByteIndex, ci.startByteIndex+startByteIndex));
 			int e = Math.max(ci.startByteIndex, Math.min(ci.endByteIndex, ci.startByteIndex+endByteIndex));
-			return new XOMBinary(XIONUtil.binarySubstring(ci.parentContent, s, e));
+			return new XOMBinary(getFromParent(ctx, ci, s, e));
 		}
 	}
 	
@@ -224,9 +250,7 @@ public class XOMBinaryByteChunk extends XOMContainer implements XOMBinaryContain
 		}
 		else if (parent.canPutContents(ctx)) {
 			BinaryChunkInfo ci = getChunkInfo(ctx, true, true);
-			byte[] left = XIONUtil.binarySubstring(ci.parentContent, 0, ci.startByteIndex);
-			byte[] right = XIONUtil.binarySubstring(ci.parentContent, ci.endByteIndex, ci.chunkCount);
-			parent.putIntoContents(ctx, new XOMBinary(XIONUtil.binaryConcat(left, XOMBinaryType.instance.makeInstanceFrom(ctx, contents).toByteArray(), right)));
+			replaceInParent(ctx, ci, ci.startByteIndex, ci.endByteIndex, XOMBinaryType.instance.makeInstanceFrom(ctx, contents).toByteArray());
 		}
 		else {
 			super.putIntoContents(ctx, contents);
@@ -241,9 +265,7 @@ public class XOMBinaryByteChunk extends XOMContainer implements XOMBinaryContain
 		}
 		else if (parent.canPutContents(ctx)) {
 			BinaryChunkInfo ci = getChunkInfo(ctx, true, false);
-			byte[] left = XIONUtil.binarySubstring(ci.parentContent,0, ci.startByteIndex);
-			byte[] right = XIONUtil.binarySubstring(ci.parentContent,ci.startByteIndex, ci.chunkCount);
-			parent.putIntoContents(ctx, new XOMBinary(XIONUtil.binaryConcat(left, XOMBinaryType.instance.makeInstanceFrom(ctx, contents).toByteArray(), right)));
+			replaceInParent(ctx, ci, ci.startByteIndex, ci.startByteIndex, XOMBinaryType.instance.makeInstanceFrom(ctx, contents).toByteArray());
 		}
 		else {
 			super.putBeforeContents(ctx, contents);
@@ -258,9 +280,7 @@ public class XOMBinaryByteChunk extends XOMContainer implements XOMBinaryContain
 		}
 		else if (parent.canPutContents(ctx)) {
 			BinaryChunkInfo ci = getChunkInfo(ctx, false, true);
-			byte[] left = XIONUtil.binarySubstring(ci.parentContent,0, ci.endByteIndex);
-			byte[] right = XIONUtil.binarySubstring(ci.parentContent,ci.endByteIndex, ci.chunkCount);
-			parent.putIntoContents(ctx, new XOMBinary(XIONUtil.binaryConcat(left, XOMBinaryType.instance.makeInstanceFrom(ctx, contents).toByteArray(), right)));
+			replaceInParent(ctx, ci, ci.endByteIndex, ci.endByteIndex, XOMBinaryType.instance.makeInstanceFrom(ctx, contents).toByteArray());
 		}
 		else {
 			super.putAfterContents(ctx, contents);
@@ -275,8 +295,8 @@ public class XOMBinaryByteChunk extends XOMContainer implements XOMBinaryContain
 		}
 		else if (parent.canPutContents(ctx)) {
 			BinaryChunkInfo ci = getChunkInfo(ctx, true, true);
-			byte[] left = XIONUtil.binarySubstring(ci.parentContent, 0, ci.startByteIndex);
-			byte[] right = XIONUtil.binarySubstring(ci.parentContent, ci.endByteIndex, ci.chunkCount);
+			byte[] left = getFromParent(ctx, ci, 0, ci.startByteIndex);
+			byte[] right = getFromParent(ctx, ci, ci.endByteIndex, ci.chunkCount);
 			parent.putIntoContents(ctx, new XOMBinary(XIONUtil.binaryConcat(left, XOMBinaryType.instance.makeInstanceFrom(ctx, contents).toByteArray(), right)), property, pvalue);
 		}
 		else {
@@ -292,8 +312,8 @@ public class XOMBinaryByteChunk extends XOMContainer implements XOMBinaryContain
 		}
 		else if (parent.canPutContents(ctx)) {
 			BinaryChunkInfo ci = getChunkInfo(ctx, true, false);
-			byte[] left = XIONUtil.binarySubstring(ci.parentContent,0, ci.startByteIndex);
-			byte[] right = XIONUtil.binarySubstring(ci.parentContent,ci.startByteIndex, ci.chunkCount);
+			byte[] left = getFromParent(ctx, ci, 0, ci.startByteIndex);
+			byte[] right = getFromParent(ctx, ci, ci.startByteIndex, ci.chunkCount);
 			parent.putIntoContents(ctx, new XOMBinary(XIONUtil.binaryConcat(left, XOMBinaryType.instance.makeInstanceFrom(ctx, contents).toByteArray(), right)), property, pvalue);
 		}
 		else {
@@ -309,8 +329,8 @@ public class XOMBinaryByteChunk extends XOMContainer implements XOMBinaryContain
 		}
 		else if (parent.canPutContents(ctx)) {
 			BinaryChunkInfo ci = getChunkInfo(ctx, false, true);
-			byte[] left = XIONUtil.binarySubstring(ci.parentContent,0, ci.endByteIndex);
-			byte[] right = XIONUtil.binarySubstring(ci.parentContent,ci.endByteIndex, ci.chunkCount);
+			byte[] left = getFromParent(ctx, ci, 0, ci.endByteIndex);
+			byte[] right = getFromParent(ctx, ci, ci.endByteIndex, ci.chunkCount);
 			parent.putIntoContents(ctx, new XOMBinary(XIONUtil.binaryConcat(left, XOMBinaryType.instance.makeInstanceFrom(ctx, contents).toByteArray(), right)), property, pvalue);
 		}
 		else {
@@ -342,9 +362,7 @@ public class XOMBinaryByteChunk extends XOMContainer implements XOMBinaryContain
 			BinaryChunkInfo ci = getChunkInfo(ctx, true, true);
 			int s = Math.max(ci.startByteIndex, Math.min(ci.endByteIndex, ci.startByteIndex+startByteIndex));
 			int e = Math.max(ci.startByteIndex, Math.min(ci.endByteIndex, ci.startByteIndex+endByteIndex));
-			byte[] left = XIONUtil.binarySubstring(ci.parentContent,0, s);
-			byte[] right = XIONUtil.binarySubstring(ci.parentContent,e, ci.chunkCount);
-			parent.putIntoContents(ctx, new XOMBinary(XIONUtil.binaryConcat(left, XOMBinaryType.instance.makeInstanceFrom(ctx, contents).toByteArray(), right)));
+			replaceInParent(ctx, ci, s, e, XOMBinaryType.instance.makeInstanceFrom(ctx, contents).toByteArray());
 		}
 		else {
 			super.putIntoContents(ctx, contents);
@@ -362,9 +380,7 @@ public class XOMBinaryByteChunk extends XOMContainer implements XOMBinaryContain
 		else if (parent.canPutContents(ctx)) {
 			BinaryChunkInfo ci = getChunkInfo(ctx, true, false);
 			int s = Math.max(ci.startByteIndex, Math.min(ci.endByteIndex, ci.startByteIndex+startByteIndex));
-			byte[] left = XIONUtil.binarySubstring(ci.parentContent,0, s);
-			byte[] right = XIONUtil.binarySubstring(ci.parentContent,s, ci.chunkCount);
-			parent.putIntoContents(ctx, new XOMBinary(XIONUtil.binaryConcat(left, XOMBinaryType.instance.makeInstanceFrom(ctx, contents).toByteArray(), right)));
+			replaceInParent(ctx, ci, s, s, XOMBinaryType.instance.makeInstanceFrom(ctx, contents).toByteArray());
 		}
 		else {
 			super.putBeforeContents(ctx, contents);
@@ -382,9 +398,7 @@ public class XOMBinaryByteChunk extends XOMContainer implements XOMBinaryContain
 		else if (parent.canPutContents(ctx)) {
 			BinaryChunkInfo ci = getChunkInfo(ctx, false, true);
 			int e = Math.max(ci.startByteIndex, Math.min(ci.endByteIndex, ci.startByteIndex+endByteIndex));
-			byte[] left = XIONUtil.binarySubstring(ci.parentContent, 0, e);
-			byte[] right = XIONUtil.binarySubstring(ci.parentContent, e, ci.chunkCount);
-			parent.putIntoContents(ctx, new XOMBinary(XIONUtil.binaryConcat(left, XOMBinaryType.instance.makeInstanceFrom(ctx, contents).toByteArray(), right)));
+			replaceInParent(ctx, ci, e, e, XOMBinaryType.instance.makeInstanceFrom(ctx, contents).toByteArray());
 		}
 		else {
 			super.putAfterContents(ctx, contents);
@@ -403,8 +417,8 @@ public class XOMBinaryByteChunk extends XOMContainer implements XOMBinaryContain
 			BinaryChunkInfo ci = getChunkInfo(ctx, true, true);
 			int s = Math.max(ci.startByteIndex, Math.min(ci.endByteIndex, ci.startByteIndex+startByteIndex));
 			int e = Math.max(ci.startByteIndex, Math.min(ci.endByteIndex, ci.startByteIndex+endByteIndex));
-			byte[] left = XIONUtil.binarySubstring(ci.parentContent,0, s);
-			byte[] right = XIONUtil.binarySubstring(ci.parentContent,e, ci.chunkCount);
+			byte[] left = getFromParent(ctx, ci, 0, s);
+			byte[] right = getFromParent(ctx, ci, e, ci.chunkCount);
 			parent.putIntoContents(ctx, new XOMBinary(XIONUtil.binaryConcat(left, XOMBinaryType.instance.makeInstanceFrom(ctx, contents).toByteArray(), right)), property, pvalue);
 		}
 		else {
@@ -423,8 +437,8 @@ public class XOMBinaryByteChunk extends XOMContainer implements XOMBinaryContain
 		else if (parent.canPutContents(ctx)) {
 			BinaryChunkInfo ci = getChunkInfo(ctx, true, false);
 			int s = Math.max(ci.startByteIndex, Math.min(ci.endByteIndex, ci.startByteIndex+startByteIndex));
-			byte[] left = XIONUtil.binarySubstring(ci.parentContent,0, s);
-			byte[] right = XIONUtil.binarySubstring(ci.parentContent,s, ci.chunkCount);
+			byte[] left = getFromParent(ctx, ci, 0, s);
+			byte[] right = getFromParent(ctx, ci, s, ci.chunkCount);
 			parent.putIntoContents(ctx, new XOMBinary(XIONUtil.binaryConcat(left, XOMBinaryType.instance.makeInstanceFrom(ctx, contents).toByteArray(), right)), property, pvalue);
 		}
 		else {
@@ -443,8 +457,8 @@ public class XOMBinaryByteChunk extends XOMContainer implements XOMBinaryContain
 		else if (parent.canPutContents(ctx)) {
 			BinaryChunkInfo ci = getChunkInfo(ctx, false, true);
 			int e = Math.max(ci.startByteIndex, Math.min(ci.endByteIndex, ci.startByteIndex+endByteIndex));
-			byte[] left = XIONUtil.binarySubstring(ci.parentContent, 0, e);
-			byte[] right = XIONUtil.binarySubstring(ci.parentContent, e, ci.chunkCount);
+			byte[] left = getFromParent(ctx, ci, 0, e);
+			byte[] right = getFromParent(ctx, ci, e, ci.chunkCount);
 			parent.putIntoContents(ctx, new XOMBinary(XIONUtil.binaryConcat(left, XOMBinaryType.instance.makeInstanceFrom(ctx, contents).toByteArray(), right)), property, pvalue);
 		}
 		else {
@@ -472,14 +486,12 @@ public class XOMBinaryByteChunk extends XOMContainer implements XOMBinaryContain
 		}
 		else if (parent.canPutContents(ctx)) {
 			BinaryChunkInfo ci = getChunkInfo(ctx, false, false);
-			byte[] left = XIONUtil.binarySubstring(ci.parentContent, 0, ci.startByteIndex);
-			byte[] middle = XIONUtil.binarySubstring(ci.parentContent, ci.startByteIndex, ci.endByteIndex);
-			byte[] right = XIONUtil.binarySubstring(ci.parentContent, ci.endByteIndex, ci.chunkCount);
+			byte[] middle = getFromParent(ctx, ci, ci.startByteIndex, ci.endByteIndex);
 			Vector<XOMVariant> middlev = new Vector<XOMVariant>();
 			for (byte b : middle) middlev.add(new XOMBinary(new byte[]{b}));
 			Collections.sort(middlev, cmp);
 			for (int i = 0; i < middle.length; i++) middle[i] = ((XOMBinary)middlev.get(i)).toByteArray()[0];
-			parent.putIntoContents(ctx, new XOMBinary(XIONUtil.binaryConcat(left, middle, right)));
+			replaceInParent(ctx, ci, ci.startByteIndex, ci.endByteIndex, middle);
 		}
 		else {
 			super.sortContents(ctx, cmp);
@@ -510,14 +522,12 @@ public class XOMBinaryByteChunk extends XOMContainer implements XOMBinaryContain
 			BinaryChunkInfo ci = getChunkInfo(ctx, false, false);
 			int s = Math.max(ci.startByteIndex, Math.min(ci.endByteIndex, ci.startByteIndex+startByteIndex));
 			int e = Math.max(ci.startByteIndex, Math.min(ci.endByteIndex, ci.startByteIndex+endByteIndex));
-			byte[] left = XIONUtil.binarySubstring(ci.parentContent, 0, s);
-			byte[] middle = XIONUtil.binarySubstring(ci.parentContent, s, e);
-			byte[] right = XIONUtil.binarySubstring(ci.parentContent, e, ci.chunkCount);
+			byte[] middle = getFromParent(ctx, ci, s, e);
 			Vector<XOMVariant> middlev = new Vector<XOMVariant>();
 			for (byte b : middle) middlev.add(new XOMBinary(new byte[]{b}));
 			Collections.sort(middlev, cmp);
 			for (int i = 0; i < middle.length; i++) middle[i] = ((XOMBinary)middlev.get(i)).toByteArray()[0];
-			parent.putIntoContents(ctx, new XOMBinary(XIONUtil.binaryConcat(left, middle, right)));
+			replaceInParent(ctx, ci, s, e, middle);
 		}
 		else {
 			super.sortContents(ctx, cmp);
@@ -613,7 +623,7 @@ public class XOMBinaryByteChunk extends XOMContainer implements XOMBinaryContain
 		Vector<XOMVariant> v = new Vector<XOMVariant>();
 		if (ci != null) {
 			for (int i = ci.startChunkIndex; i <= ci.endChunkIndex; i++) {
-				v.add(new XOMBinary(new byte[]{ci.parentContent[i]}));
+				v.add(new XOMBinary(getFromParent(ctx, ci, i, i+1)));
 			}
 		}
 		return v;
@@ -34,6 +34,7 @@ import com.kreative.openxion.ast.XNModifier;
 import com.kreative.openxion.util.XIONUtil;
 import com.kreative.openxion.util.BinaryNumericChunkType;
 import com.kreative.openxion.xom.XOMContainer;
+import com.kreative.openxion.xom.XOMVariable;
 import com.kreative.openxion.xom.XOMVariant;
 import com.kreative.openxion.xom.XOMBinaryContainer;
 import com.kreative.openxion.xom.type.XOMBinaryType;
@@ -70,52 +71,85 @@ public class XOMBinaryNumericChunk extends XOMContainer {
 	
 	private BinaryChunkInfo getChunkInfo(XNContext ctx, boolean puttingBefore, boolean puttingAfter, boolean padding) {
 		byte[] data;
+		int length;
 		if (puttingBefore || puttingAfter) {
-			data = XOMBinaryType.instance.makeInstanceFrom(ctx, (parent = parent.asContainer(ctx, false)).getContents(ctx)).toByteArray();
-		} else if (parent.canGetContents(ctx)) {
-			data = XOMBinaryType.instance.makeInstanceFrom(ctx, parent.getContents(ctx)).toByteArray();
+			parent = parent.asContainer(ctx, false);
+		}
+		if (parent instanceof XOMVariable && ((XOMVariable)parent).hasBinaryContents(ctx)) {
+			// Binary variables are read and written in place; see getFromParent and replaceInParent.
+			data = null;
+			length = ((XOMVariable)parent).getBinaryLength(ctx);
 		} else {
-			data = XOMBinaryType.instance.makeInstanceFrom(ctx, parent).toByteArray();
+			if (puttingBefore || puttingAfter || parent.canGetContents(ctx)) {
+				data = XOMBinaryType.instance.makeInstanceFrom(ctx, parent.getContents(ctx)).toByteArray();
+			} else {
+				data = XOMBinaryType.instance.makeInstanceFrom(ctx, parent).toByteArray();
+			}
+			length = data.length;
 		}
-		int[] idx = XIONUtil.index(0, data.length-chunkType.length(), index, index);
+		int[] idx = XIONUtil.index(0, length-chunkType.length(), index, index);
 		int s = idx[0], e = idx[0]+chunkType.length()-1;
-		if ((puttingBefore && s > (data.length-1)) || (puttingAfter && e > (data.length-1))) {
-			int n = ( (puttingBefore && puttingAfter) ? Math.max(s,e) : puttingBefore ? s-1 : puttingAfter ? e : (data.length-1) )-(data.length-1);
+		if ((puttingBefore && s > (length-1)) || (puttingAfter && e > (length-1))) {
+			int n = ( (puttingBefore && puttingAfter) ? Math.max(s,e) : puttingBefore ? s-1 : puttingAfter ? e : (length-1) )-(length-1);
 			byte[] a = new byte[n];
-			data = XIONUtil.binaryConcat(data, a);
+			if (data != null) data = XIONUtil.binaryConcat(data, a);
+			length += n;
 			parent.putAfterContents(ctx, new XOMBinary(a));
 		}
-		if (padding && (s > (data.length-1) || e > (data.length-1))) {
-			int n = Math.max(s,e) - (data.length-1);
+		if (padding && (s > (length-1) || e > (length-1))) {
+			int n = Math.max(s,e) - (length-1);
 			byte[] a = new byte[n];
+			if (data == null) data = ((XOMVariable)parent).getBinary(ctx, 0, length);
 			data = XIONUtil.binaryConcat(data, a);
+			length += n;
 		}
 		if ((puttingBefore && s < 0) || (puttingAfter && e < 0)) {
 			int n = Math.abs( (puttingBefore && puttingAfter) ? Math.min(s,e) : puttingBefore ? s : puttingAfter ? e+1 : 0 );
 			byte[] a = new byte[n];
 			s += n; e += n;
-			data = XIONUtil.binaryConcat(a, data);
+			if (data != null) data = XIONUtil.binaryConcat(a, data);
+			length += n;
 			parent.putBeforeContents(ctx, new XOMBinary(a));
 		}
 		if (padding && (s < 0 || e < 0)) {
 			int n = Math.abs(Math.min(s,e));
 			byte[] a = new byte[n];
 			s += n; e += n;
+			if (data == null) data = ((XOMVariable)parent).getBinary(ctx, 0, length);
 			data = XIONUtil.binaryConcat(a, data);
+			length += n;
 		}
 		BinaryChunkInfo ci = new BinaryChunkInfo();
 		ci.parentContent = data;
-		ci.byteCount = data.length;
+		ci.byteCount = length;
 		ci.startByteIndex = s;
 		ci.endByteIndex = e+1;
 		if (ci.startByteIndex < 0) ci.startByteIndex = 0;
-		else if (ci.startByteIndex > data.length) ci.startByteIndex = data.length;
+		else if (ci.startByteIndex > length) ci.startByteIndex = length;
 		if (ci.endByteIndex < 0) ci.endByteIndex = 0;
-		else if (ci.endByteIndex > data.length) ci.endByteIndex = data.length;
+		else if (ci.endByteIndex > length) ci.endByteIndex = length;
 		if (ci.startByteIndex > ci.endByteIndex) ci.endByteIndex = ci.startByteIndex;
 		return ci;
 	}
 	
+	private byte[] getFromParent(XNContext ctx, BinaryChunkInfo ci, int startByteIndex, int endByteIndex) {
+		if (ci.parentContent == null) {
+			return ((XOMVariable)parent).getBinary(ctx, startByteIndex, endByteIndex);
+		} else {
+			return XIONUtil.binarySubstring(ci.parentContent, startByteIndex, endByteIndex);
+		}
+	}
+	
+	private void replaceInParent(XNContext ctx, BinaryChunkInfo ci, int startByteIndex, int endByteIndex, byte[] b) {
+		if (ci.parentContent == null) {
+			((XOMVariable)parent).replaceBinary(ctx, startByteIndex, endByteIndex, b);
+		} else {
+			byte[] left = XIONUtil.binarySubstring(ci.parentContent, 0, startByteIndex);
+			byte[] right = XIONUtil.binarySubstring(ci.parentContent, endByteIndex, ci.byteCount);
+			parent.putIntoContents(ctx, new XOMBinary(XIONUtil.binaryConcat(left, b, right)));
+		}
+	}
+	
 	public boolean canDelete(XNContext ctx) {
 		if (parent instanceof XOMBinaryContainer && ((XOMBinaryContainer)parent).canDeleteBinary(ctx)) {
 			return true;
@@ -136,9 +170,7 @@ public class XOMBinaryNumericChunk extends XOMContainer {
 		}
 		else if (parent.canPutContents(ctx)) {
 			BinaryChunkInfo ci = getChunkInfo(ctx, false, false, false);
-			byte[] left = XIONUtil.binarySubstring(ci.parentContent, 0, ci.startByteIndex);
-			byte[] right = XIONUtil.binarySubstring(ci.parentContent, ci.endByteIndex, ci.byteCount);
-			parent.putIntoContents(ctx, new XOMBinary(XIONUtil.binaryConcat(left, right)));
+			replaceInParent(ctx, ci, ci.startByteIndex, ci.endByteIndex, new byte[0]);
 		}
 		else {
 			super.delete(ctx);
@@ -162,7 +194,7 @@ public class XOMBinaryNumericChunk extends XOMContainer {
 		}
 		else {
 			BinaryChunkInfo ci = getChunkInfo(ctx, false, false, true);
-			byte[] b = XIONUtil.binarySubstring(ci.parentContent, ci.startByteIndex, ci.endByteIndex);
+			byte[] b = getFromParent(ctx, ci, ci.startByteIndex, ci.endByteIndex);
 			if (chunkType.isFloat()) {
 				return new XOMNumber(chunkType.bigDecimalValueOf(b, ctx.getUnsigned(), ctx.getLittleEndian()));
 			} else {
@@ -202,9 +234,7 @@ public class XOMBinaryNumericChunk extends XOMContainer {
 		}
 		else if (parent.canPutContents(ctx)) {
 			BinaryChunkInfo ci = getChunkInfo(ctx, true, true, false);
-			byte[] left = XIONUtil.binarySubstring(ci.parentContent, 0, ci.startByteIndex);
-			byte[] right = XIONUtil.binarySubstring(ci.parentContent, ci.endByteIndex, ci.byteCount);
-			parent.putIntoContents(ctx, new XOMBinary(XIONUtil.binaryConcat(left, XOMBinaryType.instance.makeInstanceFrom(ctx, contents).toByteArray(), right)));
+			replaceInParent(ctx, ci, ci.startByteIndex, ci.endByteIndex, XOMBinaryType.instance.makeInstanceFrom(ctx, contents).toByteArray());
 		}
 		else {
 			super.putIntoContents(ctx, contents);
@@ -230,9 +260,7 @@ public class XOMBinaryNumericChunk extends XOMContainer {
 		}
 		else if (parent.canPutContents(ctx)) {
 			BinaryChunkInfo ci = getChunkInfo(ctx, true, false, false);
-			byte[] left = XIONUtil.binarySubstring(ci.parentContent,0, ci.startByteIndex);
-			byte[] right = XIONUtil.binarySubstring(ci.parentContent,ci.startByteIndex, ci.byteCount);
-			parent.putIntoContents(ctx, new XOMBinary(XIONUtil.binaryConcat(left, XOMBinaryType.instance.makeInstanceFrom(ctx, contents).toByteArray(), right)));
+			replaceInParent(ctx, ci, ci.startByteIndex, ci.startByteIndex, XOMBinaryType.instance.makeInstanceFrom(ctx, contents).toByteArray());
 		}
 		else {
 			super.putBeforeContents(ctx, contents);
@@ -258,9 +286,7 @@ public class XOMBinaryNumericChunk extends XOMContainer {
 		}
 		else if (parent.canPutContents(ctx)) {
 			BinaryChunkInfo ci = getChunkInfo(ctx, false, true, false);
-			byte[] left = XIONUtil.binarySubstring(ci.parentContent,0, ci.endByteIndex);
-			byte[] right = XIONUtil.binarySubstring(ci.parentContent,ci.endByteIndex, ci.byteCount);
-			parent.putIntoContents(ctx, new XOMBinary(XIONUtil.binaryConcat(left, XOMBinaryType.instance.makeInstanceFrom(ctx, contents).toByteArray(), right)));
+			replaceInParent(ctx, ci, ci.endByteIndex, ci.endByteIndex, XOMBinaryType.instance.makeInstanceFrom(ctx, contents).toByteArray());
 		}
 		else {
 			super.putBeforeContents(ctx, contents);
@@ -286,8 +312,8 @@ public class XOMBinaryNumericChunk extends XOMContainer {
 		}
 		else if (parent.canPutContents(ctx)) {
 			BinaryChunkInfo ci = getChunkInfo(ctx, true, true, false);
-			byte[] left = XIONUtil.binarySubstring(ci.parentContent, 0, ci.startByteIndex);
-			byte[] right = XIONUtil.binarySubstring(ci.parentContent, ci.endByteIndex, ci.byteCount);
+			byte[] left = getFromParent(ctx, ci, 0, ci.startByteIndex);
+			byte[] right = getFromParent(ctx, ci, ci.endByteIndex, ci.byteCount);
 			parent.putIntoContents(ctx, new XOMBinary(XIONUtil.binaryConcat(left, XOMBinaryType.instance.makeInstanceFrom(ctx, contents).toByteArray(), right)), property, pvalue);
 		}
 		else {
@@ -314,8 +340,8 @@ public class XOMBinaryNumericChunk extends XOMContainer {
 		}
 		else if (parent.canPutContents(ctx)) {
 			BinaryChunkInfo ci = getChunkInfo(ctx, true, false, false);
-			byte[] left = XIONUtil.binarySubstring(ci.parentContent,0, ci.startByteIndex);
-			byte[] right = XIONUtil.binarySubstring(ci.parentContent,ci.startByteIndex, ci.byteCount);
+			byte[] left = getFromParent(ctx, ci, 0, ci.startByteIndex);
+			byte[] right = getFromParent(ctx, ci, ci.startByteIndex, ci.byteCount);
 			parent.putIntoContents(ctx, new XOMBinary(XIONUtil.binaryConcat(left, XOMBinaryType.instance.makeInstanceFrom(ctx, contents).toByteArray(), right)), property, pvalue);
 		}
 		else {
@@ -342,8 +368,8 @@ public class XOMBinaryNumericChunk extends XOMContainer {
 		}
 		else if (parent.canPutContents(ctx)) {
 			BinaryChunkInfo ci = getChunkInfo(ctx, false, true, false);
-			byte[] left = XIONUtil.binarySubstring(ci.parentContent,0, ci.endByteIndex);
-			byte[] right = XIONUtil.binarySubstring(ci.parentContent,ci.endByteIndex, ci.byteCount);
+			byte[] left = getFromParent(ctx, ci, 0, ci.endByteIndex);
+			byte[] right = getFromParent(ctx, ci, ci.endByteIndex, ci.byteCount);
 			parent.putIntoContents(ctx, new XOMBinary(XIONUtil.binaryConcat(left, XOMBinaryType.instance.makeInstanceFrom(ctx, contents).toByteArray(), right)), property, pvalue);
 		}
 		else {
@@ -28,10 +28,10 @@
 package com.kreative.openxion.xom.inst;
 
 import java.util.*;
-import java.text.*;
 import com.kreative.openxion.XNContext;
 import com.kreative.openxion.util.XIONUtil;
 import com.kreative.openxion.util.XNDateFormat;
+import com.kreative.openxion.util.XNDateParser;
 import com.kreative.openxion.xom.XOMValue;
 import com.kreative.openxion.xom.XOMMorphError;
 import com.kreative.openxion.xom.XOMVariant;
@@ -75,19 +75,10 @@ public class XOMDate extends XOMValue {
 	}
 	
 	public XOMDate(String s) {
-		theDate = new GregorianCalendar();
-		Date parsedDate = null;
-		ParsePosition pos = new ParsePosition(0);
-		List<XNDateFormat> formats = XNDateFormat.allForName("datetime");
-		for (XNDateFormat fmt : formats) {
-			parsedDate = fmt.toJavaDateFormat().parse(s,pos);
-			if (parsedDate != null && s.substring(pos.getIndex()).trim().length() == 0) {
-				theDate.setTime(parsedDate);
-				theFormat = fmt;
-				return;
-			}
-		}
-		throw new XOMMorphError("date");
+		XNDateParser.Result r = XNDateParser.parse(s);
+		if (r == null) throw new XOMMorphError("date");
+		this.theFormat = r.getFormat();
+		this.theDate = r.toCalendar();
 	}
 	
 	public XOMDate dateEquivalent() {
@@ -108,11 +99,11 @@ public class XOMDate extends XOMValue {
 	
 	public String toLanguageString() {
 		if (theFormat == null || theDate == null) return "\"\"";
-		return XIONUtil.quote(theFormat.toJavaDateFormat().format(theDate.getTime()));
+		return XIONUtil.quote(XNDateParser.getDateFormat(theFormat).format(theDate.getTime()));
 	}
 	public String toTextString(XNContext ctx) {
 		if (theFormat == null || theDate == null) return "";
-		return theFormat.toJavaDateFormat().format(theDate.getTime());
+		return XNDateParser.getDateFormat(theFormat).format(theDate.getTime());
 	}
 	public List<? extends XOMVariant> toVariantList(XNContext ctx) {
 		return Arrays.asList(this);
@@ -38,93 +38,156 @@ import com.kreative.openxion.xom.XOMVariant;
 public class XOMInteger extends XOMValue implements Comparable<XOMInteger> {
 	private static final long serialVersionUID = 1L;
 	
-	public static final XOMInteger ZERO = new XOMInteger(0);
-	public static final XOMInteger ONE = new XOMInteger(1);
-	public static final XOMInteger TWO = new XOMInteger(2);
-	public static final XOMInteger TEN = new XOMInteger(10);
-	public static final XOMInteger NEGATIVE_ONE = new XOMInteger(-1);
+	private static final int CACHE_LOW = -128;
+	private static final int CACHE_HIGH = 1024;
+	private static final XOMInteger[] CACHE = new XOMInteger[CACHE_HIGH - CACHE_LOW + 1];
+	static {
+		for (int i = 0; i < CACHE.length; i++) {
+			CACHE[i] = new XOMInteger(i + CACHE_LOW, (double)(i + CACHE_LOW));
+		}
+	}
+	
+	public static final XOMInteger ZERO = valueOf(0);
+	public static final XOMInteger ONE = valueOf(1);
+	public static final XOMInteger TWO = valueOf(2);
+	public static final XOMInteger TEN = valueOf(10);
+	public static final XOMInteger NEGATIVE_ONE = valueOf(-1);
 	public static final XOMInteger POSITIVE_INFINITY = new XOMInteger(Double.POSITIVE_INFINITY);
 	public static final XOMInteger NEGATIVE_INFINITY = new XOMInteger(Double.NEGATIVE_INFINITY);
 	public static final XOMInteger NaN = new XOMInteger(null);
 	
+	/**
+	 * Returns an XOMInteger with the specified value.
+	 * Commonly used small values are cached.
+	 */
+	public static XOMInteger valueOf(long v) {
+		if (v >= CACHE_LOW && v <= CACHE_HIGH) return CACHE[(int)v - CACHE_LOW];
+		return new XOMInteger(v, (double)v);
+	}
+	
+	/*
+	 * Finite values that fit in a long are kept in longValue and have
+	 * bigValue == null; only values outside the range of a long use a
+	 * BigInteger. Infinities and NaN have neither (isLong is false and
+	 * bigValue is null). The doubleValue of zero keeps its sign.
+	 */
+	private final boolean isLong;
+	private final long longValue;
 	private final BigInteger bigValue;
 	private final double doubleValue;
 	
+	private XOMInteger(long v, double d) {
+		this.isLong = true;
+		this.longValue = v;
+		this.bigValue = null;
+		this.doubleValue = d;
+	}
+	
 	public XOMInteger(Number n) {
+		BigInteger b;
+		double d;
 		if (n == null) {
-			this.bigValue = null;
-			this.doubleValue = Double.NaN;
+			b = null;
+			d = Double.NaN;
 		} else if (n instanceof BigInteger) {
-			this.bigValue = (BigInteger)n;
-			this.doubleValue = bigValue.doubleValue();
+			b = (BigInteger)n;
+			d = b.doubleValue();
 		} else if (n instanceof BigDecimal) {
-			this.bigValue = ((BigDecimal)n).toBigInteger();
-			this.doubleValue = bigValue.doubleValue();
+			b = ((BigDecimal)n).toBigInteger();
+			d = b.doubleValue();
 		} else if (n instanceof Double || n instanceof Float) {
 			double v = n.doubleValue();
 			if (Double.isNaN(v) || Double.isInfinite(v)) {
-				this.bigValue = null;
-				this.doubleValue = v;
+				b = null;
+				d = v;
 			} else if (v == 0) {
-				this.bigValue = BigInteger.ZERO;
-				this.doubleValue = v;
+				b = BigInteger.ZERO;
+				d = v;
 			} else {
-				this.bigValue = BigDecimal.valueOf(v).toBigInteger();
-				this.doubleValue = bigValue.doubleValue();
+				b = BigDecimal.valueOf(v).toBigInteger();
+				d = b.doubleValue();
 			}
 		} else if (n instanceof Long || n instanceof Integer || n instanceof Short || n instanceof Byte) {
-			this.bigValue = BigInteger.valueOf(n.longValue());
-			this.doubleValue = bigValue.doubleValue();
+			this.isLong = true;
+			this.longValue = n.longValue();
+			this.bigValue = null;
+			this.doubleValue = (double)longValue;
+			return;
 		} else {
 			throw new IllegalArgumentException("unknown subclass of java.lang.Number: " + n.getClass());
 		}
+		if (b != null && b.bitLength() < 64) {
+			this.isLong = true;
+			this.longValue = b.longValue();
+			this.bigValue = null;
+		} else {
+			this.isLong = false;
+			this.longValue = 0;
+			this.bigValue = b;
+		}
+		this.doubleValue = d;
 	}
 	
 	public boolean isNaN() {
-		return bigValue == null && Double.isNaN(doubleValue);
+		return !isLong && bigValue == null && Double.isNaN(doubleValue);
 	}
 	
 	public boolean isInfinite() {
-		return bigValue == null && Double.isInfinite(doubleValue);
+		return !isLong && bigValue == null && Double.isInfinite(doubleValue);
 	}
 	
 	public boolean isFinite() {
-		return bigValue != null;
+		return isLong || bigValue != null;
+	}
+	
+	/**
+	 * Returns true if this is a finite value that fits in a long.
+	 * The value can then be retrieved exactly using toLong.
+	 */
+	public boolean isLong() {
+		return isLong;
+	}
+	
+	private int sign() {
+		return isLong ? Long.signum(longValue) : (bigValue != null) ? bigValue.signum() : 0;
 	}
 	
 	public boolean isZero() {
-		return (bigValue != null) ? (bigValue.signum() == 0) : (doubleValue == 0);
+		return isFinite() ? (sign() == 0) : (doubleValue == 0);
 	}
 	
 	public boolean isPos() {
-		return (bigValue != null) ? (bigValue.signum() > 0) : (doubleValue > 0);
+		return isFinite() ? (sign() > 0) : (doubleValue > 0);
 	}
 	
 	public boolean isNeg() {
-		return (bigValue != null) ? (bigValue.signum() < 0) : (doubleValue < 0);
+		return isFinite() ? (sign() < 0) : (doubleValue < 0);
 	}
 	
 	public XOMInteger abs() {
-		if (bigValue != null && bigValue.signum() != 0) return new XOMInteger(bigValue.abs());
+		if (isLong && longValue != 0 && longValue != Long.MIN_VALUE) return valueOf(Math.abs(longValue));
+		if (isFinite() && sign() != 0) return new XOMInteger(toBigInteger().abs());
 		return new XOMInteger(Math.abs(doubleValue));
 	}
 	
 	public XOMInteger negate() {
-		if (bigValue != null && bigValue.signum() != 0) return new XOMInteger(bigValue.negate());
+		if (isLong && longValue != 0 && longValue != Long.MIN_VALUE) return valueOf(-longValue);
+		if (isFinite() && sign() != 0) return new XOMInteger(toBigInteger().negate());
 		return new XOMInteger(-doubleValue);
 	}
 	
 	public XOMInteger signum() {
-		if (bigValue != null && bigValue.signum() != 0) return new XOMInteger(bigValue.signum());
+		if (isFinite() && sign() != 0) return valueOf(sign());
 		return new XOMInteger(Math.signum(doubleValue));
 	}
 	
 	public Number toNumber() {
+		if (isLong && longValue != 0) return longValue;
 		return (bigValue != null && bigValue.signum() != 0) ? bigValue : doubleValue;
 	}
 	
 	public BigInteger toBigInteger() {
-		return bigValue;
+		return isLong ? BigInteger.valueOf(longValue) : bigValue;
 	}
 	
 	public double toDouble() {
@@ -132,27 +195,28 @@ public class XOMInteger extends XOMValue implements Comparable<XOMInteger> {
 	}
 	
 	public double toClampedDouble() {
-		if (bigValue == null || bigValue.signum() == 0) return doubleValue;
-		if (doubleValue == 0) return bigValue.signum() * Double.MIN_VALUE;
-		if (Double.isInfinite(doubleValue)) return bigValue.signum() * Double.MAX_VALUE;
+		if (!isFinite() || sign() == 0) return doubleValue;
+		if (doubleValue == 0) return sign() * Double.MIN_VALUE;
+		if (Double.isInfinite(doubleValue)) return sign() * Double.MAX_VALUE;
 		return doubleValue;
 	}
 	
 	public long toLong() {
-		return (bigValue != null) ? bigValue.longValue() : 0;
+		return isLong ? longValue : (bigValue != null) ? bigValue.longValue() : 0;
 	}
 	
 	public int toInt() {
-		return (bigValue != null) ? bigValue.intValue() : 0;
+		return isLong ? (int)longValue : (bigValue != null) ? bigValue.intValue() : 0;
 	}
 	
 	public String toLanguageString() {
+		if (isLong) return Long.toString(longValue);
 		if (bigValue != null) return bigValue.toString();
 		return (doubleValue < 0) ? "-INF" : (doubleValue > 0) ? "INF" : "NAN";
 	}
 	
 	public String toTextString(XNContext ctx) {
-		if (bigValue != null) return ctx.getNumberFormat().format(bigValue);
+		if (isFinite()) return ctx.getNumberFormat().format(toBigInteger());
 		return (doubleValue < 0) ? "-INF" : (doubleValue > 0) ? "INF" : "NAN";
 	}
 	
@@ -165,14 +229,17 @@ public class XOMInteger extends XOMValue implements Comparable<XOMInteger> {
 	}
 	
 	public int hashCode() {
+		if (isLong) return (int)(longValue ^ (longValue >>> 32));
 		return (bigValue != null) ? bigValue.hashCode() : 0;
 	}
 	
 	public boolean equals(Object o) {
 		if (o instanceof XOMInteger) {
 			XOMInteger other = (XOMInteger)o;
+			if (this.isLong && other.isLong) return (
+				this.longValue == other.longValue);
 			if (this.isFinite() && other.isFinite()) return (
-				this.bigValue.compareTo(other.bigValue) == 0);
+				this.toBigInteger().compareTo(other.toBigInteger()) == 0);
 			if (this.isFinite() || other.isFinite()) return false;
 			return this.doubleValue == other.doubleValue;
 		} else {
@@ -181,34 +248,52 @@ public class XOMInteger extends XOMValue implements Comparable<XOMInteger> {
 	}
 	
 	public int compareTo(XOMInteger other) {
+		if (this.isLong && other.isLong)
+			return (this.longValue < other.longValue) ? -1 : (this.longValue > other.longValue) ? 1 : 0;
 		if (this.isFinite() && other.isFinite())
-			return this.bigValue.compareTo(other.bigValue);
+			return this.toBigInteger().compareTo(other.toBigInteger());
 		Double a = Double.valueOf(this.toClampedDouble());
 		Double b = Double.valueOf(other.toClampedDouble());
 		return a.compareTo(b);
 	}
 	
 	public XOMInteger add(XOMInteger other) {
+		if (this.isLong && other.isLong) {
+			long a = this.longValue, b = other.longValue, r = a + b;
+			if (((a ^ r) & (b ^ r)) >= 0) return valueOf(r);
+		}
 		if (this.isFinite() && other.isFinite())
-			return new XOMInteger(this.bigValue.add(other.bigValue));
+			return new XOMInteger(this.toBigInteger().add(other.toBigInteger()));
 		return new XOMInteger(this.toClampedDouble() + other.toClampedDouble());
 	}
 	
 	public XOMInteger subtract(XOMInteger other) {
+		if (this.isLong && other.isLong) {
+			long a = this.longValue, b = other.longValue, r = a - b;
+			if (((a ^ b) & (a ^ r)) >= 0) return valueOf(r);
+		}
 		if (this.isFinite() && other.isFinite())
-			return new XOMInteger(this.bigValue.subtract(other.bigValue));
+			return new XOMInteger(this.toBigInteger().subtract(other.toBigInteger()));
 		return new XOMInteger(this.toClampedDouble() - other.toClampedDouble());
 	}
 	
 	public XOMInteger multiply(XOMInteger other) {
+		if (this.isLong && this.longValue != 0 && other.isLong && other.longValue != 0) {
+			long a = this.longValue, b = other.longValue;
+			if (a == (int)a && b == (int)b) return valueOf(a * b);
+		}
 		if (this.isFinite() && !this.isZero() && other.isFinite() && !other.isZero())
-			return new XOMInteger(this.bigValue.multiply(other.bigValue));
+			return new XOMInteger(this.toBigInteger().multiply(other.toBigInteger()));
 		return new XOMInteger(this.toClampedDouble() * other.toClampedDouble());
 	}
 	
 	public XOMInteger divide(XOMInteger other) {
+		if (this.isLong && this.longValue != 0 && other.isLong && other.longValue != 0) {
+			long a = this.longValue, b = other.longValue;
+			if (a != Long.MIN_VALUE || b != -1) return valueOf(a / b);
+		}
 		if (this.isFinite() && !this.isZero() && other.isFinite() && !other.isZero())
-			return new XOMInteger(this.bigValue.divide(other.bigValue));
+			return new XOMInteger(this.toBigInteger().divide(other.toBigInteger()));
 		return new XOMInteger(this.toClampedDouble() / other.toClampedDouble());
 	}
 }
@@ -34,6 +34,7 @@ import com.kreative.openxion.util.XIONUtil;
 import com.kreative.openxion.xom.XOMContainer;
 import com.kreative.openxion.xom.XOMVariant;
 import com.kreative.openxion.xom.XOMListContainer;
+import com.kreative.openxion.xom.XOMVariable;
 import com.kreative.openxion.xom.XOMComparator;
 
 public class XOMListChunk extends XOMContainer implements XOMListContainer {
@@ -75,9 +76,19 @@ public class XOMListChunk extends XOMContainer implements XOMListContainer {
 		public int endElementIndex;
 	}
 	
+	private List<? extends XOMVariant> getVariableListElements(XNContext ctx) {
+		if (parent instanceof XOMVariable && ((XOMVariable)parent).hasListContents(ctx)) {
+			return ((XOMVariable)parent).getListElements(ctx);
+		} else {
+			return null;
+		}
+	}
+	
 	private ListChunkInfo getChunkInfo(XNContext ctx, boolean puttingBefore, boolean puttingAfter) {
-		List<? extends XOMVariant> pl;
-		if (puttingBefore || puttingAfter) {
+		List<? extends XOMVariant> pl = getVariableListElements(ctx);
+		if (pl != null) {
+			// The elements of a list variable are read in place.
+		} else if (puttingBefore || puttingAfter) {
 			pl = (parent = parent.asContainer(ctx, false)).getContents(ctx).toPrimitiveList(ctx);
 		} else if (parent.canGetContents(ctx)) {
 			pl = parent.getContents(ctx).toPrimitiveList(ctx);
@@ -92,11 +103,16 @@ public class XOMListChunk extends XOMContainer implements XOMListContainer {
 			while (n-- > 0) {
 				a.add(XOMEmpty.EMPTY);
 			}
-			List<XOMVariant> nv = new ArrayList<XOMVariant>();
-			nv.addAll(pl);
-			nv.addAll(a);
 			parent.putAfterContents(ctx, new XOMList(a));
-			pl = nv;
+			List<? extends XOMVariant> vl = getVariableListElements(ctx);
+			if (vl != null) {
+				pl = vl;
+			} else {
+				List<XOMVariant> nv = new ArrayList<XOMVariant>();
+				nv.addAll(pl);
+				nv.addAll(a);
+				pl = nv;
+			}
 		}
 		if ((puttingBefore && s < 1) || (puttingAfter && e < 1)) {
 			List<XOMVariant> a = new Vector<XOMVariant>();
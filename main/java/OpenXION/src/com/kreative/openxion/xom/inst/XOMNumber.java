@@ -62,6 +62,44 @@ public class XOMNumber extends XOMValue implements Comparable<XOMNumber> {
 	public static final XOMNumber NEGATIVE_INFINITY = new XOMNumber(Double.NEGATIVE_INFINITY);
 	public static final XOMNumber NaN = new XOMNumber(null);
 	
+	private static final int CACHE_LOW = -128;
+	private static final int CACHE_HIGH = 1024;
+	private static final XOMNumber[] CACHE = new XOMNumber[CACHE_HIGH - CACHE_LOW + 1];
+	static {
+		for (int i = 0; i < CACHE.length; i++) {
+			CACHE[i] = new XOMNumber(i + CACHE_LOW);
+		}
+	}
+	
+	/**
+	 * Returns an XOMNumber with the specified integer value.
+	 * Commonly used small values are cached.
+	 */
+	public static XOMNumber valueOf(long v) {
+		if (v >= CACHE_LOW && v <= CACHE_HIGH) return CACHE[(int)v - CACHE_LOW];
+		return new XOMNumber(v);
+	}
+	
+	private static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+	
+	/**
+	 * Returns the same value as BigDecimal.doubleValue, but without going
+	 * through a string when the unscaled value and the power of ten are
+	 * both exact doubles, since then a single multiplication or division
+	 * is already correctly rounded.
+	 */
+	public static double toDouble(BigDecimal v) {
+		int scale = v.scale();
+		if (scale >= -22 && scale <= 22 && v.precision() <= 15) {
+			double u = v.unscaledValue().longValue();
+			return (scale >= 0) ? (u / POWERS_OF_TEN[scale]) : (u * POWERS_OF_TEN[-scale]);
+		}
+		return v.doubleValue();
+	}
+	
 	private final BigDecimal bigValue;
 	private final double doubleValue;
 	
@@ -71,7 +109,7 @@ public class XOMNumber extends XOMValue implements Comparable<XOMNumber> {
 			this.doubleValue = Double.NaN;
 		} else if (n instanceof BigDecimal) {
 			this.bigValue = (BigDecimal)n;
-			this.doubleValue = bigValue.doubleValue();
+			this.doubleValue = toDouble(bigValue);
 		} else if (n instanceof BigInteger) {
 			this.bigValue = new BigDecimal((BigInteger)n);
 			this.doubleValue = bigValue.doubleValue();
@@ -107,6 +145,15 @@ public class XOMNumber extends XOMValue implements Comparable<XOMNumber> {
 		return bigValue != null;
 	}
 	
+	/**
+	 * Returns true if this is an integer with a scale of zero
+	 * that fits in a long. The value can then be retrieved exactly
+	 * using toLong.
+	 */
+	public boolean isLong() {
+		return bigValue != null && bigValue.scale() == 0 && bigValue.precision() < 19;
+	}
+	
 	public boolean isZero() {
 		return (bigValue != null) ? (bigValue.signum() == 0) : (doubleValue == 0);
 	}
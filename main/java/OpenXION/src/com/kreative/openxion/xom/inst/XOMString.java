@@ -30,6 +30,7 @@ package com.kreative.openxion.xom.inst;
 import java.util.Arrays;
 import java.util.List;
 import com.kreative.openxion.XNContext;
+import com.kreative.openxion.util.StringChunkDefinition;
 import com.kreative.openxion.util.XIONUtil;
 import com.kreative.openxion.xom.XOMValue;
 import com.kreative.openxion.xom.XOMVariant;
@@ -39,12 +40,100 @@ public class XOMString extends XOMValue {
 	
 	public static final XOMString EMPTY_STRING = new XOMString("");
 	
+	private static final int MAX_CHUNK_INDEXES = 4;
+	private static final int MAX_CONVERSIONS = 4;
+	
 	private String theString;
+	// Replaced as a whole, never modified, so strings shared between threads stay safe.
+	private transient volatile StringChunkDefinition.ChunkIndex[] chunkIndexes;
+	private transient volatile Conversion[] conversions;
 	
 	public XOMString(String s) {
 		this.theString = s;
 	}
 	
+	/**
+	 * Returns the boundaries of the chunks of this string for the given
+	 * chunk definition. The index is created on first use, filled in as
+	 * far as chunks are asked for, and kept with this string; since an
+	 * XOMString never changes, the index is dropped only when the string
+	 * itself is replaced.
+	 * @param def the chunk definition, including the active delimiter.
+	 * @return the boundaries of the chunks of this string.
+	 */
+	public StringChunkDefinition.ChunkIndex getChunkIndex(StringChunkDefinition def) {
+		StringChunkDefinition.ChunkIndex[] cache = chunkIndexes;
+		if (cache != null) {
+			for (StringChunkDefinition.ChunkIndex index : cache) {
+				if (index.getDefinition().equals(def)) return index;
+			}
+		}
+		StringChunkDefinition.ChunkIndex index = def.indexChunks((theString == null) ? "" : theString);
+		int n = (cache == null) ? 0 : Math.min(cache.length, MAX_CHUNK_INDEXES - 1);
+		StringChunkDefinition.ChunkIndex[] newCache = new StringChunkDefinition.ChunkIndex[n + 1];
+		newCache[0] = index;
+		if (n > 0) System.arraycopy(cache, 0, newCache, 1, n);
+		chunkIndexes = newCache;
+		return index;
+	}
+	
+	/**
+	 * The result of converting a string to another data type
+	 * while a particular number format was in effect.
+	 * A null value means the string could not be converted.
+	 */
+	public static final class Conversion {
+		private final Object type;
+		private final Object format;
+		private final XOMVariant value;
+		private Conversion(Object type, Object format, XOMVariant value) {
+			this.type = type;
+			this.format = format;
+			this.value = value;
+		}
+		public XOMVariant getValue() {
+			return value;
+		}
+	}
+	
+	/**
+	 * Returns the conversion of this string to the given data type
+	 * under the given number format, if one has been recorded with
+	 * putConversion, or null otherwise.
+	 * @param type the data type converted to.
+	 * @param format the number format in effect.
+	 * @return the recorded conversion, or null.
+	 */
+	public Conversion getConversion(Object type, Object format) {
+		Conversion[] cache = conversions;
+		if (cache != null) {
+			for (Conversion c : cache) {
+				if (c.type == type && c.format == format) return c;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Records the conversion of this string to the given data type
+	 * under the given number format. Since an XOMString never changes,
+	 * the conversion stays valid for as long as the number format does.
+	 * @param type the data type converted to.
+	 * @param format the number format in effect.
+	 * @param value the converted value, or null if conversion failed.
+	 * @return the recorded conversion.
+	 */
+	public Conversion putConversion(Object type, Object format, XOMVariant value) {
+		Conversion c = new Conversion(type, format, value);
+		Conversion[] cache = conversions;
+		int n = (cache == null) ? 0 : Math.min(cache.length, MAX_CONVERSIONS - 1);
+		Conversion[] newCache = new Conversion[n + 1];
+		newCache[0] = c;
+		if (n > 0) System.arraycopy(cache, 0, newCache, 1, n);
+		conversions = newCache;
+		return c;
+	}
+	
 	public String toLanguageString() {
 		return XIONUtil.quote((theString == null) ? "" : theString);
 	}
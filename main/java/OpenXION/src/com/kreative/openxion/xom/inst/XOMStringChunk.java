@@ -27,14 +27,21 @@
 
 package com.kreative.openxion.xom.inst;
 
+import java.io.IOException;
+import java.math.BigDecimal;
 import java.util.*;
 import com.kreative.openxion.XNContext;
+import com.kreative.openxion.XNScriptError;
 import com.kreative.openxion.ast.XNModifier;
+import com.kreative.openxion.io.TextIOMethod;
+import com.kreative.openxion.io.XNIOManager;
+import com.kreative.openxion.io.XNIOStream;
 import com.kreative.openxion.util.StringChunkDefinition;
 import com.kreative.openxion.util.StringChunkType;
 import com.kreative.openxion.xom.XOMContainer;
 import com.kreative.openxion.xom.XOMVariant;
 import com.kreative.openxion.xom.XOMStringContainer;
+import com.kreative.openxion.xom.XOMVariable;
 import com.kreative.openxion.xom.XOMComparator;
 
 public class XOMStringChunk extends XOMContainer implements XOMStringContainer {
@@ -61,23 +68,78 @@ public class XOMStringChunk extends XOMContainer implements XOMStringContainer {
 	}
 	
 	private StringChunkDefinition.ChunkInfo getChunkInfo(XNContext ctx, boolean puttingBefore, boolean puttingAfter) {
-		String ts;
 		if (puttingBefore || puttingAfter) {
-			ts = (parent = parent.asContainer(ctx, false)).getContents(ctx).toTextString(ctx);
+			parent = parent.asContainer(ctx, false);
+		}
+		if (parent instanceof XOMVariable) {
+			/* Chunks of a variable being modified are found in the variable's own buffer. */
+			StringChunkDefinition.ChunkInfo ci = ((XOMVariable)parent).resolveChunk(ctx, getDefinition(ctx), startIndex, endIndex, puttingBefore, puttingAfter);
+			if (ci != null) return ci;
+		}
+		XOMVariant tv;
+		if (puttingBefore || puttingAfter) {
+			tv = parent.getContents(ctx);
 		} else if (parent.canGetContents(ctx)) {
-			ts = parent.getContents(ctx).toTextString(ctx);
+			tv = parent.getContents(ctx);
+		} else {
+			tv = parent;
+		}
+		StringChunkDefinition def = getDefinition(ctx);
+		StringChunkDefinition.ChunkInfo ci;
+		if (tv instanceof XOMString && !(parent instanceof XOMStringChunk)) {
+			ci = ((XOMString)tv).getChunkIndex(def).resolveChunk(startIndex, endIndex, puttingBefore, puttingAfter);
 		} else {
-			ts = parent.toTextString(ctx);
+			/* The contents of a chunk or a computed value are new every time, so an index would never be reused. */
+			String ts = tv.toTextString(ctx);
+			ci = def.resolveChunk(ts, 0, ts.length(), startIndex, endIndex, puttingBefore, puttingAfter);
 		}
+		if (ci.getStringToAppend() != null) parent.putAfterContents(ctx, new XOMString(ci.getStringToAppend()));
+		if (ci.getStringToPrepend() != null) parent.putBeforeContents(ctx, new XOMString(ci.getStringToPrepend()));
+		return ci;
+	}
+	
+	private StringChunkDefinition getDefinition(XNContext ctx) {
 		String nl = ctx.getLineEnding();
 		String id = Character.toString(ctx.getItemDelimiter());
 		String cd = Character.toString(ctx.getColumnDelimiter());
 		String rd = Character.toString(ctx.getRowDelimiter());
-		StringChunkDefinition def = chunkType.getDefinition(nl, id, cd, rd);
-		StringChunkDefinition.ChunkInfo ci = def.resolveChunk(ts, 0, ts.length(), startIndex, endIndex, puttingBefore, puttingAfter);
-		if (ci.getStringToAppend() != null) parent.putAfterContents(ctx, new XOMString(ci.getStringToAppend()));
-		if (ci.getStringToPrepend() != null) parent.putBeforeContents(ctx, new XOMString(ci.getStringToPrepend()));
-		return ci;
+		return chunkType.getDefinition(nl, id, cd, rd);
+	}
+	
+	/**
+	 * Returns the chunk boundaries of the given value. If the value is
+	 * an XOMString, the index cached on that string is reused, so that
+	 * repeated ordinal access to the same value does not rescan it.
+	 */
+	public static StringChunkDefinition.ChunkIndex getChunkIndex(XNContext ctx, XOMVariant value, StringChunkDefinition def) {
+		if (value instanceof XOMString) {
+			return ((XOMString)value).getChunkIndex(def);
+		} else {
+			return def.indexChunks(value.toTextString(ctx));
+		}
+	}
+	
+	/**
+	 * Returns the number of chunks in the given value, using the index
+	 * cached on it if it is an XOMString and otherwise just counting.
+	 */
+	public static int getChunkCount(XNContext ctx, XOMVariant value, StringChunkDefinition def) {
+		if (value instanceof XOMString) {
+			return ((XOMString)value).getChunkIndex(def).getChunkCount();
+		} else {
+			String s = value.toTextString(ctx);
+			return def.countChunks(s, 0, s.length());
+		}
+	}
+	
+	private void replaceInParent(XNContext ctx, StringChunkDefinition.ChunkInfo ci, int startCharIndex, int endCharIndex, String s) {
+		if (parent instanceof XOMVariable) {
+			((XOMVariable)parent).replaceText(ctx, startCharIndex, endCharIndex, new XOMString(s));
+		} else {
+			String left = ci.getSourceString().substring(0, startCharIndex);
+			String right = ci.getSourceString().substring(endCharIndex);
+			parent.putIntoContents(ctx, new XOMString(left + s + right));
+		}
 	}
 	
 	public boolean canDelete(XNContext ctx) {
@@ -100,9 +162,7 @@ public class XOMStringChunk extends XOMContainer implements XOMStringContainer {
 		}
 		else if (parent.canPutContents(ctx)) {
 			StringChunkDefinition.ChunkInfo ci = getChunkInfo(ctx,false,false);
-			String left = ci.getSourceString().substring(0, ci.getStartIndex());
-			String right = ci.getSourceString().substring(ci.getDeleteEndIndex());
-			parent.putIntoContents(ctx, new XOMString(left + right));
+			replaceInParent(ctx, ci, ci.getStartIndex(), ci.getDeleteEndIndex(), "");
 		}
 		else {
 			super.delete(ctx);
@@ -133,9 +193,7 @@ public class XOMStringChunk extends XOMContainer implements XOMStringContainer {
 			StringChunkDefinition.ChunkInfo ci = getChunkInfo(ctx,false,false);
 			int s = Math.max(ci.getStartIndex(), Math.min(ci.getEndIndex(), ci.getStartIndex()+startCharIndex));
 			int e = Math.max(ci.getStartIndex(), Math.min(ci.getEndIndex(), ci.getStartIndex()+endCharIndex));
-			String left = ci.getSourceString().substring(0, s);
-			String right = ci.getSourceString().substring(e);
-			parent.putIntoContents(ctx, new XOMString(left + right));
+			replaceInParent(ctx, ci, s, e, "");
 		}
 		else {
 			super.delete(ctx);
@@ -174,7 +232,7 @@ public class XOMStringChunk extends XOMContainer implements XOMStringContainer {
 			StringChunkDefinition.ChunkInfo ci = getChunkInfo(ctx,false,false);
 			int s = Math.max(ci.getStartIndex(), Math.min(ci.getEndIndex(), ci.getStartIndex()+startCharIndex));
 			int e = Math.max(ci.getStartIndex(), Math.min(ci.getEndIndex(), ci.getStartIndex()+endCharIndex));
-			return new XOMString(ci.getSourceString().substring(s, e));
+			return new XOMString(ci.getSourceString(s, e));
 		}
 	}
 	
@@ -198,9 +256,7 @@ public class XOMStringChunk extends XOMContainer implements XOMStringContainer {
 		}
 		else if (parent.canPutContents(ctx)) {
 			StringChunkDefinition.ChunkInfo ci = getChunkInfo(ctx,true,true);
-			String left = ci.getSourceString().substring(0, ci.getStartIndex());
-			String right = ci.getSourceString().substring(ci.getEndIndex());
-			parent.putIntoContents(ctx, new XOMString(left + contents.toTextString(ctx) + right));
+			replaceInParent(ctx, ci, ci.getStartIndex(), ci.getEndIndex(), contents.toTextString(ctx));
 		}
 		else {
 			super.putIntoContents(ctx, contents);
@@ -215,9 +271,7 @@ public class XOMStringChunk extends XOMContainer implements XOMStringContainer {
 		}
 		else if (parent.canPutContents(ctx)) {
 			StringChunkDefinition.ChunkInfo ci = getChunkInfo(ctx,true,false);
-			String left = ci.getSourceString().substring(0, ci.getStartIndex());
-			String right = ci.getSourceString().substring(ci.getStartIndex());
-			parent.putIntoContents(ctx, new XOMString(left + contents.toTextString(ctx) + right));
+			replaceInParent(ctx, ci, ci.getStartIndex(), ci.getStartIndex(), contents.toTextString(ctx));
 		}
 		else {
 			super.putBeforeContents(ctx, contents);
@@ -232,9 +286,7 @@ public class XOMStringChunk extends XOMContainer implements XOMStringContainer {
 		}
 		else if (parent.canPutContents(ctx)) {
 			StringChunkDefinition.ChunkInfo ci = getChunkInfo(ctx,false,true);
-			String left = ci.getSourceString().substring(0, ci.getEndIndex());
-			String right = ci.getSourceString().substring(ci.getEndIndex());
-			parent.putIntoContents(ctx, new XOMString(left + contents.toTextString(ctx) + right));
+			replaceInParent(ctx, ci, ci.getEndIndex(), ci.getEndIndex(), contents.toTextString(ctx));
 		}
 		else {
 			super.putAfterContents(ctx, contents);
@@ -316,9 +368,7 @@ public class XOMStringChunk extends XOMContainer implements XOMStringContainer {
 			StringChunkDefinition.ChunkInfo ci = getChunkInfo(ctx,true,true);
 			int s = Math.max(ci.getStartIndex(), Math.min(ci.getEndIndex(), ci.getStartIndex()+startCharIndex));
 			int e = Math.max(ci.getStartIndex(), Math.min(ci.getEndIndex(), ci.getStartIndex()+endCharIndex));
-			String left = ci.getSourceString().substring(0, s);
-			String right = ci.getSourceString().substring(e);
-			parent.putIntoContents(ctx, new XOMString(left + contents.toTextString(ctx) + right));
+			replaceInParent(ctx, ci, s, e, contents.toTextString(ctx));
 		}
 		else {
 			super.putIntoContents(ctx, contents);
@@ -336,9 +386,7 @@ public class XOMStringChunk extends XOMContainer implements XOMStringContainer {
 		else if (parent.canPutContents(ctx)) {
 			StringChunkDefinition.ChunkInfo ci = getChunkInfo(ctx,true,false);
 			int s = Math.max(ci.getStartIndex(), Math.min(ci.getEndIndex(), ci.getStartIndex()+startCharIndex));
-			String left = ci.getSourceString().substring(0, s);
-			String right = ci.getSourceString().substring(s);
-			parent.putIntoContents(ctx, new XOMString(left + contents.toTextString(ctx) + right));
+			replaceInParent(ctx, ci, s, s, contents.toTextString(ctx));
 		}
 		else {
 			super.putBeforeContents(ctx, contents);
@@ -356,9 +404,7 @@ public class XOMStringChunk extends XOMContainer implements XOMStringContainer {
 		else if (parent.canPutContents(ctx)) {
 			StringChunkDefinition.ChunkInfo ci = getChunkInfo(ctx,false,true);
 			int e = Math.max(ci.getStartIndex(), Math.min(ci.getEndIndex(), ci.getStartIndex()+endCharIndex));
-			String left = ci.getSourceString().substring(0, e);
-			String right = ci.getSourceString().substring(e);
-			parent.putIntoContents(ctx, new XOMString(left + contents.toTextString(ctx) + right));
+			replaceInParent(ctx, ci, e, e, contents.toTextString(ctx));
 		}
 		else {
 			super.putAfterContents(ctx, contents);
@@ -441,62 +487,28 @@ public class XOMStringChunk extends XOMContainer implements XOMStringContainer {
 	public void sortContents(XNContext ctx, XOMComparator cmp) {
 		if (parent instanceof XOMStringContainer && ((XOMStringContainer)parent).canRearrangeString(ctx)) {
 			XOMStringContainer p = (XOMStringContainer)parent;
-			StringChunkDefinition.ChunkInfo ci = getChunkInfo(ctx, false, false);
-			Vector<XOMVariant> v = new Vector<XOMVariant>();
-			Vector<Integer> tweenStarts = new Vector<Integer>();
-			Vector<Integer> tweenEnds = new Vector<Integer>();
-			tweenStarts.add(0);
-			for (int i = ci.getFirstChunkIndex(); i <= ci.getLastChunkIndex(); i++) {
-				XOMStringChunk ch = new XOMStringChunk(parent, chunkType, i, i);
-				v.add(ch);
-				StringChunkDefinition.ChunkInfo chci = ch.getChunkInfo(ctx, false, false);
-				tweenEnds.add(chci.getStartIndex());
-				tweenStarts.add(chci.getEndIndex());
-			}
-			tweenEnds.add(ci.getSourceString().length());
-			Collections.sort(v, cmp);
-			Vector<Integer> starts = new Vector<Integer>();
-			Vector<Integer> ends = new Vector<Integer>();
-			while ((!tweenStarts.isEmpty() && !tweenEnds.isEmpty()) || !v.isEmpty()) {
-				if (!tweenStarts.isEmpty() && !tweenEnds.isEmpty()) {
-					starts.add(tweenStarts.remove(0));
-					ends.add(tweenEnds.remove(0));
-				}
-				if (!v.isEmpty()) {
-					XOMStringChunk ch = (XOMStringChunk)v.remove(0);
-					StringChunkDefinition.ChunkInfo chci = ch.getChunkInfo(ctx, false, false);
-					starts.add(chci.getStartIndex());
-					ends.add(chci.getEndIndex());
-				}
+			SortedChunks sc = new SortedChunks(ctx, cmp);
+			int n = sc.order.length;
+			int[] s = new int[n + n + 1];
+			int[] e = new int[n + n + 1];
+			s[0] = 0;
+			e[0] = (n > 0) ? sc.starts[0] : sc.source.length();
+			for (int k = 0; k < n; k++) {
+				s[k + k + 1] = sc.starts[sc.order[k]];
+				e[k + k + 1] = sc.ends[sc.order[k]];
+				s[k + k + 2] = sc.ends[k];
+				e[k + k + 2] = (k + 1 < n) ? sc.starts[k + 1] : sc.source.length();
 			}
-			int[] s = new int[starts.size()];
-			for (int i = 0; i < starts.size(); i++) s[i] = starts.get(i);
-			int[] e = new int[ends.size()];
-			for (int i = 0; i < ends.size(); i++) e[i] = ends.get(i);
 			p.rearrangeString(ctx, s, e);
 		}
 		else if (parent.canPutContents(ctx)) {
-			StringChunkDefinition.ChunkInfo ci = getChunkInfo(ctx, false, false);
-			Vector<XOMVariant> v = new Vector<XOMVariant>();
-			Vector<String> tweens = new Vector<String>();
-			int tweenStart = 0;
-			for (int i = ci.getFirstChunkIndex(); i <= ci.getLastChunkIndex(); i++) {
-				XOMStringChunk ch = new XOMStringChunk(parent, chunkType, i, i);
-				v.add(ch);
-				StringChunkDefinition.ChunkInfo chci = ch.getChunkInfo(ctx, false, false);
-				tweens.add(ci.getSourceString().substring(tweenStart, chci.getStartIndex()));
-				tweenStart = chci.getEndIndex();
-			}
-			tweens.add(ci.getSourceString().substring(tweenStart, ci.getSourceString().length()));
-			Collections.sort(v, cmp);
-			StringBuffer s = new StringBuffer();
-			while (!tweens.isEmpty() || !v.isEmpty()) {
-				if (!tweens.isEmpty()) {
-					s.append(tweens.remove(0));
-				}
-				if (!v.isEmpty()) {
-					s.append(v.remove(0).toTextString(ctx));
-				}
+			SortedChunks sc = new SortedChunks(ctx, cmp);
+			int n = sc.order.length;
+			StringBuffer s = new StringBuffer(sc.source.length());
+			s.append(sc.source, 0, (n > 0) ? sc.starts[0] : sc.source.length());
+			for (int k = 0; k < n; k++) {
+				s.append(sc.source, sc.starts[sc.order[k]], sc.ends[sc.order[k]]);
+				s.append(sc.source, sc.ends[k], (k + 1 < n) ? sc.starts[k + 1] : sc.source.length());
 			}
 			parent.putIntoContents(ctx, new XOMString(s.toString()));
 		}
@@ -505,6 +517,94 @@ public class XOMStringChunk extends XOMContainer implements XOMStringContainer {
 		}
 	}
 	
+	/**
+	 * The chunks of this chunk, found in a single pass over the source
+	 * string, and the order they go in once sorted. Each sort key is
+	 * computed once, before sorting, rather than once per comparison.
+	 * Numeric keys are also kept as doubles; two keys whose doubles
+	 * differ compare the same way, so only ties need the exact keys.
+	 */
+	private class SortedChunks {
+		private final String source;
+		private final int[] starts;
+		private final int[] ends;
+		private final int[] order;
+		private final XOMComparator cmp;
+		private final XOMVariant[] values;
+		private final Object[] keys;
+		private final double[] numbers;
+		private final boolean descending;
+		
+		public SortedChunks(XNContext ctx, XOMComparator cmp) {
+			XOMVariant tv = parent.canGetContents(ctx) ? parent.getContents(ctx) : parent;
+			StringChunkDefinition.ChunkIndex index = getChunkIndex(ctx, tv, getDefinition(ctx));
+			StringChunkDefinition.ChunkInfo ci = index.resolveChunk(startIndex, endIndex, false, false);
+			int first = ci.getFirstChunkIndex();
+			int n = Math.max(0, ci.getLastChunkIndex() - first + 1);
+			this.source = ci.getSourceString();
+			this.starts = new int[n];
+			this.ends = new int[n];
+			this.order = new int[n];
+			this.cmp = cmp;
+			this.values = new XOMVariant[n];
+			this.keys = new Object[n];
+			this.numbers = (cmp.getSortType() == XOMComparator.TYPE_NUMERIC) ? new double[n] : null;
+			this.descending = (cmp.getSortOrder() == XOMComparator.ORDER_DESCENDING);
+			for (int k = 0; k < n; k++) {
+				StringChunkDefinition.ChunkLocation loc = index.findChunk(first + k, first + k);
+				starts[k] = loc.getStartIndex();
+				ends[k] = loc.getEndIndex();
+				order[k] = k;
+				// A sort criterion may refer to each as a chunk, so keep it one.
+				values[k] = (cmp.getSortFilter() != null)
+					? new XOMStringChunk(parent, chunkType, first + k, first + k)
+					: new XOMString(loc.getContent());
+				keys[k] = cmp.makeKey(values[k]);
+				if (numbers != null) {
+					if (keys[k] instanceof BigDecimal) numbers[k] = XOMNumber.toDouble((BigDecimal)keys[k]);
+					else if (keys[k] instanceof Double) numbers[k] = (Double)keys[k];
+					else numbers[k] = Double.NaN;
+				}
+			}
+			sort(order, new int[n], 0, n);
+		}
+		
+		private int compare(int a, int b) {
+			if (numbers != null) {
+				double x = numbers[a];
+				double y = numbers[b];
+				if (x < y) return descending ? 1 : -1;
+				if (x > y) return descending ? -1 : 1;
+			}
+			return cmp.compareKeys(keys[a], keys[b], values[a], values[b]);
+		}
+		
+		/* A stable merge sort, so that equal chunks keep their order. */
+		private void sort(int[] a, int[] tmp, int lo, int hi) {
+			if (hi - lo < 8) {
+				for (int i = lo + 1; i < hi; i++) {
+					int v = a[i];
+					int j = i;
+					while (j > lo && compare(a[j - 1], v) > 0) {
+						a[j] = a[j - 1];
+						j--;
+					}
+					a[j] = v;
+				}
+				return;
+			}
+			int mid = (lo + hi) >>> 1;
+			sort(a, tmp, lo, mid);
+			sort(a, tmp, mid, hi);
+			if (compare(a[mid - 1], a[mid]) <= 0) return;
+			System.arraycopy(a, lo, tmp, lo, hi - lo);
+			int i = lo, j = mid, k = lo;
+			while (i < mid && j < hi) a[k++] = (compare(tmp[j], tmp[i]) < 0) ? tmp[j++] : tmp[i++];
+			while (i < mid) a[k++] = tmp[i++];
+			while (j < hi) a[k++] = tmp[j++];
+		}
+	}
+	
 	public boolean canRearrangeString(XNContext ctx) {
 		if (parent instanceof XOMStringContainer && ((XOMStringContainer)parent).canRearrangeString(ctx)) {
 			return true;
@@ -634,6 +734,97 @@ public class XOMStringChunk extends XOMContainer implements XOMStringContainer {
 		}
 		return v;
 	}
+	/**
+	 * Goes through the chunks in one pass. The source string is scanned
+	 * once, when iteration starts, and each chunk is produced as it is
+	 * asked for, instead of making a chunk object for every chunk up front
+	 * that would each find its place in the string again when read.
+	 * The lines of an open file or URL are instead read from the stream
+	 * one at a time, starting at its current position.
+	 */
+	public Iterator<? extends XOMVariant> toVariantIterator(final XNContext ctx) {
+		if (chunkType == StringChunkType.LINE && !parent.canGetContents(ctx) && startIndex > 0 && (endIndex == -1 || endIndex >= startIndex)) {
+			XNIOManager io = ctx.getIOManager(parent);
+			XNIOStream stream = (io == null) ? null : io.getStream(ctx, parent);
+			if (stream != null) return new LineCursor(ctx, stream, startIndex, endIndex);
+		}
+		XOMVariant tv = parent.canGetContents(ctx) ? parent.getContents(ctx) : parent;
+		final StringChunkDefinition.ChunkIndex index = getChunkIndex(ctx, tv, getDefinition(ctx));
+		final StringChunkDefinition.ChunkInfo ci = index.resolveChunk(startIndex, endIndex, false, false);
+		return new Iterator<XOMVariant>() {
+			private int i = (ci == null) ? 1 : ci.getFirstChunkIndex();
+			private int last = (ci == null) ? 0 : ci.getLastChunkIndex();
+			public boolean hasNext() {
+				return i <= last;
+			}
+			public XOMVariant next() {
+				if (i > last) throw new NoSuchElementException();
+				return new XOMString(index.findChunk(i, i++).getContent());
+			}
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+	
+	/*
+	 * Reads nothing until it is asked for the next line, so that a script
+	 * reading from the same file inside the loop sees the file pointer
+	 * right after the line it was given.
+	 */
+	private static class LineCursor implements Iterator<XOMVariant> {
+		private XNContext ctx;
+		private XNIOStream stream;
+		private int toSkip;
+		private int remaining;
+		private String line;
+		private boolean done;
+		
+		public LineCursor(XNContext ctx, XNIOStream stream, int startIndex, int endIndex) {
+			this.ctx = ctx;
+			this.stream = stream;
+			this.toSkip = startIndex - 1;
+			this.remaining = (endIndex < 0) ? -1 : (endIndex - startIndex + 1);
+			this.line = null;
+			this.done = false;
+		}
+		
+		private String readLine() {
+			try {
+				return TextIOMethod.instance.readLine(ctx, stream);
+			} catch (IOException e) {
+				throw new XNScriptError(e, "Failed to read");
+			}
+		}
+		
+		public boolean hasNext() {
+			if (line == null && !done) {
+				while (toSkip > 0) {
+					toSkip--;
+					if (readLine() == null) {
+						done = true;
+						return false;
+					}
+				}
+				if (remaining != 0) line = readLine();
+				if (line == null) done = true;
+			}
+			return line != null;
+		}
+		
+		public XOMVariant next() {
+			if (!hasNext()) throw new NoSuchElementException();
+			XOMVariant v = new XOMString(line);
+			line = null;
+			if (remaining > 0) remaining--;
+			return v;
+		}
+		
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+	
 	public List<? extends XOMVariant> toPrimitiveList(XNContext ctx) {
 		StringChunkDefinition.ChunkInfo ci = getChunkInfo(ctx,false,false);
 		Vector<XOMVariant> v = new Vector<XOMVariant>();
@@ -28,6 +28,7 @@
 package com.kreative.openxion.xom.type;
 
 import com.kreative.openxion.XNContext;
+import com.kreative.openxion.util.XNDateParser;
 import com.kreative.openxion.xom.XOMPrimitiveDataType;
 import com.kreative.openxion.xom.XOMVariant;
 import com.kreative.openxion.xom.XOMMorphError;
@@ -50,12 +51,7 @@ public class XOMDateType extends XOMPrimitiveDataType<XOMDate> {
 		return false;
 	}
 	protected boolean canMakeInstanceFromImpl(XNContext ctx, String s) {
-		try {
-			new XOMDate(s);
-			return true;
-		} catch (Exception e) {
-			return false;
-		}
+		return XNDateParser.parse(s) != null;
 	}
 	protected XOMDate makeInstanceFromImpl(XNContext ctx) {
 		throw new XOMMorphError(typeName);
@@ -35,6 +35,7 @@ import com.kreative.openxion.xom.XOMVariant;
 import com.kreative.openxion.xom.inst.XOMEmpty;
 import com.kreative.openxion.xom.inst.XOMList;
 import com.kreative.openxion.xom.inst.XOMReference;
+import com.kreative.openxion.xom.inst.XOMString;
 
 /**
  * XOMPrimitiveDataType handles polymorphic methods for primitive types.
@@ -75,6 +76,7 @@ public abstract class XOMNumericDataType<IT extends XOMVariant> extends XOMDataT
 	}
 	
 	public final boolean canMakeInstanceFrom(XNContext ctx, XOMVariant instance, boolean acceptEmpty) {
+		XOMString.Conversion c;
 		instance = instance.asPrimitive(ctx);
 		if (instance instanceof XOMList) {
 			List<? extends XOMVariant> l = instance.toPrimitiveList(ctx);
@@ -92,11 +94,39 @@ public abstract class XOMNumericDataType<IT extends XOMVariant> extends XOMDataT
 			return true;
 		else if (canMakeInstanceFromImpl(ctx, instance, acceptEmpty))
 			return true;
+		else if ((c = convertString(ctx, instance)) != null)
+			return c.getValue() != null;
 		else if (canMakeInstanceFromImpl(ctx, instance.toTextString(ctx), acceptEmpty))
 			return true;
 		else
 			return false;
 	}
+	/*
+	 * Parsing the text of a string with the context's number format is slow,
+	 * and the same string is often converted many times (every use of an
+	 * untyped variable in arithmetic, for instance). The result of converting
+	 * a nonempty XOMString, including failure, is kept with the XOMString.
+	 * Returns null if the instance is not such a string.
+	 */
+	private XOMString.Conversion convertString(XNContext ctx, XOMVariant instance) {
+		if (!(instance instanceof XOMString)) return null;
+		XOMString xs = (XOMString)instance;
+		Object format = ctx.getNumberFormat();
+		XOMString.Conversion c = xs.getConversion(this, format);
+		if (c == null) {
+			String s = xs.toTextString(ctx);
+			if (s.length() == 0) return null;
+			// Parse once; only a failure needs to be checked with canMakeInstanceFromImpl.
+			try {
+				c = xs.putConversion(this, format, makeInstanceFromImpl(ctx, s, false));
+			} catch (XOMMorphError e) {
+				if (canMakeInstanceFromImpl(ctx, s, false)) return null;
+				c = xs.putConversion(this, format, null);
+			}
+		}
+		return c;
+	}
+	
 	public final boolean canMakeInstanceFrom(XNContext ctx, XOMVariant left, XOMVariant right, boolean acceptEmpty) {
 		left = left.asPrimitive(ctx);
 		right = right.asPrimitive(ctx);
@@ -110,6 +140,7 @@ public abstract class XOMNumericDataType<IT extends XOMVariant> extends XOMDataT
 			return false;
 	}
 	public final IT makeInstanceFrom(XNContext ctx, XOMVariant instance, boolean acceptEmpty) {
+		XOMString.Conversion c;
 		instance = instance.asPrimitive(ctx);
 		if (instance instanceof XOMList) {
 			List<? extends XOMVariant> l = instance.toPrimitiveList(ctx);
@@ -127,6 +158,8 @@ public abstract class XOMNumericDataType<IT extends XOMVariant> extends XOMDataT
 			return makeInstanceFromImpl(ctx);
 		else if (canMakeInstanceFromImpl(ctx, instance, acceptEmpty))
 			return makeInstanceFromImpl(ctx, instance, acceptEmpty);
+		else if ((c = convertString(ctx, instance)) != null && c.getValue() != null)
+			return instanceClass.cast(c.getValue());
 		else if (canMakeInstanceFromImpl(ctx, instance.toTextString(ctx), acceptEmpty))
 			return makeInstanceFromImpl(ctx, instance.toTextString(ctx), acceptEmpty);
 		else
@@ -78,16 +78,14 @@ public class XOMStringChunkType extends XOMContainerDataType<XOMStringChunk> {
 		return new XOMStringChunk(parent, ct, 1, -1);
 	}
 	public boolean canGetChildVariantByIndex(XNContext ctx, XOMVariant parent, int index) {
-		String s = parent.toTextString(ctx);
 		StringChunkDefinition def = getDefinition(ctx);
-		int n = def.countChunks(s, 0, s.length());
+		int n = XOMStringChunk.getChunkCount(ctx, parent.asValue(ctx), def);
 		index = XIONUtil.index(1, n, index, index)[0];
 		return (index > 0 && index <= n);
 	}
 	public boolean canGetChildVariantByIndex(XNContext ctx, XOMVariant parent, int startIndex, int endIndex) {
-		String s = parent.toTextString(ctx);
 		StringChunkDefinition def = getDefinition(ctx);
-		int n = def.countChunks(s, 0, s.length());
+		int n = XOMStringChunk.getChunkCount(ctx, parent.asValue(ctx), def);
 		int[] index = XIONUtil.index(1, n, startIndex, endIndex);
 		return (index[0] > 0 && index[1] <= n);
 	}
@@ -595,6 +595,7 @@ public class XOMUserObjectType extends XOMDataType<XOMUserObject> {
 	
 	private static XNHandlerExit evaluateFunctionHandler(XNInterpreter interp, XNContext ctx, XOMUserObject obj, XNFunctionHandler handler, List<? extends XOMVariant> parameters) {
 		XNStackFrame f = new XNStackFrame(handler.name, parameters);
+		f.setLocalSlots(handler.slotScope, handler.slotCount);
 		if (handler.parameters != null) {
 			for (int i = 0; i < handler.parameters.size(); i++) {
 				XNHandlerParameter param = handler.parameters.get(i);
@@ -651,6 +652,7 @@ public class XOMUserObjectType extends XOMDataType<XOMUserObject> {
 	
 	private static XNHandlerExit executeCommandHandler(XNInterpreter interp, XNContext ctx, XOMUserObject obj, XNMessageHandler handler, List<XOMVariant> parameters) {
 		XNStackFrame f = new XNStackFrame(handler.name, parameters);
+		f.setLocalSlots(handler.slotScope, handler.slotCount);
 		if (handler.parameters != null) {
 			for (int i = 0; i < handler.parameters.size(); i++) {
 				XNHandlerParameter param = handler.parameters.get(i);
@@ -0,0 +1,108 @@
+package test;
+
+import java.text.ParsePosition;
+import java.util.*;
+import com.kreative.openxion.*;
+import com.kreative.openxion.util.XNDateFormat;
+import com.kreative.openxion.xom.XOMMorphError;
+import com.kreative.openxion.xom.inst.XOMDate;
+import com.kreative.openxion.xom.inst.XOMString;
+import com.kreative.openxion.xom.type.XOMDateType;
+
+/**
+ * Converts a list of timestamps (and some strings that are not dates)
+ * to dates the way XOMDateType does, once with a new DateFormat for
+ * every format tried and every value parsed up to three times, as it
+ * used to be, and once with XNDateParser, and prints the time taken
+ * by each.
+ * Usage: java test.DateParseBenchmark [-n count] [-r rounds]
+ */
+public class DateParseBenchmark {
+	public static void main(String[] args) {
+		int count = 1000000;
+		int rounds = 3;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-n") && i+1 < args.length) count = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-r") && i+1 < args.length) rounds = Integer.parseInt(args[++i]);
+		}
+		XNContext ctx = new XNContext(new XNNullUI(), new XNSecurityProfile(XNSecurityValue.ALLOW));
+		List<XOMString> values = makeValues(count);
+		// Both paths must agree before either one is timed.
+		for (int i = 0; i < values.size(); i += 97) {
+			Long a = oldParse(values.get(i).toTextString(ctx));
+			Long b = newParse(ctx, values.get(i));
+			if (a == null ? b != null : !a.equals(b)) {
+				throw new IllegalStateException("Results differ for " + values.get(i).toTextString(ctx));
+			}
+		}
+		long oldTime = 0, newTime = 0;
+		for (int r = 0; r < rounds; r++) {
+			long start = System.nanoTime();
+			int oldDates = 0;
+			for (XOMString v : values) if (oldParse(v.toTextString(ctx)) != null) oldDates++;
+			oldTime += System.nanoTime() - start;
+			start = System.nanoTime();
+			int newDates = 0;
+			for (XOMString v : values) if (newParse(ctx, v) != null) newDates++;
+			newTime += System.nanoTime() - start;
+			if (oldDates != newDates) throw new IllegalStateException("Date counts differ");
+		}
+		System.out.println("Values:       " + values.size());
+		System.out.println("Rounds:       " + rounds);
+		System.out.println("Old path:     " + (oldTime / 1000000) + " ms");
+		System.out.println("XNDateParser: " + (newTime / 1000000) + " ms");
+		System.out.println("Speedup:      " + String.format("%.2f", (double)oldTime / (double)newTime) + "x");
+	}
+
+	private static List<XOMString> makeValues(int count) {
+		Random random = new Random(1904);
+		XNDateFormat[] formats = {
+			XNDateFormat.SHORT_DATE, XNDateFormat.ABBREV_DATE, XNDateFormat.LONG_DATE,
+			XNDateFormat.SHORT_TIME, XNDateFormat.ABBREV_TIME, XNDateFormat.LONG_TIME
+		};
+		List<XOMString> values = new ArrayList<XOMString>(count);
+		for (int i = 0; i < count; i++) {
+			if (i % 10 == 9) {
+				values.add(new XOMString("not a date " + i));
+			} else {
+				Date d = new Date(946684800000L + (long)(random.nextDouble() * 946684800000L));
+				values.add(new XOMString(formats[i % formats.length].toJavaDateFormat().format(d)));
+			}
+		}
+		return values;
+	}
+
+	// This is what XOMDateType.canMakeInstanceFrom and makeInstanceFrom
+	// did before XNDateParser: the latter checks the string again first.
+	private static Long oldParse(String s) {
+		if (!oldCanParse(s)) return null;
+		if (!oldCanParse(s)) return null;
+		return oldMakeDate(s);
+	}
+
+	private static boolean oldCanParse(String s) {
+		try {
+			oldMakeDate(s);
+			return true;
+		} catch (Exception e) {
+			return false;
+		}
+	}
+
+	private static long oldMakeDate(String s) {
+		ParsePosition pos = new ParsePosition(0);
+		for (XNDateFormat fmt : XNDateFormat.allForName("datetime")) {
+			Date parsedDate = fmt.toJavaDateFormat().parse(s, pos);
+			if (parsedDate != null && s.substring(pos.getIndex()).trim().length() == 0) {
+				return parsedDate.getTime();
+			}
+		}
+		throw new XOMMorphError("date");
+	}
+
+	private static Long newParse(XNContext ctx, XOMString s) {
+		if (!XOMDateType.instance.canMakeInstanceFrom(ctx, s)) return null;
+		XOMDate d = XOMDateType.instance.makeInstanceFrom(ctx, s);
+		return d.toDate().getTime();
+	}
+}
@@ -0,0 +1,133 @@
+package test;
+
+import java.io.*;
+import java.lang.reflect.*;
+import java.net.*;
+import java.util.*;
+
+/**
+ * Runs XION scripts (e.g. XIONStdTestSuite/*.xn) repeatedly with the
+ * interpreter on the class path and with the interpreter of another
+ * build of OpenXION, such as one from before class-based dispatch,
+ * and prints the time taken by each. Each build is loaded by its own
+ * class loader, so both run in the same JVM under the same conditions.
+ * Usage: java test.DispatchBenchmark [-n rounds] -b classpath script.xn [script.xn ...]
+ */
+public class DispatchBenchmark {
+	public static void main(String[] args) throws Exception {
+		int rounds = 5;
+		String baseline = null;
+		List<File> files = new ArrayList<File>();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-n") && i+1 < args.length) rounds = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-b") && i+1 < args.length) baseline = args[++i];
+			else files.add(new File(args[i]));
+		}
+		if (baseline == null) {
+			System.out.println("Usage: java test.DispatchBenchmark [-n rounds] -b classpath script.xn [script.xn ...]");
+			return;
+		}
+		String[] paths = baseline.split(File.pathSeparator);
+		URL[] urls = new URL[paths.length];
+		for (int i = 0; i < paths.length; i++) urls[i] = new File(paths[i]).toURI().toURL();
+		// The parent of the system class loader cannot see this build's classes.
+		ClassLoader old = new URLClassLoader(urls, ClassLoader.getSystemClassLoader().getParent());
+		Build current = new Build(DispatchBenchmark.class.getClassLoader(), files);
+		Build previous = new Build(old, files);
+		// Warm up both builds before timing either.
+		current.run();
+		previous.run();
+		long fast = 0, slow = 0;
+		for (int i = 0; i < rounds; i++) {
+			// Alternate the order so neither build always runs first.
+			if ((i & 1) == 0) {
+				fast += current.run();
+				slow += previous.run();
+			} else {
+				slow += previous.run();
+				fast += current.run();
+			}
+		}
+		System.out.println("Scripts:         "+current.scripts.size()+" / "+previous.scripts.size());
+		System.out.println("Script errors:   "+current.errors+" / "+previous.errors);
+		System.out.println("Rounds:          "+rounds);
+		System.out.println("This build:      "+(fast / 1000000)+" ms");
+		System.out.println("Baseline build:  "+(slow / 1000000)+" ms");
+		System.out.println("Speedup:         "+String.format("%.2f", (double)slow / (double)fast)+"x");
+	}
+
+	/*
+	 * The two builds have different classes with the same names,
+	 * so everything is done through reflection, using only the
+	 * parts of the embedding API that have not changed.
+	 */
+	private static class Build {
+		private final ClassLoader loader;
+		private final Object context;
+		private final Constructor<?> newInterpreter;
+		private final Method reset;
+		private final Method executeScript;
+		private final Map<File,Object> scripts;
+		private int errors;
+
+		public Build(ClassLoader loader, List<File> files) throws Exception {
+			this.loader = loader;
+			Class<?> ui = type("XNUI");
+			Class<?> sp = type("XNSecurityProfile");
+			Class<?> sv = type("XNSecurityValue");
+			Class<?> ctx = type("XNContext");
+			Object security = sp.getConstructor(sv).newInstance(sv.getField("ALLOW").get(null));
+			this.context = ctx.getConstructor(ui, sp).newInstance(type("XNNullUI").getDeclaredConstructor().newInstance(), security);
+			Method loadModule = ctx.getMethod("loadModule", type("XNModule"));
+			loadModule.invoke(context, type("XNStandardModule").getMethod("instance").invoke(null));
+			loadModule.invoke(context, type("XNExtendedModule").getMethod("instance").invoke(null));
+			loadModule.invoke(context, type("XNAudioModule").getMethod("instance").invoke(null));
+			this.newInterpreter = type("XNInterpreter").getConstructor(ctx);
+			this.reset = ctx.getMethod("reset");
+			this.executeScript = type("XNInterpreter").getMethod("executeScript", List.class);
+			Constructor<?> newLexer = type("XNLexer").getConstructor(Object.class, Reader.class);
+			Constructor<?> newParser = type("XNParser").getConstructor(ctx, type("XNLexer"));
+			Method parse = type("XNParser").getMethod("parse");
+			this.scripts = new LinkedHashMap<File,Object>();
+			for (File file : files) {
+				Reader r = new InputStreamReader(new FileInputStream(file), "UTF-8");
+				try {
+					Object parser = newParser.newInstance(context, newLexer.newInstance(file, r));
+					scripts.put(file, parse.invoke(parser));
+				} catch (InvocationTargetException ite) {
+					if (!isScriptError(ite)) throw ite;
+					System.out.println("Skipping "+file+": "+ite.getCause().getMessage());
+				} finally {
+					r.close();
+				}
+			}
+		}
+
+		private Class<?> type(String name) throws ClassNotFoundException {
+			return Class.forName("com.kreative.openxion."+name, true, loader);
+		}
+
+		private boolean isScriptError(InvocationTargetException ite) {
+			return ite.getCause().getClass().getName().equals("com.kreative.openxion.XNScriptError");
+		}
+
+		public long run() throws Exception {
+			Object interp = newInterpreter.newInstance(context);
+			long total = 0;
+			errors = 0;
+			for (Object script : scripts.values()) {
+				reset.invoke(context);
+				long start = System.nanoTime();
+				try {
+					executeScript.invoke(interp, script);
+				} catch (InvocationTargetException ite) {
+					// Some test scripts end in an error on purpose.
+					if (!isScriptError(ite)) throw ite;
+					errors++;
+				}
+				total += System.nanoTime() - start;
+			}
+			return total;
+		}
+	}
+}
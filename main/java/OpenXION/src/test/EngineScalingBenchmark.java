@@ -0,0 +1,74 @@
+package test;
+
+import java.util.*;
+import java.util.concurrent.*;
+import javax.script.*;
+import com.kreative.openxion.jsr223.XNScriptEngineFactory;
+
+/**
+ * Evaluates one compiled XION script many times from 1, 2, 4, ...
+ * threads sharing a single XNScriptEngine and prints the throughput
+ * at each thread count, to show how evaluation scales across cores.
+ * Usage: java test.EngineScalingBenchmark [-n evaluations] [-t maxThreads]
+ */
+public class EngineScalingBenchmark {
+	private static final String SCRIPT =
+		"put 0 into total\n" +
+		"repeat with i = 1 to 2000\n" +
+		"  add (i * n) mod 7 to total\n" +
+		"end repeat\n" +
+		"return total";
+	
+	public static void main(String[] args) throws Exception {
+		int evaluations = 2000;
+		int maxThreads = Runtime.getRuntime().availableProcessors();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-n") && i+1 < args.length) evaluations = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-t") && i+1 < args.length) maxThreads = Integer.parseInt(args[++i]);
+		}
+		ScriptEngine engine = new XNScriptEngineFactory().getScriptEngine();
+		CompiledScript script = ((Compilable)engine).compile(SCRIPT);
+		// Warm up before timing anything.
+		run(script, 1, evaluations);
+		double base = 0;
+		for (int threads = 1; threads <= maxThreads; threads *= 2) {
+			long time = run(script, threads, evaluations);
+			double rate = evaluations * 1e9 / time;
+			if (threads == 1) base = rate;
+			System.out.println(
+				"Threads: " + threads +
+				"  Time: " + (time / 1000000) + " ms" +
+				"  Evaluations/s: " + String.format("%.0f", rate) +
+				"  Speedup: " + String.format("%.2f", rate / base) + "x"
+			);
+		}
+	}
+	
+	private static long run(final CompiledScript script, int threads, final int evaluations) throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		final int perThread = evaluations / threads;
+		long start = System.nanoTime();
+		for (int t = 0; t < threads; t++) {
+			final int n = t + 1;
+			futures.add(pool.submit(new Callable<Object>() {
+				public Object call() throws ScriptException {
+					ScriptContext sc = new SimpleScriptContext();
+					sc.setBindings(new SimpleBindings(), ScriptContext.ENGINE_SCOPE);
+					sc.setAttribute("n", n, ScriptContext.ENGINE_SCOPE);
+					Object expected = null;
+					for (int i = 0; i < perThread; i++) {
+						Object result = script.eval(sc);
+						if (expected == null) expected = result;
+						else if (!expected.equals(result)) throw new IllegalStateException("Expected " + expected + " but got " + result);
+					}
+					return expected;
+				}
+			}));
+		}
+		for (Future<?> f : futures) f.get();
+		long time = System.nanoTime() - start;
+		pool.shutdown();
+		return time;
+	}
+}
@@ -0,0 +1,113 @@
+package test;
+
+import java.io.*;
+import java.util.*;
+import com.kreative.openxion.*;
+import com.kreative.openxion.ast.XNStatement;
+
+/**
+ * Runs loops that throw and catch script errors in different ways
+ * and prints the time taken per iteration by each, next to a loop
+ * that does the same work without throwing anything.
+ * Usage: java test.ErrorPathBenchmark [-n iterations] [-r rounds]
+ */
+public class ErrorPathBenchmark {
+	private static final String[][] SCRIPTS = {
+		{
+			"No error",
+			"repeat with i = 1 to N\n" +
+			"  try\n" +
+			"    if i < 0 then throw \"never\"\n" +
+			"  catch e\n" +
+			"    put e into last\n" +
+			"  end try\n" +
+			"end repeat\n"
+		},
+		{
+			"Throw, same handler",
+			"repeat with i = 1 to N\n" +
+			"  try\n" +
+			"    if i > 0 then throw \"bad input \" & i\n" +
+			"  catch e\n" +
+			"    put e into last\n" +
+			"  end try\n" +
+			"end repeat\n"
+		},
+		{
+			"Throw, nested blocks",
+			"repeat with i = 1 to N\n" +
+			"  try\n" +
+			"    repeat 1\n" +
+			"      if i > 0 then\n" +
+			"        switch i mod 2\n" +
+			"        default\n" +
+			"          throw \"bad input \" & i\n" +
+			"        end switch\n" +
+			"      end if\n" +
+			"    end repeat\n" +
+			"  catch e\n" +
+			"    put e into last\n" +
+			"  end try\n" +
+			"end repeat\n"
+		},
+		{
+			"Throw, called function",
+			"function check x\n" +
+			"  if x > 0 then throw \"bad input \" & x\n" +
+			"  return x\n" +
+			"end check\n" +
+			"repeat with i = 1 to N\n" +
+			"  try\n" +
+			"    get check(i)\n" +
+			"  catch e\n" +
+			"    put e into last\n" +
+			"  end try\n" +
+			"end repeat\n"
+		},
+		{
+			"Built-in error",
+			"repeat with i = 1 to N\n" +
+			"  try\n" +
+			"    get \"abc\" + i\n" +
+			"  catch e\n" +
+			"    put e into last\n" +
+			"  end try\n" +
+			"end repeat\n"
+		},
+	};
+
+	public static void main(String[] args) throws IOException {
+		int iterations = 20000;
+		int rounds = 5;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-n") && i+1 < args.length) iterations = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-r") && i+1 < args.length) rounds = Integer.parseInt(args[++i]);
+		}
+		XNContext ctx = new XNContext(new XNNullUI(), new XNSecurityProfile(XNSecurityValue.ALLOW));
+		ctx.loadModule(XNStandardModule.instance());
+		ctx.loadModule(XNExtendedModule.instance());
+		XNInterpreter interp = new XNInterpreter(ctx);
+		List<List<XNStatement>> scripts = new ArrayList<List<XNStatement>>();
+		for (String[] script : SCRIPTS) {
+			String src = script[1].replace("N", Integer.toString(iterations));
+			scripts.add(new XNParser(ctx, new XNLexer("ErrorPathBenchmark", new StringReader(src))).parse());
+		}
+		// Warm up every script before timing any of them.
+		for (List<XNStatement> script : scripts) run(ctx, interp, script);
+		for (int s = 0; s < SCRIPTS.length; s++) {
+			long total = 0;
+			for (int r = 0; r < rounds; r++) {
+				total += run(ctx, interp, scripts.get(s));
+			}
+			double perIteration = (double)total / ((double)rounds * (double)iterations);
+			System.out.println(String.format("%-24s %8.0f ns/iteration", SCRIPTS[s][0] + ":", perIteration));
+		}
+	}
+
+	private static long run(XNContext ctx, XNInterpreter interp, List<XNStatement> script) {
+		ctx.reset();
+		long start = System.nanoTime();
+		interp.executeScript(script);
+		return System.nanoTime() - start;
+	}
+}
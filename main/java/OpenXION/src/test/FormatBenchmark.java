@@ -0,0 +1,89 @@
+package test;
+
+import java.util.*;
+import com.kreative.openxion.*;
+import com.kreative.openxion.format.FormatString;
+import com.kreative.openxion.format.FormatStringComponent;
+import com.kreative.openxion.xom.XOMVariant;
+import com.kreative.openxion.xom.inst.XOMInteger;
+import com.kreative.openxion.xom.inst.XOMNumber;
+import com.kreative.openxion.xom.inst.XOMString;
+
+/**
+ * Formats rows of a report with a few patterns the way the format
+ * function does, once compiling the pattern for every row and joining
+ * the output of each component, as it used to be, and once with the
+ * context's compiled format cache, and prints the time taken by each.
+ * Usage: java test.FormatBenchmark [-n rows] [-r rounds]
+ */
+public class FormatBenchmark {
+	private static final String[] PATTERNS = {
+		"^1n20m20s ^2l n10n ^3l0n6i",
+		"^1n20m20s ^2l n10n ^{^3=1?one item|^3 items}",
+		"[^1l r n24] ^2n12N|",
+	};
+
+	public static void main(String[] args) {
+		int count = 1000000;
+		int rounds = 3;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-n") && i+1 < args.length) count = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-r") && i+1 < args.length) rounds = Integer.parseInt(args[++i]);
+		}
+		XNContext ctx = new XNContext(new XNNullUI(), new XNSecurityProfile(XNSecurityValue.ALLOW));
+		ctx.loadModule(XNStandardModule.instance());
+		List<List<XOMVariant>> rows = makeRows(count);
+		// Both paths must agree before either one is timed.
+		for (int i = 0; i < rows.size(); i += 97) {
+			String a = oldFormat(ctx, rows.get(i));
+			String b = newFormat(ctx, rows.get(i));
+			if (!a.equals(b)) throw new IllegalStateException("Results differ: " + a + " / " + b);
+		}
+		long oldTime = 0, newTime = 0;
+		for (int r = 0; r < rounds; r++) {
+			long start = System.nanoTime();
+			long oldChars = 0;
+			for (List<XOMVariant> row : rows) oldChars += oldFormat(ctx, row).length();
+			oldTime += System.nanoTime() - start;
+			start = System.nanoTime();
+			long newChars = 0;
+			for (List<XOMVariant> row : rows) newChars += newFormat(ctx, row).length();
+			newTime += System.nanoTime() - start;
+			if (oldChars != newChars) throw new IllegalStateException("Output lengths differ");
+		}
+		System.out.println("Rows:         " + rows.size());
+		System.out.println("Rounds:       " + rounds);
+		System.out.println("Old path:     " + (oldTime / 1000000) + " ms");
+		System.out.println("Format cache: " + (newTime / 1000000) + " ms");
+		System.out.println("Speedup:      " + String.format("%.2f", (double)oldTime / (double)newTime) + "x");
+	}
+
+	private static List<List<XOMVariant>> makeRows(int count) {
+		Random random = new Random(1904);
+		List<List<XOMVariant>> rows = new ArrayList<List<XOMVariant>>(count);
+		for (int i = 0; i < count; i++) {
+			List<XOMVariant> row = new ArrayList<XOMVariant>(4);
+			row.add(new XOMString(PATTERNS[i % PATTERNS.length]));
+			row.add(new XOMString("item " + Integer.toString(random.nextInt(100000), 36)));
+			row.add(new XOMNumber(random.nextInt(1000000) / 100.0));
+			row.add(new XOMInteger(random.nextInt(20)));
+			rows.add(row);
+		}
+		return rows;
+	}
+
+	// This is what the format function did before the format cache:
+	// compile the pattern, then join the strings of its components.
+	private static String oldFormat(XNContext ctx, List<XOMVariant> row) {
+		FormatString fs = FormatString.compile(ctx, row.get(0).toTextString(ctx));
+		StringBuffer s = new StringBuffer();
+		for (FormatStringComponent component : fs) {
+			s.append(component.format(ctx, row));
+		}
+		return s.toString();
+	}
+
+	private static String newFormat(XNContext ctx, List<XOMVariant> row) {
+		return ctx.getFormatString(row.get(0).toTextString(ctx)).format(ctx, row);
+	}
+}
@@ -0,0 +1,47 @@
+package test.jsr223;
+
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+import com.kreative.openxion.jsr223.XNScriptEngineFactory;
+
+/**
+ * Checks that the variables declared from one set of Bindings, and the
+ * globals a script sets, are gone when the engine or a compiled script
+ * is next evaluated with other Bindings. A global that has not been
+ * set is empty, and a variable that has not been declared evaluates
+ * to its own name.
+ */
+public class BindingsTest {
+	private static final String SCRIPT = "global g\nput a & b & g into r\nput \"set\" into g\nreturn r";
+	
+	public static void main(String[] args) throws ScriptException {
+		ScriptEngine engine = new XNScriptEngineFactory().getScriptEngine();
+		CompiledScript script = ((Compilable)engine).compile(SCRIPT);
+		
+		check("eval with bindings A", engine.eval(SCRIPT, bindingsA()), "12");
+		check("eval with empty bindings", engine.eval(SCRIPT, new SimpleBindings()), "ab");
+		
+		check("compiled eval with bindings A", script.eval(bindingsA()), "12");
+		check("compiled eval with empty bindings", script.eval(new SimpleBindings()), "ab");
+		
+		System.out.println("All bindings tests passed.");
+	}
+	
+	private static Bindings bindingsA() {
+		Bindings b = new SimpleBindings();
+		b.put("a", 1);
+		b.put("b", 2);
+		return b;
+	}
+	
+	private static void check(String name, Object actual, Object expected) {
+		System.out.println(name + ": " + actual);
+		if (!expected.equals(actual)) {
+			throw new AssertionError(name + ": expected " + expected + " but got " + actual);
+		}
+	}
+}